@@ -0,0 +1,705 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * BTreeIndex.java
+ * ---------------
+ */
+package smallsql.database;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import smallsql.database.language.Language;
+
+/**
+ * An index that is saved as B+tree in pages with a fixed size. It is created with CREATE INDEX ... USING BTREE. Only
+ * the root and the nodes of the working set are in the memory, the other nodes are read on request. This is needed
+ * for large tables where the complete tree of a FileIndex does not fit in the memory.<p>
+ *
+ * The key of an entry include for every column the count of its digits and the digits from Index.getDigits(). A NULL
+ * value has no digits and is lower as all other values. Every entry is saved once in a leaf node (see BTreeNode).<p>
+ *
+ * A covering index (CREATE INDEX ... INCLUDE) save with every entry a payload with the values of the covered columns.
+ * The payload is the last of the expressions and not part of the key. If an entry with its payload is too large for
+ * the page then the payload is not saved and the values must be read from the row.<p>
+ *
+ * The nodes are cached in LRU order. A changed node is written if it is removed from the cache and on save(). Like
+ * for a FileIndex the data in the file are only valid after save(), after a crash the index is build again from the
+ * rows of the table. Entries are removed from the leaf nodes without merging of nodes. The space is reused by new
+ * entries in the same range, empty nodes are discarded if the index is build again like on VACUUM.
+ */
+final class BTreeIndex extends IndexData {
+
+    /** The maximum count of characters of a key. A page can hold at least 4 entries. */
+    static final int MAX_KEY_LENGTH = 1000;
+    /** The maximum size of a leaf entry with its payload. A page can hold at least 4 entries. */
+    private static final int MAX_ENTRY_SIZE = 2040;
+    /** the maximum count of nodes in the cache */
+    private static final int CACHE_SIZE = 256;
+    /** the digit count for a NULL value */
+    private static final char NULL = 0xFFFF;
+    /** The used size of a page if the nodes are build from sorted entries. The rest is free for later inserts. */
+    private static final int BUILD_FILL_SIZE = BTreeNode.PAGE_SIZE - BTreeNode.PAGE_SIZE / 10;
+
+    private final FileChannel raFile;
+    /** if the entries include a payload */
+    private final boolean hasPayload;
+    private BTreeNode root;
+    /** Long(filePos) --> BTreeNode in access order, the first entry is the eldest. The root is not part of it. */
+    private final LinkedHashMap cache = new LinkedHashMap(CACHE_SIZE, 0.75f, true);
+    /** the end of the used file, the position for the next new node */
+    private long fileEnd;
+    /** the separator for the parent node after the last split */
+    private char[] splitKey;
+    private long splitRow;
+
+
+    /**
+     * Create a new empty index. The old data of the file after the offset are discarded.
+     * @param offset the file position of the first node
+     * @param hasPayload if the last expression of the entries is a payload
+     */
+    BTreeIndex(FileChannel raFile, long offset, boolean hasPayload) throws IOException{
+        this.raFile = raFile;
+        this.hasPayload = hasPayload;
+        raFile.truncate(offset);
+        fileEnd = offset;
+        root = new BTreeNode(allocate(), true, hasPayload);
+    }
+
+
+    private BTreeIndex(FileChannel raFile, BTreeNode root, boolean hasPayload) throws IOException{
+        this.raFile = raFile;
+        this.root = root;
+        this.hasPayload = hasPayload;
+        fileEnd = raFile.size();
+    }
+
+
+    /**
+     * Load a saved index. Only the root node is read.
+     * @param rootOffset the file position of the root node that was returned from save()
+     * @param hasPayload if the entries include a payload
+     */
+    static BTreeIndex load(FileChannel raFile, long rootOffset, boolean hasPayload) throws Exception{
+        return new BTreeIndex(raFile, BTreeNode.read(raFile, rootOffset, hasPayload), hasPayload);
+    }
+
+
+    /**
+     * Write all changed nodes.
+     * @return the file position of the root node
+     */
+    long save() throws IOException{
+        Iterator iterator = cache.values().iterator();
+        while(iterator.hasNext()){
+            BTreeNode node = (BTreeNode)iterator.next();
+            if(node.dirty){
+                node.write(raFile);
+            }
+        }
+        if(root.dirty){
+            root.write(raFile);
+        }
+        return root.filePos;
+    }
+
+
+    /**
+     * Write the changed nodes without the position of the root in the header.
+     */
+    void flush() throws IOException{
+        save();
+    }
+
+
+    IndexScrollStatus createScrollStatus(Expressions expressions){
+        return new BTreeScrollStatus(this, expressions);
+    }
+
+
+    /**
+     * Returns a LongTreeList with the rowOffsets of all entries with the values. If there is no entry then it
+     * return a null.
+     * @param nodeList is not used
+     */
+    final Object findRows(Expressions expressions, boolean searchNullValues, ArrayList nodeList) throws Exception{
+        if(!searchNullValues){
+            for(int i=0; i<expressions.size(); i++){
+                if(expressions.get(i).isNull()){
+                    return null;
+                }
+            }
+        }
+        char[] key = createKey(expressions, expressions.size());
+        LongTreeList list = null;
+        BTreeNode node = findLeaf(key);
+        int idx = node.countLower(key);
+        while(true){
+            if(idx >= node.count){
+                if(node.next == 0){
+                    break;
+                }
+                node = getNode(node.next);
+                idx = 0;
+                continue;
+            }
+            if(compare(node.keys[idx], key) != 0){
+                break;
+            }
+            if(list == null){
+                list = new LongTreeList();
+            }
+            list.add(node.rows[idx++]);
+        }
+        return list;
+    }
+
+
+    /**
+     * Add the rowOffsets of all entries with values in the ranges to the list. For every combination of the ranges
+     * of the leading columns the leaf nodes are scanned from the lower bound until an entry is greater as the upper
+     * bound.
+     */
+    final void findRows(IndexRange[][] ranges, Expressions expressions, LongList rows) throws Exception{
+        int count = ranges.length;
+        findRows(ranges, 0, new char[count][], new char[count][], new boolean[count], rows, null);
+    }
+
+
+    /**
+     * Add the rowOffsets and the payloads of all entries with values in the ranges to the lists.
+     */
+    final boolean findRows(IndexRange[][] ranges, Expressions expressions, LongList rows, ArrayList payloads) throws Exception{
+        if(!hasPayload){
+            return false;
+        }
+        int count = ranges.length;
+        findRows(ranges, 0, new char[count][], new char[count][], new boolean[count], rows, payloads);
+        return true;
+    }
+
+
+    private void findRows(IndexRange[][] ranges, int column, char[][] from, char[][] to, boolean[] isPrefix, LongList rows, ArrayList payloads) throws Exception{
+        if(column == ranges.length){
+            findRange(from, to, isPrefix, rows, payloads);
+            return;
+        }
+        IndexRange[] columnRanges = ranges[column];
+        for(int i=0; i<columnRanges.length; i++){
+            IndexRange range = columnRanges[i];
+            from[column] = (range.from == null) ? null : Index.getDigits(range.from);
+            to[column]   = (range.to   == null) ? null : Index.getDigits(range.to);
+            isPrefix[column] = range.isPrefix;
+            findRows(ranges, column + 1, from, to, isPrefix, rows, payloads);
+        }
+    }
+
+
+    private void findRange(char[][] from, char[][] to, boolean[] isPrefix, LongList rows, ArrayList payloads) throws Exception{
+        // the lower bound are the leading columns with a lower bound
+        int count = 0;
+        while(count < from.length && from[count] != null){
+            count++;
+        }
+        char[] bound = createKey(from, count);
+        BTreeNode node = findLeaf(bound);
+        int idx = node.countLower(bound);
+        while(true){
+            if(idx >= node.count){
+                if(node.next == 0){
+                    return;
+                }
+                node = getNode(node.next);
+                idx = 0;
+                continue;
+            }
+            int result = match(node.keys[idx], from, to, isPrefix);
+            if(result > 0){
+                return;
+            }
+            if(result == 0){
+                rows.add(node.rows[idx]);
+                if(payloads != null){
+                    payloads.add(node.payloads[idx]);
+                }
+            }
+            idx++;
+        }
+    }
+
+
+    /**
+     * Check if a key is in the ranges of the leading columns.
+     * @return 0 if the key is in the ranges, a negative value if it is not in the ranges and a positive value if the
+     *         key and all following keys are greater as the upper bounds
+     */
+    private static int match(char[] key, char[][] from, char[][] to, boolean[] isPrefix){
+        // if all previous columns are equals to the upper bound
+        boolean isUpperEnd = true;
+        int pos = 0;
+        for(int c=0; c<from.length; c++){
+            int length = key[pos++];
+            if(length == NULL){
+                if(from[c] != null){
+                    return -1;
+                }
+                isUpperEnd = false;
+                continue;
+            }
+            if(from[c] != null && compare(key, pos, length, from[c], 0, from[c].length) < 0){
+                return -1;
+            }
+            if(to[c] == null){
+                isUpperEnd = false;
+            }else{
+                int result = compare(key, pos, length, to[c], 0, to[c].length);
+                if(result > 0){
+                    if(!isPrefix[c] || length < to[c].length || compare(key, pos, to[c].length, to[c], 0, to[c].length) != 0){
+                        return isUpperEnd ? 1 : -1;
+                    }
+                    // the value start with the upper bound, a longer value can follow
+                    isUpperEnd = false;
+                }else if(result < 0 || isPrefix[c]){
+                    isUpperEnd = false;
+                }
+            }
+            pos += length;
+        }
+        return 0;
+    }
+
+
+    final void addValues(long rowOffset, Expressions expressions) throws Exception{
+        char[] key = createKey(expressions, getKeyCount(expressions));
+        add(key, rowOffset, getPayload(key, expressions));
+    }
+
+
+    /**
+     * Add many entries at once, for example the new rows of a BulkLoad. The entries are sorted by their keys. An
+     * empty index is build bottom up in a single pass, see build(). Else the sorted entries are merged into the tree.
+     * Following entries are inserted in the same leaf nodes, that every node is read and written only once.
+     */
+    final void addValues(LongList rows, ArrayList keys) throws Exception{
+        Entry[] entries = new Entry[rows.size()];
+        for(int i=0; i<entries.length; i++){
+            Expressions expressions = (Expressions)keys.get(i);
+            char[] key = createKey(expressions, getKeyCount(expressions));
+            entries[i] = new Entry(key, rows.get(i), getPayload(key, expressions));
+        }
+        Arrays.sort(entries);
+        if(root.isLeaf && root.count == 0){
+            build(entries);
+            return;
+        }
+        for(int i=0; i<entries.length; i++){
+            Entry entry = entries[i];
+            add(entry.key, entry.rowOffset, entry.payload);
+        }
+    }
+
+
+    /**
+     * Check the size of the key and get the payload of a covering index.
+     * @return the payload or null if the index has no payload or the entry would be too large with it
+     */
+    private byte[] getPayload(char[] key, Expressions expressions) throws Exception{
+        if(key.length > MAX_KEY_LENGTH){
+            Object[] params = { new Integer(key.length), new Integer(MAX_KEY_LENGTH) };
+            throw SmallSQLException.create(Language.INDEX_KEY_TOOLONG, params);
+        }
+        if(!hasPayload){
+            return null;
+        }
+        byte[] payload = expressions.get(expressions.size() - 1).getBytes();
+        if(payload != null && BTreeNode.getEntrySize(key, true) + 2 + payload.length > MAX_ENTRY_SIZE){
+            return null; // the values are read from the row
+        }
+        return payload;
+    }
+
+
+    private void add(char[] key, long rowOffset, byte[] payload) throws Exception{
+        BTreeNode right = insert(root, key, rowOffset, payload);
+        if(right != null){
+            BTreeNode oldRoot = root;
+            root = new BTreeNode(allocate(), false, hasPayload);
+            root.children[0] = oldRoot.filePos;
+            root.insert(0, splitKey, splitRow, null, right.filePos);
+            setChanged(oldRoot);
+        }
+    }
+
+
+    /**
+     * Build the tree of an empty index from sorted entries. The leaf nodes are filled one after the other up to
+     * BUILD_FILL_SIZE. Then the inner nodes of every level are created from the first entries of the level below,
+     * until a level has only one node. This node is the new root.
+     */
+    private void build(Entry[] entries) throws Exception{
+        // the empty root is the first leaf
+        BTreeNode first = root;
+        ArrayList level = new ArrayList();
+        level.add(first);
+        BTreeNode leaf = first;
+        for(int i=0; i<entries.length; i++){
+            Entry entry = entries[i];
+            if(leaf.count > 0 && !leaf.fits(entry.key, entry.payload, BUILD_FILL_SIZE)){
+                BTreeNode next = new BTreeNode(allocate(), true, hasPayload);
+                next.prev = leaf.filePos;
+                leaf.next = next.filePos;
+                setChanged(leaf);
+                leaf = next;
+                level.add(leaf);
+            }
+            leaf.insert(leaf.count, entry.key, entry.rowOffset, entry.payload, 0);
+        }
+        setChanged(leaf);
+
+        // the first entry of every node of the level, it is the separator in the parent node
+        ArrayList firstKeys = new ArrayList();
+        LongList firstRows = new LongList();
+        for(int i=0; i<level.size(); i++){
+            BTreeNode node = (BTreeNode)level.get(i);
+            firstKeys.add(node.keys[0]);
+            firstRows.add(node.rows[0]);
+        }
+        while(level.size() > 1){
+            ArrayList parents = new ArrayList();
+            ArrayList parentKeys = new ArrayList();
+            LongList parentRows = new LongList();
+            BTreeNode parent = null;
+            for(int i=0; i<level.size(); i++){
+                long child = ((BTreeNode)level.get(i)).filePos;
+                char[] key = (char[])firstKeys.get(i);
+                if(parent == null || !parent.fits(key, null, BUILD_FILL_SIZE)){
+                    if(parent != null){
+                        setChanged(parent);
+                    }
+                    parent = new BTreeNode(allocate(), false, hasPayload);
+                    parent.children[0] = child;
+                    parents.add(parent);
+                    parentKeys.add(key);
+                    parentRows.add(firstRows.get(i));
+                }else{
+                    parent.insert(parent.count, key, firstRows.get(i), null, child);
+                }
+            }
+            setChanged(parent);
+            level = parents;
+            firstKeys = parentKeys;
+            firstRows = parentRows;
+        }
+        BTreeNode top = (BTreeNode)level.get(0);
+        if(top != first){
+            root = top;
+            // the first leaf was the root and is not in the cache until now
+            setChanged(first);
+        }
+    }
+
+
+    /**
+     * The count of expressions that are part of the key, the payload is not part of it.
+     */
+    private int getKeyCount(Expressions expressions){
+        return hasPayload ? expressions.size() - 1 : expressions.size();
+    }
+
+
+    /**
+     * Insert an entry in the node or its children.
+     * @return the new node right of the node if the node was split, else null
+     */
+    private BTreeNode insert(BTreeNode node, char[] key, long rowOffset, byte[] payload) throws Exception{
+        int idx = node.countLowerOrEquals(key, rowOffset);
+        if(node.isLeaf){
+            if(idx > 0 && compare(node.keys[idx - 1], node.rows[idx - 1], key, rowOffset) == 0){
+                return null; // the entry exists already
+            }
+            node.insert(idx, key, rowOffset, payload, 0);
+        }else{
+            BTreeNode right = insert(getNode(node.children[idx]), key, rowOffset, payload);
+            if(right == null){
+                return null;
+            }
+            node.insert(idx, splitKey, splitRow, null, right.filePos);
+        }
+        setChanged(node);
+        return node.isOverflow() ? split(node) : null;
+    }
+
+
+    /**
+     * Split a node that does not fit in its page. The separator for the parent node is saved in splitKey and splitRow.
+     * @return the new node right of the node
+     */
+    private BTreeNode split(BTreeNode node) throws Exception{
+        BTreeNode right = node.split(allocate());
+        splitKey = right.keys[0];
+        splitRow = right.rows[0];
+        if(node.isLeaf){
+            right.prev = node.filePos;
+            right.next = node.next;
+            node.next = right.filePos;
+            if(right.next != 0){
+                BTreeNode next = getNode(right.next);
+                next.prev = right.filePos;
+                setChanged(next);
+            }
+        }else{
+            right.remove(0);
+        }
+        setChanged(right);
+        return right;
+    }
+
+
+    final void removeValue(long rowOffset, Expressions expressions) throws Exception{
+        char[] key = createKey(expressions, getKeyCount(expressions));
+        BTreeNode node = root;
+        while(!node.isLeaf){
+            node = getNode(node.children[node.countLowerOrEquals(key, rowOffset)]);
+        }
+        int idx = node.countLowerOrEquals(key, rowOffset) - 1;
+        if(idx >= 0 && compare(node.keys[idx], node.rows[idx], key, rowOffset) == 0){
+            node.remove(idx);
+            setChanged(node);
+        }
+    }
+
+
+    /**
+     * Returns the leaf node that can include the first entry with a key that is equals or greater as the bound.
+     */
+    private BTreeNode findLeaf(char[] bound) throws Exception{
+        BTreeNode node = root;
+        while(!node.isLeaf){
+            node = getNode(node.children[node.countLower(bound)]);
+        }
+        return node;
+    }
+
+
+    final BTreeNode getFirstLeaf() throws Exception{
+        BTreeNode node = root;
+        while(!node.isLeaf){
+            node = getNode(node.children[0]);
+        }
+        return node;
+    }
+
+
+    final BTreeNode getLastLeaf() throws Exception{
+        BTreeNode node = root;
+        while(!node.isLeaf){
+            node = getNode(node.children[node.count]);
+        }
+        return node;
+    }
+
+
+    /**
+     * Get a node from the cache or read it from the file.
+     * @param filePos the file position of the node
+     */
+    final BTreeNode getNode(long filePos) throws Exception{
+        if(filePos == root.filePos){
+            return root;
+        }
+        Long key = new Long(filePos);
+        BTreeNode node = (BTreeNode)cache.get(key);
+        if(node == null){
+            node = BTreeNode.read(raFile, filePos, hasPayload);
+            cache.put(key, node);
+            evict();
+        }
+        return node;
+    }
+
+
+    /**
+     * Mark a new or changed node. A node that was removed from the cache in the meantime is added again.
+     */
+    private void setChanged(BTreeNode node) throws IOException{
+        node.dirty = true;
+        if(node != root && cache.put(new Long(node.filePos), node) == null){
+            evict();
+        }
+    }
+
+
+    /**
+     * Remove the eldest nodes if the cache is too large. Changed nodes are written.
+     */
+    private void evict() throws IOException{
+        if(cache.size() <= CACHE_SIZE){
+            return;
+        }
+        Iterator iterator = cache.values().iterator();
+        while(cache.size() > CACHE_SIZE){
+            BTreeNode node = (BTreeNode)iterator.next();
+            if(node.dirty){
+                node.write(raFile);
+            }
+            iterator.remove();
+        }
+    }
+
+
+    private long allocate(){
+        long filePos = fileEnd;
+        fileEnd += BTreeNode.PAGE_SIZE;
+        return filePos;
+    }
+
+
+    /**
+     * Create the key of an entry from the values of the columns.
+     * @param count the count of expressions that are part of the key
+     */
+    private static char[] createKey(Expressions expressions, int count) throws Exception{
+        char[][] digits = new char[count][];
+        for(int i=0; i<count; i++){
+            Expression expr = expressions.get(i);
+            if(!expr.isNull()){
+                digits[i] = Index.getDigits(expr);
+            }
+        }
+        return createKey(digits, count);
+    }
+
+
+    /**
+     * Create a key from the digits of the leading columns.
+     * @param digits the digits of every column, null for a NULL value
+     * @param count the count of columns
+     */
+    private static char[] createKey(char[][] digits, int count){
+        int length = count;
+        for(int i=0; i<count; i++){
+            if(digits[i] != null){
+                length += digits[i].length;
+            }
+        }
+        char[] key = new char[length];
+        int pos = 0;
+        for(int i=0; i<count; i++){
+            char[] columnDigits = digits[i];
+            if(columnDigits == null){
+                key[pos++] = NULL;
+            }else{
+                key[pos++] = (char)columnDigits.length;
+                System.arraycopy(columnDigits, 0, key, pos, columnDigits.length);
+                pos += columnDigits.length;
+            }
+        }
+        return key;
+    }
+
+
+    /**
+     * Compare two keys column by column. A key with less columns is lower if the columns are equals.
+     */
+    static int compare(char[] key1, char[] key2){
+        int pos1 = 0;
+        int pos2 = 0;
+        while(pos1 < key1.length && pos2 < key2.length){
+            int length1 = key1[pos1++];
+            int length2 = key2[pos2++];
+            if(length1 == NULL || length2 == NULL){
+                if(length1 != length2){
+                    return (length1 == NULL) ? -1 : 1;
+                }
+                continue;
+            }
+            int result = compare(key1, pos1, length1, key2, pos2, length2);
+            if(result != 0){
+                return result;
+            }
+            pos1 += length1;
+            pos2 += length2;
+        }
+        return (key1.length - pos1) - (key2.length - pos2);
+    }
+
+
+    /**
+     * Compare two entries by the key and then by the rowOffset.
+     */
+    static int compare(char[] key1, long rowOffset1, char[] key2, long rowOffset2){
+        int result = compare(key1, key2);
+        if(result != 0){
+            return result;
+        }
+        return (rowOffset1 < rowOffset2) ? -1 : (rowOffset1 == rowOffset2 ? 0 : 1);
+    }
+
+
+    /**
+     * Compare the digits of a single column. A shorter value is lower if the digits are equals.
+     */
+    private static int compare(char[] digits1, int offset1, int length1, char[] digits2, int offset2, int length2){
+        int length = Math.min(length1, length2);
+        for(int i=0; i<length; i++){
+            int diff = digits1[offset1 + i] - digits2[offset2 + i];
+            if(diff != 0){
+                return diff;
+            }
+        }
+        return length1 - length2;
+    }
+
+
+    /**
+     * An entry for the build of the tree from sorted entries.
+     */
+    private static final class Entry implements Comparable{
+
+        final char[] key;
+        final long rowOffset;
+        final byte[] payload;
+
+
+        Entry(char[] key, long rowOffset, byte[] payload){
+            this.key = key;
+            this.rowOffset = rowOffset;
+            this.payload = payload;
+        }
+
+
+        public int compareTo(Object obj){
+            Entry other = (Entry)obj;
+            return compare(key, rowOffset, other.key, other.rowOffset);
+        }
+    }
+}
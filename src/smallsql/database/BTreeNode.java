@@ -0,0 +1,374 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * BTreeNode.java
+ * ---------------
+ */
+package smallsql.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+
+import smallsql.database.language.Language;
+
+/**
+ * A node of a BTreeIndex. Every node is saved in its own page with a fixed size.<p>
+ *
+ * A leaf node include the entries of the index, a key and a rowOffset. The leaf entries of a covering index include
+ * also a payload with the values of the covered columns. The leaf nodes are linked with their siblings
+ * in both directions for scrolling. An inner node include separators and the positions of its child nodes. The
+ * entries of child i are lower as separator i and the entries of child i+1 are equals or greater. The order of the
+ * entries is given by the key and then the rowOffset. That every entry is unique also in a non unique index.
+ */
+final class BTreeNode {
+
+    static final int PAGE_SIZE = 0x2000; // 8 KB
+    /** The size of the node header with the type, the count and the sibling links or the first child */
+    private static final int HEADER_SIZE = 24;
+    private static final int LEAF  = 1;
+    private static final int INNER = 2;
+    /** The length of an entry without payload in a covering index, the payload does not fit in the page */
+    private static final int NO_PAYLOAD = 0xFFFF;
+
+    /** the file position of the page */
+    final long filePos;
+    final boolean isLeaf;
+    int count;
+    char[][] keys;
+    long[] rows;
+    /** the payloads of the leaf entries, an entry can have a null payload. It is null if the index is not covering. */
+    byte[][] payloads;
+    /** the positions of the child nodes of an inner node, there are count + 1 children */
+    long[] children;
+    /** the position of the previous leaf node or 0 for the first leaf */
+    long prev;
+    /** the position of the next leaf node or 0 for the last leaf */
+    long next;
+    /** if the node was changed after it was read or written */
+    boolean dirty;
+    /** the size of the saved node in bytes */
+    private int size = HEADER_SIZE;
+
+
+    /**
+     * Create a new empty node.
+     * @param filePos the file position of the page
+     * @param hasPayload if the leaf entries include a payload
+     */
+    BTreeNode(long filePos, boolean isLeaf, boolean hasPayload){
+        this(filePos, isLeaf, hasPayload, 16);
+        dirty = true;
+    }
+
+
+    private BTreeNode(long filePos, boolean isLeaf, boolean hasPayload, int capacity){
+        this.filePos = filePos;
+        this.isLeaf = isLeaf;
+        keys = new char[capacity][];
+        rows = new long[capacity];
+        if(!isLeaf){
+            children = new long[capacity + 1];
+        }else if(hasPayload){
+            payloads = new byte[capacity][];
+        }
+    }
+
+
+    /**
+     * The size that an entry need in the page.
+     */
+    static int getEntrySize(char[] key, boolean isLeaf){
+        return 2 + 2 * key.length + (isLeaf ? 8 : 16);
+    }
+
+
+    /**
+     * The size that an entry need in the page, with the payload of a leaf entry.
+     */
+    private int getEntrySize(int idx){
+        int entrySize = getEntrySize(keys[idx], isLeaf);
+        if(payloads != null){
+            entrySize += 2 + (payloads[idx] == null ? 0 : payloads[idx].length);
+        }
+        return entrySize;
+    }
+
+
+    /**
+     * If an entry can be added without the node getting larger as the limit.
+     * @param payload the payload of a leaf entry or null
+     * @param limit the maximum size of the node
+     */
+    boolean fits(char[] key, byte[] payload, int limit){
+        int entrySize = getEntrySize(key, isLeaf);
+        if(payloads != null){
+            entrySize += 2 + (payload == null ? 0 : payload.length);
+        }
+        return size + entrySize <= limit;
+    }
+
+
+    /**
+     * If the node does not fit in its page anymore and must be split.
+     */
+    boolean isOverflow(){
+        return size > PAGE_SIZE;
+    }
+
+
+    /**
+     * Returns the count of entries with a key that is lower as the bound. For a leaf node it is the position of the
+     * first entry that is equals or greater. For an inner node it is the child that can include the first entry.
+     * @param bound the key or the start of a key
+     */
+    int countLower(char[] bound){
+        int start = 0;
+        int end = count;
+        while(start < end){
+            int mid = (start + end) >> 1;
+            if(BTreeIndex.compare(keys[mid], bound) < 0){
+                start = mid + 1;
+            }else{
+                end = mid;
+            }
+        }
+        return start;
+    }
+
+
+    /**
+     * Returns the count of entries that are lower or equals as the entry. For a leaf node it is the position after
+     * the entry if it exists. For an inner node it is the child that include the entry.
+     */
+    int countLowerOrEquals(char[] key, long rowOffset){
+        int start = 0;
+        int end = count;
+        while(start < end){
+            int mid = (start + end) >> 1;
+            if(BTreeIndex.compare(keys[mid], rows[mid], key, rowOffset) <= 0){
+                start = mid + 1;
+            }else{
+                end = mid;
+            }
+        }
+        return start;
+    }
+
+
+    /**
+     * Insert an entry.
+     * @param idx the position of the new entry
+     * @param payload the payload of a leaf entry or null
+     * @param child the position of the child node right of the separator, only used for an inner node
+     */
+    void insert(int idx, char[] key, long rowOffset, byte[] payload, long child){
+        if(count == keys.length){
+            resize(count << 1);
+        }
+        System.arraycopy(keys, idx, keys, idx + 1, count - idx);
+        System.arraycopy(rows, idx, rows, idx + 1, count - idx);
+        keys[idx] = key;
+        rows[idx] = rowOffset;
+        if(!isLeaf){
+            System.arraycopy(children, idx + 1, children, idx + 2, count - idx);
+            children[idx + 1] = child;
+        }else if(payloads != null){
+            System.arraycopy(payloads, idx, payloads, idx + 1, count - idx);
+            payloads[idx] = payload;
+        }
+        count++;
+        size += getEntrySize(idx);
+        dirty = true;
+    }
+
+
+    /**
+     * Remove an entry. For an inner node the child left of the separator is removed.
+     */
+    void remove(int idx){
+        size -= getEntrySize(idx);
+        count--;
+        System.arraycopy(keys, idx + 1, keys, idx, count - idx);
+        System.arraycopy(rows, idx + 1, rows, idx, count - idx);
+        keys[count] = null;
+        if(!isLeaf){
+            System.arraycopy(children, idx + 1, children, idx, count - idx + 1);
+        }else if(payloads != null){
+            System.arraycopy(payloads, idx + 1, payloads, idx, count - idx);
+            payloads[count] = null;
+        }
+        dirty = true;
+    }
+
+
+    /**
+     * Move the upper half of the entries in a new node. The first entry of the new node is the separator for the
+     * parent node. For an inner node the caller must remove it with remove(0) after it was read.
+     * @param filePos the file position of the new node
+     * @return the new node right of this node
+     */
+    BTreeNode split(long filePos){
+        int half = (size - HEADER_SIZE) / 2;
+        int idx = 0;
+        for(int length = 0; length < half && idx < count - 1; idx++){
+            length += getEntrySize(idx);
+        }
+        if(idx == 0){
+            idx = 1;
+        }
+        int moveCount = count - idx;
+        BTreeNode right = new BTreeNode(filePos, isLeaf, payloads != null, Math.max(16, moveCount << 1));
+        System.arraycopy(keys, idx, right.keys, 0, moveCount);
+        System.arraycopy(rows, idx, right.rows, 0, moveCount);
+        if(!isLeaf){
+            // the child left of the separator is part of both nodes until the separator is removed
+            System.arraycopy(children, idx, right.children, 0, moveCount + 1);
+        }else if(payloads != null){
+            System.arraycopy(payloads, idx, right.payloads, 0, moveCount);
+        }
+        right.count = moveCount;
+        for(int i=idx; i<count; i++){
+            int entrySize = getEntrySize(i);
+            size -= entrySize;
+            right.size += entrySize;
+            keys[i] = null;
+            if(payloads != null){
+                payloads[i] = null;
+            }
+        }
+        count = idx;
+        right.dirty = dirty = true;
+        return right;
+    }
+
+
+    private void resize(int newSize){
+        char[][] newKeys = new char[newSize][];
+        long[] newRows = new long[newSize];
+        System.arraycopy(keys, 0, newKeys, 0, count);
+        System.arraycopy(rows, 0, newRows, 0, count);
+        keys = newKeys;
+        rows = newRows;
+        if(!isLeaf){
+            long[] newChildren = new long[newSize + 1];
+            System.arraycopy(children, 0, newChildren, 0, count + 1);
+            children = newChildren;
+        }else if(payloads != null){
+            byte[][] newPayloads = new byte[newSize][];
+            System.arraycopy(payloads, 0, newPayloads, 0, count);
+            payloads = newPayloads;
+        }
+    }
+
+
+    /**
+     * Write the node in its page.
+     */
+    void write(FileChannel raFile) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        buffer.putInt(isLeaf ? LEAF : INNER);
+        buffer.putInt(count);
+        buffer.putLong(isLeaf ? prev : children[0]);
+        buffer.putLong(next);
+        for(int i=0; i<count; i++){
+            char[] key = keys[i];
+            buffer.putChar((char)key.length);
+            for(int k=0; k<key.length; k++){
+                buffer.putChar(key[k]);
+            }
+            buffer.putLong(rows[i]);
+            if(!isLeaf){
+                buffer.putLong(children[i + 1]);
+            }else if(payloads != null){
+                byte[] payload = payloads[i];
+                if(payload == null){
+                    buffer.putChar((char)NO_PAYLOAD);
+                }else{
+                    buffer.putChar((char)payload.length);
+                    buffer.put(payload);
+                }
+            }
+        }
+        buffer.position(0);
+        Utils.writeFully(raFile, buffer, filePos);
+        dirty = false;
+    }
+
+
+    /**
+     * Read a node from its page.
+     * @param filePos the file position of the page
+     * @param hasPayload if the leaf entries include a payload
+     */
+    static BTreeNode read(FileChannel raFile, long filePos, boolean hasPayload) throws Exception{
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        if(Utils.readFully(raFile, buffer, filePos) != PAGE_SIZE){
+            throw createCorruptException(filePos);
+        }
+        buffer.position(0);
+        int type = buffer.getInt();
+        int count = buffer.getInt();
+        if((type != LEAF && type != INNER) || count < 0 || count > PAGE_SIZE / 10){
+            throw createCorruptException(filePos);
+        }
+        BTreeNode node = new BTreeNode(filePos, type == LEAF, hasPayload, Math.max(16, count + (count >> 1)));
+        if(node.isLeaf){
+            node.prev = buffer.getLong();
+        }else{
+            node.children[0] = buffer.getLong();
+        }
+        node.next = buffer.getLong();
+        for(int i=0; i<count; i++){
+            char[] key = new char[buffer.getChar()];
+            for(int k=0; k<key.length; k++){
+                key[k] = buffer.getChar();
+            }
+            node.keys[i] = key;
+            node.rows[i] = buffer.getLong();
+            if(!node.isLeaf){
+                node.children[i + 1] = buffer.getLong();
+            }else if(hasPayload){
+                int length = buffer.getChar();
+                if(length != NO_PAYLOAD){
+                    byte[] payload = new byte[length];
+                    buffer.get(payload);
+                    node.payloads[i] = payload;
+                }
+            }
+            node.size += node.getEntrySize(i);
+        }
+        node.count = count;
+        return node;
+    }
+
+
+    private static SQLException createCorruptException(long filePos){
+        return SmallSQLException.create(Language.INDEX_CORRUPT, String.valueOf(filePos));
+    }
+}
@@ -0,0 +1,110 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * BTreeScrollStatus.java
+ * ---------------
+ */
+package smallsql.database;
+
+/**
+ * The cursor of a BTreeIndex. It scroll through the linked leaf nodes. All columns are scrolled in the order (ASC or
+ * DESC) of the first column.
+ */
+final class BTreeScrollStatus extends IndexScrollStatus {
+
+    private final BTreeIndex index;
+    private final boolean asc;
+    /** the file position of the current leaf node */
+    private long filePos;
+    /** the position in the current leaf node, -1 is before the first entry and count after the last entry */
+    private int idx;
+
+
+    BTreeScrollStatus(BTreeIndex index, Expressions expressions){
+        super(expressions);
+        this.index = index;
+        asc = (expressions.get(0).getAlias() != SQLTokenizer.DESC_STR);
+        reset();
+    }
+
+
+    void reset(){
+        setPosition(asc);
+    }
+
+
+    void afterLast(){
+        setPosition(!asc);
+    }
+
+
+    /**
+     * Move the cursor before the first or after the last entry.
+     */
+    private void setPosition(boolean first){
+        try{
+            BTreeNode node = first ? index.getFirstLeaf() : index.getLastLeaf();
+            filePos = node.filePos;
+            idx = first ? -1 : node.count;
+        }catch(Exception e){
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    long getRowOffset(boolean scroll){
+        try{
+            BTreeNode node = index.getNode(filePos);
+            if(asc == scroll){
+                while(++idx >= node.count){
+                    if(node.next == 0){
+                        filePos = node.filePos;
+                        idx = node.count;
+                        return -1;
+                    }
+                    node = index.getNode(node.next);
+                    idx = -1;
+                }
+            }else{
+                idx = Math.min(idx, node.count); // entries can be removed in the meantime
+                while(--idx < 0){
+                    if(node.prev == 0){
+                        filePos = node.filePos;
+                        idx = -1;
+                        return -1;
+                    }
+                    node = index.getNode(node.prev);
+                    idx = node.count;
+                }
+            }
+            filePos = node.filePos;
+            return node.rows[idx];
+        }catch(Exception e){
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * BufferPool.java
+ * ---------------
+ */
+package smallsql.database;
+
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of committed page images that is shared between all connections of a Database.
+ * The key of a page is the file handle and the file offset of the page. The pages are
+ * evicted in LRU order if the memory budget is exceeded.<p>
+ *
+ * The cached byte arrays are shared with StoreImpl instances and must never be modified.
+ * A page is removed from the pool if it is written on commit.
+ */
+final class BufferPool {
+
+    static final int DEFAULT_SIZE = 4 * 1024 * 1024; // 4 MB
+
+    /** PageKey --> byte[] in access order, the first entry is the eldest */
+    private final LinkedHashMap pages = new LinkedHashMap(256, 0.75f, true);
+    private final PageKey lookupKey = new PageKey(null, 0);
+    private final long maxSize;
+    private long size;
+    /** Is incremented on every invalidation. It prevent that a page that was read before a commit is cached. */
+    private long modCount;
+
+
+    /**
+     * Create a new BufferPool.
+     * @param maxSize the memory budget in bytes. A value <= 0 disable the caching.
+     */
+    BufferPool(long maxSize){
+        this.maxSize = maxSize;
+    }
+
+
+    /**
+     * Return the current stamp of the pool. It must be requested before the page is read from the file.
+     * @see #put(FileChannel, long, byte[], long)
+     */
+    synchronized long getStamp(){
+        return modCount;
+    }
+
+
+    /**
+     * Get a cached page image.
+     * @return the page data or null if the page is not cached.
+     */
+    synchronized byte[] get(FileChannel file, long fileOffset){
+        if(maxSize <= 0){
+            return null;
+        }
+        lookupKey.file = file;
+        lookupKey.fileOffset = fileOffset;
+        byte[] page = (byte[])pages.get(lookupKey);
+        lookupKey.file = null;
+        return page;
+    }
+
+
+    /**
+     * Add a page image that was read from the file. If there was an invalidation since the stamp was requested then
+     * the page is not cached because it can be outdated.
+     * @param stamp the value of getStamp() before the page was read.
+     */
+    synchronized void put(FileChannel file, long fileOffset, byte[] page, long stamp){
+        if(stamp != modCount || page.length > maxSize / 4){
+            // large pages like LOBs would flush the complete pool
+            return;
+        }
+        byte[] oldPage = (byte[])pages.put(new PageKey(file, fileOffset), page);
+        size += page.length;
+        if(oldPage != null){
+            size -= oldPage.length;
+        }
+        if(size > maxSize){
+            Iterator iterator = pages.values().iterator();
+            while(size > maxSize && iterator.hasNext()){
+                size -= ((byte[])iterator.next()).length;
+                iterator.remove();
+            }
+        }
+    }
+
+
+    /**
+     * Remove a page from the pool. This is called if the page is written.
+     */
+    synchronized void remove(FileChannel file, long fileOffset){
+        modCount++;
+        if(size == 0){
+            return;
+        }
+        lookupKey.file = file;
+        lookupKey.fileOffset = fileOffset;
+        byte[] page = (byte[])pages.remove(lookupKey);
+        lookupKey.file = null;
+        if(page != null){
+            size -= page.length;
+        }
+    }
+
+
+    /**
+     * Remove all pages of a file. This is called if the file is closed.
+     */
+    synchronized void removeAll(FileChannel file){
+        modCount++;
+        Iterator iterator = pages.entrySet().iterator();
+        while(iterator.hasNext()){
+            Map.Entry entry = (Map.Entry)iterator.next();
+            if(((PageKey)entry.getKey()).file == file){
+                size -= ((byte[])entry.getValue()).length;
+                iterator.remove();
+            }
+        }
+    }
+
+
+    private static final class PageKey{
+        FileChannel file;
+        long fileOffset;
+
+
+        PageKey(FileChannel file, long fileOffset){
+            this.file = file;
+            this.fileOffset = fileOffset;
+        }
+
+
+        @Override
+        public int hashCode(){
+            return System.identityHashCode(file) ^ (int)(fileOffset ^ (fileOffset >>> 32));
+        }
+
+
+        @Override
+        public boolean equals(Object obj){
+            if(!(obj instanceof PageKey)){
+                return false;
+            }
+            PageKey key = (PageKey)obj;
+            return key.file == file && key.fileOffset == fileOffset;
+        }
+    }
+}
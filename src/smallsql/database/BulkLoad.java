@@ -0,0 +1,335 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * BulkLoad.java
+ * ---------------
+ */
+package smallsql.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import smallsql.database.language.Language;
+
+/**
+ * Write a large count of new rows directly to the end of a table file. It is used from COPY and from a direct-path
+ * INSERT ... SELECT.<p>
+ *
+ * The table is locked once with a LOCK_WRITE_TAB until the end of the transaction. Other connections can read the
+ * table but they does not see the new rows until the commit. The rows are collected in large blocks and written
+ * after the end of the data without the redo log and without a StorePage for every row. After finish() the
+ * BulkLoad is a single step of the transaction and its own connection can read the new rows. Its commit write the header of the first new row after all other
+ * rows are synchronized to disk. If the transaction is rolled back or the process crash before then the new rows
+ * are never part of the table. A table of an older file format does not save the end of its data. It is not
+ * protected in this way until it is converted with VACUUM.<p>
+ *
+ * The connection can not change rows of the table until the end of the transaction. An updated row that does not
+ * fit in its page would be written over the new rows.<p>
+ *
+ * The keys of the new rows are collected and added to the indexes of the table with the commit.
+ */
+final class BulkLoad extends TransactionStep{
+
+    private static final int BLOCK_SIZE = 0x100000; // 1 MB
+
+    /** the connection of the load, only it can read the new rows before the commit */
+    final SSConnection con;
+    private final Table table;
+    /** the table lock or null if the connection has already locked the table */
+    private final TableStorePage writeLock;
+    private final RowPage rowPage;
+    /** the end of the data before the load */
+    private final long start;
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int blockLength;
+    /** the file position of the block */
+    private long blockPos;
+    /** the header of the first row, it is written with the commit */
+    private byte[] firstHeader;
+    /** the complete first row for the reads of the connection until the header is written */
+    private byte[] firstRow;
+    /** if all rows are written and the load is part of the transaction */
+    private boolean finished;
+    private int rowCount;
+    /** the positions of the new rows for the indexes */
+    private final LongList indexRows = new LongList();
+    /** the index keys of the new rows, an Expressions[] for every entry in indexRows */
+    private final ArrayList indexKeys = new ArrayList();
+    /** if the keys are added to the indexes */
+    private boolean indexesChanged;
+
+
+    /**
+     * Start a load. The caller must check with Table.isBulkLoadPossible() that there are no other new rows of the
+     * connection.
+     */
+    BulkLoad(SSConnection con, Table table) throws Exception{
+        super(table.raFile);
+        if(table.database.isReadOnly()){
+            throw SmallSQLException.create(Language.DB_READONLY);
+        }
+        this.con = con;
+        this.table = table;
+        rowPage = new RowPage();
+        writeLock = table.isWriteLocked(con) ? null : table.requestLock( con, SQLTokenizer.COPY, -1 );
+        table.setBulkLoad(this);
+        // with the lock no other connection can append rows until the end of the transaction
+        start = blockPos = table.getDataEnd();
+    }
+
+
+    /**
+     * Create a store for the next row. After the values are written the row must be added with write().
+     */
+    StoreImpl createStore() throws SQLException{
+        return StoreImpl.createStore( table, rowPage, SQLTokenizer.INSERT, -1 );
+    }
+
+
+    /**
+     * Add a row that was created with createStore().
+     * @return the file position of the row
+     */
+    long write(StoreImpl store) throws Exception{
+        store.writeFinsh( con ); // the page is only set, the RowPage is not part of the transaction
+        Expressions[] keys = table.indexes.createKeys( table, store );
+        long filePos = rowPage.add();
+        if(keys != null){
+            indexRows.add( filePos );
+            indexKeys.add( keys );
+        }
+        return filePos;
+    }
+
+
+    /**
+     * Write the last block and add the load to the transaction of the connection.
+     * @return the count of the rows
+     */
+    int finish() throws SQLException{
+        flush();
+        con.add(this);
+        finished = true;
+        return rowCount;
+    }
+
+
+    /**
+     * Get the end of the data for the connection of the load. The new rows are included after finish().
+     * @see Table#getDataEnd(SSConnection)
+     */
+    long getDataEnd(){
+        return finished ? blockPos : start;
+    }
+
+
+    /**
+     * Get the first new row if it must be read from the memory. Its header in the file is invalid until the commit.
+     * @param filePos the position of the requested row
+     * @return the complete page of the row or null if the row must be read from the file
+     */
+    byte[] getFirstRow(long filePos){
+        return (finished && filePos == start) ? firstRow : null;
+    }
+
+
+    /**
+     * Discard all written rows if the load or finish() failed.
+     */
+    void abort(){
+        try{
+            rollback();
+        }catch(SQLException e){
+            // the rows after the end of the data are ignored and overwritten by the next append
+            con.log.println(e.toString());
+        }finally{
+            freeLock();
+        }
+    }
+
+
+    /**
+     * Make the new rows part of the table.
+     */
+    long commit() throws SQLException{
+        if(rowCount == 0){
+            return -1;
+        }
+        try{
+            long commitVersion = con.getCommitVersion(table.database);
+            if(commitVersion != 0){
+                table.database.getVersionStore().addAppended(commitVersion, table, start, blockPos);
+            }
+            raFile.force(false);
+            if(firstHeader != null){
+                WriteAheadLog.Batch batch = con.getLogBatch(table.database);
+                if(batch != null){
+                    // the first row is valid with the log record of the transaction
+                    batch.writeAppended( table, start, blockPos, firstHeader );
+                    return start;
+                }
+                Utils.writeFully( raFile, ByteBuffer.wrap(firstHeader), start );
+                raFile.force(false);
+            }
+            table.setDataEnd( blockPos );
+            // a scan can have read the space after the old end in a block
+            table.database.getBufferPool().remove( raFile, start );
+            return start;
+        }catch(IOException e){
+            throw SmallSQLException.createFromException(e);
+        }
+    }
+
+
+    void commitIndexes(){
+        if(rowCount > 0 && !indexesChanged){
+            // every index get the keys at once and add them sorted
+            table.indexes.addValues( indexRows, indexKeys );
+            indexesChanged = true;
+        }
+    }
+
+
+    IndexDescriptions getIndexes(){
+        return indexKeys.size() > 0 ? table.indexes : null;
+    }
+
+
+    void countKeys(IndexDescriptions indexes, int idx, HashMap counts) throws Exception{
+        if(indexes != table.indexes){
+            return;
+        }
+        IndexDescription indexDesc = indexes.get(idx);
+        for(int i=0; i<indexKeys.size(); i++){
+            Expressions[] keys = (Expressions[])indexKeys.get(i);
+            if(keys[idx] != null){
+                indexDesc.countKey( counts, keys[idx], 1 );
+            }
+        }
+    }
+
+
+    void rollback() throws SQLException{
+        if(indexesChanged){
+            // a later step of the commit has failed
+            for(int i=0; i<indexRows.size(); i++){
+                table.indexes.removeValues( indexRows.get(i), (Expressions[])indexKeys.get(i) );
+            }
+            indexesChanged = false;
+        }
+        try{
+            table.truncateData();
+        }catch(IOException e){
+            throw SmallSQLException.createFromException(e);
+        }
+    }
+
+
+    void freeLock(){
+        table.setBulkLoad(null);
+        if(writeLock != null){
+            writeLock.freeLock();
+        }
+    }
+
+
+    /**
+     * Write the current block after the end of the data.
+     */
+    private void flush() throws SQLException{
+        if(blockLength == 0){
+            return;
+        }
+        try{
+            if(blockPos == start && table.isDataEndSaved()){
+                // an invalid header end the data on the next open, the first row is valid with the commit
+                firstHeader = new byte[StoreImpl.getHeaderSize(table)];
+                System.arraycopy( block, 0, firstHeader, 0, firstHeader.length );
+                firstRow = new byte[StoreImpl.getPhysicalSize( table, block )];
+                System.arraycopy( block, 0, firstRow, 0, firstRow.length );
+                Arrays.fill( block, 0, firstHeader.length, (byte)0 );
+            }
+            long end = blockPos + blockLength;
+            table.extendFile( end );
+            Utils.writeFully( raFile, ByteBuffer.wrap( block, 0, blockLength ), blockPos );
+            blockPos = end;
+            blockLength = 0;
+        }catch(IOException e){
+            throw SmallSQLException.createFromException(e);
+        }
+    }
+
+
+    /**
+     * The StorePage of the new rows. The page is copied into the block.
+     */
+    private final class RowPage extends TableStorePage{
+
+        RowPage(){
+            super( BulkLoad.this.con, BulkLoad.this.table, TableView.LOCK_INSERT, -1 );
+        }
+
+
+        /**
+         * Copy the current page into the block.
+         * @return the file position of the row
+         */
+        long add() throws SQLException{
+            if(blockLength + pageSize > block.length){
+                flush();
+                if(pageSize > block.length){
+                    block = new byte[pageSize];
+                }
+            }
+            System.arraycopy( page, 0, block, blockLength, pageSize );
+            long filePos = blockPos + blockLength;
+            blockLength += pageSize;
+            rowCount++;
+            if(pooledPage){
+                table.database.getPagePool().release( page );
+                pooledPage = false;
+            }
+            page = null;
+            return filePos;
+        }
+
+
+        /**
+         * Is never called. The RowPage is not added to the transaction, the rows are written with flush() and the
+         * BulkLoad itself is the step of the transaction.
+         */
+        long commit(){
+            return -1;
+        }
+    }
+}
@@ -103,6 +103,15 @@ class Column implements Cloneable{
 			counter.setNextValue(obj);
 		}
     }
+    
+    /**
+     * Take over the identity counter of a column from the old version of the table.
+     */
+    void copyAutoIncrementValue(Column column) throws Exception{
+    	if(identity && column.counter != null){
+    		counter.setNextValue(column.defaultValue);
+    	}
+    }
 
     boolean isCaseSensitive(){
         return caseSensitive;
@@ -0,0 +1,170 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ----------------
+ * CommandCopy.java
+ * ----------------
+ */
+package smallsql.database;
+
+import java.io.*;
+import java.sql.SQLException;
+
+import smallsql.database.language.Language;
+
+
+/**
+ * Implementation of the COPY statement. It load the rows of a CSV file or of a stream into a table with a
+ * BulkLoad.<p>
+ * 
+ * The source can be a file name or a parameter with a Reader or an InputStream. Files and byte streams are read
+ * as UTF-8. The values are converted from strings to the data types of the columns. Columns without a CSV value get
+ * its default value. Like VACUUM the rows are committed with the end of the statement independent of the
+ * transaction of the connection.
+ */
+final class CommandCopy extends Command{
+
+    private final Strings columnNames = new Strings();
+    /** the file name or a parameter with a stream */
+    Expression source;
+    char delimiter = ',';
+    /** if the first line include the column names */
+    boolean header;
+
+
+    CommandCopy( Logger log, String catalog, String name ){
+        super(log);
+        this.type = SQLTokenizer.COPY;
+        this.catalog = catalog;
+        this.name = name;
+    }
+
+
+    void addColumn(String columnName) throws SQLException{
+        for(int i=0; i<columnNames.size(); i++){
+            if(columnNames.get(i).equalsIgnoreCase(columnName)){
+                throw SmallSQLException.create(Language.COL_DUPLICATE, columnName);
+            }
+        }
+        columnNames.add(columnName);
+    }
+
+
+    void executeImpl(SSConnection con, SSStatement st) throws Exception{
+        Database database = catalog == null ? 
+                con.getDatabase(false) : 
+                Database.getDatabase( catalog, con, false );
+        con = new SSConnection(con);
+        TableView tableView = database.getTableView( con, name );
+        if(!(tableView instanceof Table)){
+            throw SmallSQLException.create(Language.VIEW_INSERT);
+        }
+        Table table = (Table)tableView;
+        Columns columns = table.columns;
+
+        // mapping of the columns in the Table to the CSV values; -1 default value
+        int[] matrix = new int[columns.size()];
+        int valueCount;
+        if(columnNames.size() == 0){
+            for(int c=0; c<matrix.length; c++){
+                matrix[c] = c;
+            }
+            valueCount = matrix.length;
+        }else{
+            for(int c=0; c<matrix.length; c++){
+                matrix[c] = -1;
+            }
+            for(int i=0; i<columnNames.size(); i++){
+                String columnName = columnNames.get(i);
+                int idx = table.findColumnIdx( columnName );
+                if(idx < 0){
+                    throw SmallSQLException.create(Language.COL_MISSING, columnName);
+                }
+                matrix[idx] = i;
+            }
+            valueCount = columnNames.size();
+        }
+
+        CsvReader reader = new CsvReader( openSource(), delimiter );
+        try{
+            Strings values = new Strings();
+            if(header){
+                reader.next(values);
+            }
+            ExpressionValue value = new ExpressionValue();
+            BulkLoad load = new BulkLoad( con, table );
+            try{
+                while(reader.next(values)){
+                    if(values.size() != valueCount){
+                        throw SmallSQLException.create(Language.CSV_VALUE_COUNT, new Object[] { new Integer(reader.getLine()), new Integer(values.size()), new Integer(valueCount) });
+                    }
+                    StoreImpl store = load.createStore();
+                    for(int c=0; c<matrix.length; c++){
+                        Column column = columns.get(c);
+                        int idx = matrix[c];
+                        Expression valueExpress;
+                        if(idx >= 0){
+                            String str = values.get(idx);
+                            value.set( str, str == null ? SQLTokenizer.NULL : SQLTokenizer.VARCHAR );
+                            valueExpress = value;
+                        }else{
+                            valueExpress = column.getDefaultValue(con);
+                        }
+                        store.writeExpression( valueExpress, column );
+                    }
+                    load.write( store );
+                }
+                updateCount = load.finish();
+            }catch(Exception e){
+                load.abort();
+                con.rollback();
+                throw e;
+            }
+            con.commit();
+        }finally{
+            reader.close();
+        }
+    }
+
+
+    /**
+     * Open the CSV data. A stream from a parameter is closed with the end of the statement. 
+     */
+    private Reader openSource() throws Exception{
+        Object value = source.getObject();
+        if(value instanceof Reader){
+            return (Reader)value;
+        }
+        if(value instanceof InputStream){
+            return new InputStreamReader( (InputStream)value, "UTF-8" );
+        }
+        if(value == null){
+            throw SmallSQLException.create(Language.VALUE_NULL_INVALID, "FROM");
+        }
+        return new InputStreamReader( new FileInputStream( value.toString() ), "UTF-8" );
+    }
+}
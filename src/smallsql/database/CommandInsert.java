@@ -40,7 +40,11 @@ import smallsql.database.language.Language;
 public class CommandInsert extends Command {
 
     boolean noColumns; // after the table name was no columnExpressions; all columnExpressions in default order
+    /** the table hint WITH (TABLOCK), the rows of a SELECT are inserted with a BulkLoad. A BulkLoad is also used if
+     * the connection has already locked the complete table. */
+    boolean tableLock;
     private CommandSelect cmdSel;
+    private boolean selectSource; // the rows come from a SELECT and not from VALUES
 
     private Table table;
     private long tableTimestamp;
@@ -68,6 +72,7 @@ public class CommandInsert extends Command {
     
     void addValues( CommandSelect cmdSel ){
     	this.cmdSel = cmdSel;
+    	this.selectSource = true;
     }
 
     /**
@@ -127,6 +132,11 @@ public class CommandInsert extends Command {
         boolean needGeneratedKeys = st.needGeneratedKeys();
         int generatedKeysType = 0;
 
+        if(selectSource && !needGeneratedKeys && (tableLock || table.isWriteLocked(con)) && table.isBulkLoadPossible(con)){
+            insertDirectPath(con);
+            return;
+        }
+
         while(cmdSel.next()){
             if(needGeneratedKeys){
                 keyColumnNames = new Strings();
@@ -171,14 +181,13 @@ public class CommandInsert extends Command {
                     }
                 }
 	            store.writeExpression( valueExpress, column );
-				for(int i=0; i<indexes.size(); i++){
-					indexes.get(i).writeExpression( c, valueExpress );
-				}
 	        }
+	        Expressions[] indexKeys = indexes.createKeys( table, store );
+	        indexes.checkUnique( con, table, -1, indexKeys );
 	        store.writeFinsh( con );
-			for(int i=0; i<indexes.size(); i++){
-				indexes.get(i).writeFinish( con );
-			}
+	        if(indexKeys != null){
+	            con.add( new IndexChange( table, store.getLink(), null, indexKeys ) );
+	        }
 	        updateCount++;
             if(needGeneratedKeys){
                 Object[][] data = new Object[1][keys.size()];
@@ -188,4 +197,30 @@ public class CommandInsert extends Command {
         }
     }
 
+
+    /**
+     * Insert the rows with a BulkLoad. The rows are written in large blocks. Other connections can see them after
+     * the commit.
+     */
+    private void insertDirectPath(SSConnection con) throws Exception{
+        BulkLoad load = new BulkLoad( con, table );
+        try{
+            while(cmdSel.next()){
+                StoreImpl store = load.createStore();
+                for(int c=0; c<matrix.length; c++){
+                    Column column = table.columns.get(c);
+                    int idx = matrix[c];
+                    Expression valueExpress = (idx >= 0) ? 
+                            cmdSel.columnExpressions.get(idx) : 
+                            column.getDefaultValue(con);
+                    store.writeExpression( valueExpress, column );
+                }
+                load.write( store );
+            }
+            updateCount = load.finish();
+        }catch(Exception e){
+            load.abort();
+            throw e;
+        }
+    }
 }
\ No newline at end of file
@@ -47,6 +47,8 @@ class CommandSelect extends Command{
     private int maxRows = -1;
     /** is set if the keyword DISTINCT is used */
     private boolean isDistinct; 
+    /** is set if the rows of the table are read over an index */
+    private IndexResult indexResult;
 
     CommandSelect(Logger log){
 		super(log);
@@ -136,6 +138,14 @@ class CommandSelect extends Command{
         }
         
         if(where != null){
+            if(from instanceof TableResult){
+                // read only the rows from an index that match to the conditions
+                from = IndexResult.create( (TableResult)from, where );
+                if(from instanceof IndexResult){
+                    indexResult = (IndexResult)from;
+                    indexResult.setColumns( getAllExpressions() );
+                }
+            }
         	from = new Where( from, where );
         }
         
@@ -275,11 +285,29 @@ class CommandSelect extends Command{
         	!from.isScrollable()){
         	from = new Scrollable(from);
         }
+        if(indexResult != null){
+            // a read only ResultSet can read the values from a covering index without the rows of the table
+            indexResult.setIndexOnly( st.rsConcurrency != ResultSet.CONCUR_UPDATABLE || isGroupResult() );
+        }
         from.execute();
         rs =  new SSResultSet( st, this );
     }
     
     
+    /**
+     * Get all expressions of the query that can read the columns of the tables.
+     */
+    private Expressions getAllExpressions(){
+        Expressions expressions = new Expressions();
+        expressions.addAll( columnExpressions );
+        if(where != null) expressions.add( where );
+        if(having != null) expressions.add( having );
+        if(orderBy != null) expressions.addAll( orderBy );
+        if(groupBy != null) expressions.addAll( groupBy );
+        return expressions;
+    }
+    
+    
     /**
      * Is used from ResultSet.beforeFirst().
      *
@@ -36,6 +36,7 @@ package smallsql.database;
 public class CommandSet extends Command {
 
     int isolationLevel;
+    int lockTimeout;
 
     CommandSet( Logger log, int type ){
 		super(log);
@@ -47,6 +48,9 @@ public class CommandSet extends Command {
             case SQLTokenizer.LEVEL:
                 con.isolationLevel = isolationLevel;
                 break;
+            case SQLTokenizer.LOCK_TIMEOUT:
+                con.setLockTimeout(lockTimeout);
+                break;
             case SQLTokenizer.USE:
             	con.setCatalog(name);
             	break;
@@ -83,51 +83,94 @@ final class CommandTable extends Command{
         case SQLTokenizer.CREATE:
             database.createTable( con, name, columns, indexes, foreignKeys );
             break;
-        case SQLTokenizer.ADD:
-            con = new SSConnection(con);
-            //TODO disable the transaction to reduce memory use.
-            Table oldTable = (Table)database.getTableView( con, name);
-            
-            // Request a TableLock and hold it for the completely ALTER TABLE command
-            TableStorePage tableLock = oldTable.requestLock( con, SQLTokenizer.ALTER, -1);
-            String newName = "#" + System.currentTimeMillis() + this.hashCode();
-            try{
-                Columns oldColumns = oldTable.columns;
-                Columns newColumns = oldColumns.copy();
-                for(int i = 0; i < columns.size(); i++){
-                    addColumn(newColumns, columns.get(i));
-                }
-                
-                Table newTable = database.createTable( con, newName, newColumns, oldTable.indexes, indexes, foreignKeys );
-                StringBuffer buffer = new StringBuffer(256);
-                buffer.append("INSERT INTO ").append( newName ).append( '(' );
-                for(int c=0; c<oldColumns.size(); c++){
-                    if(c != 0){
-                        buffer.append( ',' );
-                    }
-                    buffer.append( oldColumns.get(c).getName() );
-                }
-                buffer.append( ")  SELECT * FROM " ).append( name );
-                con.createStatement().execute( buffer.toString() );
-                
-                database.replaceTable( oldTable, newTable );
-            }catch(Exception ex){
-                //Remove all from the new table
-                try {
-                    database.dropTable(con, newName);
-                } catch (Exception ex1) {/* ignore it */}
-                try{
-                    indexes.drop(database);
-                } catch (Exception ex1) {/* ignore it */}
-                throw ex;
-            }finally{
-                tableLock.freeLock();
+        case SQLTokenizer.INDEX:
+            if(!createIndex(con, database)){
+                // the table definition has no space for the index
+                copyTable(con, database);
             }
             break;
+        case SQLTokenizer.ADD:
+            copyTable(con, database);
+            break;
         default:
             throw new Error();
         }
     }
+    
+    
+    /**
+     * Add the index of CREATE INDEX to the existing table and build it from the rows of the table.
+     * @return false if the index can not added to the table definition
+     */
+    private boolean createIndex(SSConnection con, Database database) throws Exception{
+        con = new SSConnection(con);
+        Table table = (Table)database.getTableView( con, name);
+        
+        // Request a TableLock that no other connection read or change the rows while the index is build
+        TableStorePage tableLock = table.requestLock( con, SQLTokenizer.ALTER, -1);
+        try{
+            IndexDescription indexDesc = indexes.get(0);
+            if(!table.addIndex( con, indexDesc )){
+                return false;
+            }
+            con.commit();
+            return true;
+        }catch(Exception ex){
+            //Remove the file of the index
+            try{
+                indexes.drop(database);
+            } catch (Exception ex1) {/* ignore it */}
+            throw ex;
+        }finally{
+            tableLock.freeLock();
+        }
+    }
+    
+    
+    /**
+     * Create a copy of the table with the new columns and indexes and replace the old table with it.
+     */
+    private void copyTable(SSConnection con, Database database) throws Exception{
+        con = new SSConnection(con);
+        //TODO disable the transaction to reduce memory use.
+        Table oldTable = (Table)database.getTableView( con, name);
+        
+        // Request a TableLock and hold it for the completely ALTER TABLE command
+        TableStorePage tableLock = oldTable.requestLock( con, SQLTokenizer.ALTER, -1);
+        String newName = "#" + System.currentTimeMillis() + this.hashCode();
+        try{
+            Columns oldColumns = oldTable.columns;
+            Columns newColumns = oldColumns.copy();
+            for(int i = 0; i < columns.size(); i++){
+                addColumn(newColumns, columns.get(i));
+            }
+            
+            Table newTable = database.createTable( con, newName, newColumns, oldTable.indexes, indexes, foreignKeys );
+            StringBuffer buffer = new StringBuffer(256);
+            buffer.append("INSERT INTO ").append( newName ).append( '(' );
+            for(int c=0; c<oldColumns.size(); c++){
+                if(c != 0){
+                    buffer.append( ',' );
+                }
+                buffer.append( oldColumns.get(c).getName() );
+            }
+            buffer.append( ")  SELECT * FROM " ).append( name );
+            con.createStatement().execute( buffer.toString() );
+            
+            database.replaceTable( oldTable, newTable );
+        }catch(Exception ex){
+            //Remove all from the new table
+            try {
+                database.dropTable(con, newName);
+            } catch (Exception ex1) {/* ignore it */}
+            try{
+                indexes.drop(database);
+            } catch (Exception ex1) {/* ignore it */}
+            throw ex;
+        }finally{
+            tableLock.freeLock();
+        }
+    }
 
 
     private void addColumn(Columns cols, Column column) throws SQLException{
@@ -0,0 +1,142 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ------------------
+ * CommandVacuum.java
+ * ------------------
+ */
+package smallsql.database;
+
+
+/**
+ * Implementation of the VACUUM statement. It rewrite the file of a table without the deleted pages, without the
+ * indirection of updated rows and with a new LOB file without garbage.<p>
+ * 
+ * The rows are copied with a LOCK_WRITE_TAB. Other connections can read the table during the copy but can not
+ * write it. Only the exchange of the files need a short LOCK_TAB.
+ */
+final class CommandVacuum extends Command{
+
+    /**
+     * @param name the table name or null for all tables of the database
+     */
+    CommandVacuum( Logger log, String catalog, String name ){
+        super(log);
+        this.type = SQLTokenizer.VACUUM;
+        this.catalog = catalog;
+        this.name = name;
+    }
+
+
+    void executeImpl(SSConnection con, SSStatement st) throws Exception{
+        Database database = catalog == null ? 
+                con.getDatabase(false) : 
+                Database.getDatabase( catalog, con, false );
+        if(name != null){
+            vacuum( con, database, name );
+            return;
+        }
+        Strings tables = database.getTables(null);
+        for(int i=0; i<tables.size(); i++){
+            String tableName = tables.get(i);
+            if(tableName.startsWith("#")){
+                continue; // temporary table of another ALTER TABLE or VACUUM
+            }
+            if(database.getTableView( con, tableName) instanceof Table){
+                vacuum( con, database, tableName );
+            }
+        }
+    }
+
+
+    private void vacuum(SSConnection con, Database database, String tableName) throws Exception{
+        con = new SSConnection(con);
+        Table oldTable = (Table)database.getTableView( con, tableName);
+        
+        // prevent writes of other connections for the complete copy
+        TableStorePage writeLock = oldTable.requestLock( con, SQLTokenizer.VACUUM, -1);
+        String newName = "#" + System.currentTimeMillis() + this.hashCode();
+        try{
+            Columns oldColumns = oldTable.columns;
+            Table newTable = database.createTable( con, newName, oldColumns.copy(), oldTable.indexes, new IndexDescriptions(), new ForeignKeys() );
+            copyRows( con, oldTable, newTable );
+            for(int c=0; c<oldColumns.size(); c++){
+                // the next identity value should not depends on the last not deleted row
+                newTable.columns.get(c).copyAutoIncrementValue( oldColumns.get(c) );
+            }
+            
+            TableStorePage tableLock = oldTable.requestLock( con, SQLTokenizer.ALTER, -1);
+            try{
+                database.replaceTable( oldTable, newTable );
+            }finally{
+                tableLock.freeLock();
+            }
+        }catch(Exception ex){
+            //Remove all from the new table
+            try {
+                database.dropTable(con, newName);
+            } catch (Exception ex1) {/* ignore it */}
+            throw ex;
+        }finally{
+            writeLock.freeLock();
+        }
+    }
+
+
+    /**
+     * Copy all rows of the old table into the new table with a BulkLoad and commit it. The values are read with a
+     * TableResult and written like an INSERT ... SELECT. So the LOB values are written into the LOB file of the new
+     * table. The tables are used directly, that the copy is independent of the current database of the connection.
+     */
+    private static void copyRows(SSConnection con, Table oldTable, Table newTable) throws Exception{
+        TableResult result = new TableResult( oldTable );
+        result.init( con );
+        Columns columns = newTable.columns;
+        ExpressionName[] values = new ExpressionName[columns.size()];
+        for(int c=0; c<values.length; c++){
+            values[c] = new ExpressionName( columns.get(c).getName() );
+            values[c].setFrom( result, c, oldTable );
+        }
+        result.execute();
+        result.beforeFirst();
+        BulkLoad load = new BulkLoad( con, newTable );
+        try{
+            while(result.next()){
+                StoreImpl store = load.createStore();
+                for(int c=0; c<values.length; c++){
+                    store.writeExpression( values[c], columns.get(c) );
+                }
+                load.write( store );
+            }
+            load.finish();
+        }catch(Exception e){
+            load.abort();
+            con.rollback();
+            throw e;
+        }
+        con.commit();
+    }
+}
@@ -79,8 +79,8 @@ public class CreateFile extends TransactionStep{
             //ignore it
         }
         con.rollbackFile(currentRaFile);
-        if(!file.delete()){
-            file.deleteOnExit();
+        if(!database.deleteFile(file)){
+            if(!database.isInMemory()) file.deleteOnExit();
             throw SmallSQLException.create(Language.FILE_CANT_DELETE, file.getPath());
         }
         
@@ -0,0 +1,145 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * CsvReader.java
+ * ---------------
+ */
+package smallsql.database;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.SQLException;
+
+import smallsql.database.language.Language;
+
+/**
+ * A streaming reader of CSV data like RFC 4180. A value can be quoted with double quotes. In a quoted value the
+ * delimiter and line breaks are part of the value and a double quote is written twice. Lines can end with CRLF or
+ * LF. An empty value without quotes is a NULL value, an empty quoted value is an empty string. Empty lines are
+ * skipped.
+ */
+final class CsvReader {
+
+    private final Reader reader;
+    private final char delimiter;
+    private final StringBuffer value = new StringBuffer();
+    /** the line number of the next character */
+    private int line = 1;
+    /** the line number of the start of the last record */
+    private int recordLine;
+    /** a character that was read too much or -2 */
+    private int unread = -2;
+
+
+    CsvReader(Reader reader, char delimiter){
+        this.reader = (reader instanceof BufferedReader) ? reader : new BufferedReader( reader );
+        this.delimiter = delimiter;
+    }
+
+
+    /**
+     * Read the values of the next record.
+     * @param values the list for the values, it is cleared before
+     * @return false if there are no more records
+     */
+    boolean next(Strings values) throws IOException, SQLException{
+        values.clear();
+        int c = read();
+        while(c == '\n' || c == '\r'){
+            c = read();
+        }
+        if(c < 0){
+            return false;
+        }
+        recordLine = line;
+        while(true){
+            value.setLength(0);
+            boolean quoted = c == '"';
+            if(quoted){
+                while(true){
+                    c = read();
+                    if(c < 0){
+                        throw SmallSQLException.create(Language.CSV_QUOTE_OPEN, new Integer(recordLine));
+                    }
+                    if(c == '"'){
+                        c = read();
+                        if(c != '"'){
+                            break;
+                        }
+                    }
+                    value.append( (char)c );
+                }
+            }
+            while(c >= 0 && c != delimiter && c != '\n' && c != '\r'){
+                value.append( (char)c );
+                c = read();
+            }
+            values.add( (quoted || value.length() > 0) ? value.toString() : null );
+            if(c == delimiter){
+                c = read();
+                continue;
+            }
+            if(c == '\r'){
+                c = read();
+                if(c != '\n'){
+                    unread = c;
+                }
+            }
+            return true;
+        }
+    }
+
+
+    /**
+     * The line number of the start of the last record that was read with next().
+     */
+    int getLine(){
+        return recordLine;
+    }
+
+
+    void close() throws IOException{
+        reader.close();
+    }
+
+
+    private int read() throws IOException{
+        int c;
+        if(unread != -2){
+            c = unread;
+            unread = -2;
+            return c;
+        }
+        c = reader.read();
+        if(c == '\n'){
+            line++;
+        }
+        return c;
+    }
+}
@@ -32,6 +32,10 @@
  */
 package smallsql.database;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
 
 
 /**
@@ -70,6 +74,16 @@ abstract class DataSource extends RowSource{
 
 	abstract byte[] getBytes( int colIdx ) throws Exception;
 
+	InputStream getBinaryStream( int colIdx ) throws Exception{
+		byte[] bytes = getBytes( colIdx );
+		return bytes == null ? null : new ByteArrayInputStream( bytes );
+	}
+
+	Reader getCharacterStream( int colIdx ) throws Exception{
+		String str = getString( colIdx );
+		return str == null ? null : new StringReader( str );
+	}
+
 	abstract int getDataType( int colIdx );
 
 
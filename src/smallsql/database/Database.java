@@ -51,9 +51,24 @@ final class Database{
     private final TableViewMap tableViews = new TableViewMap();
     private final String name;
     private final boolean readonly;
+    private final boolean memoryMapped;
 	private final File directory;
 	private final FileChannel master;
 	private final WeakHashMap connections = new WeakHashMap();
+	private final BufferPool bufferPool;
+	private final PagePool pagePool;
+	/** The max size of the space that is preallocated if a table file grow */
+	private final int extentSize;
+	private final WriteAheadLog writeAheadLog;
+	/** The background reader of sequential table scans, it is created on the first request */
+	private ReadAhead readAhead;
+	/** File name --> MemoryFile, only for an in-memory database else null */
+	private final HashMap memoryFiles;
+	/** The lock waits of all connections, used to detect deadlocks over all tables */
+	private final WaitForGraph waitForGraph = new WaitForGraph();
+	private final VersionStore versionStore = new VersionStore();
+	
+	static final String MEMORY_PREFIX = "mem:";
 
 
 	/**
@@ -68,6 +83,18 @@ final class Database{
         if(name == null){
             return null;
         }
+        if(name.startsWith(MEMORY_PREFIX)){
+            // an in-memory database exists as long as there are connections to it
+            synchronized(databases){
+                Database db = (Database)databases.get(name);
+                if(db == null){
+                    db = new Database( name, con.getCacheSize(), con.getPagePoolSize() );
+                    databases.put(name, db);
+                }
+                db.connections.put(con, null);
+                return db;
+            }
+        }
         if(name.startsWith("file:")){
             name = name.substring(5);
         }
@@ -85,7 +112,7 @@ final class Database{
                     CommandCreateDatabase command = new CommandCreateDatabase(con.log, name);
                     command.execute(con, null);
                 }
-                db = new Database( name, file, con.isReadOnly() );
+                db = new Database( name, file, con.isReadOnly(), con.getCacheSize(), con.getPagePoolSize(), con.getExtentSize(), con.isMemoryMapped() );
                 databases.put(dbKey, db);
             }
             db.connections.put(con, null);
@@ -106,12 +133,20 @@ final class Database{
      * @param name is used for getCatalog()
      * @param canonicalFile the directory that is already canonical
      * @param readonly open database in read only mode
+     * @param cacheSize the memory budget of the page cache in bytes
+     * @param pagePoolSize the memory budget of the free page buffers in bytes
+     * @param extentSize the max size of the preallocated space of a table file in bytes
+     * @param memoryMapped map the files into memory, only possible in read only mode
      * @throws SQLException If can't open
      */
-    private Database( String name, File canonicalFile, boolean readonly ) throws SQLException{
+    private Database( String name, File canonicalFile, boolean readonly, long cacheSize, long pagePoolSize, int extentSize, boolean memoryMapped ) throws SQLException{
         try{
 	        this.name = name;
 	        this.readonly = readonly;
+	        this.memoryMapped = readonly && memoryMapped;
+	        bufferPool = new BufferPool( cacheSize );
+	        pagePool = new PagePool( pagePoolSize );
+	        this.extentSize = extentSize;
 			directory = canonicalFile;
 			if(!directory.isDirectory()){
                 throw SmallSQLException.create(Language.DB_NONEXISTENT, name);
@@ -119,11 +154,38 @@ final class Database{
 			File file = new File( directory, Utils.MASTER_FILENAME);
 			if(!file.exists())
 				throw SmallSQLException.create(Language.DB_NOT_DIRECTORY, name);
+			if(readonly && WriteAheadLog.hasRecords( directory )){
+			    // the table files are not valid without the committed pages in the log
+			    throw SmallSQLException.create(Language.DB_LOG_NOT_EMPTY, name);
+			}
 			master = Utils.openRaFile( file, readonly );
+			writeAheadLog = readonly ? null : new WriteAheadLog( this, directory );
+			memoryFiles = null;
         }catch(Exception e){
         	throw SmallSQLException.createFromException(e);
         }
     }
+    
+    
+    /**
+     * Create an in-memory database. There is no directory, no master file and no redo log. All files are
+     * MemoryFile objects.
+     * @param name the name with the prefix "mem:"
+     * @param cacheSize the memory budget of the page cache in bytes
+     * @param pagePoolSize the memory budget of the free page buffers in bytes
+     */
+    private Database( String name, long cacheSize, long pagePoolSize ){
+        this.name = name;
+        readonly = false;
+        memoryMapped = false;
+        bufferPool = new BufferPool( cacheSize );
+        pagePool = new PagePool( pagePoolSize );
+        extentSize = 0; // the MemoryFile grow already in larger steps
+        directory = null;
+        master = null;
+        writeAheadLog = null;
+        memoryFiles = new HashMap();
+    }
 
     String getName(){
         return name;
@@ -133,6 +195,175 @@ final class Database{
 	    return readonly;
 	}
 	
+	
+	/**
+	 * If the table and LOB files are memory mapped. This is only possible for read only databases.
+	 */
+	boolean isMemoryMapped(){
+	    return memoryMapped;
+	}
+	
+	
+	/**
+	 * If all files of this database are hold in memory.
+	 */
+	boolean isInMemory(){
+	    return memoryFiles != null;
+	}
+	
+	
+	/**
+	 * Open a table, LOB or index file of this database. A writable file is created if it not exists.
+	 * @throws FileNotFoundException if the file can not be open
+	 * @throws SQLException if the file can not be locked
+	 */
+	FileChannel openFile(File file) throws FileNotFoundException, SQLException{
+	    if(memoryFiles == null){
+	        return Utils.openRaFile( file, readonly );
+	    }
+	    synchronized(memoryFiles){
+	        MemoryFile memoryFile = (MemoryFile)memoryFiles.get( file.getName() );
+	        if(memoryFile == null){
+	            memoryFile = new MemoryFile();
+	            memoryFiles.put( file.getName(), memoryFile );
+	        }
+	        return memoryFile.open();
+	    }
+	}
+	
+	
+	/**
+	 * Create a new empty file like File.createNewFile().
+	 * @return false if the file already exists
+	 */
+	boolean createNewFile(File file) throws IOException{
+	    if(memoryFiles == null){
+	        return file.createNewFile();
+	    }
+	    synchronized(memoryFiles){
+	        if(memoryFiles.containsKey( file.getName() )){
+	            return false;
+	        }
+	        memoryFiles.put( file.getName(), new MemoryFile() );
+	        return true;
+	    }
+	}
+	
+	
+	boolean existsFile(File file){
+	    if(memoryFiles == null){
+	        return file.exists();
+	    }
+	    synchronized(memoryFiles){
+	        return memoryFiles.containsKey( file.getName() );
+	    }
+	}
+	
+	
+	boolean deleteFile(File file){
+	    if(memoryFiles == null){
+	        return file.delete();
+	    }
+	    synchronized(memoryFiles){
+	        return memoryFiles.remove( file.getName() ) != null;
+	    }
+	}
+	
+	
+	/**
+	 * Rename a file like File.renameTo().
+	 * @return false if the file does not exist or the new name is already used
+	 */
+	boolean renameFile(File file, File newFile){
+	    if(memoryFiles == null){
+	        return file.renameTo( newFile );
+	    }
+	    synchronized(memoryFiles){
+	        if(memoryFiles.containsKey( newFile.getName() )){
+	            return false;
+	        }
+	        Object memoryFile = memoryFiles.remove( file.getName() );
+	        if(memoryFile == null){
+	            return false;
+	        }
+	        memoryFiles.put( newFile.getName(), memoryFile );
+	        return true;
+	    }
+	}
+	
+	
+	/**
+	 * List the names of all files of this database.
+	 */
+	private String[] listFiles(){
+	    if(memoryFiles == null){
+	        return directory.list();
+	    }
+	    synchronized(memoryFiles){
+	        return (String[])memoryFiles.keySet().toArray( new String[memoryFiles.size()] );
+	    }
+	}
+	
+	
+	/**
+	 * Get the background reader for sequential table scans that is shared between all connections of this database.
+	 */
+	synchronized ReadAhead getReadAhead(){
+	    if(readAhead == null){
+	        readAhead = new ReadAhead( name );
+	    }
+	    return readAhead;
+	}
+	
+	
+	/**
+	 * Get the page cache that is shared between all connections of this database.
+	 */
+	BufferPool getBufferPool(){
+	    return bufferPool;
+	}
+	
+	
+	/**
+	 * Get the free page buffers for new rows that is shared between all connections of this database.
+	 */
+	PagePool getPagePool(){
+	    return pagePool;
+	}
+	
+	
+	/**
+	 * The max size of the space that is preallocated if a table file grow. It is 0 if there is no preallocation.
+	 */
+	int getExtentSize(){
+	    return extentSize;
+	}
+	
+	
+	/**
+	 * Get the lock waits of all connections of this database.
+	 */
+	WaitForGraph getWaitForGraph(){
+	    return waitForGraph;
+	}
+	
+	
+	/**
+	 * Get the old versions of the pages for the snapshot reads of all connections of this database.
+	 */
+	VersionStore getVersionStore(){
+	    return versionStore;
+	}
+	
+	
+	/**
+	 * Get the redo log of this database.
+	 * @return the log or null if the database is read only
+	 */
+	WriteAheadLog getWriteAheadLog(){
+	    return writeAheadLog;
+	}
+	
 
 	/**
 	 * Remove a connection from this database.
@@ -169,7 +400,17 @@ final class Database{
 				iterator.remove();
 			}
 		}
-		master.close();
+		if(writeAheadLog != null){
+		    writeAheadLog.close();
+		}
+		synchronized(this){
+		    if(readAhead != null){
+		        readAhead.close();
+		    }
+		}
+		if(master != null){
+		    master.close();
+		}
 	}
 	
     static TableView getTableView(SSConnection con, String catalog, String tableName) throws SQLException{
@@ -204,6 +445,7 @@ final class Database{
 
     void dropTable(SSConnection con, String tableName) throws Exception{
         synchronized(tableViews){
+            checkpoint();
             Table table = (Table)tableViews.get( tableName );
             if(table != null){
 				tableViews.remove( tableName );
@@ -215,6 +457,17 @@ final class Database{
     }
     
     
+    /**
+     * Truncate the redo log before a file is deleted or renamed. Else a replay can write old pages in a new file with
+     * the same name.
+     */
+    private void checkpoint() throws Exception{
+        if(writeAheadLog != null){
+            writeAheadLog.checkpoint();
+        }
+    }
+    
+    
     /**
      * Remove a table or view from the cache of open objects.
      * @param tableViewName the name of the object
@@ -230,19 +483,27 @@ final class Database{
         synchronized(tableViews){
             tableViews.remove( oldTable.name );
             tableViews.remove( newTable.name );
+            checkpoint();
             oldTable.close();
             newTable.close();
             File oldFile = oldTable.getFile(this);
             File newFile = newTable.getFile(this);
             File tmpFile = new File(Utils.createTableViewFileName( this, "#" + System.currentTimeMillis() + this.hashCode() ));
-            if( !oldFile.renameTo(tmpFile) ){
+            if( !renameFile(oldFile, tmpFile) ){
+                throw SmallSQLException.create(Language.TABLE_CANT_RENAME, oldTable.name);
+            }
+            if( !renameFile(newFile, oldFile) ){
+                renameFile(tmpFile, oldFile); //restore the old table
                 throw SmallSQLException.create(Language.TABLE_CANT_RENAME, oldTable.name);
             }
-            if( !newFile.renameTo(oldFile) ){
-                tmpFile.renameTo(oldFile); //restore the old table
+            deleteFile(tmpFile);
+            // the LOB values of the new table are saved in its own LOB file
+            File oldLobFile = new File(Utils.createLobFileName( this, oldTable.name ));
+            File newLobFile = new File(Utils.createLobFileName( this, newTable.name ));
+            deleteFile(oldLobFile);
+            if( existsFile(newLobFile) && !renameFile(newLobFile, oldLobFile) ){
                 throw SmallSQLException.create(Language.TABLE_CANT_RENAME, oldTable.name);
             }
-            tmpFile.delete();
         }
     }
     
@@ -315,13 +576,16 @@ final class Database{
 
     /**
      * Create a list of all available Databases from the point of the current 
-     * Database or current working directory
+     * Database or current working directory. For an in-memory database this are the open in-memory databases.
      * @param database - current database
      * @return
      */
     static Object[][] getCatalogs(Database database){
+    	if(database != null && database.memoryFiles != null){
+    		return getMemoryCatalogs();
+    	}
     	List catalogs = new ArrayList();
-    	File baseDir = (database != null) ?
+    	File baseDir = (database != null && database.directory != null) ?
     					database.directory.getParentFile() :
 						new File(".");
 		File dirs[] = baseDir.listFiles();
@@ -339,16 +603,37 @@ final class Database{
 		catalogs.toArray(result);
 		return result;
     }
+
+    
+    /**
+     * Create a list of the open in-memory databases. The directories of the working directory are not visible from
+     * an in-memory database.
+     */
+    private static Object[][] getMemoryCatalogs(){
+    	List catalogs = new ArrayList();
+    	synchronized(databases){
+    		Iterator iterator = databases.values().iterator();
+    		while(iterator.hasNext()){
+    			Database database = (Database)iterator.next();
+    			if(database.memoryFiles != null){
+    				catalogs.add(new Object[]{ database.name });
+    			}
+    		}
+    	}
+		Object[][] result = new Object[catalogs.size()][];
+		catalogs.toArray(result);
+		return result;
+    }
 	
     
 	Strings getTables(String tablePattern){
 		Strings list = new Strings();
-		File dirs[] = directory.listFiles();    
-		if(dirs != null)
+		String files[] = listFiles();    
+		if(files != null)
 			if(tablePattern == null) tablePattern = "%"; 
 			tablePattern += Utils.TABLE_VIEW_EXTENTION;
-			for(int i=0; i<dirs.length; i++){
-				String name = dirs[i].getName();
+			for(int i=0; i<files.length; i++){
+				String name = files[i];
 				if(Utils.like(name, tablePattern)){
 					list.add(name.substring( 0, name.length()-Utils.TABLE_VIEW_EXTENTION.length() ));
 				}
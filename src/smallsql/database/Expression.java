@@ -32,6 +32,10 @@
  */
 package smallsql.database;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.sql.SQLException;
 
 
@@ -158,6 +162,22 @@ abstract class Expression implements Cloneable{
 
     abstract byte[] getBytes() throws Exception;
 
+    /**
+     * Get the value as stream. The value of a LOB column is read lazily and is not loaded completely in memory.
+     */
+    InputStream getBinaryStream() throws Exception{
+        byte[] bytes = getBytes();
+        return bytes == null ? null : new ByteArrayInputStream( bytes );
+    }
+
+    /**
+     * Get the value as Reader. The value of a LOB column is read lazily and is not loaded completely in memory.
+     */
+    Reader getCharacterStream() throws Exception{
+        String str = getString();
+        return str == null ? null : new StringReader( str );
+    }
+
     abstract int getDataType();
 
     final int getType(){return type;}
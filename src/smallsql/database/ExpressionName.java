@@ -32,6 +32,8 @@
  */
 package smallsql.database;
 
+import java.io.InputStream;
+import java.io.Reader;
 
 public class ExpressionName extends Expression {
 
@@ -115,6 +117,14 @@ public class ExpressionName extends Expression {
         return fromEntry.getBytes(colIdx);
     }
 
+    InputStream getBinaryStream() throws Exception{
+        return fromEntry.getBinaryStream(colIdx);
+    }
+
+    Reader getCharacterStream() throws Exception{
+        return fromEntry.getCharacterStream(colIdx);
+    }
+
     int getDataType(){
 		switch(getType()){
 			case NAME:
@@ -32,6 +32,8 @@
  */
 package smallsql.database;
 
+import java.io.InputStream;
+import java.io.Reader;
 import java.math.BigDecimal;
 import java.sql.*;
 import smallsql.database.language.Language;
@@ -606,9 +608,13 @@ overriden abstact methods extends from expression
         return value;
     }
 
-    String getString(){
+    String getString() throws Exception{
         Object obj = getObject();
         if(obj == null) return null;
+        if(obj instanceof Reader){
+            // a stream parameter can be read only once
+            value = obj = Utils.reader2string( (Reader)obj );
+        }
         if(dataType == SQLTokenizer.BIT){
             return (obj == Boolean.TRUE) ? "1" : "0";
         }
@@ -616,7 +622,36 @@ overriden abstact methods extends from expression
     }
 
     byte[] getBytes() throws Exception{
-    	return getBytes( getObject(), dataType);
+        Object obj = getObject();
+        if(obj instanceof InputStream){
+            // a stream parameter can be read only once
+            value = obj = Utils.stream2bytes( (InputStream)obj );
+        }
+    	return getBytes( obj, dataType);
+    }
+    
+    
+    /**
+     * A stream parameter is returned without reading it.
+     */
+    InputStream getBinaryStream() throws Exception{
+        Object obj = getObject();
+        if(obj instanceof InputStream){
+            return (InputStream)obj;
+        }
+        return super.getBinaryStream();
+    }
+    
+    
+    /**
+     * A Reader parameter is returned without reading it.
+     */
+    Reader getCharacterStream() throws Exception{
+        Object obj = getObject();
+        if(obj instanceof Reader){
+            return (Reader)obj;
+        }
+        return super.getCharacterStream();
     }
     
     
@@ -34,11 +34,19 @@
 package smallsql.database;
 
 import java.io.*;
-import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 
 /**
+ * An Index that is saved in a file. The nodes are read from the file on its first access and hold in a cache with a
+ * limited size, the index need not to fit in the memory. Changed nodes are written if they are removed from the
+ * cache and with flush() after every commit. The position of the root node is written with save() on close.
  * @author Volker Berlin
  */
 class FileIndex extends Index {
@@ -74,41 +82,184 @@ static void print(Index index, Expressions expressions){
 }
 
     
-    private final FileChannel raFile;
+    /** the maximum count of loaded nodes, the root node is not counted */
+    static final int CACHE_SIZE = 0x10000;
     
+    final FileChannel raFile;
+    /** if changed nodes can be written, in a read only database all changed nodes stay in the memory */
+    private final boolean writable;
+    /** the loaded nodes in the order of its last use, the eldest node is the first */
+    private final LinkedHashMap cache = new LinkedHashMap(CACHE_SIZE, 0.75F, true);
+    /** the changed nodes since the last flush, it can include nodes that are already written */
+    private ArrayList changedNodes = new ArrayList();
+    /** the end of the used space in the file */
+    private long fileEnd;
     
-    FileIndex( boolean unique, FileChannel raFile ) {
-        this(new FileIndexNode( unique, (char)-1, raFile), raFile);
+    
+    /**
+     * Create a new empty index.
+     * @param offset the file position of the first node, the file after it is overwritten
+     * @param writable false if the nodes can not be written and the index is only in the memory
+     */
+    FileIndex( boolean unique, FileChannel raFile, long offset, boolean writable ) throws IOException{
+        super(new FileIndexNode( unique, (char)-1, null));
+        this.raFile = raFile;
+        this.writable = writable;
+        getRoot().init( this, -1 );
+        if(writable){
+            raFile.truncate( offset );
+        }
+        fileEnd = offset;
     }
     
     
-    FileIndex( FileIndexNode root, FileChannel raFile ) {
-        super(root);
+    private FileIndex( FileChannel raFile, long rootOffset, boolean unique, boolean writable ) throws IOException{
+        super(new FileIndexNode( unique, (char)-1, null));
         this.raFile = raFile;
+        this.writable = writable;
+        getRoot().init( this, rootOffset );
+        fileEnd = raFile.size();
+    }
+    
+    
+    /**
+     * Load a saved index. Only the root node is read, the other nodes are read on its first access.
+     * @param rootOffset the file position of the root node that was returned from save()
+     * @param writable false if the nodes can not be written and the changed nodes stay in the memory
+     */
+    static FileIndex load( FileChannel raFile, long rootOffset, boolean unique, boolean writable ) throws Exception{
+        FileIndex index = new FileIndex( raFile, rootOffset, unique, writable );
+        index.getRoot().access();
+        return index;
+    }
+    
+    
+    private FileIndexNode getRoot(){
+        return (FileIndexNode)rootPage;
+    }
+    
+    
+    /**
+     * Write all changed nodes to the file.
+     * @return the file position of the root node
+     */
+    long save() throws Exception{
+        flush();
+        FileIndexNode root = getRoot();
+        if(root.isDirty()){
+            root.write();
+        }
+        return root.getFileOffset();
+    }
+    
+    
+    /**
+     * Write the changed nodes to the file that the memory usage does not grow with the count of changes. The nodes
+     * are written from the leafs to the root because a node that is moved change its parent node. The data in the
+     * file are valid only after save().
+     */
+    void flush() throws Exception{
+        if(!writable){
+            return;
+        }
+        while(changedNodes.size() > 0){
+            ArrayList nodes = changedNodes;
+            changedNodes = new ArrayList();
+            for(int i=0; i<nodes.size(); i++){
+                FileIndexNode node = (FileIndexNode)nodes.get(i);
+                node.depth = node.getDepth();
+            }
+            Collections.sort( nodes, new Comparator(){
+                public int compare(Object node1, Object node2){
+                    return ((FileIndexNode)node2).depth - ((FileIndexNode)node1).depth;
+                }
+            });
+            for(int i=0; i<nodes.size(); i++){
+                FileIndexNode node = (FileIndexNode)nodes.get(i);
+                // the root is written with save() as last node
+                if(node.isDirty() && node != rootPage){
+                    node.write();
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * Is called from a node if it is changed the first time after it was written.
+     */
+    final void addChangedNode(FileIndexNode node){
+        changedNodes.add( node );
+        if(changedNodes.size() > CACHE_SIZE * 2){
+            // remove the nodes that are written from the cache in the meantime
+            ArrayList nodes = new ArrayList();
+            for(int i=0; i<changedNodes.size(); i++){
+                node = (FileIndexNode)changedNodes.get(i);
+                if(node.isDirty()){
+                    nodes.add( node );
+                }
+            }
+            changedNodes = nodes;
+        }
+    }
+    
+    
+    /**
+     * Add a new or loaded node to the cache. If the cache is full then the least recently used nodes are removed.
+     */
+    final void addNode(FileIndexNode node){
+        cache.put( node, node );
+        node.getParent().loadedCount++;
+        if(cache.size() > CACHE_SIZE){
+            try{
+                evict( node );
+            }catch(SQLException e){
+                throw new RuntimeException(e);
+            }
+        }
+    }
+    
+    
+    /**
+     * Mark the node as used now.
+     */
+    final void touchNode(FileIndexNode node){
+        cache.get( node );
     }
     
     
-    static FileIndex load( FileChannel raFile ) throws Exception{
-        ByteBuffer buffer = ByteBuffer.allocate(1);
-        raFile.read(buffer);
-        buffer.position(0);
-        boolean unique = buffer.get() != 0;
-        FileIndexNode root = FileIndexNode.loadRootNode( unique, raFile, raFile.position() );
-        return new FileIndex( root, raFile );
+    /**
+     * Unload the eldest nodes until the cache has free space. A node with loaded child nodes can not be unloaded,
+     * it is used from the path to its child nodes.
+     * @param current the node that is currently used
+     */
+    private void evict(FileIndexNode current) throws SQLException{
+        int count = cache.size() - CACHE_SIZE + CACHE_SIZE / 8;
+        Iterator iterator = cache.keySet().iterator();
+        while(count > 0 && iterator.hasNext()){
+            FileIndexNode node = (FileIndexNode)iterator.next();
+            if(node == current || node.loadedCount > 0 || (node.isDirty() && !writable)){
+                continue;
+            }
+            iterator.remove();
+            node.unload();
+            count--;
+        }
     }
     
     
-    void save() throws Exception{
-        ByteBuffer buffer = ByteBuffer.allocate(1);
-        buffer.put(rootPage.getUnique() ? (byte)1 : (byte)0 );
-        buffer.position(0);
-        raFile.write( buffer );
-        ((FileIndexNode)rootPage).save();
+    /**
+     * Reserve space for a node at the end of the file.
+     * @return the file position
+     */
+    final long allocate(int size){
+        long filePos = fileEnd;
+        fileEnd += size;
+        return filePos;
     }
     
     
     void close() throws IOException{
         raFile.close();
     }
-
 }
@@ -32,68 +32,249 @@
  */
 package smallsql.database;
 
-import java.io.*;
-import java.nio.channels.FileChannel;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
+
+import smallsql.database.language.Language;
+
 /**
+ * A node of a FileIndex. A node that was read from the file has no data until its first access. Before it is only
+ * a reference with the digit and the file position that its parent node has saved. The loaded nodes are hold in the
+ * cache of the FileIndex, the least recently used nodes are written if they are changed and unloaded again.<p>
+ *
+ * Every node has its own space in the file. A changed node is written on the same position if it fit else it is
+ * moved to the end of the file and its parent is changed.
  * @author Volker Berlin
  *
  */
 public class FileIndexNode extends IndexNode {
 
-	private final FileChannel file;
+	private FileIndex index;
+	/** the node with this node as child or value, null for the root of the index */
+	private FileIndexNode parent;
+	/** the distance to the root of the index, it is calculated before writing, the deeper nodes are written first */
+	int depth;
+	/** the position in the file or -1 if the node was never written */
 	private long fileOffset;
+	/** the size of the space at fileOffset */
+	private int capacity;
+	private boolean loaded;
+	private boolean dirty;
+	/** the count of loaded child nodes, a node with loaded child nodes can not be unloaded */
+	int loadedCount;
 	
     
 	/**
 	 * Create a new Node in the Index.
 	 * @param unique describe if it is an unique index (primary key) or a multi value index is.
+	 * @param parent the node that hold the new node or null for the root, the root need to initialize with init()
 	 */
-	FileIndexNode(boolean unique, char digit, FileChannel file){
+	FileIndexNode(boolean unique, char digit, FileIndexNode parent){
 		super(unique, digit);
-		this.file = file;
+		this.parent = parent;
+		if(parent != null){
+		    index = parent.index;
+		}
         fileOffset = -1;
 	}
+	
+	
+	/**
+	 * Set the index of a root node.
+	 * @param fileOffset the position of a saved root or -1 for a new empty root
+	 */
+	final void init(FileIndex index, long fileOffset){
+	    this.index = index;
+	    this.fileOffset = fileOffset;
+	    if(fileOffset < 0){
+	        loaded = true;
+	        setChanged();
+	    }
+	}
     
 	
     @Override
     protected IndexNode createIndexNode(boolean unique, char digit){
-        return new FileIndexNode(unique, digit, file);
+        FileIndexNode node = new FileIndexNode(unique, digit, this);
+        node.loaded = true;
+        node.setChanged();
+        index.addNode( node );
+        return node;
+    }
+    
+    
+    /**
+     * Load the data of this node on the first access.
+     */
+    @Override
+    void access(){
+        if(loaded){
+            if(parent != null){
+                index.touchNode( this );
+            }
+            return;
+        }
+        try{
+            StoreImpl store = read( index, fileOffset );
+            store.readShort(); // the digit is already known from the parent
+            load( store );
+            capacity = getCapacity( store.getUsedSize() );
+        }catch(SQLException e){
+            throw new RuntimeException(e);
+        }
+        loaded = true;
+        if(parent != null){
+            // the root is not part of the cache, it is never unloaded
+            index.addNode( this );
+        }
     }
     
     
-	void save() throws SQLException{
-        StorePage storePage = new StorePage( null, -1, file, fileOffset);
-        StoreImpl store = StoreImpl.createStore( null, storePage, SQLTokenizer.INSERT, fileOffset);
+    @Override
+    void setChanged(){
+        if(!dirty){
+            dirty = true;
+            index.addChangedNode( this );
+        }
+    }
+    
+    
+    @Override
+    void adopt(IndexNode node){
+        FileIndexNode child = (FileIndexNode)node;
+        if(child.loaded){
+            child.parent.loadedCount--;
+            loadedCount++;
+        }
+        child.parent = this;
+    }
+    
+    
+    final FileIndexNode getParent(){
+        return parent;
+    }
+    
+    
+    /**
+     * Calculate the distance to the root of the index.
+     */
+    final int getDepth(){
+        int count = 0;
+        for(FileIndexNode node = parent; node != null; node = node.parent){
+            count++;
+        }
+        return count;
+    }
+    
+    
+    final boolean isDirty(){
+        return dirty;
+    }
+    
+    
+    final long getFileOffset(){
+        return fileOffset;
+    }
+    
+    
+    /**
+     * Write this node if changed and release its data. It is called from the FileIndex if the node is removed from
+     * the cache.
+     */
+    final void unload() throws SQLException{
+        if(dirty){
+            write();
+        }
+        discard();
+        loaded = false;
+        parent.loadedCount--;
+    }
+    
+    
+    /**
+     * Write the data of this node. All child nodes need to be written before.
+     */
+	final void write() throws SQLException{
+        StoreImpl store = StoreImpl.createStore( null, new NodeWriter(), SQLTokenizer.INSERT, -1);
 		save(store);
-        fileOffset = store.writeFinsh(null);
+        long offset = store.writeFinsh(null);
+        dirty = false;
+        if(offset != fileOffset){
+            fileOffset = offset;
+            if(parent != null){
+                // the parent saves the position of this node
+                parent.setChanged();
+            }
+        }
 	}
 	
+	
 	@Override
     void saveRef(StoreImpl output) throws SQLException{
-        if(fileOffset < 0){
-            save();
-        }
+	    if(fileOffset < 0){
+	        throw new Error();
+	    }
+	    output.writeShort(getDigit());
 		output.writeLong(fileOffset);
 	}
 	
+	
     @Override
-    IndexNode loadRef( long offset ) throws SQLException{
-        StorePage storePage = new StorePage( null, -1, file, offset);
-        StoreImpl store = StoreImpl.createStore( null, storePage, SQLTokenizer.INSERT, fileOffset);
-        MemoryStream input = new MemoryStream();
-		FileIndexNode node = new FileIndexNode( getUnique(), (char)input.readShort(), file );
-		node.fileOffset = offset;
-        node.load( store );
-		return node;	
+    IndexNode loadRef(StoreImpl input) throws SQLException{
+        FileIndexNode node = new FileIndexNode( getUnique(), (char)input.readShort(), this );
+        node.fileOffset = input.readLong();
+        return node;
 	}
     
-    static FileIndexNode loadRootNode(boolean unique, FileChannel file, long offset) throws Exception{
-        StorePage storePage = new StorePage( null, -1, file, offset);
+    
+    private static StoreImpl read(FileIndex index, long offset) throws SQLException{
+        StorePage storePage = new StorePage( null, -1, index.raFile, offset);
         StoreImpl store = StoreImpl.createStore( null, storePage, SQLTokenizer.SELECT, offset);
-        FileIndexNode node = new FileIndexNode( unique, (char)store.readShort(), file );
-        node.fileOffset = offset;
-        node.load( store );
-        return node;    
+        if(store == null){
+            throw SmallSQLException.create(Language.INDEX_CORRUPT, String.valueOf(offset));
+        }
+        return store;
+    }
+    
+    
+    /**
+     * Get the size of the space for a node. The space is larger as the node that it can grow without moving. The
+     * size can be calculated from the size of the saved data again.
+     */
+    private static int getCapacity(int size){
+        int capacity = 64;
+        while(capacity < size){
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+    
+    
+    /**
+     * Write the data of the node on its old position if there is enough space, else at the end of the file.
+     */
+    private final class NodeWriter extends StorePage{
+        
+        NodeWriter(){
+            super( null, 0, index.raFile, -1 );
+        }
+        
+        
+        @Override
+        long commit() throws SQLException{
+            try{
+                // the field fileOffset of the StorePage is not used
+                long filePos = FileIndexNode.this.fileOffset;
+                if(filePos < 0 || pageSize > capacity){
+                    capacity = getCapacity( pageSize );
+                    filePos = index.allocate( capacity );
+                }
+                Utils.writeFully( raFile, ByteBuffer.wrap( page, 0, pageSize ), filePos );
+                return filePos;
+            }catch(IOException e){
+                throw SmallSQLException.createFromException(e);
+            }
+        }
     }
 }
@@ -0,0 +1,133 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * --------------
+ * FreeSpace.java
+ * --------------
+ */
+package smallsql.database;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The free space map of a table. It save the file offset and the physical size of pages that are deleted.
+ * New pages can be written in this space instead of append them at the end of the file.<p>
+ * 
+ * A page is added if the transaction that delete it is committed and the write lock is released. The
+ * physical size of a page never change. If a free page is reused then the new page get the physical size
+ * of the free page.
+ */
+final class FreeSpace {
+
+    /** Integer(physical size) --> LongList of file offsets. The best fit is the first key that is large enough. */
+    private final TreeMap pages = new TreeMap();
+    private int count;
+
+
+    /**
+     * Add the space of a deleted page.
+     */
+    synchronized void add(long fileOffset, int sizePhysical){
+        Integer key = new Integer(sizePhysical);
+        LongList offsets = (LongList)pages.get(key);
+        if(offsets == null){
+            offsets = new LongList(4);
+            pages.put(key, offsets);
+        }
+        offsets.add(fileOffset);
+        count++;
+    }
+
+
+    /**
+     * Find the smallest free page that is large enough and remove it from the map. The caller need to synchronize
+     * on this object and call getSize() and remove() as one operation.
+     * @param minSize the needed physical size
+     * @return the physical size of the free page or -1 if there is no page that is large enough.
+     */
+    int getSize(int minSize){
+        if(count == 0){
+            return -1;
+        }
+        SortedMap tail = pages.tailMap(new Integer(minSize));
+        return tail.isEmpty() ? -1 : ((Integer)tail.firstKey()).intValue();
+    }
+
+
+    /**
+     * Remove a free page with the given size.
+     * @param sizePhysical a value that was returned from getSize()
+     * @return the file offset of the free page
+     */
+    long remove(int sizePhysical){
+        Integer key = new Integer(sizePhysical);
+        LongList offsets = (LongList)pages.get(key);
+        long fileOffset = offsets.removeLast();
+        if(offsets.size() == 0){
+            pages.remove(key);
+        }
+        count--;
+        return fileOffset;
+    }
+
+
+    synchronized int size(){
+        return count;
+    }
+
+
+    /**
+     * Write all free pages to the store. 
+     */
+    synchronized void save(StoreImpl store){
+        store.writeInt(count);
+        Iterator iterator = pages.entrySet().iterator();
+        while(iterator.hasNext()){
+            Map.Entry entry = (Map.Entry)iterator.next();
+            int sizePhysical = ((Integer)entry.getKey()).intValue();
+            LongList offsets = (LongList)entry.getValue();
+            for(int i=0; i<offsets.size(); i++){
+                store.writeLong(offsets.get(i));
+                store.writeInt(sizePhysical);
+            }
+        }
+    }
+
+
+    /**
+     * Read the free pages that was written with save().
+     */
+    void load(StoreImpl store){
+        int size = store.readInt();
+        for(int i=0; i<size; i++){
+            long fileOffset = store.readLong();
+            add(fileOffset, store.readInt());
+        }
+    }
+}
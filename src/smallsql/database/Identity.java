@@ -51,10 +51,7 @@ public class Identity extends Number implements Mutable{
 	
 	public Identity(FileChannel raFile, long filePos) throws IOException{
 	    ByteBuffer buffer = ByteBuffer.wrap(page);
-		synchronized(raFile){
-			raFile.position(filePos);
-			raFile.read(buffer);
-		}
+	    Utils.readFully(raFile, buffer, filePos);
 		value = ((long)(page[ 0 ]) << 56) |
 				((long)(page[ 1 ] & 0xFF) << 48) |
 				((long)(page[ 2 ] & 0xFF) << 40) |
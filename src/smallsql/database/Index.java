@@ -60,7 +60,7 @@ import java.util.ArrayList;
  * @author Volker Berlin
  *
  */
-class Index{
+class Index extends IndexData{
 
 	final IndexNode rootPage;
 	
@@ -154,7 +154,7 @@ class Index{
                 if(!searchNullValues){
                     return null;
                 }
-				page = findNull(page);
+				page = findNull(page, nodeList);
 			}else{
 				switch(expr.getDataType()){
 					case SQLTokenizer.REAL:
@@ -291,28 +291,258 @@ class Index{
 	}
 	
 	
+	/**
+	 * Remove a value from the index. If the value does not exist then nothing is changed.
+	 * @param rowOffset the value that was added with addValues()
+	 * @param expressions the key of the value
+	 */
 	final void removeValue( long rowOffset, Expressions expressions ) throws Exception{
 		ArrayList nodeList = new ArrayList();
 		Object obj = findRows(expressions, true, nodeList);
+		if(obj == null) return;
+		IndexNode node = (IndexNode)nodeList.get(nodeList.size()-1);
 		if(!rootPage.getUnique()){
 			LongTreeList list = (LongTreeList)obj;
 			list.remove(rowOffset);
+			node.setChanged();
 			if(list.getSize() > 0) return;
+		}else if(((Long)obj).longValue() != rowOffset){
+			return;
 		}
-		IndexNode node = (IndexNode)nodeList.get(nodeList.size()-1);
 		node.clearValue();
 		for(int i = nodeList.size()-2; i >= 0; i--){
 			if(!node.isEmpty())
 				break;
 			IndexNode parent = (IndexNode)nodeList.get(i);
+			if(parent.getChildNode( node.getDigit() ) != node)
+				break; // the node is the first of the next column, the parent is in the root of the column
 			parent.removeNode( node.getDigit() );
 			node = parent;
 		}
 	}
 	
 	
-	final private IndexNode findNull(IndexNode page){
-		return page.getChildNode( (char)0 );
+	/**
+	 * Add the rowOffsets of all entries with values in the ranges to the list. The ranges describe the leading
+	 * columns of the index, the entries of all values of the following columns are added. The list can include
+	 * more rows as there are in the ranges, for example rows with NULL values. The caller need to check the rows.
+	 * @param ranges for every leading column the alternative ranges of its values
+	 * @param expressions the columns of the index, it is used for scrolling through the following columns
+	 * @param rows the list for the rowOffsets, it can include duplicated values
+	 */
+	final void findRows(IndexRange[][] ranges, Expressions expressions, LongList rows) throws Exception{
+		findRows(rootPage, 0, ranges, expressions, rows);
+	}
+
+
+	final private void findRows(IndexNode page, int column, IndexRange[][] ranges, Expressions expressions, LongList rows) throws Exception{
+		IndexRange[] columnRanges = ranges[column];
+		for(int i=0; i<columnRanges.length; i++){
+			IndexRange range = columnRanges[i];
+			char[] from = (range.from == null) ? null : getDigits(range.from);
+			char[] to   = (range.to   == null) ? null : getDigits(range.to);
+			findRange(page, 0, from, to, range.isPrefix, from != null, to != null, column, ranges, expressions, rows);
+		}
+	}
+
+
+	/**
+	 * Scan the node and its children for values in the range.
+	 * @param node the current node, the digits of the path to it are equals to the bounds if fromEqual or toEqual
+	 * @param depth the count of digits of the current column to the node
+	 * @param fromEqual if the path to the node is equals to the start of the lower bound
+	 * @param toEqual if the path to the node is equals to the start of the upper bound
+	 */
+	final private void findRange(IndexNode node, int depth, char[] from, char[] to, boolean isPrefix,
+			boolean fromEqual, boolean toEqual, int column, IndexRange[][] ranges, Expressions expressions, LongList rows) throws Exception{
+		Object value = node.getValue();
+		char[] remainder = node.getRemainderValue();
+		if(depth > 0 && value != null){
+			boolean inRange;
+			if(remainder == null){
+				// a shorter key is lower
+				inRange = !fromEqual || depth == from.length;
+			}else{
+				inRange = !fromEqual || compare(remainder, from, depth) >= 0;
+				if(inRange && toEqual && compare(remainder, to, depth) > 0){
+					inRange = isPrefix && remainder.length >= to.length - depth &&
+								compare(remainder, to, depth, to.length - depth) == 0;
+				}
+			}
+			if(inRange){
+				if(column + 1 < ranges.length){
+					findRows((IndexNode)value, column + 1, ranges, expressions, rows);
+				}else{
+					addRows(value, expressions, rows);
+				}
+			}
+		}
+		if(remainder != null){
+			return;
+		}
+		IndexNode[] nodes = node.getChildNodes();
+		int idx = 0;
+		if(fromEqual){
+			if(depth < from.length){
+				idx = findFirstNode(nodes, from[depth]);
+			}else{
+				fromEqual = false; // all longer keys are greater
+			}
+		}
+		if(toEqual && depth >= to.length){
+			if(!isPrefix){
+				return; // all longer keys are greater
+			}
+			toEqual = false;
+		}
+		for(; idx < nodes.length; idx++){
+			IndexNode child = nodes[idx];
+			char digit = child.getDigit();
+			if(toEqual && digit > to[depth]){
+				break;
+			}
+			findRange(child, depth + 1, from, to, isPrefix, fromEqual && digit == from[depth], toEqual && digit == to[depth],
+					column, ranges, expressions, rows);
+		}
+	}
+
+
+	/**
+	 * Add all rowOffsets of a node value to the list.
+	 * @param value a Long, a LongTreeList or the IndexNode of the next column
+	 */
+	final private void addRows(Object value, Expressions expressions, LongList rows){
+		if(value instanceof Long){
+			rows.add( ((Long)value).longValue() );
+		}else if(value instanceof LongTreeList){
+			LongTreeList list = (LongTreeList)value;
+			LongTreeListEnum listEnum = new LongTreeListEnum();
+			listEnum.reset();
+			long rowOffset;
+			while((rowOffset = list.getNext(listEnum)) >= 0){
+				rows.add(rowOffset);
+			}
+		}else{
+			IndexScrollStatus scrollStatus = new IndexScrollStatus( (IndexNode)value, expressions );
+			long rowOffset;
+			while((rowOffset = scrollStatus.getRowOffset(true)) >= 0){
+				rows.add(rowOffset);
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the position of the first node with a digit that is equals or larger as the digit.
+	 */
+	final static private int findFirstNode(IndexNode[] nodes, char digit){
+		int start = 0;
+		int end = nodes.length;
+		while(start < end){
+			int mid = (start + end) >> 1;
+			if(nodes[mid].getDigit() < digit){
+				start = mid + 1;
+			}else{
+				end = mid;
+			}
+		}
+		return start;
+	}
+
+
+	/**
+	 * Compare the remainder of a key with the rest of a bound.
+	 * @param offset the position of the first digit of the remainder in the bound
+	 */
+	final static private int compare(char[] remainder, char[] bound, int offset){
+		int result = compare(remainder, bound, offset, Math.min(remainder.length, bound.length - offset));
+		return (result != 0) ? result : remainder.length - (bound.length - offset);
+	}
+
+
+	final static private int compare(char[] remainder, char[] bound, int offset, int length){
+		for(int i=0; i<length; i++){
+			int diff = remainder[i] - bound[offset + i];
+			if(diff != 0) return diff;
+		}
+		return 0;
+	}
+
+
+	/**
+	 * Returns the digits of a value like it is saved in the path of the index tree. The digits have the same sort
+	 * order as the values, it is also used for the keys of a BTreeIndex.
+	 * @param expr a value that is not NULL
+	 */
+	final static char[] getDigits(Expression expr) throws Exception{
+		switch(expr.getDataType()){
+			case SQLTokenizer.REAL:
+				return getDigits( floatToBinarySortOrder( expr.getFloat()), 2 );
+			case SQLTokenizer.DOUBLE:
+			case SQLTokenizer.FLOAT:
+				return getDigits( doubleToBinarySortOrder( expr.getDouble()), 4 );
+			case SQLTokenizer.TINYINT:
+				return getDigits( expr.getInt(), 1 );
+			case SQLTokenizer.SMALLINT:
+				return getDigits( shortToBinarySortOrder( expr.getInt()), 1 );
+			case SQLTokenizer.INT:
+				return getDigits( intToBinarySortOrder( expr.getInt()), 2 );
+			case SQLTokenizer.BIGINT:
+			case SQLTokenizer.DATE:
+			case SQLTokenizer.TIME:
+			case SQLTokenizer.TIMESTAMP:
+			case SQLTokenizer.SMALLDATETIME:
+			case SQLTokenizer.MONEY:
+			case SQLTokenizer.SMALLMONEY:
+				return getDigits( longToBinarySortOrder( expr.getLong()), 4 );
+			case SQLTokenizer.VARCHAR:
+			case SQLTokenizer.NVARCHAR:
+			case SQLTokenizer.LONGVARCHAR:
+			case SQLTokenizer.LONGNVARCHAR:
+				return getDigits( stringToBinarySortOrder( expr.getString(), false ) );
+			case SQLTokenizer.NCHAR:
+			case SQLTokenizer.CHAR:
+				return getDigits( stringToBinarySortOrder( expr.getString(), true ) );
+			case SQLTokenizer.VARBINARY:
+			case SQLTokenizer.BINARY:
+			case SQLTokenizer.LONGVARBINARY:
+			case SQLTokenizer.BLOB:
+			case SQLTokenizer.UNIQUEIDENTIFIER:
+				return getDigits( bytesToBinarySortOrder( expr.getBytes()) );
+			case SQLTokenizer.BIT:
+			case SQLTokenizer.BOOLEAN:
+				return getDigits( expr.getBoolean() ? 2 : 1, 1 );
+			case SQLTokenizer.NUMERIC:
+			case SQLTokenizer.DECIMAL:
+				return getDigits( numericToBinarySortOrder( expr.getNumeric() ) );
+			default:
+				throw new Error(String.valueOf(expr.getDataType()));
+		}
+	}
+
+
+	final static private char[] getDigits(long key, int digitCount){
+		char[] digits = new char[digitCount];
+		for(int i=digitCount-1, d=0; i>=0; i--){
+			digits[d++] = (char)(key >> (i<<4));
+		}
+		return digits;
+	}
+
+
+	final static private char[] getDigits(char[] key){
+		// the first digit include 0-null; 1-empty; 2 another value
+		char[] digits = new char[key.length + 1];
+		digits[0] = (key.length == 0) ? (char)1 : 2;
+		System.arraycopy(key, 0, digits, 1, key.length);
+		return digits;
+	}
+
+
+	final private IndexNode findNull(IndexNode page, ArrayList nodeList){
+		page = page.getChildNode( (char)0 );
+		if(page != null && nodeList != null) nodeList.add(page);
+		return page;
 	}
 	
 
@@ -0,0 +1,140 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * IndexChange.java
+ * ---------------
+ */
+package smallsql.database;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+
+/**
+ * The change of the indexes for a single row. It is a step of the transaction after the StorePage of the row. The
+ * indexes are changed after the pages of the commit are written, that the indexes include only committed rows. The
+ * position of a new row is known only after the commit of its StorePage.
+ */
+final class IndexChange extends TransactionStep{
+
+    private final IndexDescriptions indexes;
+    private final StorePageLink link;
+    /** the keys of the row before the change or null for a new row */
+    private final Expressions[] oldKeys;
+    /** the keys of the row after the change or null for a deleted row */
+    private final Expressions[] newKeys;
+    /** the position of the row if the change was committed, else -1 */
+    private long rowOffset = -1;
+    /** if the keys are changed in the indexes */
+    private boolean indexesChanged;
+
+
+    /**
+     * Create a change of the indexes.
+     * @param table the table of the row
+     * @param link the link to the row, for a new row the position is set with the commit
+     * @param oldKeys the keys of the row before the change or null for a new row
+     * @param newKeys the keys of the row after the change or null for a deleted row
+     */
+    IndexChange(Table table, StorePageLink link, Expressions[] oldKeys, Expressions[] newKeys){
+        super(table.raFile);
+        this.indexes = table.indexes;
+        this.link = link;
+        this.oldKeys = oldKeys;
+        this.newKeys = newKeys;
+    }
+
+
+    long commit() throws SQLException{
+        // raFile == null --> rollback()
+        if(raFile != null && link.filePos >= 0){
+            rowOffset = link.filePos;
+        }
+        return rowOffset;
+    }
+
+
+    void commitIndexes(){
+        if(rowOffset >= 0 && !indexesChanged){
+            if(oldKeys != null){
+                indexes.removeValues( rowOffset, oldKeys );
+            }
+            if(newKeys != null){
+                indexes.addValues( rowOffset, newKeys );
+            }
+            indexesChanged = true;
+        }
+    }
+
+
+    void addIndexChange(HashMap changes){
+        if(link.filePos < 0){
+            return; // a new row is read with the inserts of the transaction
+        }
+        LongList rows = (LongList)changes.get(indexes);
+        if(rows == null){
+            rows = new LongList();
+            changes.put(indexes, rows);
+        }
+        rows.add(link.filePos);
+    }
+
+
+    IndexDescriptions getIndexes(){
+        return raFile != null ? indexes : null;
+    }
+
+
+    void countKeys(IndexDescriptions indexes, int idx, HashMap counts) throws Exception{
+        if(raFile == null || indexes != this.indexes){
+            return;
+        }
+        IndexDescription indexDesc = indexes.get(idx);
+        if(oldKeys != null && oldKeys[idx] != null){
+            indexDesc.countKey( counts, oldKeys[idx], -1 );
+        }
+        if(newKeys != null && newKeys[idx] != null){
+            indexDesc.countKey( counts, newKeys[idx], 1 );
+        }
+    }
+
+
+    void rollback() throws SQLException{
+        if(indexesChanged){
+            // a later step of the commit has failed
+            if(newKeys != null){
+                indexes.removeValues( rowOffset, newKeys );
+            }
+            if(oldKeys != null){
+                indexes.addValues( rowOffset, oldKeys );
+            }
+            indexesChanged = false;
+        }
+        rowOffset = -1;
+        raFile = null;
+    }
+}
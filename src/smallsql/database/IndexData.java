@@ -0,0 +1,111 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * IndexData.java
+ * ---------------
+ */
+package smallsql.database;
+
+import java.util.ArrayList;
+
+/**
+ * The data of an index. It map the values of the index columns to the positions of the rows. The implementations are
+ * the in memory tree Index with its saved variant FileIndex and the paged BTreeIndex.
+ */
+abstract class IndexData {
+
+    /**
+     * Create a cursor that scroll through all rowOffsets in the order of the values.
+     * @param expressions the columns of the index, the alias describe the order ASC or DESC
+     */
+    abstract IndexScrollStatus createScrollStatus(Expressions expressions);
+
+
+    /**
+     * Returns a Long (unique) or a LongTreeList with rowOffsets. If the value in expressions does not exist then it
+     * return a null.
+     * @param expressions the value that are search in the index
+     * @param searchNullValues expressions with NULL values should return a result
+     * @param nodeList optional, can be null. The search path in the index tree.
+     */
+    abstract Object findRows(Expressions expressions, boolean searchNullValues, ArrayList nodeList) throws Exception;
+
+
+    /**
+     * Add the rowOffsets of all entries with values in the ranges to the list. The list can include more rows as
+     * there are in the ranges, the caller need to check the rows.
+     * @param ranges for every leading column the alternative ranges of its values
+     * @param expressions the columns of the index
+     * @param rows the list for the rowOffsets, it can include duplicated values
+     */
+    abstract void findRows(IndexRange[][] ranges, Expressions expressions, LongList rows) throws Exception;
+
+
+    /**
+     * Add the rowOffsets and the saved values of all entries with values in the ranges to the lists. Only a covering
+     * index save the values of its columns.
+     * @param payloads the list for the saved values, a byte[] or null for every entry in rows
+     * @return false if the index does not save the values of its columns
+     */
+    boolean findRows(IndexRange[][] ranges, Expressions expressions, LongList rows, ArrayList payloads) throws Exception{
+        return false;
+    }
+
+
+    /**
+     * Add a value to the index.
+     * @param rowOffset the value that is saved in the index, typical the position of a row
+     * @param expressions the values of the index columns
+     */
+    abstract void addValues(long rowOffset, Expressions expressions) throws Exception;
+
+
+    /**
+     * Add many values at once, for example the new rows of a BulkLoad. The default add one value after the other.
+     * @param rows the rowOffsets
+     * @param keys the values of the index columns, an Expressions for every entry in rows
+     */
+    void addValues(LongList rows, ArrayList keys) throws Exception{
+        for(int i=0; i<rows.size(); i++){
+            addValues( rows.get(i), (Expressions)keys.get(i) );
+        }
+    }
+
+
+    /**
+     * Remove a value from the index. If the value does not exist then nothing is changed.
+     * @param rowOffset the value that was added with addValues()
+     * @param expressions the key of the value
+     */
+    abstract void removeValue(long rowOffset, Expressions expressions) throws Exception;
+
+
+    /**
+     * Write the changed data to the file. An index in the memory has nothing to write.
+     */
+    void flush() throws Exception{/* default nothing */}
+}
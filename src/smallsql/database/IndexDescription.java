@@ -34,25 +34,57 @@
 package smallsql.database;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
 import smallsql.database.language.Language;
 
 
 final class IndexDescription {
 
 	static final int MAGIC_INDEX = 'S' << 24 | 'Q' << 16 | 'L' << 8 | 'I';
-	static final int INDEX_VERSION = 1;
+	static final int INDEX_VERSION = 5;
+	/** The first version that save the data of the index, the position of the root node follow the version */
+	static final int INDEX_DATA_VERSION = 2;
+	/** The version of a BTreeIndex, the position of the root node follow the version like in INDEX_DATA_VERSION */
+	static final int INDEX_BTREE_VERSION = 3;
+	/** The version of a FileIndex that save the digits of the child nodes in its parent, the nodes are loaded on demand */
+	static final int INDEX_NODES_VERSION = 4;
+	/** The version of a BTreeIndex of a covering index, the leaf entries include the values of the covered columns */
+	static final int INDEX_PAYLOAD_VERSION = 5;
+	/** The size of the file header with the magic, the version and the position of the root node */
+	private static final int HEADER_SIZE = 16;
 	
 	private final String name;
 	final private int constraintType; //PRIMARY, UNIQUE, FOREIGIN, INDEX
 	final private Strings columns;
+	/** The additional columns of a covering index (CREATE INDEX ... INCLUDE) or null */
+	final private Strings includeColumns;
 	private int[] matrix;
+	/** The table columns that are saved in the payload of a covering index in ascending order, or null */
+	private int[] payloadColumns;
+	/** If the keys of the current data include a payload */
+	private boolean hasPayload;
 	final private Expressions expressions;
-	private Index index;
+	/** If the data are saved in a paged BTreeIndex instead of a FileIndex */
+	private boolean isBTree;
+	/** The data of the index or null if it is not valid. An invalid index is build from the rows on the next load. */
+	private IndexData index;
+	/** If the data in the file are not valid because the index was changed, it is saved at the end of the commit */
+	private boolean changed;
+	/** The count of running commits that change the index, the data are saved only if no commit is running */
+	private int commitCount;
+	/** String --> KeyCount, the keys that running commits add to a UNIQUE index but are not in the index yet */
+	private final HashMap pendingKeys = new HashMap();
     private FileChannel raFile;
+    private Database database;
     
 	
 	/**
@@ -61,10 +93,31 @@ final class IndexDescription {
 	 * @param columns the Expressions that build the index. For example one or more database columns.
 	 */
 	IndexDescription( String name, String tableName, int constraintType, Expressions expressions, Strings columns){
+		this( name, tableName, constraintType, expressions, columns, false );
+	}
+	
+	
+	/**
+	 * Create the description of an index with the type of its data.
+	 * @param isBTree true for an index that is saved in a paged BTreeIndex, see CREATE INDEX ... USING BTREE
+	 */
+	IndexDescription( String name, String tableName, int constraintType, Expressions expressions, Strings columns, boolean isBTree){
+		this( name, tableName, constraintType, expressions, columns, isBTree, null );
+	}
+	
+	
+	/**
+	 * Create the description of a covering index. The values of the include columns are saved in the index together
+	 * with the values of the index columns. A covering index is always a BTreeIndex.
+	 * @param includeColumns the names of the additional columns or null, see CREATE INDEX ... INCLUDE
+	 */
+	IndexDescription( String name, String tableName, int constraintType, Expressions expressions, Strings columns, boolean isBTree, Strings includeColumns){
 		this.constraintType = constraintType;
 		this.expressions = expressions;
 		this.columns = columns;
+		this.includeColumns = includeColumns;
         this.name = createName(name, tableName);
+        this.isBTree = isBTree || includeColumns != null;
 	}
     
     
@@ -125,6 +178,7 @@ final class IndexDescription {
 	 * @see IndexDescriptions#setTableView
 	 */
 	final void init(Database database, TableView tableView)/* throws Exception*/{
+		this.database = database;
 		int size = tableView.columns.size();
 		matrix = new int[size];
 		for(int i=0; i<matrix.length; i++){
@@ -134,6 +188,47 @@ final class IndexDescription {
 		for(int i=0; i<columns.size(); i++){
 			matrix[tableView.findColumnIdx(columns.get(i))] = i;
 		}
+		
+		if(includeColumns != null){
+			// the payload include the index columns and the include columns without LOB values
+			boolean[] covered = new boolean[size];
+			int count = 0;
+			for(int i=0; i<columns.size() + includeColumns.size(); i++){
+				String column = (i < columns.size()) ? columns.get(i) : includeColumns.get(i - columns.size());
+				int idx = tableView.findColumnIdx(column);
+				if(idx >= 0 && !covered[idx] && isPayloadType(tableView.columns.get(idx).getDataType())){
+					covered[idx] = true;
+					count++;
+				}
+			}
+			payloadColumns = new int[count];
+			count = 0;
+			for(int i=0; i<size; i++){
+				if(covered[i]){
+					payloadColumns[count++] = i;
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * If the values of the data type can be saved in the payload of a covering index. The LOB values are saved in
+	 * an extra file and are read always from the row.
+	 */
+	private static boolean isPayloadType(int dataType){
+		switch(dataType){
+			case SQLTokenizer.LONGVARBINARY:
+			case SQLTokenizer.LONGVARCHAR:
+			case SQLTokenizer.LONGNVARCHAR:
+			case SQLTokenizer.BLOB:
+			case SQLTokenizer.CLOB:
+			case SQLTokenizer.NCLOB:
+			case SQLTokenizer.JAVA_OBJECT:
+				return false;
+			default:
+				return true;
+		}
 	}
 	
 	
@@ -142,7 +237,30 @@ final class IndexDescription {
 	 */
 	final void create(SSConnection con, Database database, TableView tableView) throws Exception{
 		init( database, tableView );
+		if(includeColumns != null){
+			for(int i=0; i<includeColumns.size(); i++){
+				if(tableView.findColumnIdx(includeColumns.get(i)) < 0){
+					throw SmallSQLException.create(Language.COL_INVALID_NAME, includeColumns.get(i));
+				}
+			}
+		}
 		raFile = createFile( con, database );
+		index = createData();
+		changed = true;
+	}
+	
+	
+	/**
+	 * Create a new empty index of the type of this index. The nodes of a BTreeIndex are written in the file, in a
+	 * read only database it is build in the memory without the payload of a covering index.
+	 */
+	private IndexData createData() throws IOException{
+		if(isBTree && !database.isReadOnly()){
+			hasPayload = payloadColumns != null;
+			return new BTreeIndex( raFile, HEADER_SIZE, hasPayload );
+		}
+		hasPayload = false;
+		return new FileIndex( false, raFile, HEADER_SIZE, !database.isReadOnly() );
 	}
 	
 	
@@ -156,9 +274,9 @@ final class IndexDescription {
 	        throw SmallSQLException.create(Language.DB_READONLY);
 	    }
 		File file = getFile( database, name );
-		boolean ok = file.createNewFile();
+		boolean ok = database.createNewFile(file);
 		if(!ok) throw SmallSQLException.create(Language.INDEX_EXISTS, name);
-		FileChannel randomFile = Utils.openRaFile( file, database.isReadOnly() );
+		FileChannel randomFile = database.openFile( file );
         con.add(new CreateFile(file, randomFile, con, database));
 		writeMagic(randomFile);
 		return randomFile;
@@ -168,11 +286,11 @@ final class IndexDescription {
     private void load(Database database) throws SQLException{
         try{
             File file = getFile( database, name );
-            if(!file.exists())
+            if(!database.existsFile(file))
                 throw SmallSQLException.create(Language.INDEX_MISSING, name);
-            raFile = Utils.openRaFile( file, database.isReadOnly() );
-            ByteBuffer buffer = ByteBuffer.allocate(8);
-            raFile.read(buffer);
+            raFile = database.openFile( file );
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+            Utils.readFully(raFile, buffer, 0);
             buffer.position(0);
             int magic   = buffer.getInt();
             int version = buffer.getInt();
@@ -183,6 +301,30 @@ final class IndexDescription {
             	Object[] params = { new Integer(version), file.getName() };
                 throw SmallSQLException.create(Language.FILE_TOONEW, params);
             }
+            long rootOffset = (version >= INDEX_DATA_VERSION) ? buffer.getLong() : 0;
+            isBTree = (version == INDEX_BTREE_VERSION || version == INDEX_PAYLOAD_VERSION);
+            if(version < INDEX_NODES_VERSION && !isBTree){
+                // the nodes of an older FileIndex can not be loaded on demand, it is build again
+                rootOffset = 0;
+            }
+            if((version == INDEX_PAYLOAD_VERSION) != (payloadColumns != null)){
+                // the file does not match to the description, it is build again
+                isBTree |= payloadColumns != null;
+                rootOffset = 0;
+            }
+            if(rootOffset != 0){
+                try{
+                    if(isBTree){
+                        hasPayload = payloadColumns != null;
+                        index = BTreeIndex.load( raFile, rootOffset, hasPayload );
+                    }else{
+                        index = FileIndex.load( raFile, rootOffset, false, !database.isReadOnly() );
+                    }
+                }catch(Throwable e){
+                    // the index is build again from the rows of the table
+                    DriverManager.println(e.toString());
+                }
+            }
         }catch(Throwable e){
             if(raFile != null)
                 try{
@@ -196,48 +338,523 @@ final class IndexDescription {
 	
 
 	void drop(Database database) throws Exception {
+        synchronized(this){
+            index = null; // there is nothing to save
+        }
         close();
-		boolean ok = getFile( database, name).delete();
+		boolean ok = database.deleteFile( getFile( database, name) );
 		if(!ok) throw SmallSQLException.create(Language.TABLE_CANT_DROP, name);
 	}
     
     
     void close() throws Exception{
         if(raFile != null){
+            synchronized(this){
+                if(index != null && changed && !database.isReadOnly()){
+                    save();
+                }
+                index = null;
+            }
             raFile.close();
             raFile = null;
         }
     }
     
+    
+    /**
+     * Write the data of the index after the header. The position of the root node is written after all nodes are
+     * on the disk, a crash before it produce an invalid index that is build again. Only the changed nodes are
+     * written.
+     */
+    private void save() throws Exception{
+        long rootOffset;
+        if(index instanceof BTreeIndex){
+            rootOffset = ((BTreeIndex)index).save();
+        }else{
+            rootOffset = ((FileIndex)index).save();
+        }
+        raFile.force(false);
+        writeHeader(raFile, rootOffset);
+        changed = false;
+    }
+    
 
 	private final void writeMagic(FileChannel raFile) throws Exception{
-	    ByteBuffer buffer = ByteBuffer.allocate(8);
+	    writeHeader(raFile, 0);
+	}
+	
+	
+	private void writeHeader(FileChannel raFile, long rootOffset) throws IOException{
+	    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
 	    buffer.putInt(MAGIC_INDEX);
-	    buffer.putInt(INDEX_VERSION);
+	    buffer.putInt(isBTree ? (payloadColumns != null ? INDEX_PAYLOAD_VERSION : INDEX_BTREE_VERSION) : INDEX_NODES_VERSION);
+	    buffer.putLong(rootOffset);
 	    buffer.position(0);
-	    raFile.write(buffer);
+	    Utils.writeFully(raFile, buffer, 0);
+	}
+	
+	
+	/**
+	 * Mark the data in the file as invalid before the first change of the index. If the database is not closed
+	 * clean then the index is build again on the next load.
+	 */
+	private void setChanged() throws IOException{
+	    if(!changed){
+	        changed = true;
+	        Utils.writeFully(raFile, ByteBuffer.wrap(Utils.long2bytes(0)), 8);
+	        raFile.force(false);
+	    }
+	}
+	
+	
+	/**
+	 * If the index is valid and can be used.
+	 */
+	final synchronized boolean isValid(){
+	    return index != null;
+	}
+	
+	
+	/**
+	 * Discard the data of the index. It is build again from the rows of the table on the next load. This is needed
+	 * if the positions of all rows are changed like on ALTER TABLE or VACUUM.
+	 */
+	final synchronized void invalidate() throws IOException{
+	    index = null;
+	    if(raFile != null && !database.isReadOnly()){
+	        setChanged();
+	    }
+	}
+	
+	
+	/**
+	 * Create a new empty index if the index is not valid. The caller must add all rows of the table.
+	 * @return true if a new index was created
+	 */
+	final synchronized boolean createEmpty() throws IOException{
+	    if(index != null){
+	        return false;
+	    }
+	    if(!database.isReadOnly()){
+	        setChanged();
+	    }
+	    index = createData();
+	    return true;
+	}
+	
+	
+	/**
+	 * Is called before a row is changed. The data in the file are not valid from now until the next close.
+	 */
+	final synchronized void prepareChange() throws IOException{
+	    if(index != null){
+	        setChanged();
+	    }
+	}
+	
+	
+	/**
+	 * If one of the columns of this index or one of the columns in the payload is changed.
+	 * @param values the new values of the table columns, null for a column that is not changed
+	 */
+	final boolean isChanged(Expression[] values){
+	    for(int c=0; c<matrix.length; c++){
+	        if(values[c] != null && matrix[c] >= 0){
+	            return true;
+	        }
+	    }
+	    if(payloadColumns != null){
+	        for(int i=0; i<payloadColumns.length; i++){
+	            if(values[payloadColumns[i]] != null){
+	                return true;
+	            }
+	        }
+	    }
+	    return false;
 	}
 
 
 	/**
-	 * This is call if a single colum of the table is changed.
-	 * @param columnIdx The column position in the table
-	 * @param valueExpression the new value of the current row.
+	 * Read the key of this index from a row. The key of a covering index has an additional BINARY value with the
+	 * saved data of the values in payloadColumns.
+	 * @param store the row
+	 * @param offsets the offsets of all values in the row
+	 * @param dataTypes the data types of the table columns
+	 */
+	final Expressions createKey(StoreImpl store, int[] offsets, int[] dataTypes) throws Exception{
+	    Expression[] values = new Expression[columns.size()];
+	    for(int c=0; c<matrix.length; c++){
+	        int idx = matrix[c];
+	        if(idx >= 0){
+	            values[idx] = new ExpressionValue( store.getObject( offsets[c], dataTypes[c] ), dataTypes[c] );
+	        }
+	    }
+	    Expressions key = new Expressions(values.length + 1);
+	    for(int i=0; i<values.length; i++){
+	        key.add( values[i] );
+	    }
+	    if(hasPayload){
+	        int length = 0;
+	        for(int i=0; i<payloadColumns.length; i++){
+	            int c = payloadColumns[i];
+	            length += offsets[c+1] - offsets[c];
+	        }
+	        byte[] payload = new byte[length];
+	        int pos = 0;
+	        for(int i=0; i<payloadColumns.length; i++){
+	            int c = payloadColumns[i];
+	            store.copyValueTo( offsets[c], offsets[c+1] - offsets[c], payload, pos );
+	            pos += offsets[c+1] - offsets[c];
+	        }
+	        key.add( new ExpressionValue( payload, SQLTokenizer.BINARY ) );
+	    }
+	    return key;
+	}
+	
+	
+	/**
+	 * Get the values of the index columns of a key as a String that can be compared with equals().
+	 * @param key a key from createKey()
+	 * @return the key or null if one of the values is NULL, a NULL value is never a duplicate
 	 */
-	final void writeExpression( int columnIdx, Expression valueExpression) {
-		int idx = matrix[columnIdx];
-		if(idx >= 0) //set only if the column part of this index
-			expressions.set(idx, valueExpression);
+	private String getUniqueKey(Expressions key) throws Exception{
+	    StringBuffer buffer = new StringBuffer();
+	    for(int i=0; i<columns.size(); i++){
+	        Expression expr = key.get(i);
+	        if(expr.isNull()){
+	            return null;
+	        }
+	        char[] digits = Index.getDigits(expr);
+	        buffer.append( (char)digits.length ).append( digits );
+	    }
+	    return buffer.toString();
 	}
 
 
 	/**
-	 * This is call if the row is finish written.
-	 * @param con the connection for a later commit or rollback.
+	 * If two keys have the same values in the index columns and none of the values is NULL.
 	 */
-	final void writeFinish(SSConnection con) {
-		//TODO
-		//index.addValues(expressions);		
+	final boolean isDuplicate(Expressions key1, Expressions key2) throws Exception{
+	    String uniqueKey = getUniqueKey(key1);
+	    return uniqueKey != null && uniqueKey.equals( getUniqueKey(key2) );
+	}
+
+
+	/**
+	 * Get the positions of the committed rows with the values of the index columns of a key.
+	 * @param key a key from createKey()
+	 * @return the positions or null if the key has a NULL value or the index is not valid
+	 */
+	final synchronized LongList findKey(Expressions key) throws Exception{
+	    if(index == null || getUniqueKey(key) == null){
+	        return null;
+	    }
+	    Expressions values = new Expressions(columns.size());
+	    for(int i=0; i<columns.size(); i++){
+	        values.add( key.get(i) );
+	    }
+	    Object rows;
+	    try{
+	        rows = index.findRows( values, false, null );
+	    }catch(Throwable e){
+	        // a node of the index can not be read from the file
+	        DriverManager.println(e.toString());
+	        index = null;
+	        return null;
+	    }
+	    LongList list = new LongList();
+	    if(rows instanceof Long){
+	        list.add( ((Long)rows).longValue() );
+	    }else if(rows != null){
+	        LongTreeList treeList = (LongTreeList)rows;
+	        LongTreeListEnum listEnum = new LongTreeListEnum();
+	        long rowOffset;
+	        while((rowOffset = treeList.getNext(listEnum)) >= 0){
+	            list.add( rowOffset );
+	        }
+	    }
+	    return list;
+	}
+
+
+	/**
+	 * Count a key that a commit add to or remove from this index, see checkUnique(HashMap).
+	 * @param counts String --> KeyCount, the change of the count of entries for every key
+	 * @param key a key from createKey()
+	 * @param delta 1 for an added key, -1 for a removed key
+	 */
+	final void countKey(HashMap counts, Expressions key, int delta) throws Exception{
+	    String uniqueKey = getUniqueKey(key);
+	    if(uniqueKey == null){
+	        return;
+	    }
+	    KeyCount count = (KeyCount)counts.get(uniqueKey);
+	    if(count == null){
+	        count = new KeyCount(key);
+	        counts.put(uniqueKey, count);
+	    }
+	    count.delta += delta;
+	}
+
+
+	/**
+	 * Check that the keys of a commit does not produce duplicated keys in a UNIQUE index or PRIMARY KEY and reserve
+	 * the added keys until the commit has changed the index, see releaseKeys(). Every removed key of the commit is an
+	 * entry of the index or a key that the commit add before. A key that another running commit remove is still a
+	 * duplicate because that commit can fail.
+	 * @param counts String --> KeyCount from countKey()
+	 * @return true if the keys are reserved, false if the index is not valid
+	 * @throws SQLException if a key exists more as once after the commit
+	 */
+	final synchronized boolean checkUnique(HashMap counts) throws Exception{
+	    if(index == null){
+	        return false;
+	    }
+	    Iterator iterator = counts.entrySet().iterator();
+	    while(iterator.hasNext()){
+	        Map.Entry entry = (Map.Entry)iterator.next();
+	        KeyCount count = (KeyCount)entry.getValue();
+	        if(count.delta > 0){
+	            LongList rows = findKey(count.key);
+	            if(rows == null){
+	                return false; // the index is not valid
+	            }
+	            KeyCount pending = (KeyCount)pendingKeys.get(entry.getKey());
+	            if(rows.size() + (pending == null ? 0 : pending.delta) + count.delta > 1){
+	                throw SmallSQLException.create(Language.KEY_DUPLICATE);
+	            }
+	        }
+	    }
+	    iterator = counts.entrySet().iterator();
+	    while(iterator.hasNext()){
+	        Map.Entry entry = (Map.Entry)iterator.next();
+	        KeyCount count = (KeyCount)entry.getValue();
+	        if(count.delta > 0){
+	            KeyCount pending = (KeyCount)pendingKeys.get(entry.getKey());
+	            if(pending == null){
+	                pending = new KeyCount(count.key);
+	                pendingKeys.put(entry.getKey(), pending);
+	            }
+	            pending.delta += count.delta;
+	        }
+	    }
+	    return true;
+	}
+
+
+	/**
+	 * Release the keys that checkUnique() has reserved after the commit has changed the index or has failed.
+	 * @param counts the same counts that was checked
+	 */
+	final synchronized void releaseKeys(HashMap counts){
+	    Iterator iterator = counts.entrySet().iterator();
+	    while(iterator.hasNext()){
+	        Map.Entry entry = (Map.Entry)iterator.next();
+	        KeyCount count = (KeyCount)entry.getValue();
+	        KeyCount pending = (KeyCount)pendingKeys.get(entry.getKey());
+	        if(count.delta > 0 && pending != null){
+	            pending.delta -= count.delta;
+	            if(pending.delta <= 0){
+	                pendingKeys.remove(entry.getKey());
+	            }
+	        }
+	    }
+	}
+
+
+	/**
+	 * The change of the count of entries with a key in a commit.
+	 */
+	static final class KeyCount{
+	    final Expressions key;
+	    int delta;
+
+	    KeyCount(Expressions key){
+	        this.key = key;
+	    }
+	}
+
+
+	/**
+	 * If the index save the values of all the columns, that the rows must not be read from the table.
+	 * @param usedColumns for every table column if it is needed
+	 */
+	final boolean isCovering(boolean[] usedColumns){
+	    if(payloadColumns == null){
+	        return false;
+	    }
+	    int count = 0;
+	    for(int c=0; c<usedColumns.length; c++){
+	        if(usedColumns[c]){
+	            while(count < payloadColumns.length && payloadColumns[count] < c){
+	                count++;
+	            }
+	            if(count == payloadColumns.length || payloadColumns[count] != c){
+	                return false;
+	            }
+	        }
+	    }
+	    return true;
+	}
+	
+	
+	/**
+	 * Get the table columns that are saved in the payload of a covering index.
+	 * @return the column indexes in ascending order
+	 */
+	final int[] getPayloadColumns(){
+	    return payloadColumns;
+	}
+	
+	
+	/**
+	 * Add the position of a row to the index. If the index can not be changed then it is not valid anymore.
+	 * @param rowOffset the position of the row in the table
+	 * @param key the key from createKey()
+	 */
+	final synchronized void addValues(long rowOffset, Expressions key){
+	    if(index != null){
+	        try{
+	            index.addValues( rowOffset, key );
+	        }catch(Throwable e){
+	            DriverManager.println(e.toString());
+	            index = null;
+	        }
+	    }
+	}
+	
+	
+	/**
+	 * Add the positions of many rows to the index. If the index can not be changed then it is not valid anymore.
+	 * @param rows the positions of the rows in the table
+	 * @param keys the keys from createKey(), an Expressions for every entry in rows
+	 * @see IndexData#addValues(LongList, ArrayList)
+	 */
+	final synchronized void addValues(LongList rows, ArrayList keys){
+	    if(index != null){
+	        try{
+	            index.addValues( rows, keys );
+	        }catch(Throwable e){
+	            DriverManager.println(e.toString());
+	            index = null;
+	        }
+	    }
+	}
+	
+	
+	/**
+	 * Remove the position of a row from the index. If the index can not be changed then it is not valid anymore.
+	 * @param rowOffset the position of the row in the table
+	 * @param key the key from createKey()
+	 */
+	final synchronized void removeValue(long rowOffset, Expressions key){
+	    if(index != null){
+	        try{
+	            index.removeValue( rowOffset, key );
+	        }catch(Throwable e){
+	            DriverManager.println(e.toString());
+	            index = null;
+	        }
+	    }
+	}
+	
+	
+	/**
+	 * Add the positions of the rows with values in the ranges to the list.
+	 * @param ranges for the leading columns of this index the alternative ranges of the values
+	 * @param rows the list for the positions, it can include duplicated values
+	 * @return false if the index is not valid and can not be used
+	 * @see Index#findRows(IndexRange[][], Expressions, LongList)
+	 */
+	final synchronized boolean findRows(IndexRange[][] ranges, LongList rows) throws Exception{
+	    if(index == null){
+	        return false;
+	    }
+	    try{
+	        index.findRows( ranges, expressions, rows );
+	    }catch(Throwable e){
+	        // a node of the index can not be read from the file
+	        DriverManager.println(e.toString());
+	        index = null;
+	        return false;
+	    }
+	    return true;
+	}
+	
+	
+	/**
+	 * Add the positions and the payloads of the rows with values in the ranges to the lists. This is possible only
+	 * for a covering index.
+	 * @param payloads the list for the payloads, a byte[] for every entry in rows. An entry can have a null payload if
+	 *            it was too large for the index.
+	 * @return false if the index is not valid or it does not save the payload
+	 * @see #findRows(IndexRange[][], LongList)
+	 */
+	final synchronized boolean findRows(IndexRange[][] ranges, LongList rows, ArrayList payloads) throws Exception{
+	    if(index == null){
+	        return false;
+	    }
+	    try{
+	        return index.findRows( ranges, expressions, rows, payloads );
+	    }catch(Throwable e){
+	        // a node of the index can not be read from the file
+	        DriverManager.println(e.toString());
+	        index = null;
+	        return false;
+	    }
+	}
+	
+	
+	/**
+	 * Is called before a commit change the index. The data in the file are marked as invalid until the end of the
+	 * commit, a crash in the meantime build the index again.
+	 * @see #endCommit()
+	 */
+	final synchronized void beginCommit() throws IOException{
+	    if(index != null && !database.isReadOnly()){
+	        setChanged();
+	    }
+	    commitCount++;
+	}
+
+
+	/**
+	 * Is called at the end of a commit that has changed the index. The last of the running commits save the data
+	 * with a valid header that the index is not build again after a crash. While other commits are running only the
+	 * changed nodes are written, the data can include changes that are not committed yet.
+	 */
+	final synchronized void endCommit(){
+	    if(commitCount > 0){
+	        commitCount--; // an index that was added while the commit was running has not count it
+	    }
+	    if(commitCount == 0){
+	        saveData();
+	        return;
+	    }
+	    if(index != null && !database.isReadOnly()){
+	        try{
+	            index.flush();
+	        }catch(Throwable e){
+	            DriverManager.println(e.toString());
+	            index = null;
+	        }
+	    }
+	}
+
+
+	/**
+	 * Write the changed data of the index to the file with a valid header. If the data can not be written then the
+	 * index is not valid anymore.
+	 */
+	final synchronized void saveData(){
+	    if(index != null && changed && !database.isReadOnly()){
+	        try{
+	            save();
+	        }catch(Throwable e){
+	            DriverManager.println(e.toString());
+	            index = null;
+	        }
+	    }
 	}
 	
 	
@@ -251,13 +868,20 @@ final class IndexDescription {
 			store.writeString( columns.get(c) );
 		}
 		store.writeString(name);
+		if(includeColumns != null){
+			store.writeInt(includeColumns.size());
+			for(int c=0; c<includeColumns.size(); c++){
+				store.writeString( includeColumns.get(c) );
+			}
+		}
 	}
 	
 	
 	/**
 	 * Restore a IndexDescription from a saved Table.
+	 * @param end the offset after the saved IndexDescription, the include columns follow only for a covering index
 	 */
-	final static IndexDescription load(Database database, TableView tableView, StoreImpl store) throws SQLException{
+	final static IndexDescription load(Database database, TableView tableView, StoreImpl store, int end) throws SQLException{
 		int constraintType = store.readInt();
 		int count = store.readInt();
 		Strings columns = new Strings();
@@ -268,7 +892,16 @@ final class IndexDescription {
 			columns.add( column );
 			expressions.add( sqlParser.parseExpression(column));
 		}
-		IndexDescription indexDesc = new IndexDescription( store.readString(), tableView.name, constraintType, expressions, columns);
+		String name = store.readString();
+		Strings includeColumns = null;
+		if(store.getCurrentOffsetInPage() < end){
+			includeColumns = new Strings();
+			count = store.readInt();
+			for(int c=0; c<count; c++){
+				includeColumns.add( store.readString() );
+			}
+		}
+		IndexDescription indexDesc = new IndexDescription( name, tableView.name, constraintType, expressions, columns, false, includeColumns);
         indexDesc.init( database, tableView );
         indexDesc.load(database);
 		return indexDesc;
@@ -34,6 +34,9 @@
 package smallsql.database;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import smallsql.database.language.Language;
 
 /**
@@ -138,4 +141,340 @@ class IndexDescriptions {
             add(indexes.data[i]);
         }
     }
+    
+    
+    /**
+     * Remove the last added index, for example if it can not be build.
+     */
+    void removeLast(){
+        data[--size] = null;
+    }
+
+    
+    /**
+     * Discard the data of all indexes. They are build again on the next load of the table.
+     * @see IndexDescription#invalidate()
+     */
+    void invalidate() throws Exception{
+        for(int i=0; i<size; i++){
+            data[i].invalidate();
+        }
+    }
+    
+    
+    /**
+     * If one of the changed columns is part of an index.
+     * @param values the new values of the table columns, null for a column that is not changed
+     */
+    boolean isChanged(Expression[] values){
+        for(int i=0; i<size; i++){
+            if(data[i].isChanged(values)){
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    
+    /**
+     * Read the keys of all valid indexes from a row that will be changed. The current offset of the store is not
+     * changed, the store can be also a row that is not finished.
+     * @return the keys in the order of the indexes with null for an invalid index, or null if there is no valid index
+     */
+    Expressions[] createKeys(Table table, StoreImpl store) throws Exception{
+        Expressions[] keys = null;
+        int[] dataTypes = null;
+        int[] offsets = null;
+        int current = store.getCurrentOffsetInPage();
+        for(int i=0; i<size; i++){
+            IndexDescription indexDesc = data[i];
+            if(!indexDesc.isValid()){
+                continue;
+            }
+            if(keys == null){
+                keys = new Expressions[size];
+                dataTypes = getDataTypes(table);
+                offsets = getOffsets(table, store, dataTypes);
+            }
+            indexDesc.prepareChange();
+            keys[i] = indexDesc.createKey(store, offsets, dataTypes);
+        }
+        store.setCurrentOffsetInPage(current);
+        return keys;
+    }
+    
+    
+    /**
+     * Add a row to the indexes.
+     * @param rowOffset the position of the row in the table
+     * @param keys the keys from createKeys()
+     */
+    void addValues(long rowOffset, Expressions[] keys){
+        for(int i=0; i<keys.length; i++){
+            if(keys[i] != null){
+                data[i].addValues(rowOffset, keys[i]);
+            }
+        }
+    }
+    
+    
+    /**
+     * Add many rows to the indexes, for example the new rows of a BulkLoad. Every index get all its entries at
+     * once and can add them in the order of its keys.
+     * @param rows the positions of the rows in the table
+     * @param keys the keys from createKeys(), an Expressions[] for every entry in rows
+     */
+    void addValues(LongList rows, ArrayList keys){
+        for(int i=0; i<size; i++){
+            LongList indexRows = new LongList();
+            ArrayList indexKeys = new ArrayList();
+            for(int r=0; r<rows.size(); r++){
+                Expressions key = ((Expressions[])keys.get(r))[i];
+                if(key != null){
+                    indexRows.add( rows.get(r) );
+                    indexKeys.add( key );
+                }
+            }
+            if(indexRows.size() > 0){
+                data[i].addValues( indexRows, indexKeys );
+            }
+        }
+    }
+    
+    
+    /**
+     * Remove a row from the indexes.
+     * @param rowOffset the position of the row in the table
+     * @param keys the keys from createKeys()
+     */
+    void removeValues(long rowOffset, Expressions[] keys){
+        for(int i=0; i<keys.length; i++){
+            if(keys[i] != null){
+                data[i].removeValue(rowOffset, keys[i]);
+            }
+        }
+    }
+    
+    
+    /**
+     * Check the keys of a transaction before its commit change the indexes. Every UNIQUE index and PRIMARY KEY must
+     * have each key only once after the commit. The keys of the rows that are not committed yet are compared with
+     * each other, with the entries of the index and with the keys of other running commits. The added keys are
+     * reserved until releaseKeys() is called.
+     * @param steps the steps of the transaction, the keys are counted with TransactionStep.countKeys()
+     * @return the reserved keys for every index, the value for releaseKeys()
+     * @throws SQLException if a key is duplicated
+     */
+    HashMap[] checkUnique(List steps) throws Exception{
+        HashMap[] reserved = new HashMap[size];
+        try{
+            for(int i=0; i<size; i++){
+                IndexDescription indexDesc = data[i];
+                if(!indexDesc.isUnique() || !indexDesc.isValid()){
+                    continue;
+                }
+                HashMap counts = new HashMap();
+                for(int s=0; s<steps.size(); s++){
+                    ((TransactionStep)steps.get(s)).countKeys( this, i, counts );
+                }
+                if(indexDesc.checkUnique( counts )){
+                    reserved[i] = counts;
+                }
+            }
+        }catch(Exception e){
+            releaseKeys( reserved );
+            throw e;
+        }
+        return reserved;
+    }
+    
+    
+    /**
+     * Release the keys that checkUnique() has reserved after the commit has changed the indexes or has failed.
+     * @param reserved the return value of checkUnique()
+     */
+    void releaseKeys(HashMap[] reserved){
+        for(int i=0; i<reserved.length; i++){
+            if(reserved[i] != null){
+                data[i].releaseKeys( reserved[i] );
+            }
+        }
+    }
+    
+    
+    /**
+     * Check that the new keys of a row are not a duplicate of a committed row in a UNIQUE index or PRIMARY KEY. The
+     * found rows are read with the connection, a row that the connection has deleted or changed is not a duplicate.
+     * A duplicate of a row that is not committed yet is found with the commit, see checkUnique(List). The index
+     * include only rows whose pages are written, a row after the end of the data is skipped anyway.
+     * @param rowOffset the position of the changed row or -1 for a new row
+     * @param keys the new keys from createKeys() or null
+     * @throws SQLException if a key is duplicated
+     */
+    void checkUnique(SSConnection con, Table table, long rowOffset, Expressions[] keys) throws Exception{
+        if(keys == null){
+            return;
+        }
+        int[] dataTypes = null;
+        for(int i=0; i<size; i++){
+            IndexDescription indexDesc = data[i];
+            if(keys[i] == null || !indexDesc.isUnique()){
+                continue;
+            }
+            LongList rows = indexDesc.findKey( keys[i] );
+            for(int r=0; rows != null && r<rows.size(); r++){
+                long filePos = rows.get(r);
+                if(filePos == rowOffset || filePos >= table.getDataEnd(con)){
+                    continue;
+                }
+                StoreImpl store = table.getStore( con, filePos, SQLTokenizer.SELECT );
+                if(store == null || !store.isValidPage()){
+                    continue;
+                }
+                if(dataTypes == null){
+                    dataTypes = getDataTypes(table);
+                }
+                Expressions key = indexDesc.createKey( store, getOffsets(table, store, dataTypes), dataTypes );
+                if(indexDesc.isDuplicate( keys[i], key )){
+                    throw SmallSQLException.create(Language.KEY_DUPLICATE);
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * Is called before a commit change the indexes.
+     * @see IndexDescription#beginCommit()
+     */
+    void beginCommit() throws Exception{
+        for(int i=0; i<size; i++){
+            try{
+                data[i].beginCommit();
+            }catch(Exception e){
+                while(--i >= 0){
+                    data[i].endCommit();
+                }
+                throw e;
+            }
+        }
+    }
+    
+    
+    /**
+     * Is called at the end of a commit that has changed the indexes, also if the commit has failed.
+     * @see IndexDescription#endCommit()
+     */
+    void endCommit(){
+        for(int i=0; i<size; i++){
+            data[i].endCommit();
+        }
+    }
+    
+    
+    /**
+     * Write the changed data of the indexes to its files with a valid header.
+     */
+    void save(){
+        for(int i=0; i<size; i++){
+            data[i].saveData();
+        }
+    }
+    
+    
+    /**
+     * Build the indexes that are not valid from the rows of the table. This occur after a crash, after ALTER TABLE
+     * or VACUUM and for an index file of an older version.
+     */
+    void build(SSConnection con, Table table) throws Exception{
+        boolean[] building = null;
+        for(int i=0; i<size; i++){
+            if(data[i].createEmpty()){
+                if(building == null){
+                    building = new boolean[size];
+                }
+                building[i] = true;
+            }
+        }
+        if(building == null){
+            return;
+        }
+        addRows(con, table, building, false);
+        save();
+    }
+    
+    
+    /**
+     * Add a new index and build it from the rows of the table without a copy of the table, see CREATE INDEX. The
+     * caller must hold a lock of the complete table.
+     * @param indexDesc a new created index
+     * @throws SQLException if the index is UNIQUE and the rows include a duplicated key
+     */
+    void build(SSConnection con, Table table, IndexDescription indexDesc) throws Exception{
+        add(indexDesc);
+        try{
+            boolean[] building = new boolean[size];
+            building[size-1] = true;
+            addRows(con, table, building, indexDesc.isUnique());
+            indexDesc.saveData();
+        }catch(Exception e){
+            removeLast();
+            throw e;
+        }
+    }
+    
+    
+    /**
+     * Add all rows of the table to the indexes that are building.
+     * @param building for every index if the rows are added
+     * @param checkUnique if an existing key is an error
+     */
+    private void addRows(SSConnection con, Table table, boolean[] building, boolean checkUnique) throws Exception{
+        int[] dataTypes = getDataTypes(table);
+        long filePos = table.getFirstPage();
+        long end = table.getDataEnd();
+        while(filePos < end){
+            StoreImpl store = table.getStore( con, filePos, SQLTokenizer.SELECT );
+            if(store == null){
+                break;
+            }
+            if(store.isValidPage()){
+                int[] offsets = getOffsets(table, store, dataTypes);
+                for(int i=0; i<size; i++){
+                    if(building[i]){
+                        Expressions key = data[i].createKey(store, offsets, dataTypes);
+                        if(checkUnique){
+                            LongList rows = data[i].findKey(key);
+                            if(rows != null && rows.size() > 0){
+                                throw SmallSQLException.create(Language.KEY_DUPLICATE);
+                            }
+                        }
+                        data[i].addValues( filePos, key );
+                    }
+                }
+            }
+            filePos = store.getNextPagePos();
+        }
+    }
+    
+    
+    private static int[] getDataTypes(Table table){
+        Columns columns = table.columns;
+        int[] dataTypes = new int[columns.size()];
+        for(int i=0; i<dataTypes.length; i++){
+            dataTypes[i] = columns.get(i).getDataType();
+        }
+        return dataTypes;
+    }
+    
+    
+    /**
+     * Scan the offsets of all values in a row.
+     */
+    private static int[] getOffsets(Table table, StoreImpl store, int[] dataTypes){
+        int[] offsets = new int[dataTypes.length + 1];
+        offsets[0] = StoreImpl.getHeaderSize(table);
+        store.scanObjectOffsets(offsets, dataTypes, 0, dataTypes.length);
+        return offsets;
+    }
 }
@@ -114,11 +114,21 @@ class IndexNode {
 	 * @param digit The digit must be in the range 0 between 255. 
 	 */
 	final boolean isEmpty(){
+		access();
 		return nodes == EMPTY_NODES && value == null;
 	}
 	
 	
 	final void clear(){
+		discard();
+		setChanged();
+	}
+	
+	
+	/**
+	 * Release the data of this node without a change. It is used to unload a saved node.
+	 */
+	final void discard(){
 		nodes = EMPTY_NODES;
 		value = null;
 		remainderKey = null;
@@ -126,7 +136,9 @@ class IndexNode {
 	
 	
 	final void clearValue(){
+		access();
 		value = null;
+		setChanged();
 	}
 	
 	
@@ -135,11 +147,13 @@ class IndexNode {
 	 * @param digit The digit must be in the range 0 between 255. 
 	 */
 	final Object getValue(){
+		access();
 		return value;
 	}
 	
 	
 	final IndexNode[] getChildNodes(){
+		access();
 		return nodes;
 	}
 	
@@ -149,6 +163,7 @@ class IndexNode {
 	 * @param digit The digit must be in the range 0 between 255. 
 	 */
 	final IndexNode getChildNode(char digit){
+		access();
 		int pos = findNodePos(digit);
 		if(pos >=0) return nodes[pos];
 		return null;
@@ -156,6 +171,7 @@ class IndexNode {
 	
 	
 	final char[] getRemainderValue(){
+		access();
 		return remainderKey;
 	}
 	
@@ -165,6 +181,7 @@ class IndexNode {
 	 * @param digit The digit must be in the range 0 between 255. 
 	 */
 	final IndexNode addNode(char digit) throws SQLException{
+		access();
 		if(remainderKey != null) moveRemainderValue();
 		int pos = findNodePos( digit );
 		if(pos == -1){
@@ -182,6 +199,7 @@ class IndexNode {
 	 * @param digit The digit must be in the range 0 between 255. 
 	 */
 	final void removeNode(char digit){
+		access();
 		int pos = findNodePos( digit );
 		if(pos != -1){
 			int length = nodes.length-1;
@@ -189,6 +207,7 @@ class IndexNode {
 			System.arraycopy(nodes, 0, temp, 0, pos);
 			System.arraycopy(nodes, pos+1, temp, pos, length-pos);
 			nodes = temp;
+			setChanged();
 		}
 	}
 	
@@ -200,7 +219,7 @@ class IndexNode {
 	 */
 	final void addNode(char digit, long rowOffset) throws SQLException{
 		IndexNode node = addNode(digit);
-		if(node.remainderKey != null) node.moveRemainderValue();
+		if(node.getRemainderValue() != null) node.moveRemainderValue();
 		node.saveValue(rowOffset);
 	}
 	
@@ -213,6 +232,7 @@ class IndexNode {
 	 * @param rowOffset The value that is saved in the tree.
 	 */
 	final void saveValue(long rowOffset) throws SQLException{
+		access();
 		if(unique){
 			if(value != null) throw SmallSQLException.create(Language.KEY_DUPLICATE);
 			value = new Long(rowOffset);
@@ -223,6 +243,7 @@ class IndexNode {
 			}
 			list.add(rowOffset);
 		}
+		setChanged();
 	}
 	
 
@@ -239,14 +260,18 @@ class IndexNode {
 	 * 					 The range is from 1 to 3;  
 	 */
 	final void addRemainderKey(long rowOffset, long remainderValue, int charCount) throws SQLException{
+		access();
 		saveRemainderValue(remainderValue, charCount);
 		value = (unique) ? (Object)new Long(rowOffset) : new LongTreeList(rowOffset);
+		setChanged();
 	}
 	
 	
 	final void addRemainderKey(long rowOffset, char[] remainderValue, int offset) throws SQLException{
+		access();
 		saveRemainderValue(remainderValue, offset);
 		value = (unique) ? (Object)new Long(rowOffset) : new LongTreeList(rowOffset);
+		setChanged();
 	}
 	
 	
@@ -258,18 +283,20 @@ class IndexNode {
 	 */
 	final IndexNode addRoot(char digit) throws SQLException{
 		IndexNode node = addNode(digit);
-		if(node.remainderKey != null) node.moveRemainderValue();
+		if(node.getRemainderValue() != null) node.moveRemainderValue();
 		return node.addRoot();
 	}
 	
 	
 	final IndexNode addRootValue(char[] remainderValue, int offset) throws SQLException{
+		access();
 		saveRemainderValue(remainderValue, offset);
 		return addRoot();
 	}
 	
 	
 	final IndexNode addRootValue( long remainderValue, int digitCount) throws SQLException{
+		access();
 		saveRemainderValue(remainderValue, digitCount);
 		return addRoot();
 	}
@@ -285,12 +312,17 @@ class IndexNode {
 		char[] puffer = remainderKey;
 		value = null;
 		remainderKey = null;
+		setChanged();
 		IndexNode newNode = addNode(puffer[0]);
 		if(puffer.length == 1){
 			newNode.value  = rowOffset;
+			newNode.setChanged();
 		}else{
 			newNode.moveRemainderValueSub( rowOffset, puffer);
 		}
+		if(rowOffset instanceof IndexNode){
+			newNode.adopt( (IndexNode)rowOffset );
+		}
 	}
 	
 	
@@ -299,6 +331,7 @@ class IndexNode {
 		this.remainderKey = new char[length];
 		value = rowOffset;
 		System.arraycopy( remainderValue, 1, this.remainderKey, 0, length);
+		setChanged();
 	}
 	
 
@@ -321,9 +354,11 @@ class IndexNode {
 	 * @param digit
 	 */
 	final IndexNode addRoot() throws SQLException{
+		access();
 		IndexNode root = (IndexNode)value;
 		if(root == null){
 			value = root = createIndexNode(unique, (char)-1);
+			setChanged();
 		}
 		return root;
 	}
@@ -341,6 +376,7 @@ class IndexNode {
 			temp[pos] = node;
 		}
 		nodes = temp;
+		setChanged();
 	}
 	
 	
@@ -414,9 +450,27 @@ class IndexNode {
 	}
     
 	
-	IndexNode loadRef( long offset ) throws SQLException{
+	IndexNode loadRef(StoreImpl input) throws SQLException{
 		throw new Error();
 	}
+	
+	
+	/**
+	 * Is called before the data of this node are used. A FileIndexNode load its data on the first call.
+	 */
+	void access(){/* default nothing */}
+	
+	
+	/**
+	 * Is called after the data of this node was changed. A FileIndexNode mark itself for writing.
+	 */
+	void setChanged(){/* default nothing */}
+	
+	
+	/**
+	 * Is called if the root of the next column is moved from the parent of this node to this node.
+	 */
+	void adopt(IndexNode node){/* default nothing */}
     
 	
 	void load(StoreImpl input) throws SQLException{
@@ -435,7 +489,7 @@ class IndexNode {
 				value = new LongTreeList(input);
 				break;
 			case 3:
-				value = loadRef( input.readLong());
+				value = loadRef( input );
 				break;
 			default: 
 				throw SmallSQLException.create(Language.INDEX_CORRUPT, String.valueOf(valueType));
@@ -443,7 +497,7 @@ class IndexNode {
         
         nodes = new IndexNode[input.readShort()];
         for(int i=0; i<nodes.length; i++){
-            nodes[i] = loadRef( input.readLong() );
+            nodes[i] = loadRef( input );
         }
 	}
 	
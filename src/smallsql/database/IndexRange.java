@@ -0,0 +1,53 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * IndexRange.java
+ * ---------------
+ */
+package smallsql.database;
+
+/**
+ * A range of values of a single column for the search in an index. The bounds are included. The values must have the
+ * data type of the column.
+ */
+final class IndexRange {
+
+    /** the lower bound or null if there is no lower bound */
+    final Expression from;
+    /** the upper bound or null if there is no upper bound */
+    final Expression to;
+    /** if all values that start with the upper bound are also in the range, is used for LIKE */
+    final boolean isPrefix;
+
+
+    IndexRange(Expression from, Expression to, boolean isPrefix){
+        this.from = from;
+        this.to = to;
+        this.isPrefix = isPrefix;
+    }
+}
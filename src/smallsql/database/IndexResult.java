@@ -0,0 +1,768 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * IndexResult.java
+ * ---------------
+ */
+package smallsql.database;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Read the rows of a table over an index. It is used if the WHERE clause has conditions on the leading columns of an
+ * index like <code>col = ?</code>, <code>col IN (...)</code>, <code>col BETWEEN ? AND ?</code>, <code>col &lt; ?</code>,
+ * <code>col &gt; ?</code> or <code>col LIKE 'prefix%'</code>. Only the rows that are found in the index are read. The
+ * index can return more rows as match, the conditions are checked with a Where on top of this RowSource.<p>
+ * 
+ * The indexes include only committed rows. The rows that the transaction has changed or inserted and the rows that
+ * the snapshot of the transaction read from an old image are read additionally. If the values can not converted to
+ * the data type of the column or the transaction has a BulkLoad of the table then all rows of the table are
+ * scanned.<p>
+ * 
+ * If the index is a covering index (CREATE INDEX ... INCLUDE) that save the values of all columns that are used in the
+ * query then the rows are not read from the table. The values are read from the payload of the index entries. This is
+ * an index-only scan, it is only used for a read only ResultSet.
+ */
+final class IndexResult extends RowSource {
+
+	private final TableResult result;
+	private final IndexDescription index;
+	/** the conditions of the leading columns of the index */
+	private final Condition[] conditions;
+	/** the sorted positions of the rows from the index or null if all rows of the table are scanned */
+	private long[] rows;
+	/** if the index save the values of all columns that are used in the query, see setColumns() */
+	private boolean isCovering;
+	/** if the values are read from the payload of a covering index, see setIndexOnly() */
+	private boolean isIndexOnly;
+	/** the payloads of the entries in rows for an index-only scan, else null. A single payload can be null. */
+	private byte[][] payloads;
+	/** the current entry in rows, the entries after rows are the rows that was inserted in this ResultSet */
+	private int idx;
+	private int row;
+
+
+	private IndexResult(TableResult result, IndexDescription index, Condition[] conditions){
+		this.result = result;
+		this.index = index;
+		this.conditions = conditions;
+	}
+
+
+	/**
+	 * Create the RowSource for a table with a WHERE clause.
+	 * @param result the table
+	 * @param where the linked condition of the WHERE clause
+	 * @return a IndexResult or the TableResult if there is no index for the conditions
+	 */
+	static RowSource create(TableResult result, Expression where){
+		Table table = (Table)result.getTableView();
+		IndexDescriptions indexes = table.indexes;
+		if(indexes.size() == 0){
+			return result;
+		}
+		Condition[] columnConditions = new Condition[table.columns.size()];
+		addConditions( result, where, columnConditions );
+
+		// first an index that is completely covered from equals conditions
+		Strings equalsColumns = new Strings();
+		for(int i=0; i<columnConditions.length; i++){
+			if(columnConditions[i] != null && columnConditions[i].values != null){
+				equalsColumns.add( table.columns.get(i).getName() );
+			}
+		}
+		IndexDescription bestIndex = (equalsColumns.size() > 0) ? indexes.findBestMatch( equalsColumns ) : null;
+		Condition[] bestConditions = null;
+		if(bestIndex != null){
+			bestConditions = getConditions( table, bestIndex, columnConditions );
+		}else{
+			// else the index with the most leading columns with a condition
+			for(int i=0; i<indexes.size(); i++){
+				Condition[] conditions = getConditions( table, indexes.get(i), columnConditions );
+				if(conditions.length > 0 && (bestConditions == null || conditions.length > bestConditions.length)){
+					bestIndex = indexes.get(i);
+					bestConditions = conditions;
+				}
+			}
+		}
+		if(bestIndex == null){
+			return result;
+		}
+		return new IndexResult( result, bestIndex, bestConditions );
+	}
+
+
+	/**
+	 * Get the conditions of the leading columns of an index.
+	 */
+	private static Condition[] getConditions(Table table, IndexDescription index, Condition[] columnConditions){
+		Strings columns = index.getColumns();
+		int count = 0;
+		while(count < columns.size() && columnConditions[ table.findColumnIdx( columns.get(count) ) ] != null){
+			count++;
+		}
+		Condition[] conditions = new Condition[count];
+		for(int i=0; i<count; i++){
+			conditions[i] = columnConditions[ table.findColumnIdx( columns.get(i) ) ];
+		}
+		return conditions;
+	}
+
+
+	/**
+	 * Search the conditions that can be used with an index. This are comparisons of a column with a constant value
+	 * that are combined with AND.
+	 */
+	private static void addConditions(TableResult result, Expression expr, Condition[] columnConditions){
+		if(!(expr instanceof ExpressionArithmetic)){
+			return;
+		}
+		int operation = ((ExpressionArithmetic)expr).getOperation();
+		Expression[] params = expr.getParams();
+		if(operation == ExpressionArithmetic.AND){
+			addConditions( result, params[0], columnConditions );
+			addConditions( result, params[1], columnConditions );
+			return;
+		}
+		if(params == null || params.length < 2){
+			return;
+		}
+		ExpressionName column = getColumn( result, params[0] );
+		if(column != null){
+			for(int i=1; i<params.length; i++){
+				if(!isConstant( params[i] )){
+					return;
+				}
+			}
+		}else{
+			// the column is on the right side, 5 < col is equals to col > 5
+			column = getColumn( result, params[1] );
+			if(column == null || params.length != 2 || !isConstant( params[0] )){
+				return;
+			}
+			switch(operation){
+				case ExpressionArithmetic.GREATER: operation = ExpressionArithmetic.LESSER;  break;
+				case ExpressionArithmetic.GRE_EQU: operation = ExpressionArithmetic.LES_EQU; break;
+				case ExpressionArithmetic.LESSER:  operation = ExpressionArithmetic.GREATER; break;
+				case ExpressionArithmetic.LES_EQU: operation = ExpressionArithmetic.GRE_EQU; break;
+				case ExpressionArithmetic.EQUALS:  break;
+				default: return;
+			}
+			params = new Expression[]{ column, params[0] };
+		}
+		int colIdx = column.getColumnIndex();
+		Condition condition = columnConditions[colIdx];
+		if(condition == null){
+			condition = new Condition( column.getDataType() );
+		}
+		if(!condition.add( operation, params )){
+			return;
+		}
+		columnConditions[colIdx] = condition;
+	}
+
+
+	/**
+	 * Returns the column if the expression is a column of the table.
+	 */
+	private static ExpressionName getColumn(TableResult result, Expression expr){
+		if(expr.getType() == Expression.NAME && ((ExpressionName)expr).getDataSource() == result){
+			return (ExpressionName)expr;
+		}
+		return null;
+	}
+
+
+	/**
+	 * If the value of the expression is the same for all rows. This are values, parameters and calculations with it.
+	 */
+	private static boolean isConstant(Expression expr){
+		switch(expr.getType()){
+			case Expression.VALUE:
+				return true;
+			case Expression.FUNCTION:
+				if(!(expr instanceof ExpressionArithmetic) || expr instanceof ExpressionInSelect){
+					return false;
+				}
+				Expression[] params = expr.getParams();
+				for(int i=0; i<params.length; i++){
+					if(!isConstant( params[i] )){
+						return false;
+					}
+				}
+				return true;
+			default:
+				return false;
+		}
+	}
+
+
+	RowSource getFrom(){
+		return result;
+	}
+
+
+	/**
+	 * Check if the index include all columns of the table that are used in the query. It must be called before the
+	 * expressions are linked to a GroupResult.
+	 * @param expressions all expressions of the query
+	 */
+	final void setColumns(Expressions expressions){
+		boolean[] usedColumns = new boolean[result.getTableView().columns.size()];
+		for(int i=0; i<expressions.size(); i++){
+			addUsedColumns( expressions.get(i), usedColumns );
+		}
+		isCovering = index.isCovering( usedColumns );
+	}
+
+
+	/**
+	 * Read the values from the payload of a covering index instead of the rows of the table. This is only possible
+	 * for a read only ResultSet.
+	 * @param readOnly if the rows are not changed over this RowSource
+	 */
+	final void setIndexOnly(boolean readOnly){
+		isIndexOnly = readOnly && isCovering;
+	}
+
+
+	/**
+	 * Mark the columns of the table that are used in the expression.
+	 */
+	private void addUsedColumns(Expression expr, boolean[] usedColumns){
+		if(expr.getType() == Expression.NAME && ((ExpressionName)expr).getDataSource() == result){
+			usedColumns[ ((ExpressionName)expr).getColumnIndex() ] = true;
+		}
+		Expression[] params = expr.getParams();
+		if(params != null){
+			for(int i=0; i<params.length; i++){
+				addUsedColumns( params[i], usedColumns );
+			}
+		}
+	}
+
+
+	/**
+	 * Read the positions of the rows from the index. For an index-only scan the payloads are set.
+	 * @return the sorted positions or null if the rows can not be read over the index
+	 */
+	private long[] findRows() throws Exception{
+		SSConnection con = result.con;
+		Table table = (Table)result.getTableView();
+		if(con.isolationLevel <= Connection.TRANSACTION_READ_UNCOMMITTED || table.isBulkLoaded( con )){
+			return null;
+		}
+		int count = 0;
+		IndexRange[][] ranges = new IndexRange[conditions.length][];
+		while(count < conditions.length){
+			IndexRange[] columnRanges = conditions[count].createRanges();
+			if(columnRanges == null){
+				break;
+			}
+			ranges[count++] = columnRanges;
+		}
+		if(count == 0){
+			return null;
+		}
+		if(count < ranges.length){
+			IndexRange[][] temp = new IndexRange[count][];
+			System.arraycopy(ranges, 0, temp, 0, count);
+			ranges = temp;
+		}
+		LongList list = new LongList();
+		ArrayList payloadList = null;
+		if(isIndexOnly){
+			payloadList = new ArrayList();
+			if(!index.findRows( ranges, list, payloadList )){
+				// the index does not save the payload, for example in a read only database
+				payloadList = null;
+				list = new LongList();
+			}
+		}
+		if(payloadList == null && !index.findRows( ranges, list )){
+			return null;
+		}
+		// the rows that are changed but not in the index are read and checked with the Where, the new rows of the
+		// transaction are read after the rows of the index
+		LongList changed = new LongList();
+		con.addIndexChanges( table, changed );
+		VersionStore.Snapshot snapshot = con.getSnapshot( table.database );
+		if(snapshot != null){
+			// a change after the start of the snapshot is already in the index but the snapshot read the old row
+			table.database.getVersionStore().addChangedRows( snapshot, table, changed );
+		}
+		if(changed.size() > 0 && payloadList != null){
+			// the payload of the index is not valid for the changed rows
+			payloadList = null;
+			list = new LongList();
+			if(!index.findRows( ranges, list )){
+				return null;
+			}
+		}
+		if(payloadList != null){
+			return sortEntries( list, payloadList );
+		}
+		for(int i=0; i<changed.size(); i++){
+			list.add( changed.get(i) );
+		}
+		long[] positions = new long[list.size()];
+		for(int i=0; i<positions.length; i++){
+			positions[i] = list.get(i);
+		}
+		// read the rows in the order of the file, a row can be found multiple times with IN
+		Arrays.sort( positions );
+		int size = 0;
+		for(int i=0; i<positions.length; i++){
+			if(size == 0 || positions[size-1] != positions[i]){
+				positions[size++] = positions[i];
+			}
+		}
+		if(size < positions.length){
+			long[] temp = new long[size];
+			System.arraycopy(positions, 0, temp, 0, size);
+			positions = temp;
+		}
+		return positions;
+	}
+
+
+	/**
+	 * Sort the entries of an index-only scan by the position of the rows and set the payloads. A row can be found
+	 * multiple times with IN.
+	 * @return the sorted positions
+	 */
+	private long[] sortEntries(LongList list, ArrayList payloadList){
+		Entry[] entries = new Entry[list.size()];
+		for(int i=0; i<entries.length; i++){
+			entries[i] = new Entry( list.get(i), (byte[])payloadList.get(i) );
+		}
+		Arrays.sort( entries );
+		int size = 0;
+		for(int i=0; i<entries.length; i++){
+			if(size == 0 || entries[size-1].rowPosition != entries[i].rowPosition){
+				entries[size++] = entries[i];
+			}
+		}
+		long[] positions = new long[size];
+		payloads = new byte[size][];
+		for(int i=0; i<size; i++){
+			positions[i] = entries[i].rowPosition;
+			payloads[i] = entries[i].payload;
+		}
+		return positions;
+	}
+
+
+	final boolean isScrollable(){
+		return false;
+	}
+
+
+	final void beforeFirst() throws Exception{
+		result.beforeFirst();
+		idx = -1;
+		row = 0;
+	}
+
+
+	final boolean first() throws Exception{
+		if(rows == null){
+			return result.first();
+		}
+		beforeFirst();
+		return next();
+	}
+
+
+	final boolean next() throws Exception{
+		if(rows == null){
+			return result.next();
+		}
+		int count = rows.length + result.getInsertCount();
+		while(++idx < count){
+			if(payloads != null && idx < rows.length && payloads[idx] != null){
+				// index-only scan, the row is not read
+				if(result.moveToIndexRow( rows[idx], payloads[idx], index.getPayloadColumns() )){
+					row++;
+					return true;
+				}
+				continue;
+			}
+			long rowPosition = (idx < rows.length) ? rows[idx] : 0x4000000000000000L | (idx - rows.length);
+			if(result.moveToRowPosition( rowPosition )){
+				row++;
+				return true;
+			}
+		}
+		afterLast();
+		return false;
+	}
+
+
+	final void afterLast() throws Exception{
+		if(rows != null){
+			idx = rows.length + result.getInsertCount();
+			row = 0;
+		}
+		result.afterLast();
+	}
+
+
+	final int getRow() throws Exception{
+		return (rows == null) ? result.getRow() : row;
+	}
+
+
+	final long getRowPosition(){
+		return result.getRowPosition();
+	}
+
+
+	final void setRowPosition(long rowPosition) throws Exception{
+		if(rows != null){
+			if(rowPosition >= 0x4000000000000000L){
+				idx = rows.length + (int)(rowPosition & 0x3FFFFFFFFFFFFFFFL);
+			}else{
+				idx = Arrays.binarySearch( rows, rowPosition );
+				if(idx >= 0 && payloads != null && payloads[idx] != null && 
+						result.moveToIndexRow( rowPosition, payloads[idx], index.getPayloadColumns() )){
+					return;
+				}
+				if(idx < 0){
+					idx = -idx - 2; // the next() continue with the following row
+				}
+			}
+		}
+		result.setRowPosition( rowPosition );
+	}
+
+
+	final void nullRow(){
+		result.nullRow();
+		row = 0;
+	}
+
+
+	final void noRow(){
+		result.noRow();
+		row = 0;
+	}
+
+
+	final boolean rowInserted(){
+		return result.rowInserted();
+	}
+
+
+	final boolean rowDeleted(){
+		return result.rowDeleted();
+	}
+
+
+	final void execute() throws Exception{
+		result.execute();
+		payloads = null;
+		rows = findRows();
+		idx = -1;
+		row = 0;
+	}
+
+
+	boolean isExpressionsFromThisRowSource(Expressions columns){
+		return result.isExpressionsFromThisRowSource( columns );
+	}
+
+
+	/**
+	 * An entry of an index-only scan, it is sorted by the position of the row.
+	 */
+	private static final class Entry implements Comparable{
+
+		final long rowPosition;
+		final byte[] payload;
+
+
+		Entry(long rowPosition, byte[] payload){
+			this.rowPosition = rowPosition;
+			this.payload = payload;
+		}
+
+
+		public int compareTo(Object obj){
+			long other = ((Entry)obj).rowPosition;
+			return rowPosition < other ? -1 : (rowPosition == other ? 0 : 1);
+		}
+	}
+
+
+	/**
+	 * The conditions of the WHERE clause for a single column.
+	 */
+	private static final class Condition{
+
+		private final int dataType;
+		/** the values of a = or IN condition */
+		private Expression[] values;
+		/** the lower bound of a &gt;, &gt;= or BETWEEN condition */
+		private Expression from;
+		/** the upper bound of a &lt;, &lt;= or BETWEEN condition */
+		private Expression to;
+		/** the pattern of a LIKE condition */
+		private Expression like;
+
+
+		Condition(int dataType){
+			this.dataType = dataType;
+		}
+
+
+		/**
+		 * Add a comparison of the column with constant values.
+		 * @param operation the operation of the ExpressionArithmetic
+		 * @param params the column and the values
+		 * @return false if the comparison can not be used with an index
+		 */
+		boolean add(int operation, Expression[] params){
+			switch(dataType){
+				case SQLTokenizer.TINYINT:
+				case SQLTokenizer.SMALLINT:
+				case SQLTokenizer.INT:
+				case SQLTokenizer.BIGINT:
+				case SQLTokenizer.REAL:
+				case SQLTokenizer.FLOAT:
+				case SQLTokenizer.DOUBLE:
+				case SQLTokenizer.DATE:
+				case SQLTokenizer.TIME:
+				case SQLTokenizer.TIMESTAMP:
+				case SQLTokenizer.SMALLDATETIME:
+				case SQLTokenizer.MONEY:
+				case SQLTokenizer.SMALLMONEY:
+				case SQLTokenizer.VARCHAR:
+				case SQLTokenizer.NVARCHAR:
+				case SQLTokenizer.LONGVARCHAR:
+				case SQLTokenizer.LONGNVARCHAR:
+					break;
+				case SQLTokenizer.CHAR:
+				case SQLTokenizer.NCHAR:
+				case SQLTokenizer.BINARY:
+				case SQLTokenizer.VARBINARY:
+				case SQLTokenizer.LONGVARBINARY:
+				case SQLTokenizer.UNIQUEIDENTIFIER:
+					// the order of the index is not the order of the comparison
+					if(operation != ExpressionArithmetic.EQUALS && operation != ExpressionArithmetic.IN){
+						return false;
+					}
+					break;
+				default:
+					return false;
+			}
+			switch(operation){
+				case ExpressionArithmetic.EQUALS:
+				case ExpressionArithmetic.IN:
+					if(values == null){
+						values = new Expression[params.length - 1];
+						System.arraycopy(params, 1, values, 0, values.length);
+					}
+					return true;
+				case ExpressionArithmetic.GREATER:
+				case ExpressionArithmetic.GRE_EQU:
+					if(from == null){
+						from = params[1];
+					}
+					return true;
+				case ExpressionArithmetic.LESSER:
+				case ExpressionArithmetic.LES_EQU:
+					if(to == null){
+						to = params[1];
+					}
+					return true;
+				case ExpressionArithmetic.BETWEEN:
+					if(from == null && to == null){
+						from = params[1];
+						to = params[2];
+					}
+					return true;
+				case ExpressionArithmetic.LIKE:
+					switch(dataType){
+						case SQLTokenizer.VARCHAR:
+						case SQLTokenizer.NVARCHAR:
+						case SQLTokenizer.LONGVARCHAR:
+						case SQLTokenizer.LONGNVARCHAR:
+							if(like == null){
+								like = params[1];
+							}
+							return true;
+					}
+					return false;
+				default:
+					return false;
+			}
+		}
+
+
+		/**
+		 * Create the ranges for the current values of the parameters.
+		 * @return the alternative ranges of the column or null if the index can not be used for this column
+		 */
+		IndexRange[] createRanges() throws Exception{
+			if(values != null){
+				IndexRange[] ranges = new IndexRange[values.length];
+				for(int i=0; i<ranges.length; i++){
+					Expression lower = convert( values[i], false );
+					Expression upper = convert( values[i], true );
+					if(lower == null){
+						return null;
+					}
+					ranges[i] = new IndexRange( lower, upper, false );
+				}
+				return ranges;
+			}
+			if(like != null){
+				String pattern = like.getString();
+				if(pattern == null){
+					return null;
+				}
+				int length = 0;
+				while(length < pattern.length() && pattern.charAt(length) != '%' && pattern.charAt(length) != '_'){
+					length++;
+				}
+				if(length == 0){
+					return null;
+				}
+				Expression prefix = new ExpressionValue( pattern.substring(0, length), dataType );
+				return new IndexRange[]{ new IndexRange( prefix, prefix, true ) };
+			}
+			Expression lower = (from == null) ? null : convert( from, false );
+			Expression upper = (to   == null) ? null : convert( to, true );
+			if(lower == null && upper == null){
+				return null;
+			}
+			return new IndexRange[]{ new IndexRange( lower, upper, false ) };
+		}
+
+
+		/**
+		 * Convert a value to the data type of the column without changing its order to the other values.
+		 * @param value the value of the condition
+		 * @param isUpper if the value is used as upper bound
+		 * @return the value or null if it can not converted
+		 */
+		private Expression convert(Expression value, boolean isUpper) throws Exception{
+			if(value.isNull()){
+				return null;
+			}
+			int valueType = value.getDataType();
+			switch(dataType){
+				case SQLTokenizer.TINYINT:
+				case SQLTokenizer.SMALLINT:
+				case SQLTokenizer.INT:
+				case SQLTokenizer.BIGINT:{
+					switch(valueType){
+						case SQLTokenizer.TINYINT:
+						case SQLTokenizer.SMALLINT:
+						case SQLTokenizer.INT:
+						case SQLTokenizer.BIGINT:
+							break;
+						default:
+							return null;
+					}
+					long number = value.getLong();
+					switch(dataType){
+						case SQLTokenizer.TINYINT:
+							if(number < 0 || number > 255) return null;
+							break;
+						case SQLTokenizer.SMALLINT:
+							if(number < Short.MIN_VALUE || number > Short.MAX_VALUE) return null;
+							break;
+						case SQLTokenizer.INT:
+							if(number < Integer.MIN_VALUE || number > Integer.MAX_VALUE) return null;
+							break;
+						default:
+							return new ExpressionValue( new Long(number), dataType );
+					}
+					return new ExpressionValue( new Integer((int)number), dataType );
+				}
+				case SQLTokenizer.REAL:{
+					if(valueType != SQLTokenizer.REAL){
+						return null;
+					}
+					float number = value.getFloat();
+					if(number == 0){
+						// -0.0 and 0.0 are equals but have different keys
+						number = isUpper ? 0.0F : -0.0F;
+					}
+					return new ExpressionValue( new Float(number), dataType );
+				}
+				case SQLTokenizer.FLOAT:
+				case SQLTokenizer.DOUBLE:{
+					if(valueType != SQLTokenizer.FLOAT && valueType != SQLTokenizer.DOUBLE){
+						return null;
+					}
+					double number = value.getDouble();
+					if(number == 0){
+						number = isUpper ? 0.0 : -0.0;
+					}
+					return new ExpressionValue( new Double(number), dataType );
+				}
+				case SQLTokenizer.CHAR:
+				case SQLTokenizer.NCHAR:
+				case SQLTokenizer.VARCHAR:
+				case SQLTokenizer.NVARCHAR:
+				case SQLTokenizer.LONGVARCHAR:
+				case SQLTokenizer.LONGNVARCHAR:
+					switch(valueType){
+						case SQLTokenizer.CHAR:
+						case SQLTokenizer.NCHAR:
+						case SQLTokenizer.VARCHAR:
+						case SQLTokenizer.NVARCHAR:
+						case SQLTokenizer.LONGVARCHAR:
+						case SQLTokenizer.LONGNVARCHAR:
+							return new ExpressionValue( value.getString(), dataType );
+					}
+					return null;
+				case SQLTokenizer.BINARY:
+				case SQLTokenizer.VARBINARY:
+				case SQLTokenizer.LONGVARBINARY:
+					switch(valueType){
+						case SQLTokenizer.BINARY:
+						case SQLTokenizer.VARBINARY:
+						case SQLTokenizer.LONGVARBINARY:
+							return new ExpressionValue( value.getBytes(), dataType );
+					}
+					return null;
+				default:
+					if(valueType != dataType){
+						return null;
+					}
+					return new ExpressionValue( value.getObject(), dataType );
+			}
+		}
+	}
+}
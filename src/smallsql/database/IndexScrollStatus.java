@@ -53,10 +53,19 @@ class IndexScrollStatus {
 	}
 	
 	
+	/**
+	 * Constructor for a subclass that scroll through another data structure like the BTreeScrollStatus.
+	 */
+	IndexScrollStatus(Expressions expressions){
+		this.rootPage	= null;
+		this.expressions= expressions;
+	}
+	
+	
 	/**
 	 * Reset this index to start a new scan of it with nextRowoffset()
 	 */
-	final void reset(){
+	void reset(){
 		nodeStack.clear();
 		boolean asc = (expressions.get(0).getAlias() != SQLTokenizer.DESC_STR);
 		nodeStack.push( new IndexNodeScrollStatus(rootPage, asc, true, 0) );
@@ -67,7 +76,7 @@ class IndexScrollStatus {
 	 * Return the next rowOffset of this index. You need to call reset() before the first use. 
 	 * @param next if true the next rowOffset else the previous rowOffset
 	 */
-	final long getRowOffset( boolean scroll){
+	long getRowOffset( boolean scroll){
 		if(longList != null){
 			long rowOffset = scroll ? 
 								longList.getNext(longListEnum) : 
@@ -151,7 +160,7 @@ class IndexScrollStatus {
 	 * Move the index after the last position. The next call nextRowOffset() returns a -1
 	 *
 	 */
-	final void afterLast(){
+	void afterLast(){
 		longList = null;
 		nodeStack.setSize(1);
 		((IndexNodeScrollStatus)nodeStack.peek()).afterLast();
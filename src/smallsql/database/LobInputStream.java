@@ -0,0 +1,196 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * -------------------
+ * LobInputStream.java
+ * -------------------
+ */
+package smallsql.database;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import smallsql.database.language.Language;
+
+/**
+ * Read a LOB value that is saved in chunks in the LOB file of a table. The value is described
+ * with a directory page that include the total length and the file offsets of all chunks.
+ * Only the current chunk is hold in memory. The layout of the directory page is:
+ * <li>8 byte - total length in bytes
+ * <li>4 byte - count of chunks
+ * <li>8 byte - file offset of every chunk
+ * <p>
+ * Every chunk is a page with a 4 byte length followed by the data.
+ */
+final class LobInputStream extends InputStream {
+
+    private final Table table;
+    private final SSConnection con;
+    private final long length;
+    private final long[] chunks;
+    /** the index of the next chunk that must be loaded */
+    private int nextChunk;
+    private byte[] chunk;
+    private int chunkOffset;
+    private long position;
+    private long mark;
+
+
+    LobInputStream(Table table, SSConnection con, long directoryPos) throws Exception{
+        this.table = table;
+        this.con = con;
+        StoreImpl store = table.getLobStore( con, directoryPos, SQLTokenizer.SELECT );
+        if(store == null) throw SmallSQLException.create(Language.LOB_DELETED);
+        length = store.readLong();
+        chunks = new long[store.readInt()];
+        for(int i=0; i<chunks.length; i++){
+            chunks[i] = store.readLong();
+        }
+    }
+
+
+    /**
+     * The length of the LOB value in bytes.
+     */
+    long length(){
+        return length;
+    }
+
+
+    /**
+     * Load the next chunk.
+     * @return false if the end of the value is reached
+     */
+    private boolean nextChunk() throws IOException{
+        while(chunk == null || chunkOffset >= chunk.length){
+            if(nextChunk >= chunks.length){
+                return false;
+            }
+            try{
+                StoreImpl store = table.getLobStore( con, chunks[nextChunk++], SQLTokenizer.SELECT );
+                if(store == null) throw SmallSQLException.create(Language.LOB_DELETED);
+                chunk = store.readBytes( store.readInt() );
+                chunkOffset = 0;
+            }catch(IOException e){
+                throw e;
+            }catch(Exception e){
+                IOException ex = new IOException(e.getMessage());
+                ex.initCause(e);
+                throw ex;
+            }
+        }
+        return true;
+    }
+
+
+    @Override
+    public int read() throws IOException{
+        if(!nextChunk()){
+            return -1;
+        }
+        position++;
+        return chunk[ chunkOffset++ ] & 0xFF;
+    }
+
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException{
+        if(len == 0){
+            return 0;
+        }
+        if(!nextChunk()){
+            return -1;
+        }
+        int count = Math.min( len, chunk.length - chunkOffset );
+        System.arraycopy( chunk, chunkOffset, b, off, count );
+        chunkOffset += count;
+        position += count;
+        return count;
+    }
+
+
+    @Override
+    public long skip(long n) throws IOException{
+        long newPosition = Math.min( length, position + Math.max( n, 0 ) );
+        long skipped = newPosition - position;
+        seek( newPosition );
+        return skipped;
+    }
+
+
+    /**
+     * Set the read position. All chunks have the same size with the exception of the last. That the
+     * chunk of a position can be calculated without reading the chunks before.
+     */
+    private void seek(long newPosition) throws IOException{
+        if(newPosition == position){
+            return;
+        }
+        long chunkIdx = newPosition / StoreImpl.LOB_CHUNK_SIZE;
+        if(chunk != null && chunkIdx == nextChunk - 1){
+            chunkOffset += (int)(newPosition - position);
+        }else{
+            chunk = null;
+            nextChunk = (int)chunkIdx;
+            if(nextChunk < chunks.length){
+                nextChunk();
+                chunkOffset = (int)(newPosition % StoreImpl.LOB_CHUNK_SIZE);
+            }
+        }
+        position = newPosition;
+    }
+
+
+    @Override
+    public int available(){
+        return chunk == null ? 0 : chunk.length - chunkOffset;
+    }
+
+
+    @Override
+    public boolean markSupported(){
+        return true;
+    }
+
+
+    @Override
+    public synchronized void mark(int readlimit){
+        mark = position;
+    }
+
+
+    @Override
+    public synchronized void reset() throws IOException{
+        seek( mark );
+    }
+
+
+    @Override
+    public void close(){
+        chunk = null;
+        nextChunk = chunks.length;
+    }
+}
@@ -42,7 +42,12 @@ class Lobs extends Table {
 
 	Lobs(Table table) throws Exception{
 		super(table.database, table.name);
-		raFile = Utils.openRaFile( getFile(database), database.isReadOnly() );
+		formatVersion = table.formatVersion;
+		raFile = database.openFile( getFile(database) );
+		if(database.isMemoryMapped()){
+		    mappedFile = new MappedFile(raFile);
+		}
+		loadDataEnd(0);
 	}
 	
 	
@@ -0,0 +1,248 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * LockTable.java
+ * ---------------
+ */
+package smallsql.database;
+
+import java.util.List;
+
+/**
+ * The page locks of a table. The locks are saved in hash tables with primitive long keys, the file offset of the
+ * page. The locks are split in stripes. Every stripe has its own monitor. Any access to the locks of a page must
+ * be synchronized on the stripe of the page. A thread that wait for a page lock wait on the monitor of the
+ * stripe. The release of a page lock wake up only the threads of the same stripe.<p>
+ *
+ * The value of a page is the first TableStorePage of a linked list, the locks of the different connections.
+ */
+final class LockTable {
+
+    private static final int STRIPE_COUNT = 16; // must be a power of 2
+    private static final int STRIPE_BITS = 4;
+
+    private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+
+    LockTable(){
+        for(int i=0; i<STRIPE_COUNT; i++){
+            stripes[i] = new Stripe();
+        }
+    }
+
+
+    /**
+     * Get the stripe of a page.
+     * @param page the file offset of the page
+     */
+    Stripe getStripe(long page){
+        return stripes[ hash(page) & (STRIPE_COUNT - 1) ];
+    }
+
+
+    /**
+     * Check if there are locks in any stripe.
+     * @param con the connection of that the locks are ignored, or null to find the locks of all connections
+     * @param lockType the minimal lock type, LOCK_READ or LOCK_WRITE
+     */
+    boolean hasLocks(SSConnection con, int lockType){
+        for(int i=0; i<STRIPE_COUNT; i++){
+            Stripe stripe = stripes[i];
+            synchronized(stripe){
+                if(stripe.hasLocks(con, lockType)){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Collect the connections of the locks in all stripes. It is used to find the blockers of a waiting lock request.
+     * @param owners the list to which the connections are added, it can include duplicates
+     * @param con the connection of that the locks are ignored, or null to find the locks of all connections
+     * @param lockType the minimal lock type, LOCK_READ or LOCK_WRITE
+     */
+    void addLockOwners(List owners, SSConnection con, int lockType){
+        for(int i=0; i<STRIPE_COUNT; i++){
+            Stripe stripe = stripes[i];
+            synchronized(stripe){
+                stripe.addLockOwners(owners, con, lockType);
+            }
+        }
+    }
+
+
+    /**
+     * Wake up the threads of all stripes. It is needed after a change of a lock of the complete table.
+     */
+    void notifyAllStripes(){
+        for(int i=0; i<STRIPE_COUNT; i++){
+            Stripe stripe = stripes[i];
+            synchronized(stripe){
+                stripe.notifyAll();
+            }
+        }
+    }
+
+
+    /**
+     * Spread the bits of a file offset. The offsets of the pages are not uniform distributed in the lower bits.
+     */
+    private static int hash(long page){
+        int h = (int)(page ^ (page >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+
+    /**
+     * A hash table with open addressing and linear probing. The caller must synchronize on the Stripe.
+     */
+    static final class Stripe{
+
+        private static final int INITIAL_SIZE = 16;
+
+        private long[] keys = new long[INITIAL_SIZE];
+        private TableStorePage[] values = new TableStorePage[INITIAL_SIZE];
+        private int size;
+
+
+        TableStorePage get(long page){
+            int mask = values.length - 1;
+            for(int i = slot(page, mask); values[i] != null; i = (i + 1) & mask){
+                if(keys[i] == page){
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+
+        void put(long page, TableStorePage lock){
+            if((size + 1) * 2 > values.length){
+                resize(values.length * 2);
+            }
+            int mask = values.length - 1;
+            int i = slot(page, mask);
+            for(; values[i] != null; i = (i + 1) & mask){
+                if(keys[i] == page){
+                    values[i] = lock;
+                    return;
+                }
+            }
+            keys[i] = page;
+            values[i] = lock;
+            size++;
+        }
+
+
+        void remove(long page){
+            int mask = values.length - 1;
+            int i = slot(page, mask);
+            while(values[i] != null && keys[i] != page){
+                i = (i + 1) & mask;
+            }
+            if(values[i] == null){
+                return;
+            }
+            if(--size == 0 && values.length > INITIAL_SIZE){
+                // release the memory of a large transaction
+                keys = new long[INITIAL_SIZE];
+                values = new TableStorePage[INITIAL_SIZE];
+                return;
+            }
+            // move the following entries of the cluster back that the search does not stop at the free slot
+            int free = i;
+            for(i = (i + 1) & mask; values[i] != null; i = (i + 1) & mask){
+                int home = slot(keys[i], mask);
+                if(free <= i ? (home <= free || home > i) : (home <= free && home > i)){
+                    keys[free] = keys[i];
+                    values[free] = values[i];
+                    free = i;
+                }
+            }
+            values[free] = null;
+        }
+
+
+        int size(){
+            return size;
+        }
+
+
+        boolean hasLocks(SSConnection con, int lockType){
+            for(int i=0; i<values.length; i++){
+                for(TableStorePage lock = values[i]; lock != null; lock = lock.nextLock){
+                    if(lock.con != con && lock.lockType >= lockType){
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+
+        void addLockOwners(List owners, SSConnection con, int lockType){
+            for(int i=0; i<values.length; i++){
+                for(TableStorePage lock = values[i]; lock != null; lock = lock.nextLock){
+                    if(lock.con != con && lock.lockType >= lockType){
+                        owners.add(lock.con);
+                    }
+                }
+            }
+        }
+
+
+        private void resize(int newSize){
+            long[] oldKeys = keys;
+            TableStorePage[] oldValues = values;
+            keys = new long[newSize];
+            values = new TableStorePage[newSize];
+            int mask = newSize - 1;
+            for(int k=0; k<oldValues.length; k++){
+                if(oldValues[k] != null){
+                    int i = slot(oldKeys[k], mask);
+                    while(values[i] != null){
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[k];
+                    values[i] = oldValues[k];
+                }
+            }
+        }
+
+
+        /**
+         * The first slot of a page. The lower bits of the hash select the stripe.
+         */
+        private static int slot(long page, int mask){
+            return (hash(page) >>> STRIPE_BITS) & mask;
+        }
+    }
+}
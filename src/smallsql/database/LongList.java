@@ -72,6 +72,17 @@ class LongList {
 	}
 	
 
+	/**
+	 * Remove the last value of the list.
+	 * @return the removed value
+	 */
+	final long removeLast(){
+		if (size == 0)
+			throw new IndexOutOfBoundsException("Index: -1, Size: 0");
+		return data[ --size ];
+	}
+	
+
 	final void clear(){
 		size = 0;
 	}
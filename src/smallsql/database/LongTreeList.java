@@ -181,8 +181,8 @@ final class LongTreeList {
 	 * Restore a LongTreeList from a MemoryStream.
 	 */
 	LongTreeList(StoreImpl input){
-		int readSize = input.readInt();
-		data     = input.readBytes(readSize);
+		size = input.readInt();
+		data = input.readBytes(size);
 	}
 	
 	
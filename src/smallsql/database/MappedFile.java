@@ -0,0 +1,128 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * MappedFile.java
+ * ---------------
+ */
+package smallsql.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read only memory mapping of a complete file. It is used for databases that are opened with the
+ * properties readonly=true and mmap=true. The rows are read in place from the mapping without system calls.<p>
+ * 
+ * A MappedByteBuffer can not be larger as 2 GB. Larger files are mapped in multiple chunks.
+ */
+final class MappedFile {
+
+    private static final int CHUNK_BITS = 30;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS; // 1 GB
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final MappedByteBuffer[] chunks;
+    private final long size;
+
+
+    MappedFile(FileChannel file) throws IOException{
+        size = file.size();
+        int count = (int)((size + CHUNK_MASK) >> CHUNK_BITS);
+        chunks = new MappedByteBuffer[count];
+        for(int i=0; i<count; i++){
+            long position = (long)i << CHUNK_BITS;
+            chunks[i] = file.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size - position));
+        }
+    }
+
+
+    /**
+     * The size of the file at the time of mapping.
+     */
+    long size(){
+        return size;
+    }
+
+
+    /**
+     * Read an int value at the given file position.
+     */
+    int getInt(long position){
+        int offset = (int)(position & CHUNK_MASK);
+        if(offset <= CHUNK_SIZE - 4){
+            // absolute get methods are thread safe
+            return chunks[(int)(position >> CHUNK_BITS)].getInt(offset);
+        }
+        byte[] bytes = new byte[4];
+        read(position, bytes, 0, 4);
+        return Utils.bytes2int(bytes);
+    }
+
+
+    /**
+     * Get the mapped chunk that include the bytes from position to position + length. The bytes can be read in
+     * place with the absolute get methods at the index getOffset(position).
+     * @return the chunk or null if the bytes span two chunks
+     */
+    ByteBuffer getChunk(long position, int length){
+        if(getOffset(position) > CHUNK_SIZE - length){
+            return null;
+        }
+        return chunks[(int)(position >> CHUNK_BITS)];
+    }
+
+
+    /**
+     * The index of a file position in its chunk.
+     */
+    static int getOffset(long position){
+        return (int)(position & CHUNK_MASK);
+    }
+
+
+    /**
+     * Copy bytes from the mapping. The data can span multiple chunks.
+     * @return the count of copied bytes. It is smaller as length if the end of file is reached.
+     */
+    int read(long position, byte[] dst, int off, int length){
+        length = (int)Math.max(0, Math.min(length, size - position));
+        int count = 0;
+        while(count < length){
+            long pos = position + count;
+            int offset = (int)(pos & CHUNK_MASK);
+            int len = Math.min(length - count, CHUNK_SIZE - offset);
+            // a duplicate that the position of the shared buffer is not changed
+            ByteBuffer buffer = chunks[(int)(pos >> CHUNK_BITS)].duplicate();
+            buffer.position(offset);
+            buffer.get(dst, off + count, len);
+            count += len;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,251 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * MemoryFile.java
+ * ---------------
+ */
+package smallsql.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * The content of a file of an in-memory database. The data are hold in a byte array on the heap.
+ * Every open() return a new FileChannel for the same data. The data live as long as the MemoryFile
+ * is referenced from its Database, closing a channel does not delete it.
+ */
+final class MemoryFile {
+
+    private byte[] data = new byte[1024];
+    private int size;
+
+
+    /**
+     * Create a new FileChannel for this file with its own position.
+     */
+    FileChannel open(){
+        return new Channel();
+    }
+
+
+    private synchronized int read(ByteBuffer dst, long position){
+        if(position >= size){
+            return -1;
+        }
+        int count = (int)Math.min( dst.remaining(), size - position );
+        dst.put( data, (int)position, count );
+        return count;
+    }
+
+
+    private synchronized int write(ByteBuffer src, long position) throws IOException{
+        int count = src.remaining();
+        long end = position + count;
+        if(end > Integer.MAX_VALUE){
+            throw new IOException("In-memory file too large");
+        }
+        if(end > data.length){
+            byte[] newData = new byte[(int)Math.min( Integer.MAX_VALUE, Math.max( end, data.length * 2L ) )];
+            System.arraycopy( data, 0, newData, 0, size );
+            data = newData;
+        }
+        if(position > size){
+            // the hole between the old end and the position has to be zero
+            Arrays.fill( data, size, (int)position, (byte)0 );
+        }
+        src.get( data, (int)position, count );
+        size = Math.max( size, (int)end );
+        return count;
+    }
+
+
+    private synchronized long size(){
+        return size;
+    }
+
+
+    private synchronized void truncate(long newSize){
+        if(newSize < size){
+            size = (int)newSize;
+        }
+    }
+
+
+    /**
+     * A FileChannel that read and write the data of the MemoryFile.
+     */
+    private final class Channel extends FileChannel {
+
+        private long position;
+
+
+        public int read(ByteBuffer dst) throws IOException{
+            ensureOpen();
+            int count = MemoryFile.this.read( dst, position );
+            if(count > 0){
+                position += count;
+            }
+            return count;
+        }
+
+
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException{
+            long total = 0;
+            for(int i=offset; i<offset + length; i++){
+                int count = read( dsts[i] );
+                if(count < 0){
+                    return total == 0 ? -1 : total;
+                }
+                total += count;
+                if(dsts[i].hasRemaining()){
+                    break;
+                }
+            }
+            return total;
+        }
+
+
+        public int write(ByteBuffer src) throws IOException{
+            ensureOpen();
+            int count = MemoryFile.this.write( src, position );
+            position += count;
+            return count;
+        }
+
+
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException{
+            long total = 0;
+            for(int i=offset; i<offset + length; i++){
+                total += write( srcs[i] );
+            }
+            return total;
+        }
+
+
+        public long position() throws IOException{
+            ensureOpen();
+            return position;
+        }
+
+
+        public FileChannel position(long newPosition) throws IOException{
+            ensureOpen();
+            if(newPosition < 0){
+                throw new IllegalArgumentException();
+            }
+            position = newPosition;
+            return this;
+        }
+
+
+        public long size() throws IOException{
+            ensureOpen();
+            return MemoryFile.this.size();
+        }
+
+
+        public FileChannel truncate(long newSize) throws IOException{
+            ensureOpen();
+            MemoryFile.this.truncate( newSize );
+            if(position > newSize){
+                position = newSize;
+            }
+            return this;
+        }
+
+
+        public void force(boolean metaData) throws IOException{
+            ensureOpen();
+            // there is nothing to synchronize
+        }
+
+
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException{
+            ByteBuffer buffer = ByteBuffer.allocate( (int)Math.min( count, Math.max( 0, size() - position ) ) );
+            read( buffer, position );
+            buffer.flip();
+            return target.write( buffer );
+        }
+
+
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException{
+            ByteBuffer buffer = ByteBuffer.allocate( (int)Math.min( count, Integer.MAX_VALUE ) );
+            int read = src.read( buffer );
+            if(read <= 0){
+                return 0;
+            }
+            buffer.flip();
+            return write( buffer, position );
+        }
+
+
+        public int read(ByteBuffer dst, long position) throws IOException{
+            ensureOpen();
+            return MemoryFile.this.read( dst, position );
+        }
+
+
+        public int write(ByteBuffer src, long position) throws IOException{
+            ensureOpen();
+            return MemoryFile.this.write( src, position );
+        }
+
+
+        public MappedByteBuffer map(MapMode mode, long position, long size){
+            throw new UnsupportedOperationException("In-memory files can not be mapped");
+        }
+
+
+        public FileLock lock(long position, long size, boolean shared){
+            throw new UnsupportedOperationException("In-memory files can not be locked");
+        }
+
+
+        public FileLock tryLock(long position, long size, boolean shared){
+            throw new UnsupportedOperationException("In-memory files can not be locked");
+        }
+
+
+        protected void implCloseChannel(){
+            // the data are hold by the MemoryFile
+        }
+
+
+        private void ensureOpen() throws IOException{
+            if(!isOpen()){
+                throw new ClosedChannelException();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * -------------
+ * PagePool.java
+ * -------------
+ */
+package smallsql.database;
+
+import java.util.ArrayList;
+
+/**
+ * A free list of the page buffers that are used to write new rows. Without it every inserted row allocate
+ * a new buffer that live until the end of the transaction. A buffer is given back after the page was committed.
+ * The pool is shared between all connections of a Database.<p>
+ *
+ * A buffer in the pool is never referenced from any other object. A page that can be read from another
+ * StoreImpl must be copied before its buffer is given back, see StoreImpl.recreateStore().
+ */
+final class PagePool {
+
+    static final int DEFAULT_SIZE = 2 * 1024 * 1024; // 2 MB
+
+    /** the free buffers, every buffer has the size StoreImpl.DEFAULT_PAGE_SIZE */
+    private final ArrayList pages = new ArrayList();
+    private final int maxCount;
+
+
+    /**
+     * Create a new PagePool.
+     * @param maxSize the memory budget in bytes for the free buffers. A value <= 0 disable the pooling.
+     */
+    PagePool(long maxSize){
+        maxCount = (int)Math.min( Integer.MAX_VALUE, Math.max( 0, maxSize / StoreImpl.DEFAULT_PAGE_SIZE ) );
+    }
+
+
+    /**
+     * Get a free buffer or create a new one. The content of a reused buffer is undefined.
+     */
+    byte[] get(){
+        synchronized(pages){
+            int count = pages.size();
+            if(count > 0){
+                return (byte[])pages.remove(count - 1);
+            }
+        }
+        return new byte[StoreImpl.DEFAULT_PAGE_SIZE];
+    }
+
+
+    /**
+     * Give a buffer back that is not referenced anymore. If the pool is full then it is left to the garbage collector.
+     */
+    void release(byte[] page){
+        if(page.length != StoreImpl.DEFAULT_PAGE_SIZE){
+            return;
+        }
+        synchronized(pages){
+            if(pages.size() < maxCount){
+                pages.add(page);
+            }
+        }
+    }
+}
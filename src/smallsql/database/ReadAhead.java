@@ -0,0 +1,100 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * --------------
+ * ReadAhead.java
+ * --------------
+ */
+package smallsql.database;
+
+import java.util.LinkedList;
+
+/**
+ * A background thread that read the next block of sequential table scans. There is only one thread per
+ * Database. It is started on the first request and stopped if the Database is closed.
+ */
+final class ReadAhead implements Runnable {
+
+    private final String name;
+    /** The ScanBuffers that wait for a read, in the order of the requests */
+    private final LinkedList queue = new LinkedList();
+    private Thread thread;
+    private boolean closed;
+
+
+    ReadAhead(String name){
+        this.name = name;
+    }
+
+
+    /**
+     * Add a request for the next block of the ScanBuffer.
+     */
+    synchronized void request(ScanBuffer buffer){
+        if(closed){
+            // the scan is continued with synchronous reads
+            buffer.readNextBlock();
+            return;
+        }
+        queue.add(buffer);
+        if(thread == null){
+            thread = new Thread(this, "SmallSQL read-ahead " + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        notify();
+    }
+
+
+    public void run(){
+        while(true){
+            ScanBuffer buffer;
+            synchronized(this){
+                while(queue.isEmpty() && !closed){
+                    try{
+                        wait();
+                    }catch(InterruptedException e){
+                        // ignore it, the thread is stopped with close()
+                    }
+                }
+                if(queue.isEmpty()){
+                    return;
+                }
+                buffer = (ScanBuffer)queue.removeFirst();
+            }
+            buffer.readNextBlock();
+        }
+    }
+
+
+    /**
+     * Stop the thread. Pending requests are finished before.
+     */
+    synchronized void close(){
+        closed = true;
+        notify();
+    }
+}
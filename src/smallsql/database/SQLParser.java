@@ -87,6 +87,10 @@ final class SQLParser {
                     return execute();
             case SQLTokenizer.TRUNCATE:
             		return truncate();
+            case SQLTokenizer.VACUUM:
+            		return vacuum();
+            case SQLTokenizer.COPY:
+            		return copy();
             default:
                     throw new Error();
         }
@@ -466,12 +470,89 @@ Switch: while(true){
 	}
 
 
+    /**
+     * VACUUM [table]
+     */
+    private Command vacuum() throws SQLException{
+        if(nextToken() == null){
+            return new CommandVacuum( con.log, null, null );
+        }
+        previousToken();
+        String catalog;
+        String tableName = catalog = nextIdentifier();
+        tableName = nextIdentiferPart(tableName);
+        if(tableName == catalog) catalog = null;
+        return new CommandVacuum( con.log, catalog, tableName );
+    }
+
+
+    /**
+     * COPY table [(column, ...)] FROM {'file' | ?} [DELIMITER 'c'] [HEADER]
+     */
+    private Command copy() throws SQLException{
+        String catalog;
+        String tableName = catalog = nextIdentifier();
+        tableName = nextIdentiferPart(tableName);
+        if(tableName == catalog) catalog = null;
+        CommandCopy cmd = new CommandCopy( con.log, catalog, tableName );
+
+        SQLToken token = nextToken(MISSING_PARENTHESIS_L_FROM);
+        if(token.value == SQLTokenizer.PARENTHESIS_L){
+            do{
+                cmd.addColumn( nextIdentifier() );
+                token = nextToken(MISSING_COMMA_PARENTHESIS);
+            }while(token.value == SQLTokenizer.COMMA);
+            nextToken(MISSING_FROM);
+        }
+        cmd.source = expression( cmd, 0 );
+
+        while(true){
+            token = nextToken();
+            if(token == null){
+                return cmd;
+            }
+            String option = token.getName(sql);
+            if(token.value == SQLTokenizer.VALUE && "DELIMITER".equalsIgnoreCase(option)){
+                token = nextToken(MISSING_EXPRESSION);
+                if(token.value != SQLTokenizer.STRING){
+                    throw createSyntaxError( token, MISSING_EXPRESSION );
+                }
+                String delimiter = token.getName(null);
+                if(delimiter.length() != 1){
+                    throw SmallSQLException.create(Language.CSV_DELIMITER, delimiter);
+                }
+                cmd.delimiter = delimiter.charAt(0);
+            }else
+            if(token.value == SQLTokenizer.VALUE && "HEADER".equalsIgnoreCase(option)){
+                cmd.header = true;
+            }else{
+                previousToken();
+                return cmd;
+            }
+        }
+    }
+
+
     private Command insert() throws SQLException{
         SQLToken token = nextToken( MISSING_INTO );
         CommandInsert cmd = new CommandInsert( con.log, nextIdentifier() );
 
 		int parthesisCount = 0;
 
+		token = nextToken();
+		if(token != null && token.value == SQLTokenizer.VALUE && "WITH".equalsIgnoreCase(token.getName(sql))){
+			// table hint for a direct-path insert
+			nextToken(MISSING_PARENTHESIS_L);
+			token = nextToken(MISSING_IDENTIFIER);
+			String hint = token.getName(sql);
+			if(!"TABLOCK".equalsIgnoreCase(hint)){
+				throw createSyntaxError( token, Language.STXADD_IDENT_WRONG, hint );
+			}
+			nextToken(MISSING_PARENTHESIS_R);
+			cmd.tableLock = true;
+		}else{
+			previousToken();
+		}
 		token = nextToken(MISSING_PARENTHESIS_VALUES_SELECT);
         if(token.value == SQLTokenizer.PARENTHESIS_L){
         	token = nextToken(MISSING_EXPRESSION);
@@ -558,7 +639,7 @@ Switch: while(true)
                 case SQLTokenizer.UNIQUE:
                     do{
                         token = nextToken(COMMANDS_CREATE_UNIQUE);
-                    }while(token.value == SQLTokenizer.INDEX);
+                    }while(token.value != SQLTokenizer.INDEX);
                     return createIndex(true);
                 case SQLTokenizer.NONCLUSTERED:
                 case SQLTokenizer.CLUSTERED:
@@ -888,15 +969,36 @@ Switch: while(true)
         Expressions expressions = new Expressions();
         Strings columns = new Strings();
         expressionDefList( cmd, expressions, columns );
+        boolean isBTree = false;
+        Strings includeColumns = null;
+        while(true){
+            SQLToken token = nextToken();
+            if(token != null && token.value == SQLTokenizer.USING && !isBTree){
+                String method = nextIdentifier();
+                if(!"BTREE".equalsIgnoreCase(method)){
+                    Object[] param = { "USING " + method };
+                    throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, param);
+                }
+                isBTree = true;
+            }else if(token != null && token.value == SQLTokenizer.VALUE && includeColumns == null && "INCLUDE".equalsIgnoreCase(token.getName(sql))){
+                // the columns of a covering index, the values are saved in the index but are not part of the key
+                includeColumns = new Strings();
+                expressionDefList( cmd, new Expressions(), includeColumns );
+            }else{
+                previousToken();
+                break;
+            }
+        }
         IndexDescription indexDesc = new IndexDescription( 
                 indexName, 
                 tableName, 
                 unique ? SQLTokenizer.UNIQUE : SQLTokenizer.INDEX, 
                         expressions, 
-                        columns);
-        //TODO Create Index
-		Object[] param = { "Create Index" };
-        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, param);
+                        columns,
+                        isBTree,
+                        includeColumns);
+        cmd.addIndex( indexDesc );
+        return cmd;
     }
 
     private CommandCreateDatabase createProcedure() throws SQLException{
@@ -976,6 +1078,8 @@ Switch: while(true)
         switch(token.value){
             case SQLTokenizer.TRANSACTION:
                 return setTransaction();
+            case SQLTokenizer.LOCK_TIMEOUT:
+                return setLockTimeout();
             default:
                 throw new Error();
         }
@@ -1014,6 +1118,25 @@ Switch: while(true)
 
     }
 
+    /**
+     * SET LOCK_TIMEOUT milliseconds, a negative value wait without timeout
+     */
+    private CommandSet setLockTimeout() throws SQLException{
+        SQLToken token = nextToken( MISSING_EXPRESSION );
+        boolean negative = token.value == SQLTokenizer.MINUS;
+        if(negative){
+            token = nextToken( MISSING_EXPRESSION );
+        }
+        CommandSet cmd = new CommandSet( con.log, SQLTokenizer.LOCK_TIMEOUT );
+        try{
+            int timeout = Integer.parseInt(token.getName(sql));
+            cmd.lockTimeout = negative ? -timeout : timeout;
+        }catch(NumberFormatException e){
+            throw createSyntaxError(token, Language.STXADD_NOT_NUMBER, token.getName(sql));
+        }
+        return cmd;
+    }
+
     private Command execute() throws SQLException{
         //TODO Execute
         throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "Execute");
@@ -1951,12 +2074,12 @@ Switch: while(true)
     }
 
 
-    private static final int[] COMMANDS = {SQLTokenizer.SELECT, SQLTokenizer.DELETE, SQLTokenizer.INSERT, SQLTokenizer.UPDATE, SQLTokenizer.CREATE, SQLTokenizer.DROP, SQLTokenizer.ALTER, SQLTokenizer.SET, SQLTokenizer.USE, SQLTokenizer.EXECUTE, SQLTokenizer.TRUNCATE};
+    private static final int[] COMMANDS = {SQLTokenizer.SELECT, SQLTokenizer.DELETE, SQLTokenizer.INSERT, SQLTokenizer.UPDATE, SQLTokenizer.CREATE, SQLTokenizer.DROP, SQLTokenizer.ALTER, SQLTokenizer.SET, SQLTokenizer.USE, SQLTokenizer.EXECUTE, SQLTokenizer.TRUNCATE, SQLTokenizer.VACUUM, SQLTokenizer.COPY};
     private static final int[] COMMANDS_ESCAPE = {SQLTokenizer.D, SQLTokenizer.T, SQLTokenizer.TS, SQLTokenizer.FN, SQLTokenizer.CALL};
     private static final int[] COMMANDS_ALTER = {SQLTokenizer.DATABASE, SQLTokenizer.TABLE, SQLTokenizer.VIEW,  SQLTokenizer.PROCEDURE, };
     private static final int[] COMMANDS_CREATE = {SQLTokenizer.DATABASE, SQLTokenizer.TABLE, SQLTokenizer.VIEW, SQLTokenizer.INDEX, SQLTokenizer.PROCEDURE, SQLTokenizer.UNIQUE, SQLTokenizer.CLUSTERED, SQLTokenizer.NONCLUSTERED};
     private static final int[] COMMANDS_DROP = {SQLTokenizer.DATABASE, SQLTokenizer.TABLE, SQLTokenizer.VIEW, SQLTokenizer.INDEX, SQLTokenizer.PROCEDURE};
-    private static final int[] COMMANDS_SET = {SQLTokenizer.TRANSACTION};
+    private static final int[] COMMANDS_SET = {SQLTokenizer.TRANSACTION, SQLTokenizer.LOCK_TIMEOUT};
     private static final int[] COMMANDS_CREATE_UNIQUE = {SQLTokenizer.INDEX, SQLTokenizer.CLUSTERED, SQLTokenizer.NONCLUSTERED};
 	private static final int[] MISSING_TABLE = {SQLTokenizer.TABLE};
     private static final int[] ESCAPE_MISSING_CLOSE = {SQLTokenizer.ESCAPE_R};
@@ -1965,6 +2088,7 @@ Switch: while(true)
     private static final int[] MISSING_BY = {SQLTokenizer.BY};
     private static final int[] MISSING_PARENTHESIS_L = {SQLTokenizer.PARENTHESIS_L};
     private static final int[] MISSING_PARENTHESIS_R = {SQLTokenizer.PARENTHESIS_R};
+    private static final int[] MISSING_PARENTHESIS_L_FROM = {SQLTokenizer.PARENTHESIS_L, SQLTokenizer.FROM};
     private static final int[] MISSING_DATATYPE  = {SQLTokenizer.BIT, SQLTokenizer.BOOLEAN, SQLTokenizer.BINARY, SQLTokenizer.VARBINARY, SQLTokenizer.RAW, SQLTokenizer.LONGVARBINARY, SQLTokenizer.BLOB, SQLTokenizer.TINYINT, SQLTokenizer.SMALLINT, SQLTokenizer.INT, SQLTokenizer.COUNTER, SQLTokenizer. BIGINT, SQLTokenizer.SMALLMONEY, SQLTokenizer.MONEY, SQLTokenizer.DECIMAL, SQLTokenizer.NUMERIC, SQLTokenizer.REAL, SQLTokenizer.FLOAT, SQLTokenizer.DOUBLE, SQLTokenizer.DATE, SQLTokenizer.TIME, SQLTokenizer.TIMESTAMP, SQLTokenizer.SMALLDATETIME, SQLTokenizer.CHAR, SQLTokenizer.NCHAR, SQLTokenizer.VARCHAR, SQLTokenizer.NVARCHAR, SQLTokenizer.LONG, SQLTokenizer.LONGNVARCHAR, SQLTokenizer.LONGVARCHAR, SQLTokenizer.CLOB, SQLTokenizer.NCLOB, SQLTokenizer.UNIQUEIDENTIFIER, SQLTokenizer.JAVA_OBJECT, SQLTokenizer.SYSNAME};
 	private static final int[] MISSING_SQL_DATATYPE = { SQLTokenizer.SQL_BIGINT , SQLTokenizer.SQL_BINARY , SQLTokenizer.SQL_BIT , SQLTokenizer.SQL_CHAR , SQLTokenizer.SQL_DATE , SQLTokenizer.SQL_DECIMAL , SQLTokenizer.SQL_DOUBLE , SQLTokenizer.SQL_FLOAT , SQLTokenizer.SQL_INTEGER , SQLTokenizer.SQL_LONGVARBINARY , SQLTokenizer.SQL_LONGVARCHAR , SQLTokenizer.SQL_REAL , SQLTokenizer.SQL_SMALLINT , SQLTokenizer.SQL_TIME , SQLTokenizer.SQL_TIMESTAMP , SQLTokenizer.SQL_TINYINT , SQLTokenizer.SQL_VARBINARY , SQLTokenizer.SQL_VARCHAR };
     private static final int[] MISSING_INTO = {SQLTokenizer.INTO};
@@ -429,6 +429,9 @@ public class SQLTokenizer {
 	static final int TOP		= 229;
 	static final int ADD		= 230;
 	static final int LIMIT      = 231;
+	static final int VACUUM     = 232;
+	static final int COPY       = 233;
+	static final int LOCK_TIMEOUT= 234;
 
     static final int DATABASE   = 235;
     static final int TABLE      = 236;
@@ -453,6 +456,7 @@ public class SQLTokenizer {
 	static final int CLUSTERED  = 255;
 	static final int NONCLUSTERED=256;
 	static final int REFERENCES = 257;
+	static final int USING      = 258;
 
 	static final int UNION 		= 260;
 	static final int ALL 		= 261;
@@ -515,6 +519,7 @@ public class SQLTokenizer {
         addKeyWord( "UNCOMMITTED",  UNCOMMITTED);
         addKeyWord( "REPEATABLE",   REPEATABLE);
         addKeyWord( "SERIALIZABLE", SERIALIZABLE);
+        addKeyWord( "LOCK_TIMEOUT", LOCK_TIMEOUT);
         
 		addKeyWord( "CONSTRAINT", 	CONSTRAINT);
 		addKeyWord( "PRIMARY",    	PRIMARY);
@@ -524,6 +529,7 @@ public class SQLTokenizer {
 		addKeyWord( "CLUSTERED",  	CLUSTERED);
 		addKeyWord( "NONCLUSTERED", NONCLUSTERED);
 		addKeyWord( "REFERENCES",   REFERENCES);
+		addKeyWord( "USING",        USING);
 
 		addKeyWord( "UNION", 		UNION);
 		addKeyWord( "ALL",   		ALL);
@@ -719,6 +725,8 @@ public class SQLTokenizer {
         addKeyWord( "SQRT",     SQRT);
         addKeyWord( "TAN",      TAN);
         addKeyWord( "TRUNCATE", TRUNCATE);
+        addKeyWord( "VACUUM",   VACUUM);
+        addKeyWord( "COPY",     COPY);
     }
 
     //String Functions
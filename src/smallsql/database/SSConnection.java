@@ -49,6 +49,10 @@ import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Struct;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -57,13 +61,46 @@ import smallsql.database.language.Language;
 
 public class SSConnection implements Connection {
 
+    static final int DEFAULT_READ_AHEAD_SIZE = 256 * 1024; // 256 KB
+    static final int DEFAULT_EXTENT_SIZE = 1024 * 1024; // 1 MB
+    static final int DEFAULT_LOCK_TIMEOUT = 5000; // 5 seconds
+
     private final boolean readonly;
+    /** The memory budget of the page cache in bytes, only used if this connection open the database. */
+    private final long cacheSize;
+    /** The memory budget of the free page buffers for new rows in bytes, only used if this connection open the database. */
+    private final long pagePoolSize;
+    /** The max size of the space that is preallocated if a table file grow, only used if this connection open the database. */
+    private final int extentSize;
+    /** If the files of a read only database should be memory mapped, only used if this connection open the database. */
+    private final boolean memoryMapped;
+    /** The max size of a read block on sequential table scans in bytes. */
+    private final int readAheadSize;
+    /** If the next block of a sequential table scan should be read in a background thread. */
+    private final boolean asyncReadAhead;
     private Database database;
     private boolean autoCommit = true;
     int isolationLevel = TRANSACTION_READ_COMMITTED; // see also getDefaultTransactionIsolation
     private List commitPages = new ArrayList();
+    /** The redo log batches of the running commit, one for every database with changes. */
+    private ArrayList logBatches;
+    /** Database --> Long, the sequence numbers of the running commit in the VersionStores of the databases. */
+    private HashMap commitVersions;
+    /** The indexes that the running commit change, the data are saved at the end of the commit. */
+    private ArrayList commitIndexes;
+    /** IndexDescriptions --> LongList, the committed rows that the transaction change, see addIndexChanges() */
+    private final HashMap indexChanges = new HashMap();
+    /** IndexDescriptions --> HashMap[], the keys that the running commit has reserved in the UNIQUE indexes. */
+    private HashMap commitKeys;
+    /** Database --> VersionStore.Snapshot, the snapshots of the transaction on REPEATABLE_READ and SERIALIZABLE. */
+    private final HashMap snapshots = new HashMap();
     /** The time on which a transaction is starting. */
     private long transactionTime;
+    /** The sequence number of the current transaction, a larger value is a younger transaction. */
+    private volatile long transactionId;
+    private static long transactionCounter;
+    /** The max time in milliseconds that a lock request wait, a negative value wait without timeout. */
+    private int lockTimeout;
     private final SSDatabaseMetaData metadata;
     private int holdability;
     final Logger log;
@@ -73,6 +110,18 @@ public class SSConnection implements Connection {
         log = new Logger();
         String name = props.getProperty("dbpath");
         readonly = "true".equals(props.getProperty("readonly"));
+        String cacheSizeKB = props.getProperty("cachesize");
+        cacheSize = cacheSizeKB == null ? BufferPool.DEFAULT_SIZE : Long.parseLong(cacheSizeKB.trim()) * 1024;
+        String pagePoolKB = props.getProperty("pagepool");
+        pagePoolSize = pagePoolKB == null ? PagePool.DEFAULT_SIZE : Long.parseLong(pagePoolKB.trim()) * 1024;
+        String extentKB = props.getProperty("extent");
+        extentSize = extentKB == null ? DEFAULT_EXTENT_SIZE : Integer.parseInt(extentKB.trim()) * 1024;
+        memoryMapped = "true".equals(props.getProperty("mmap"));
+        String readAheadKB = props.getProperty("readahead");
+        readAheadSize = readAheadKB == null ? DEFAULT_READ_AHEAD_SIZE : Integer.parseInt(readAheadKB.trim()) * 1024;
+        asyncReadAhead = "true".equals(props.getProperty("asyncread"));
+        String lockTimeoutMS = props.getProperty("locktimeout");
+        lockTimeout = lockTimeoutMS == null ? DEFAULT_LOCK_TIMEOUT : Integer.parseInt(lockTimeoutMS.trim());
         boolean create = "true".equals(props.getProperty("create"));
         database = Database.getDatabase(name, this, create);
 		metadata = new SSDatabaseMetaData(this);
@@ -84,6 +133,13 @@ public class SSConnection implements Connection {
      */
     SSConnection( SSConnection con ){
         readonly = con.readonly;
+        cacheSize = con.cacheSize;
+        pagePoolSize = con.pagePoolSize;
+        extentSize = con.extentSize;
+        memoryMapped = con.memoryMapped;
+        readAheadSize = con.readAheadSize;
+        asyncReadAhead = con.asyncReadAhead;
+        lockTimeout = con.lockTimeout;
         database = con.database;
         metadata = con.metadata;
         log      = con.log;
@@ -144,34 +200,303 @@ public class SSConnection implements Connection {
 	void add(TransactionStep storePage) throws SQLException{
 		testClosedConnection();
 		synchronized(getMonitor()){
+			if(commitPages.isEmpty()){
+				transactionId = nextTransactionId();
+			}
             commitPages.add(storePage);
+            storePage.addIndexChange(indexChanges);
         }
 	}
 	
 	
+	private static synchronized long nextTransactionId(){
+		return ++transactionCounter;
+	}
+	
+	
+	/**
+	 * Get the sequence number of the current transaction. It is used to select the youngest transaction as victim
+	 * of a deadlock.
+	 */
+	long getTransactionId(){
+		return transactionId;
+	}
+
+
+	/**
+	 * Add the positions of the committed rows of the table whose keys the current transaction has changed. The
+	 * indexes are changed only with the commit, a read over an index must read this rows additionally. The new rows
+	 * of the transaction are not included.
+	 * @param table the table
+	 * @param rows the list for the positions
+	 * @return true if rows was added
+	 */
+	boolean addIndexChanges(Table table, LongList rows){
+		synchronized(getMonitor()){
+			LongList changes = (LongList)indexChanges.get(table.indexes);
+			if(changes == null){
+				return false;
+			}
+			for(int i=0; i<changes.size(); i++){
+				rows.add(changes.get(i));
+			}
+			return true;
+		}
+	}
+	
+	
     public void commit() throws SQLException {
         log.println("Commit");
         testClosedConnection();
         synchronized(getMonitor()){
     	try{
 	            int count = commitPages.size();
+	            commitVersions = new HashMap();
+	            beginLogBatches();
+	            beginIndexChanges();
 	            for(int i=0; i<count; i++){
 	                TransactionStep page = (TransactionStep)commitPages.get(i);
 	                page.commit();
 	            }
+	            commitLogBatches();
+	            for(int i=0; i<count; i++){
+	                TransactionStep page = (TransactionStep)commitPages.get(i);
+	                page.commitIndexes();
+	            }
+	            endCommitVersions();
 				for(int i=0; i<count; i++){
 				    TransactionStep page = (TransactionStep)commitPages.get(i);
 					page.freeLock();
 				}
+	            endIndexChanges();
 	            commitPages.clear();
+	            indexChanges.clear();
+	            releaseSnapshots();
 	            transactionTime = System.currentTimeMillis();
     	}catch(Throwable e){
+    		discardLogBatches();
+    		endCommitVersions();
     		rollback();
+    		endIndexChanges();
     		throw SmallSQLException.createFromException(e);
     	}
         }
     }
     
+    
+    /**
+     * Check the UNIQUE indexes and PRIMARY KEYs that the commit change before the first page is written and mark the
+     * indexes as changed. The added keys are reserved until endIndexChanges() that a concurrent commit can not add the
+     * same key before the indexes are changed after the pages are written.
+     */
+    private void beginIndexChanges() throws Exception{
+        ArrayList indexes = new ArrayList();
+        for(int i=0; i<commitPages.size(); i++){
+            IndexDescriptions changed = ((TransactionStep)commitPages.get(i)).getIndexes();
+            if(changed != null && !indexes.contains(changed)){
+                indexes.add(changed);
+            }
+        }
+        commitKeys = new HashMap();
+        for(int i=0; i<indexes.size(); i++){
+            IndexDescriptions changed = (IndexDescriptions)indexes.get(i);
+            commitKeys.put(changed, changed.checkUnique(commitPages));
+        }
+        commitIndexes = new ArrayList();
+        for(int i=0; i<indexes.size(); i++){
+            IndexDescriptions changed = (IndexDescriptions)indexes.get(i);
+            changed.beginCommit();
+            commitIndexes.add(changed);
+        }
+    }
+    
+    
+    /**
+     * Save the indexes that the commit has changed that the index must not be build again after a crash and release
+     * the reserved keys. It is called also if the commit has failed.
+     */
+    private void endIndexChanges(){
+        if(commitKeys != null){
+            Iterator iterator = commitKeys.entrySet().iterator();
+            while(iterator.hasNext()){
+                Map.Entry entry = (Map.Entry)iterator.next();
+                ((IndexDescriptions)entry.getKey()).releaseKeys( (HashMap[])entry.getValue() );
+            }
+            commitKeys = null;
+        }
+        if(commitIndexes == null){
+            return;
+        }
+        for(int i=0; i<commitIndexes.size(); i++){
+            ((IndexDescriptions)commitIndexes.get(i)).endCommit();
+        }
+        commitIndexes = null;
+    }
+    
+    
+    /**
+     * Create a batch of the redo log for every database that is changed from this transaction. The databases are
+     * locked in the order of its directory that concurrent commits over multiple databases can not deadlock.
+     */
+    private void beginLogBatches() throws SQLException{
+        ArrayList logs = null;
+        for(int i=0; i<commitPages.size(); i++){
+            Object page = commitPages.get(i);
+            if(page instanceof TableStorePage){
+                WriteAheadLog writeAheadLog = ((TableStorePage)page).table.database.getWriteAheadLog();
+                if(writeAheadLog != null){
+                    if(logs == null){
+                        logs = new ArrayList();
+                    }
+                    if(!logs.contains(writeAheadLog)){
+                        logs.add(writeAheadLog);
+                    }
+                }
+            }
+        }
+        if(logs == null){
+            return;
+        }
+        if(logs.size() > 1){
+            Collections.sort(logs, new Comparator(){
+                public int compare(Object log1, Object log2){
+                    return ((WriteAheadLog)log1).getDirectory().compareTo(((WriteAheadLog)log2).getDirectory());
+                }
+            });
+        }
+        logBatches = new ArrayList();
+        for(int i=0; i<logs.size(); i++){
+            logBatches.add(((WriteAheadLog)logs.get(i)).beginCommit());
+        }
+    }
+    
+    
+    /**
+     * Get the redo log batch of the running commit for the given database.
+     * @return the batch or null if the pages of the database should be written immediately
+     */
+    WriteAheadLog.Batch getLogBatch(Database database){
+        ArrayList batches = logBatches;
+        if(batches != null){
+            for(int i=0; i<batches.size(); i++){
+                WriteAheadLog.Batch batch = (WriteAheadLog.Batch)batches.get(i);
+                if(batch.getDatabase() == database){
+                    return batch;
+                }
+            }
+        }
+        return null;
+    }
+    
+    
+    private void commitLogBatches() throws SQLException{
+        if(logBatches == null){
+            return;
+        }
+        while(logBatches.size() > 0){
+            WriteAheadLog.Batch batch = (WriteAheadLog.Batch)logBatches.remove(0);
+            batch.log.commit(batch);
+        }
+        logBatches = null;
+    }
+    
+    
+    /**
+     * Get the sequence number of the running commit in the VersionStore of the database. The commit is started in
+     * the VersionStore with the first page of the database that is written.
+     * @return the number or 0 if the old versions of the pages need not be saved
+     */
+    long getCommitVersion(Database database){
+        HashMap versions = commitVersions;
+        if(versions == null){
+            return 0; // the page is written outside of a commit
+        }
+        Long seq = (Long)versions.get(database);
+        if(seq == null){
+            seq = new Long(database.getVersionStore().beginCommit());
+            versions.put(database, seq);
+        }
+        return seq.longValue();
+    }
+    
+    
+    private void endCommitVersions(){
+        if(commitVersions == null){
+            return;
+        }
+        Iterator iterator = commitVersions.keySet().iterator();
+        while(iterator.hasNext()){
+            Database database = (Database)iterator.next();
+            database.getVersionStore().endCommit( ((Long)commitVersions.get(database)).longValue() );
+        }
+        commitVersions = null;
+    }
+    
+    
+    /**
+     * Create the snapshot of the database for the current transaction if the isolation level read from snapshots
+     * and there is no snapshot yet. It wait until the running commits without saved versions are finished.
+     */
+    void createSnapshot(Database database) throws SQLException{
+        if(isolationLevel < TRANSACTION_REPEATABLE_READ){
+            return;
+        }
+        synchronized(snapshots){
+            if(snapshots.get(database) != null){
+                return;
+            }
+        }
+        VersionStore.Snapshot snapshot;
+        try{
+            snapshot = database.getVersionStore().createSnapshot();
+        }catch(InterruptedException e){
+            throw SmallSQLException.createFromException(e);
+        }
+        synchronized(snapshots){
+            snapshots.put(database, snapshot);
+        }
+    }
+    
+    
+    /**
+     * Get the snapshot of the database that the current transaction read.
+     * @return the snapshot or null if the reads see the last committed data
+     */
+    VersionStore.Snapshot getSnapshot(Database database){
+        if(isolationLevel < TRANSACTION_REPEATABLE_READ){
+            return null;
+        }
+        synchronized(snapshots){
+            return (VersionStore.Snapshot)snapshots.get(database);
+        }
+    }
+    
+    
+    /**
+     * Release the snapshots at the end of the transaction that the old versions can be removed.
+     */
+    private void releaseSnapshots(){
+        synchronized(snapshots){
+            Iterator values = snapshots.values().iterator();
+            while(values.hasNext()){
+                VersionStore.Snapshot snapshot = (VersionStore.Snapshot)values.next();
+                snapshot.getVersionStore().release(snapshot);
+            }
+            snapshots.clear();
+        }
+    }
+    
+    
+    private void discardLogBatches(){
+        if(logBatches == null){
+            return;
+        }
+        for(int i=0; i<logBatches.size(); i++){
+            ((WriteAheadLog.Batch)logBatches.get(i)).discard();
+        }
+        logBatches = null;
+    }
+    
 	
 	/**
 	 * Discard all changes of a file because it was deleted.
@@ -214,6 +539,8 @@ public class SSConnection implements Connection {
                 page.freeLock();
             }
             commitPages.clear();
+            indexChanges.clear();
+            releaseSnapshots();
 			transactionTime = System.currentTimeMillis();
         }
     }
@@ -256,6 +583,71 @@ public class SSConnection implements Connection {
     }
     
     
+    /**
+     * The memory budget of the page cache in bytes. It is set with the connection property "cachesize" in KB.
+     */
+    long getCacheSize(){
+        return cacheSize;
+    }
+    
+    
+    /**
+     * The memory budget of the free page buffers for new rows in bytes. It is set with the connection property
+     * "pagepool" in KB. A value of 0 disable the pooling.
+     */
+    long getPagePoolSize(){
+        return pagePoolSize;
+    }
+    
+    
+    /**
+     * The max size of the space that is preallocated if a table file grow. It is set with the connection property
+     * "extent" in KB. A value of 0 disable the preallocation.
+     */
+    int getExtentSize(){
+        return extentSize;
+    }
+    
+    
+    /**
+     * If the files should be memory mapped. This has only an effect on a read only database.
+     */
+    boolean isMemoryMapped(){
+        return memoryMapped;
+    }
+    
+    
+    /**
+     * The max size of a read block on sequential table scans. A value of 8 KB or smaller disable the read-ahead.
+     */
+    int getReadAheadSize(){
+        return readAheadSize;
+    }
+    
+    
+    /**
+     * If the next block of a sequential table scan is read in a background thread.
+     */
+    boolean isAsyncReadAhead(){
+        return asyncReadAhead;
+    }
+    
+    
+    /**
+     * The max time in milliseconds that a lock request wait for the release of a conflicting lock. It is set with
+     * the connection property "locktimeout" or with SET LOCK_TIMEOUT. A negative value wait without timeout, a
+     * deadlock is detected independent of the timeout.
+     */
+    int getLockTimeout(){
+        return lockTimeout;
+    }
+    
+    
+    void setLockTimeout(int lockTimeout){
+        this.lockTimeout = lockTimeout;
+    }
+    
+    
     public void setCatalog(String catalog) throws SQLException {
         testClosedConnection();
         database = Database.getDatabase(catalog, this, false);
@@ -269,6 +661,10 @@ public class SSConnection implements Connection {
     }
     
     
+    /**
+     * Set the isolation level of the transactions. SERIALIZABLE is run as snapshot isolation like REPEATABLE_READ.
+     * @see SSDatabaseMetaData#supportsTransactionIsolationLevel(int)
+     */
     public void setTransactionIsolation(int level) throws SQLException {
     	if(!metadata.supportsTransactionIsolationLevel(level)) {
     		throw SmallSQLException.create(Language.ISOLATION_UNKNOWN, String.valueOf(level));
@@ -627,6 +627,11 @@ final class SSDatabaseMetaData implements DatabaseMetaData {
     }
 	
 	
+    /**
+     * All levels are supported. REPEATABLE_READ and SERIALIZABLE read both from a snapshot of the committed data
+     * (snapshot isolation). Phantoms are not possible, but SERIALIZABLE does not prevent a write skew: two
+     * transactions can read the same rows and then change different rows based on the old values.
+     */
     public boolean supportsTransactionIsolationLevel(int level) {
     	switch(level){
 			case Connection.TRANSACTION_NONE:
@@ -38,10 +38,13 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.net.URL;
+import java.nio.charset.Charset;
 
 
 class SSPreparedStatement extends SSStatement implements PreparedStatement {
 
+    private static final Charset ASCII = Charset.forName( "ISO-8859-1" );
+
 	private ArrayList batches;
     private final int top; // value of an optional top expression
 	
@@ -161,7 +164,8 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
     
     public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
         checkStatement();
-		cmd.setParamValue( parameterIndex, x, SQLTokenizer.LONGVARCHAR, length);
+        Reader reader = (x == null) ? null : new InputStreamReader( x, ASCII );
+		cmd.setParamValue( parameterIndex, reader, SQLTokenizer.LONGVARCHAR, length);
     }
     
     
@@ -262,8 +266,7 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
 	
     public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
         checkStatement();
-        /**@todo: Implement this java.sql.PreparedStatement method*/
-        throw new java.lang.UnsupportedOperationException("Method setCharacterStream() not yet implemented.");
+		cmd.setParamValue( parameterIndex, reader, SQLTokenizer.LONGVARCHAR, length);
     }
     
     
@@ -393,12 +396,12 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
 
     @Override
     public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        setCharacterStream( parameterIndex, reader, length );
     }
 
     @Override
     public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        setBinaryStream( parameterIndex, inputStream, length );
     }
 
     @Override
@@ -413,32 +416,32 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
 
     @Override
     public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        setAsciiStream( parameterIndex, x, Utils.long2int( length ) );
     }
 
     @Override
     public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        setBinaryStream( parameterIndex, x, Utils.long2int( length ) );
     }
 
     @Override
     public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        setCharacterStream( parameterIndex, reader, Utils.long2int( length ) );
     }
 
     @Override
     public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        setAsciiStream( parameterIndex, x, -1 );
     }
 
     @Override
     public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        setBinaryStream( parameterIndex, x, -1 );
     }
 
     @Override
     public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        setCharacterStream( parameterIndex, reader, -1 );
     }
 
     @Override
@@ -448,12 +451,12 @@ class SSPreparedStatement extends SSStatement implements PreparedStatement {
 
     @Override
     public void setClob(int parameterIndex, Reader reader) throws SQLException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        setCharacterStream( parameterIndex, reader, -1 );
     }
 
     @Override
     public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        setBinaryStream( parameterIndex, inputStream, -1 );
     }
 
     @Override
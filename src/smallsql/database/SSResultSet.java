@@ -34,7 +34,6 @@ package smallsql.database;
 
 import java.sql.*;
 import java.math.*;
-import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.Reader;
 import java.util.Map;
@@ -212,7 +211,14 @@ public class SSResultSet implements ResultSet {
     
     
     public InputStream getBinaryStream(int columnIndex) throws SQLException {
-        return new ByteArrayInputStream(getBytes(columnIndex));
+        try{
+            Expression expr = getValue(columnIndex);
+            InputStream stream = expr.getBinaryStream();
+            wasNull = stream == null;
+            return stream;
+        }catch(Exception e){
+            throw SmallSQLException.createFromException( e );
+        }
     }
     
     
@@ -306,8 +312,14 @@ public class SSResultSet implements ResultSet {
     
 
     public Reader getCharacterStream(int columnIndex) throws SQLException {
-        /**@todo: Implement this java.sql.ResultSet.getCharacterStream method*/
-        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "getCharacterStream");
+        try{
+            Expression expr = getValue(columnIndex);
+            Reader reader = expr.getCharacterStream();
+            wasNull = reader == null;
+            return reader;
+        }catch(Exception e){
+            throw SmallSQLException.createFromException( e );
+        }
     }
     
     
@@ -0,0 +1,210 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * ScanBuffer.java
+ * ---------------
+ */
+package smallsql.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read buffer for sequential table scans. Instead of one file read per row a complete block of the
+ * table file is read and the following rows are taken from the block.<p>
+ * 
+ * If the blocks are read one after the other then the scan is sequential and the block size is doubled
+ * on every read until the read-ahead size of the connection is reached. Random access like a positioned
+ * ResultSet use ever small blocks. With a ReadAhead thread the next block of a sequential scan is read in
+ * the background while the rows of the current block are processed.<p>
+ * 
+ * The block is only valid as long as the stamp of the BufferPool is not changed. Every write of a committed
+ * page change the stamp and force a new read of the block.
+ */
+final class ScanBuffer {
+
+    static final int BLOCK_SIZE = 8192; // 8 Kb
+    /** The count of adjoining block reads after which a scan is handled as sequential */
+    private static final int SEQUENTIAL_READS = 2;
+
+    private final int maxBlockSize;
+    private final ReadAhead readAhead;
+    private byte[] block = new byte[BLOCK_SIZE];
+    /** the index in block of the byte at blockPos */
+    private int blockStart;
+    private FileChannel file;
+    private long blockPos;
+    private int blockLength;
+    private long stamp;
+    private int sequentialReads;
+
+    // the block that is read in the background, it has BLOCK_SIZE free bytes at the start for the rest of the current block
+    private byte[] nextBlock;
+    private FileChannel nextFile;
+    private long nextPos;
+    private int nextLength;
+    private long nextStamp;
+    /** true while a background read is requested or running */
+    private boolean nextPending;
+    /** true if the background read was finished successfully */
+    private boolean nextValid;
+
+
+    /**
+     * Create a new ScanBuffer.
+     * @param readAheadSize the max size of a block on a sequential scan
+     * @param readAhead the background reader or null if all reads should be synchronous
+     */
+    ScanBuffer(int readAheadSize, ReadAhead readAhead){
+        this.maxBlockSize = Math.max( readAheadSize, BLOCK_SIZE );
+        this.readAhead = (maxBlockSize > BLOCK_SIZE) ? readAhead : null;
+    }
+
+
+    /**
+     * Make sure that the bytes from fileOffset to fileOffset + length are in the block. If needed a new block
+     * is read from the file.
+     * @param stamp the current stamp of the BufferPool
+     * @return the offset of fileOffset in getBlock() or -1 if the file is too short or the length is larger
+     *         as the block.
+     */
+    int load(FileChannel file, long fileOffset, int length, long stamp) throws IOException{
+        if(file == this.file && stamp == this.stamp && fileOffset >= blockPos && fileOffset + length <= blockPos + blockLength){
+            if(readAhead != null && sequentialReads >= SEQUENTIAL_READS && (fileOffset - blockPos) * 2 > blockLength){
+                requestNextBlock();
+            }
+            return blockStart + (int)(fileOffset - blockPos);
+        }
+        if(length > BLOCK_SIZE){
+            return -1;
+        }
+        boolean adjoining = file == this.file && fileOffset >= blockPos && fileOffset <= blockPos + blockLength;
+        if(adjoining && useNextBlock(file, fileOffset, length, stamp)){
+            sequentialReads++;
+            return blockStart;
+        }
+        int size = BLOCK_SIZE;
+        if(adjoining){
+            if(++sequentialReads >= SEQUENTIAL_READS){
+                size = Math.min( maxBlockSize, Math.max( blockLength, BLOCK_SIZE ) * 2 );
+            }
+        }else{
+            sequentialReads = 0;
+        }
+        if(block.length < size){
+            block = new byte[size];
+        }
+        this.file = file;
+        this.stamp = stamp;
+        blockPos = fileOffset;
+        blockStart = 0;
+        blockLength = Utils.readFully(file, ByteBuffer.wrap(block, 0, size), fileOffset);
+        return (length <= blockLength) ? 0 : -1;
+    }
+
+
+    /**
+     * Request the read of the block after the current block from the ReadAhead thread.
+     */
+    private synchronized void requestNextBlock(){
+        if(nextPending || (nextValid && nextPos == blockPos + blockLength)){
+            return;
+        }
+        int size = Math.min( maxBlockSize, blockLength * 2 );
+        if(nextBlock == null || nextBlock.length < BLOCK_SIZE + size){
+            nextBlock = new byte[BLOCK_SIZE + size];
+        }
+        nextFile = file;
+        nextPos = blockPos + blockLength;
+        nextLength = size;
+        nextStamp = stamp;
+        nextValid = false;
+        nextPending = true;
+        readAhead.request(this);
+    }
+
+
+    /**
+     * Is called from the ReadAhead thread to read the requested block.
+     */
+    void readNextBlock(){
+        boolean valid = false;
+        int count = 0;
+        try{
+            count = Utils.readFully(nextFile, ByteBuffer.wrap(nextBlock, BLOCK_SIZE, nextLength), nextPos);
+            valid = true;
+        }catch(Throwable e){
+            // the block is read again synchronous, this report the error if there is any
+        }
+        synchronized(this){
+            nextLength = count;
+            nextValid = valid;
+            nextPending = false;
+            notifyAll();
+        }
+    }
+
+
+    /**
+     * Use the block of the background read as current block. The rest of the current block is copied before it.
+     * @return false if there is no usable block
+     */
+    private boolean useNextBlock(FileChannel file, long fileOffset, int length, long stamp) throws IOException{
+        synchronized(this){
+            while(nextPending){
+                try{
+                    wait();
+                }catch(InterruptedException e){
+                    throw new IOException(e.toString());
+                }
+            }
+            if(!nextValid || nextFile != file || nextStamp != stamp || stamp != this.stamp || nextPos != blockPos + blockLength){
+                nextValid = false;
+                return false;
+            }
+            nextValid = false;
+        }
+        int tail = (int)(nextPos - fileOffset);
+        if(tail + nextLength < length){
+            return false;
+        }
+        System.arraycopy( block, blockStart + (int)(fileOffset - blockPos), nextBlock, BLOCK_SIZE - tail, tail );
+        byte[] oldBlock = block;
+        block = nextBlock;
+        nextBlock = oldBlock;
+        blockStart = BLOCK_SIZE - tail;
+        blockPos = fileOffset;
+        blockLength = tail + nextLength;
+        return true;
+    }
+
+
+    byte[] getBlock(){
+        return block;
+    }
+}
@@ -124,7 +124,7 @@ class SmallSQLException extends SQLException {
     static SQLException create( String messageCode ) {
     	assert (messageCode != null): "Fill parameters";
     	
-    	String message = translateMsg(messageCode, null);
+    	String message = translateMsg(messageCode, new Object[0]);
     	String sqlState = language.getSqlState(messageCode);
         return new SmallSQLException(message, sqlState);
     }
@@ -32,6 +32,10 @@
  */
 package smallsql.database;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.sql.*;
 /**
  * @author Volker Berlin
@@ -64,6 +68,22 @@ abstract class Store {
 	
 	abstract String getString( int offset, int dataType) throws Exception;
 	
+	/**
+	 * Get the value as stream. A StoreImpl read a LOB value lazily.
+	 */
+	InputStream getBinaryStream( int offset, int dataType) throws Exception{
+		byte[] bytes = getBytes( offset, dataType );
+		return bytes == null ? null : new ByteArrayInputStream( bytes );
+	}
+	
+	/**
+	 * Get the value as Reader. A StoreImpl read a LOB value lazily.
+	 */
+	Reader getCharacterStream( int offset, int dataType) throws Exception{
+		String str = getString( offset, dataType );
+		return str == null ? null : new StringReader( str );
+	}
+	
 	
 	
 	/**
@@ -74,7 +94,15 @@ abstract class Store {
 		return false;
 	}
 	
-	abstract void scanObjectOffsets( int[] offsets, int dataTypes[] );
+	/**
+	 * Calculate the offsets of the values in the current row.
+	 * @param offsets the start offset of the value of every column and the end of the last value. The offset of the
+	 *        column <code>from</code> must be valid.
+	 * @param dataTypes the data types of the columns
+	 * @param from the first column that is scanned
+	 * @param to the column after the last scanned column, after the call the offsets until <code>to</code> are valid
+	 */
+	abstract void scanObjectOffsets( int[] offsets, int dataTypes[], int from, int to );
 	
 	abstract int getUsedSize();
 	
@@ -35,12 +35,14 @@ package smallsql.database;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.sql.SQLException;
+import java.util.Arrays;
 import smallsql.database.language.Language;
 
 public class StoreImpl extends Store {
 
-    private static final int DEFAULT_PAGE_SIZE = 8192; // 8 Kb
+    static final int DEFAULT_PAGE_SIZE = 8192; // 8 Kb
 	private static final int PAGE_MAGIC = 0x12DD13DE; // are used for repairing a table
     /**
      * The structure of the Page Control Block is:
@@ -52,8 +54,24 @@ public class StoreImpl extends Store {
      * 8 byte - position of an updated page
      */
 	private static final int PAGE_CONTROL_SIZE = 28;
-	private static final byte[] page_control = new byte[PAGE_CONTROL_SIZE]; 
-	private static final ByteBuffer pageControlBuffer = ByteBuffer.wrap(page_control); 
+    /**
+     * Tables since version TABLE_VIEW_COMPACT_VERSION use a compact row header:
+     * 1 byte - row magic (high nibble) and status (low nibble)
+     * 4 Byte - used size of the row
+     * 4 byte - physical size of the row
+     * The position of an updated row (8 byte) follow only on an UPDATE_POINTER.
+     * The rows are not grouped in slotted pages. The file offset of a row is its row id for the locks, the
+     * indexes and StorePageLink. Only the per row overhead is reduced, see ScanBuffer for the block reads.
+     */
+    private static final int ROW_HEADER_SIZE = 9;
+    private static final int ROW_MAGIC = 0xA0;
+    private static final Charset LATIN1 = Charset.forName( "ISO-8859-1" );
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+    private static final Charset UTF16LE = Charset.forName( "UTF-16LE" );
+    /** The flag in the int size of a compact string that is saved as UTF-16, see writeCompactString() */
+    private static final int UTF16_STRING = 0x80000000;
+    /** The size of the chunks of a LOB value, all chunks with the exception of the last have this size */
+    static final int LOB_CHUNK_SIZE = 0x10000; // 64 KB
 	private int status; // valid value are follow:
 	private static final int NORMAL = 0;
     private static final int DELETED = 1;
@@ -68,10 +86,33 @@ public class StoreImpl extends Store {
 	private static final int UPDATED_PAGE = 3;
     
     final private Table table;
+    /** If the page use the compact row header */
+    final private boolean compact;
+    /** The size of the page header, the data start after it */
+    final private int headerSize;
+    /** The minimum physical size of a page, it must be large enough to change it to an UPDATE_POINTER */
+    final private int pointerSize;
+    /** If strings are saved as Latin-1 or UTF-8 and CHAR values without padding, see writeCompactString() */
+    final private boolean compactStrings;
+    /** If LOB values are saved in chunks with a directory page, see LobInputStream */
+    final private boolean chunkedLobs;
     /** Data of one page */
     private byte[] page; 
     /** if the current array "page" is shared. This make sence for read only access but not if it will be write. */
     private boolean sharedPageData;
+    /**
+     * The index of the page in the array "page". It is only not 0 if the row is read in place from the block of a
+     * ScanBuffer. Such a page is valid until the next row is loaded from the ScanBuffer.
+     */
+    private int pageStart;
+    /**
+     * The chunk of a memory mapped file if the row is read in place from the mapping. Then "page" is null and
+     * pageStart is the index of the row in the chunk. It is only used for reading, a read only database is never
+     * written.
+     */
+    private ByteBuffer mappedPage;
+    /** If the array "page" is from the PagePool and must be given back after the commit */
+    private boolean pooledPage;
     private StorePage storePage;
     private long filePos; // Position in the file
     private int sizeUsed;
@@ -87,6 +128,11 @@ public class StoreImpl extends Store {
 		this.storePage    = storePage;
 		this.filePos   = filePos;
 		this.type      = type;
+		compact = table != null && table.formatVersion >= TableView.TABLE_VIEW_COMPACT_VERSION;
+		headerSize = compact ? ROW_HEADER_SIZE : PAGE_CONTROL_SIZE;
+		pointerSize = compact ? ROW_HEADER_SIZE + 8 : PAGE_CONTROL_SIZE;
+		compactStrings = table != null && table.formatVersion >= TableView.TABLE_VIEW_STRING_VERSION;
+		chunkedLobs = table != null && table.formatVersion >= TableView.TABLE_VIEW_LOB_VERSION;
     }
     
     
@@ -99,38 +145,87 @@ public class StoreImpl extends Store {
      * DELETE: Has no cache else only the filePos to write the flag.
     */
     static StoreImpl createStore( Table table, StorePage storePage, int type, long filePos ) throws SQLException{
+        return createStore( table, storePage, type, filePos, null );
+    }
+    
+    
+    /**
+     * Create a read only StoreImpl for values that are saved outside of the table file, for example in the payload
+     * of a covering index. The values are read with the offsets from scanObjectOffsets() like in a row.
+     * @param values the saved data of the values
+     */
+    static StoreImpl createStore( Table table, byte[] values ){
+        StoreImpl store = new StoreImpl(table, null, SQLTokenizer.SELECT, -1);
+        store.page = values;
+        store.sharedPageData = true;
+        return store;
+    }
+    
+    
+    /**
+     * Create a read only StoreImpl for a row that is read from the memory and not from the file, for example the
+     * first row of a BulkLoad before its commit.
+     * @param data the complete page of the row
+     */
+    static StoreImpl createMemoryStore( Table table, StorePage storePage, int type, long filePos, byte[] data ) throws SQLException{
+        StoreImpl store = new StoreImpl(table, storePage, type, filePos);
+        store.page = data;
+        store.sharedPageData = true;
+        store.readPageHeader();
+        store.offset = store.headerSize;
+        return store;
+    }
+
+
+    /**
+     * Create a StoreImpl like createStore(Table, StorePage, int, long).
+     * @param scanBuffer a read buffer of a sequential scan or null
+     */
+    static StoreImpl createStore( Table table, StorePage storePage, int type, long filePos, ScanBuffer scanBuffer ) throws SQLException{
         try {
             StoreImpl store = new StoreImpl(table, storePage, type, filePos);
             switch(type){
                 case SQLTokenizer.LONGVARBINARY:
                     // is used for storing of LONGVARBINARY and LONGVARCHAR
-                    store.page = new byte[(int)filePos + PAGE_CONTROL_SIZE];
+                    store.page = new byte[(int)filePos + store.headerSize];
                     store.filePos = -1;
                     break;
                 case SQLTokenizer.INSERT:
                 case SQLTokenizer.CREATE:
-                    store.page = new byte[DEFAULT_PAGE_SIZE];
+                    if(type == SQLTokenizer.INSERT && table != null){
+                        store.page = table.database.getPagePool().get();
+                        store.pooledPage = true;
+                    }else{
+                        store.page = new byte[DEFAULT_PAGE_SIZE];
+                    }
                     break;
                 case SQLTokenizer.SELECT:
                 case SQLTokenizer.UPDATE:
             	case SQLTokenizer.DELETE:
                     if(storePage.page == null){
                         FileChannel raFile = storePage.raFile;
-                        synchronized(raFile){
-                            if(filePos >= raFile.size() - PAGE_CONTROL_SIZE){
+                        // a memory mapped file need no cache
+                        BufferPool pool = (table == null || table.mappedFile != null) ? null : table.database.getBufferPool();
+                        byte[] cachedPage = (pool == null) ? null : pool.get(raFile, filePos);
+                        if(cachedPage != null){
+                            store.page = cachedPage;
+                            store.sharedPageData = true;
+                            store.readPageHeader();
+                        }else{
+                            long stamp = (pool == null) ? 0 : pool.getStamp();
+                            if(!store.readPage(raFile, (pool == null) ? null : scanBuffer, stamp)){
                                 return null;
                             }
-                            raFile.position(filePos);
-                            synchronized(page_control){
-                                pageControlBuffer.position(0);
-                                raFile.read(pageControlBuffer);
-                                store.page = page_control;
-                                store.readPageHeader();
+                            if(scanBuffer != null && store.page == scanBuffer.getBlock()){
+                                // the row is read in place, the block is not cached because it is reused
+                                store.sharedPageData = true;
+                            }else if(pool != null){
+                                pool.put(raFile, filePos, store.page, stamp);
+                                store.sharedPageData = true;
                             }
-                            store.page = new byte[store.sizeUsed];
-                            raFile.position(filePos);
-                            ByteBuffer buffer = ByteBuffer.wrap(store.page);
-                            raFile.read(buffer);
+                        }
+                        if(table != null){
+                            store.readSnapshotVersion();
                         }
                     }else{
                         store.page = storePage.page;
@@ -141,7 +236,7 @@ public class StoreImpl extends Store {
                     break;
                 default: throw new Error();
             }
-            store.offset = PAGE_CONTROL_SIZE;
+            store.offset = store.pageStart + store.headerSize;
             return store;
         } catch (Throwable th) {
             throw SmallSQLException.createFromException(th);
@@ -149,21 +244,187 @@ public class StoreImpl extends Store {
     }
     
     
+    /**
+     * Read the page data and the page header from the file.
+     * @param scanBuffer a read buffer of a sequential scan or null
+     * @param stamp the stamp of the BufferPool before the read
+     * @return false if there is no page on this position
+     */
+    private boolean readPage(FileChannel raFile, ScanBuffer scanBuffer, long stamp) throws Exception{
+        MappedFile mappedFile = (table == null) ? null : table.mappedFile;
+        if(mappedFile != null){
+            return readMappedPage(mappedFile);
+        }
+        if(scanBuffer != null){
+            int blockOffset = scanBuffer.load(raFile, filePos, pointerSize, stamp);
+            if(blockOffset < 0){
+                return false;
+            }
+            page = scanBuffer.getBlock();
+            offset = blockOffset;
+            readPageHeader();
+            if(sizeUsed <= ScanBuffer.BLOCK_SIZE){
+                blockOffset = scanBuffer.load(raFile, filePos, sizeUsed, stamp);
+                if(blockOffset < 0){
+                    return false;
+                }
+                // the row is used in place without a copy
+                page = scanBuffer.getBlock();
+                pageStart = blockOffset;
+                offset = blockOffset;
+                readPageHeader();
+                return true;
+            }
+        }
+        // the page header is read in its own buffer that parallel readers are not blocked
+        byte[] pageControl = new byte[PAGE_CONTROL_SIZE];
+        int count = Utils.readFully(raFile, ByteBuffer.wrap(pageControl), filePos);
+        if(count < headerSize){
+            return false;
+        }
+        page = pageControl;
+        offset = 0;
+        readPageHeader();
+        page = new byte[sizeUsed];
+        if(sizeUsed <= count){
+            // small rows are already complete read with the header
+            System.arraycopy(pageControl, 0, page, 0, sizeUsed);
+        }else{
+            Utils.readFully(raFile, ByteBuffer.wrap(page), filePos);
+        }
+        offset = 0;
+        readPageHeader();
+        return true;
+    }
+    
+    
+    /**
+     * If the connection read from a snapshot and the page was changed after the start of the snapshot then the
+     * image of the snapshot replace the read data. A page that was added later is returned as deleted page. The
+     * versions must be checked after the read, that a page that was written in the meantime is never missed.
+     */
+    private void readSnapshotVersion() throws SQLException{
+        SSConnection con = (storePage instanceof TableStorePage) ? ((TableStorePage)storePage).con : null;
+        VersionStore.Snapshot snapshot = (con == null) ? null : con.getSnapshot(table.database);
+        if(snapshot == null){
+            return;
+        }
+        VersionStore.Version version = table.database.getVersionStore().getVersion(snapshot, table, filePos);
+        if(version == null){
+            return;
+        }
+        byte[] image = version.getImage();
+        if(image == null){
+            // the physical size of the current page is valid, the scan continue with the next page
+            status = DELETED;
+            sizeUsed = headerSize;
+            return;
+        }
+        page = image;
+        mappedPage = null;
+        pageStart = 0;
+        offset = 0;
+        sharedPageData = true;
+        readPageHeader();
+    }
+    
+    
+    /**
+     * Read the current image of a committed page before it is overwritten. It is saved in the VersionStore.
+     * @return the data of the page, the array must not be modified
+     */
+    static byte[] readImage(Table table, long filePos) throws SQLException{
+        BufferPool pool = (table.mappedFile != null) ? null : table.database.getBufferPool();
+        byte[] cachedPage = (pool == null) ? null : pool.get(table.raFile, filePos);
+        if(cachedPage != null){
+            return cachedPage;
+        }
+        try{
+            StoreImpl store = new StoreImpl(table, null, SQLTokenizer.SELECT, filePos);
+            if(!store.readPage(table.raFile, null, 0)){
+                return null;
+            }
+            if(store.mappedPage != null){
+                byte[] image = new byte[store.sizeUsed];
+                store.copyPageBytes(store.pageStart, image, 0, image.length);
+                return image;
+            }
+            return store.page;
+        }catch(Throwable th){
+            throw SmallSQLException.createFromException(th);
+        }
+    }
+    
+    
     /**
      * Recreate a StoreImpl from an uncommitted StorePage.
      */
 	static StoreImpl recreateStore( Table table, StorePage storePage, int type) throws Exception{
 		StoreImpl store = new StoreImpl(table, storePage, type, -1);
-		store.page = storePage.page;
-		store.sharedPageData = true;
+		synchronized(storePage){
+		    byte[] data = storePage.page;
+		    if(data == null){
+		        // the page was committed and its buffer is given back to the PagePool
+		        return null;
+		    }
+		    if(((TableStorePage)storePage).pooledPage){
+		        // the buffer is reused after the commit, a StoreImpl can live longer
+		        store.page = new byte[storePage.pageSize];
+		        System.arraycopy( data, 0, store.page, 0, storePage.pageSize );
+		    }else{
+		        store.page = data;
+		        store.sharedPageData = true;
+		    }
+		}
 		store.readPageHeader();
 		store = store.loadUpdatedStore();
-		store.offset = PAGE_CONTROL_SIZE;
+		store.offset = store.headerSize;
 		return store;
 	}
 	
     
+    /**
+     * Read the page from the memory mapping of a read only database. The data are read in place from the mapping.
+     * Only a row that span two chunks of the mapping is copied.
+     * @return false if there is no page on this position
+     */
+    private boolean readMappedPage(MappedFile mappedFile) throws SQLException{
+        if(filePos > mappedFile.size() - headerSize){
+            return false;
+        }
+        // position of the used size in the page header
+        sizeUsed = mappedFile.getInt(filePos + (compact ? 1 : 8));
+        if(sizeUsed < headerSize || sizeUsed > mappedFile.size() - filePos){
+            throw SmallSQLException.create(Language.TABLE_CORRUPT_PAGE, new Object[] { new Long(filePos) });
+        }
+        mappedPage = mappedFile.getChunk(filePos, sizeUsed);
+        if(mappedPage != null){
+            page = null;
+            pageStart = MappedFile.getOffset(filePos);
+        }else{
+            page = new byte[sizeUsed];
+            mappedFile.read(filePos, page, 0, sizeUsed);
+        }
+        offset = pageStart;
+        readPageHeader();
+        return true;
+    }
+    
+    
     private final void readPageHeader() throws SQLException{
+        if(compact){
+            int flags = readUnsignedByte();
+            if((flags & 0xF0) != ROW_MAGIC){
+                throw SmallSQLException.create(Language.TABLE_CORRUPT_PAGE, new Object[] { new Long(filePos) });
+            }
+            status = flags & 0x0F;
+            sizeUsed  = readInt();
+            sizePhysical = readInt();
+            if(status == UPDATE_POINTER){
+                filePosUpdated = readLong();
+            }
+            return;
+        }
 		if(readInt() != PAGE_MAGIC){
 			throw SmallSQLException.create(Language.TABLE_CORRUPT_PAGE, new Object[] { new Long(filePos) });
 		}
@@ -192,6 +453,10 @@ public class StoreImpl extends Store {
     	int newSize = Math.max(minNewSize, page.length*2);
     	byte[] newPage = new byte[newSize];
     	System.arraycopy( page, 0, newPage, 0, page.length);
+    	if(pooledPage){
+    	    table.database.getPagePool().release(page);
+    	    pooledPage = false;
+    	}
     	page = newPage;
     }
     
@@ -223,31 +488,68 @@ public class StoreImpl extends Store {
      * @throws SQLException
      */
     long writeFinsh(SSConnection con) throws SQLException{
+        int dataSize = sizeUsed;
         switch(type){
             case SQLTokenizer.LONGVARBINARY:
             case SQLTokenizer.INSERT:
             case SQLTokenizer.CREATE:
-                sizeUsed = sizePhysical = offset;
+                sizeUsed = offset;
+                sizePhysical = Math.max(offset, pointerSize);
                 break;
 			case SQLTokenizer.UPDATE:
 				if(status != UPDATE_POINTER) {
 					sizeUsed = offset;
 					break;
 				}
+				sizeUsed = pointerSize;
+				break;
             case SQLTokenizer.DELETE:
-				sizeUsed = PAGE_CONTROL_SIZE;
+				sizeUsed = headerSize;
                 break;
             //SQLTokenizer.SELECT should not occur here
             default: throw new Error(""+type);
         }
+        // a new page is appended at the end of the file, it need to write the complete physical size
+        int pageSize = (filePos < 0) ? Math.max(sizeUsed, sizePhysical) : sizeUsed;
+		if(sharedPageData){
+		    // the page data can be part of the BufferPool, of an uncommitted StorePage or of a ScanBuffer, never modify it
+		    int length = Math.min(page.length - pageStart, Math.max(dataSize, headerSize));
+		    byte[] newPage = new byte[Math.max(length, pageSize)];
+		    System.arraycopy( page, pageStart, newPage, 0, length);
+		    page = newPage;
+		    pageStart = 0;
+		    sharedPageData = false;
+		}else if(page.length < pageSize){
+		    resizePage(pageSize);
+		}
+		if(pooledPage && pageSize > sizeUsed){
+		    // a reused buffer is not empty
+		    Arrays.fill( page, sizeUsed, pageSize, (byte)0 );
+		}
 		offset = 0;
-		writeInt( PAGE_MAGIC ); // for repair 
-		writeInt( status);
-		writeInt( sizeUsed );
-		writeInt( sizePhysical );
-		writeInt( 0 ); //nextPageOffset
-		writeLong( filePosUpdated ); // Pointer of an updated page
-		storePage.setPageData( page, sizeUsed ); //TODO page sollte eigentlich beim einlesen gesetzt sein
+		if(compact){
+		    writeByte( ROW_MAGIC | status );
+		    writeInt( sizeUsed );
+		    writeInt( sizePhysical );
+		    if(status == UPDATE_POINTER){
+		        writeLong( filePosUpdated ); // Pointer of an updated page
+		    }
+		}else{
+    		writeInt( PAGE_MAGIC ); // for repair 
+    		writeInt( status);
+    		writeInt( sizeUsed );
+    		writeInt( sizePhysical );
+    		writeInt( 0 ); //nextPageOffset
+    		writeLong( filePosUpdated ); // Pointer of an updated page
+		}
+		storePage.setPageData( page, pageSize ); //TODO page sollte eigentlich beim einlesen gesetzt sein
+		if(storePage instanceof TableStorePage){
+		    // the space of a deleted page can be reused after the commit
+		    ((TableStorePage)storePage).deleted = status == DELETED;
+		    // the buffer is owned by the StorePage now, it is given back after the commit
+		    ((TableStorePage)storePage).pooledPage = pooledPage && con != null;
+		    pooledPage = false;
+		}
         if(con == null){
         	// the pointer is needed to safe in another page
         	// this produce not referenced pages on rollback
@@ -258,6 +560,59 @@ public class StoreImpl extends Store {
     }
     
     
+    /**
+     * Write the data of an INSERT store as a deleted page. The page is skipped from table scans. It is used
+     * for internal data of the table like the free space map.
+     * @return the file position of the page
+     */
+    long writeFinshDeleted() throws SQLException{
+        status = DELETED;
+        return writeFinsh(null);
+    }
+    
+    
+    /**
+     * Get the offset of the physical size in the page header.
+     */
+    private static int getPhysicalSizeOffset(Table table){
+        return table.formatVersion >= TableView.TABLE_VIEW_COMPACT_VERSION ? 5 : 12;
+    }
+    
+    
+    /**
+     * Check the magic of a page header that was read from the file. It is only possible with the compact row header.
+     */
+    static boolean isPageHeader(Table table, byte[] page){
+        return table.formatVersion >= TableView.TABLE_VIEW_COMPACT_VERSION && (page[0] & 0xF0) == ROW_MAGIC;
+    }
+    
+    
+    /**
+     * Read the physical size from the header of a page that was written with writeFinsh().
+     */
+    static int getPhysicalSize(Table table, byte[] page){
+        int offset = getPhysicalSizeOffset(table);
+        return ((page[ offset ]) << 24) |
+                ((page[ offset+1 ] & 0xFF) << 16) |
+                ((page[ offset+2 ] & 0xFF) << 8) |
+                ((page[ offset+3 ] & 0xFF));
+    }
+    
+    
+    /**
+     * Change the physical size in the header of a new page that is written in the space of a deleted page.
+     * @return the size of the page header
+     */
+    static int setPhysicalSize(Table table, byte[] page, int sizePhysical){
+        int offset = getPhysicalSizeOffset(table);
+        page[ offset   ] = (byte)(sizePhysical >> 24);
+        page[ offset+1 ] = (byte)(sizePhysical >> 16);
+        page[ offset+2 ] = (byte)(sizePhysical >> 8);
+        page[ offset+3 ] = (byte)(sizePhysical);
+        return getHeaderSize(table);
+    }
+    
+    
     /**
      * Request a write lock for the current read page. It add the resulting StorePage to the list of commits.
      * 
@@ -281,6 +636,7 @@ public class StoreImpl extends Store {
 		if(newData.offset <= sizePhysical || filePos == -1){
 			// the old page can be overwrite because it it large enough
 			page = newData.page; //newData is only a temp StoreImpl
+			pageStart = 0;
 			offset = newData.offset;
 			if(sizePhysical < offset) sizePhysical = offset; // occur only on updates of not committed inserts (filePos == -1
 			writeFinsh(con);
@@ -300,12 +656,14 @@ public class StoreImpl extends Store {
 				updatePointer.type = SQLTokenizer.UPDATE;
 				updatePointer.createWriteLock();
 				if(updatePointer.sharedPageData){
-				    updatePointer.page = new byte[PAGE_CONTROL_SIZE];
+				    updatePointer.page = new byte[updatePointer.pointerSize];
+				    updatePointer.pageStart = 0;
 				}
 				updatePointer.writeFinsh(con);
 				status = DELETED;
                 if(sharedPageData){
-                    page = new byte[PAGE_CONTROL_SIZE];
+                    page = new byte[pointerSize];
+                    pageStart = 0;
                 }
 			}
 			writeFinsh(con);
@@ -338,11 +696,14 @@ Write und Read Methoden
     }
 
     int readByte(){
+        if(mappedPage != null){
+            return mappedPage.get( offset++ );
+        }
         return page[ offset++ ];
     }
 
     int readUnsignedByte(){
-        return page[ offset++ ] & 0xFF;
+        return readByte() & 0xFF;
     }
 
     void writeBoolean( boolean value ){
@@ -353,7 +714,7 @@ Write und Read Methoden
     }
 
     boolean readBoolean(){
-        return page[ offset++ ] != 0;
+        return readByte() != 0;
     }
 
     void writeShort( int value ){
@@ -365,6 +726,11 @@ Write und Read Methoden
     }
 
     int readShort(){
+        if(mappedPage != null){
+            int value = mappedPage.getShort( offset );
+            offset += 2;
+            return value;
+        }
         return (page[ offset++ ] << 8) | (page[ offset++ ] & 0xFF);
     }
 
@@ -379,6 +745,11 @@ Write und Read Methoden
     }
 
     int readInt(){
+        if(mappedPage != null){
+            int value = mappedPage.getInt( offset );
+            offset += 4;
+            return value;
+        }
         return  ((page[ offset++ ]) << 24) |
                 ((page[ offset++ ] & 0xFF) << 16) |
                 ((page[ offset++ ] & 0xFF) << 8) |
@@ -401,6 +772,11 @@ Write und Read Methoden
 
     long readLong(){
         //return (((long)readInt()) << 32) | (readInt() & 0xFFFFFFFFL);
+        if(mappedPage != null){
+            long value = mappedPage.getLong( offset );
+            offset += 8;
+            return value;
+        }
         return  ((long)(page[ offset++ ]) << 56) |
                 ((long)(page[ offset++ ] & 0xFF) << 48) |
                 ((long)(page[ offset++ ] & 0xFF) << 40) |
@@ -483,12 +859,16 @@ Write und Read Methoden
     }
 
     void writeString( String strDaten, int lengthColumn, boolean varchar ) throws SQLException{
-        char[] daten = strDaten.toCharArray();
-        int length = daten.length;
-
-        if(lengthColumn < length){
+        if(lengthColumn < strDaten.length()){
             throw SmallSQLException.create(Language.VALUE_STR_TOOLARGE);
         }
+        if(compactStrings){
+            // CHAR values are padded on reading, see TableResult
+            writeCompactString( strDaten );
+            return;
+        }
+        char[] daten = strDaten.toCharArray();
+        int length = daten.length;
 		if(varchar) lengthColumn = length;
     	int newSize = offset + 2 + 2*lengthColumn;
         if(newSize > page.length) resizePage(newSize);
@@ -503,8 +883,102 @@ Write und Read Methoden
 
     String readString(){
         int length = readShort() & 0xFFFF;
+        if(compactStrings){
+            int size = getCompactStringSize( length );
+            if(length == 0xFFFF && (size & UTF16_STRING) != 0){
+                return new String( readChars( (size & ~UTF16_STRING) >> 1 ) );
+            }
+            Charset charset = length < 0x8000 ? LATIN1 : UTF8;
+            if(mappedPage != null){
+                return new String( readBytes(size), charset );
+            }
+            String value = new String( page, offset, size, charset );
+            offset += size;
+            return value;
+        }
         return new String( readChars(length) );
     }
+    
+    
+    /**
+     * Write a string in the compact format. The string start with an unsigned short:
+     * <ul>
+     * <li>0 - 0x7FFF: the count of the following Latin-1 bytes</li>
+     * <li>0x8000 - 0xFFFE: 0x8000 + the count of the following UTF-8 bytes</li>
+     * <li>0xFFFF: an int with the count of the following UTF-8 bytes. If the high bit of the int is set then the
+     * following bytes are the chars in UTF-16LE like writeChars().</li>
+     * </ul>
+     * UTF-8 can not save a surrogate char without its pair. Such strings are saved as chars.
+     */
+    private void writeCompactString( String value ){
+        int length = value.length();
+        if(length < 0x8000){
+            int newSize = offset + 2 + length;
+            if(newSize > page.length) resizePage(newSize);
+            int start = offset;
+            writeShort( length );
+            int i = 0;
+            for(; i<length; i++){
+                char c = value.charAt(i);
+                if(c > 0xFF){
+                    break;
+                }
+                page[ offset++ ] = (byte)c;
+            }
+            if(i == length){
+                return;
+            }
+            offset = start; // not a Latin-1 string
+        }
+        if(hasLoneSurrogate( value )){
+            // a Charset would replace the surrogate
+            writeShort( 0xFFFF );
+            writeInt( UTF16_STRING | (length << 1) );
+            writeChars( value.toCharArray() );
+            return;
+        }
+        byte[] bytes = value.getBytes( UTF8 );
+        if(bytes.length < 0x7FFF){
+            writeShort( 0x8000 | bytes.length );
+        }else{
+            writeShort( 0xFFFF );
+            writeInt( bytes.length );
+        }
+        writeBytes( bytes );
+    }
+    
+    
+    /**
+     * Check if the string include a high or low surrogate char without its pair.
+     */
+    private static boolean hasLoneSurrogate( String value ){
+        int length = value.length();
+        for(int i=0; i<length; i++){
+            char c = value.charAt(i);
+            if(Character.isHighSurrogate(c) && i+1 < length && Character.isLowSurrogate(value.charAt(i+1))){
+                i++;
+            }else if(c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE){
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    
+    /**
+     * Get the byte count of a string in the compact format. On a large string the offset is moved after the int.
+     * For a string in UTF-16LE the returned value include the flag UTF16_STRING.
+     * @param length the first unsigned short of the string
+     */
+    private int getCompactStringSize( int length ){
+        if(length < 0x8000){
+            return length;
+        }
+        if(length == 0xFFFF){
+            return readInt();
+        }
+        return length & 0x7FFF;
+    }
 
     void writeBytes(byte[] daten){
         int newSize = offset + daten.length;
@@ -522,10 +996,26 @@ Write und Read Methoden
 
     byte[] readBytes(int length){
         byte[] daten = new byte[length];
-        System.arraycopy( page, offset, daten, 0, length);
+        copyPageBytes( offset, daten, 0, length);
         offset += length;
         return daten;
     }
+    
+    
+    /**
+     * Copy bytes of the current page, from the array or from the memory mapping.
+     * @param idx the index of the first byte, it include pageStart
+     */
+    private void copyPageBytes(int idx, byte[] dst, int dstOffset, int length){
+        if(mappedPage != null){
+            // a duplicate that the position of the shared buffer is not changed
+            ByteBuffer buffer = mappedPage.duplicate();
+            buffer.position(idx);
+            buffer.get(dst, dstOffset, length);
+        }else{
+            System.arraycopy( page, idx, dst, dstOffset, length);
+        }
+    }
 
     void writeBinary( byte[] daten, int lengthColumn, boolean varBinary ) throws SQLException{
         int length = daten.length;
@@ -554,20 +1044,129 @@ Write und Read Methoden
     }
 
     void writeLongBinary( byte[] daten ) throws Exception{
+        if(chunkedLobs){
+            writeLongBinary( new ByteArrayInputStream( daten ) );
+            return;
+        }
         StoreImpl store = table.getLobStore( ((TableStorePage)storePage).con, daten.length + 4, SQLTokenizer.LONGVARBINARY);
         store.writeInt( daten.length );
         store.writeBytes( daten );
         writeLong( store.writeFinsh(null) );
     }
 
+    /**
+     * Write a LOB value from a stream. On a table with chunked LOBs only one chunk is hold in memory.
+     */
+    void writeLongBinary( InputStream input ) throws Exception{
+        if(!chunkedLobs){
+            writeLongBinary( Utils.stream2bytes( input ) );
+            return;
+        }
+        SSConnection con = ((TableStorePage)storePage).con;
+        byte[] buffer = new byte[LOB_CHUNK_SIZE];
+        long[] chunks = new long[16];
+        int count = 0;
+        long length = 0;
+        while(true){
+            int size = readChunk( input, buffer );
+            if(size == 0) break;
+            StoreImpl store = table.getLobStore( con, size + 4, SQLTokenizer.LONGVARBINARY);
+            store.writeInt( size );
+            store.writeBytes( buffer, 0, size );
+            chunks = addChunk( chunks, count++, store.writeFinsh(null) );
+            length += size;
+            if(size < buffer.length) break;
+        }
+        writeLong( writeLobDirectory( con, length, chunks, count ) );
+    }
+    
+    
+    /**
+     * Add the file offset of a chunk to the list of chunks.
+     * @return the list, it is enlarged if needed
+     */
+    private static long[] addChunk( long[] chunks, int count, long chunkPos ){
+        if(count == chunks.length){
+            long[] newChunks = new long[count << 1];
+            System.arraycopy( chunks, 0, newChunks, 0, count );
+            chunks = newChunks;
+        }
+        chunks[count] = chunkPos;
+        return chunks;
+    }
+    
+    
+    /**
+     * Write the directory page of a chunked LOB value, see LobInputStream.
+     * @return the file position of the directory page
+     */
+    private long writeLobDirectory( SSConnection con, long length, long[] chunks, int count ) throws Exception{
+        StoreImpl directory = table.getLobStore( con, 12 + count * 8L, SQLTokenizer.LONGVARBINARY);
+        directory.writeLong( length );
+        directory.writeInt( count );
+        for(int i=0; i<count; i++){
+            directory.writeLong( chunks[i] );
+        }
+        return directory.writeFinsh(null);
+    }
+    
+    
+    /**
+     * Fill the buffer from the stream.
+     * @return the count of read bytes, it is smaller as the buffer only at the end of the stream
+     */
+    private static int readChunk( InputStream input, byte[] buffer ) throws IOException{
+        int size = 0;
+        while(size < buffer.length){
+            int count = input.read( buffer, size, buffer.length - size );
+            if(count < 0) break;
+            size += count;
+        }
+        return size;
+    }
+    
+    
+    /**
+     * Fill the buffer from the Reader.
+     * @return the count of read characters, it is smaller as the buffer only at the end of the stream
+     */
+    private static int readChunk( Reader reader, char[] buffer ) throws IOException{
+        int size = 0;
+        while(size < buffer.length){
+            int count = reader.read( buffer, size, buffer.length - size );
+            if(count < 0) break;
+            size += count;
+        }
+        return size;
+    }
+
     byte[] readLongBinary() throws Exception{
         long lobFilePos = readLong();
+        if(chunkedLobs){
+            LobInputStream input = new LobInputStream( table, ((TableStorePage)storePage).con, lobFilePos );
+            byte[] daten = new byte[(int)input.length()];
+            readChunk( input, daten );
+            return daten;
+        }
         StoreImpl store = table.getLobStore( ((TableStorePage)storePage).con, lobFilePos, SQLTokenizer.SELECT );
         return store.readBytes( store.readInt() );
     }
 
+    /**
+     * Get a stream of a LOB value that is read lazily chunk by chunk.
+     */
+    InputStream readLongBinaryStream() throws Exception{
+        if(chunkedLobs){
+            return new LobInputStream( table, ((TableStorePage)storePage).con, readLong() );
+        }
+        return new ByteArrayInputStream( readLongBinary() );
+    }
+
     void writeChars(char[] daten){
-        int length = daten.length;
+        writeChars( daten, daten.length );
+    }
+
+    void writeChars(char[] daten, int length){
         int newSize = offset + 2*length;
         if(newSize > page.length) resizePage(newSize );
         for(int i=0; i<length; i++){
@@ -580,12 +1179,16 @@ Write und Read Methoden
     char[] readChars(int length){
         char[] daten = new char[length];
         for(int i=0; i<length; i++){
-            daten[i] = (char)((page[ offset++ ] & 0xFF) | (page[ offset++ ] << 8));
+            daten[i] = (char)((readByte() & 0xFF) | (readByte() << 8));
         }
         return daten;
     }
 
     void writeLongString(String daten) throws Exception{
+        if(chunkedLobs){
+            writeLongString( new StringReader( daten ) );
+            return;
+        }
         char[] chars = daten.toCharArray();
         StoreImpl store = table.getLobStore( ((TableStorePage)storePage).con, chars.length * 2L + 4, SQLTokenizer.LONGVARBINARY);
         store.writeInt( chars.length );
@@ -593,12 +1196,54 @@ Write und Read Methoden
         writeLong( store.writeFinsh(null) );
     }
 
+    /**
+     * Write a character LOB value from a Reader. The chunks include the characters as UTF-16LE.
+     */
+    void writeLongString(Reader reader) throws Exception{
+        if(!chunkedLobs){
+            writeLongString( Utils.reader2string( reader ) );
+            return;
+        }
+        SSConnection con = ((TableStorePage)storePage).con;
+        char[] buffer = new char[LOB_CHUNK_SIZE / 2];
+        long[] chunks = new long[16];
+        int count = 0;
+        long length = 0;
+        while(true){
+            int size = readChunk( reader, buffer );
+            if(size == 0) break;
+            StoreImpl store = table.getLobStore( con, size * 2 + 4, SQLTokenizer.LONGVARBINARY);
+            store.writeInt( size * 2 );
+            store.writeChars( buffer, size );
+            chunks = addChunk( chunks, count++, store.writeFinsh(null) );
+            length += size * 2;
+            if(size < buffer.length) break;
+        }
+        writeLong( writeLobDirectory( con, length, chunks, count ) );
+    }
+
     String readLongString() throws Exception{
         long lobFilePos = readLong();
+        if(chunkedLobs){
+            LobInputStream input = new LobInputStream( table, ((TableStorePage)storePage).con, lobFilePos );
+            byte[] daten = new byte[(int)input.length()];
+            readChunk( input, daten );
+            return new String( daten, UTF16LE );
+        }
         StoreImpl store = table.getLobStore( ((TableStorePage)storePage).con, lobFilePos, SQLTokenizer.SELECT );
         if(store == null) throw SmallSQLException.create(Language.LOB_DELETED);
         return new String(store.readChars( store.readInt() ) );
     }
+
+    /**
+     * Get a Reader of a character LOB value that is read lazily chunk by chunk.
+     */
+    Reader readLongStringReader() throws Exception{
+        if(chunkedLobs){
+            return new InputStreamReader( new LobInputStream( table, ((TableStorePage)storePage).con, readLong() ), UTF16LE );
+        }
+        return new StringReader( readLongString() );
+    }
 	
 
     void writeColumn(Column column ) throws Exception{
@@ -646,8 +1291,22 @@ Write und Read Methoden
     }
  
     
+    /**
+     * Copy the saved data of values in the row, for example in the payload of a covering index.
+     * @param valueOffset the offset of the first value
+     * @param length the size of the values
+     * @param dst the target array
+     * @param dstOffset the position in the target array
+     */
+    void copyValueTo( int valueOffset, int length, byte[] dst, int dstOffset){
+        copyPageBytes( pageStart + valueOffset, dst, dstOffset, length);
+    }
+    
+    
     void copyValueFrom( StoreImpl store, int valueOffset, int length){
-		System.arraycopy( store.page, valueOffset, this.page, this.offset, length);
+        int newSize = offset + length;
+        if(newSize > page.length) resizePage(newSize);
+		store.copyValueTo( valueOffset, length, this.page, this.offset);
 		this.offset += length;
     }
 
@@ -770,7 +1429,7 @@ Write und Read Methoden
 			case SQLTokenizer.NCLOB:
             case SQLTokenizer.LONGNVARCHAR:
             case SQLTokenizer.LONGVARCHAR:
-                    writeLongString( expr.getString() );
+                    writeLongString( expr.getCharacterStream() );
                     break;
             case SQLTokenizer.JAVA_OBJECT:
                     // FIXME a MemoryStream can be faster because there are no additional array copy
@@ -781,7 +1440,7 @@ Write und Read Methoden
                     break;
             case SQLTokenizer.LONGVARBINARY:
             case SQLTokenizer.BLOB:
-                    writeLongBinary( expr.getBytes() );
+                    writeLongBinary( expr.getBinaryStream() );
                     break;
             case SQLTokenizer.TIMESTAMP:
                     writeTimestamp( expr.getLong() );
@@ -815,7 +1474,10 @@ Write und Read Methoden
 
     @Override
     boolean isNull(int valueOffset){
-        return page[ valueOffset ] != 0;
+        if(mappedPage != null){
+            return mappedPage.get( pageStart + valueOffset ) != 0;
+        }
+        return page[ pageStart + valueOffset ] != 0;
     }
 
     
@@ -824,7 +1486,7 @@ Write und Read Methoden
      */
     @Override
     boolean getBoolean(int valueOffset, int dataType) throws Exception{
-        this.offset = valueOffset;
+        this.offset = pageStart + valueOffset;
         if(readBoolean()) return false;
         switch(dataType){
             case SQLTokenizer.BIT:
@@ -891,7 +1553,7 @@ Write und Read Methoden
      */
     @Override
     int getInt(int valueOffset, int dataType) throws Exception{
-        this.offset = valueOffset;
+        this.offset = pageStart + valueOffset;
         if(readBoolean()) return 0;
         switch(dataType){
             case SQLTokenizer.BIT:
@@ -957,7 +1619,7 @@ Write und Read Methoden
      */
     @Override
     long getLong(int valueOffset, int dataType) throws Exception{
-        this.offset = valueOffset;
+        this.offset = pageStart + valueOffset;
         if(readBoolean()) return 0;
         switch(dataType){
             case SQLTokenizer.BIT:
@@ -1022,7 +1684,7 @@ Write und Read Methoden
      */
     @Override
     float getFloat(int valueOffset, int dataType) throws Exception{
-        this.offset = valueOffset;
+        this.offset = pageStart + valueOffset;
         if(readBoolean()) return 0;
         switch(dataType){
             case SQLTokenizer.BIT:
@@ -1087,7 +1749,7 @@ Write und Read Methoden
      */
     @Override
     double getDouble(int valueOffset, int dataType) throws Exception{
-        this.offset = valueOffset;
+        this.offset = pageStart + valueOffset;
         if(readBoolean()) return 0;
         switch(dataType){
             case SQLTokenizer.BIT:
@@ -1149,7 +1811,7 @@ Write und Read Methoden
     // is used for faster calculation
     @Override
     long getMoney( int valueOffset, int dataType) throws Exception{
-        this.offset = valueOffset;
+        this.offset = pageStart + valueOffset;
         if(readBoolean()) return 0;
         switch(dataType){
             case SQLTokenizer.BIT:
@@ -1210,7 +1872,7 @@ Write und Read Methoden
      */
     @Override
     MutableNumeric getNumeric(int valueOffset, int dataType) throws Exception{
-        this.offset = valueOffset;
+        this.offset = pageStart + valueOffset;
         if(readBoolean()) return null;
         switch(dataType){
             case SQLTokenizer.BIT:
@@ -1272,7 +1934,7 @@ Write und Read Methoden
      */
     @Override
     Object getObject(int valueOffset, int dataType) throws Exception{
-        this.offset = valueOffset;
+        this.offset = pageStart + valueOffset;
         if(readBoolean()) return null;
         switch(dataType){
             case SQLTokenizer.BIT:
@@ -1327,7 +1989,7 @@ Write und Read Methoden
             case SQLTokenizer.SMALLDATETIME:
                     return new DateTime( readSmallDateTime(), SQLTokenizer.TIMESTAMP );
             case SQLTokenizer.UNIQUEIDENTIFIER:
-                    return Utils.bytes2unique( page, this.offset);
+                    return Utils.bytes2unique( readBytes(16), 0);
             default: throw new Error();
         }
     }
@@ -1338,7 +2000,7 @@ Write und Read Methoden
      */
     @Override
     String getString( int valueOffset, int dataType) throws Exception{
-        this.offset = valueOffset;
+        this.offset = pageStart + valueOffset;
         if(readBoolean()) return null;
         switch(dataType){
             case SQLTokenizer.BIT:
@@ -1394,18 +2056,55 @@ Write und Read Methoden
             case SQLTokenizer.SMALLDATETIME:
                     return new DateTime( readSmallDateTime(), SQLTokenizer.TIMESTAMP ).toString();
             case SQLTokenizer.UNIQUEIDENTIFIER:
-                    return Utils.bytes2unique( page, this.offset);
+                    return Utils.bytes2unique( readBytes(16), 0);
             default: throw new Error();
         }
     }
 
     
+    /**
+     * It used for ResultSet.getBinaryStream(). LOB values are not loaded completely in memory.
+     */
+    @Override
+    InputStream getBinaryStream(int valueOffset, int dataType) throws Exception{
+        switch(dataType){
+            case SQLTokenizer.JAVA_OBJECT:
+            case SQLTokenizer.LONGVARBINARY:
+            case SQLTokenizer.BLOB:
+                    this.offset = pageStart + valueOffset;
+                    if(readBoolean()) return null;
+                    return readLongBinaryStream();
+            default:
+                    return super.getBinaryStream( valueOffset, dataType );
+        }
+    }
+
+    
+    /**
+     * It used for ResultSet.getCharacterStream(). LOB values are not loaded completely in memory.
+     */
+    @Override
+    Reader getCharacterStream(int valueOffset, int dataType) throws Exception{
+        switch(dataType){
+			case SQLTokenizer.CLOB:
+			case SQLTokenizer.NCLOB:
+            case SQLTokenizer.LONGNVARCHAR:
+            case SQLTokenizer.LONGVARCHAR:
+                    this.offset = pageStart + valueOffset;
+                    if(readBoolean()) return null;
+                    return readLongStringReader();
+            default:
+                    return super.getCharacterStream( valueOffset, dataType );
+        }
+    }
+
+    
     /**
      * It used for ResultSet.getBytes()
      */
     @Override
     byte[] getBytes(int valueOffset, int dataType) throws Exception{
-        this.offset = valueOffset;
+        this.offset = pageStart + valueOffset;
         if(readBoolean()) return null;
         switch(dataType){
             case SQLTokenizer.BINARY:
@@ -1415,11 +2114,11 @@ Write und Read Methoden
             case SQLTokenizer.BIT:
             case SQLTokenizer.BOOLEAN:
                     byte[] bytes = new byte[1];
-                    System.arraycopy( page, valueOffset, bytes, 0, bytes.length);
+                    copyPageBytes( pageStart + valueOffset, bytes, 0, bytes.length);
                     return bytes;
             case SQLTokenizer.SMALLINT:
                     bytes = new byte[2];
-                    System.arraycopy( page, valueOffset, bytes, 0, bytes.length);
+                    copyPageBytes( pageStart + valueOffset, bytes, 0, bytes.length);
                     return bytes;
             case SQLTokenizer.INT:
             case SQLTokenizer.REAL:
@@ -1428,7 +2127,7 @@ Write und Read Methoden
             case SQLTokenizer.DATE:
             case SQLTokenizer.SMALLDATETIME:
                     bytes = new byte[4];
-                    System.arraycopy( page, valueOffset, bytes, 0, bytes.length);
+                    copyPageBytes( pageStart + valueOffset, bytes, 0, bytes.length);
                     return bytes;
             case SQLTokenizer.BIGINT:
             case SQLTokenizer.FLOAT:
@@ -1436,7 +2135,7 @@ Write und Read Methoden
             case SQLTokenizer.MONEY:
             case SQLTokenizer.TIMESTAMP:
                     bytes = new byte[8];
-                    System.arraycopy( page, valueOffset, bytes, 0, bytes.length);
+                    copyPageBytes( pageStart + valueOffset, bytes, 0, bytes.length);
                     return bytes;
             case SQLTokenizer.NUMERIC:
             case SQLTokenizer.DECIMAL:
@@ -1457,74 +2156,95 @@ Write und Read Methoden
                     return readLongBinary();
             case SQLTokenizer.UNIQUEIDENTIFIER:
                     bytes = new byte[16];
-                    System.arraycopy( page, valueOffset, bytes, 0, bytes.length);
+                    copyPageBytes( pageStart + valueOffset, bytes, 0, bytes.length);
                     return bytes;
             default: throw new Error();
         }
     }
 
     @Override
-    void scanObjectOffsets( int[] offsets, int dataTypes[] ){
-        offset = PAGE_CONTROL_SIZE;
-        for(int i=0; i<offsets.length; i++){
-            offsets[i] = offset;
+    void scanObjectOffsets( int[] offsets, int dataTypes[], int from, int to ){
+        offset = pageStart + offsets[from];
+        for(int i=from; i<to; i++){
             boolean isNull = readBoolean(); // for isNull
-            switch(dataTypes[i]){
-                case SQLTokenizer.BIT:
-                case SQLTokenizer.BOOLEAN:
-                case SQLTokenizer.TINYINT:
-                    offset++;
-                    break;
-                case SQLTokenizer.SMALLINT:
-                    offset += 2;
-                    break;
-                case SQLTokenizer.INT:
-                case SQLTokenizer.REAL:
-                case SQLTokenizer.SMALLMONEY:
-                case SQLTokenizer.TIME:
-                case SQLTokenizer.DATE:
-                case SQLTokenizer.SMALLDATETIME:
-                    offset += 4;
-                    break;
-                case SQLTokenizer.BIGINT:
-                case SQLTokenizer.FLOAT:
-                case SQLTokenizer.DOUBLE:
-                case SQLTokenizer.MONEY:
-                case SQLTokenizer.JAVA_OBJECT:
-                case SQLTokenizer.LONGVARBINARY:
-                case SQLTokenizer.BLOB:
-				case SQLTokenizer.CLOB:
-				case SQLTokenizer.NCLOB:
-                case SQLTokenizer.LONGNVARCHAR:
-                case SQLTokenizer.LONGVARCHAR:
-                case SQLTokenizer.TIMESTAMP:
-                    offset += 8;
-                    break;
-                case SQLTokenizer.BINARY:
-                case SQLTokenizer.VARBINARY:
-                    int count = readShort() & 0xFFFF;
-                    if(!isNull) offset += count;  // not use += directly because readShort change the offset
-                    break;
-                case SQLTokenizer.NUMERIC:
-                case SQLTokenizer.DECIMAL:
-                    count = readByte();
-					offset += 2;
-					if(!isNull) offset += count*4;
-                    break;
-                case SQLTokenizer.CHAR:
-                case SQLTokenizer.NCHAR:
-                case SQLTokenizer.VARCHAR:
-                case SQLTokenizer.NVARCHAR:
-                    count = readShort() & 0xFFFF;
-                    if(!isNull) offset += count << 1; // not use += directly because readShort change the offset
-                    break;
-                case SQLTokenizer.UNIQUEIDENTIFIER:
-                    offset += 16;
-                    break;
-                default: throw new Error(String.valueOf( dataTypes[i] ) );
+            int size = getFixedSize( dataTypes[i] );
+            if(size >= 0){
+                offset += size;
+            }else{
+                switch(dataTypes[i]){
+                    case SQLTokenizer.BINARY:
+                    case SQLTokenizer.VARBINARY:
+                        int count = readShort() & 0xFFFF;
+                        if(!isNull) offset += count;  // not use += directly because readShort change the offset
+                        break;
+                    case SQLTokenizer.NUMERIC:
+                    case SQLTokenizer.DECIMAL:
+                        count = readByte();
+                        offset += 2;
+                        if(!isNull) offset += count*4;
+                        break;
+                    case SQLTokenizer.CHAR:
+                    case SQLTokenizer.NCHAR:
+                    case SQLTokenizer.VARCHAR:
+                    case SQLTokenizer.NVARCHAR:
+                        count = readShort() & 0xFFFF;
+                        count = compactStrings ? getCompactStringSize( count ) & ~UTF16_STRING : count << 1;
+                        if(!isNull) offset += count; // not use += directly because readShort change the offset
+                        break;
+                    default: throw new Error(String.valueOf( dataTypes[i] ) );
+                }
             }
+            offsets[i+1] = offset - pageStart;
+        }
+    }
+    
+    
+    /**
+     * Get the size of a value with a fixed size without the null flag.
+     * @return the size or -1 if the size depends on the value
+     */
+    static int getFixedSize( int dataType ){
+        switch(dataType){
+            case SQLTokenizer.BIT:
+            case SQLTokenizer.BOOLEAN:
+            case SQLTokenizer.TINYINT:
+                return 1;
+            case SQLTokenizer.SMALLINT:
+                return 2;
+            case SQLTokenizer.INT:
+            case SQLTokenizer.REAL:
+            case SQLTokenizer.SMALLMONEY:
+            case SQLTokenizer.TIME:
+            case SQLTokenizer.DATE:
+            case SQLTokenizer.SMALLDATETIME:
+                return 4;
+            case SQLTokenizer.BIGINT:
+            case SQLTokenizer.FLOAT:
+            case SQLTokenizer.DOUBLE:
+            case SQLTokenizer.MONEY:
+            case SQLTokenizer.JAVA_OBJECT:
+            case SQLTokenizer.LONGVARBINARY:
+            case SQLTokenizer.BLOB:
+            case SQLTokenizer.CLOB:
+            case SQLTokenizer.NCLOB:
+            case SQLTokenizer.LONGNVARCHAR:
+            case SQLTokenizer.LONGVARCHAR:
+            case SQLTokenizer.TIMESTAMP:
+                return 8;
+            case SQLTokenizer.UNIQUEIDENTIFIER:
+                return 16;
+            default:
+                return -1;
         }
     }
+    
+    
+    /**
+     * Get the size of the page header of the table. It is also the offset of the first value in a row.
+     */
+    static int getHeaderSize(Table table){
+        return table.formatVersion >= TableView.TABLE_VIEW_COMPACT_VERSION ? ROW_HEADER_SIZE : PAGE_CONTROL_SIZE;
+    }
 
 	@Override
     void deleteRow(SSConnection con) throws SQLException{
@@ -1532,17 +2252,32 @@ Write und Read Methoden
 		type   = SQLTokenizer.DELETE;
 		createWriteLock();
 		writeFinsh(con);
+		if(updatePointer != null){
+		    // the pointer must also be deleted, else it point to a free page that can be reused for another row
+		    updatePointer.status = DELETED;
+		    updatePointer.type = SQLTokenizer.DELETE;
+		    updatePointer.createWriteLock();
+		    updatePointer.writeFinsh(con);
+		}
 	}
 	
 	
 	StorePageLink getLink(){
 		return ((TableStorePageInsert)storePage).getLink();
 	}
+
+
+	/**
+	 * Get the StorePage that write the data of this store.
+	 */
+	StorePage getStorePage(){
+		return storePage;
+	}
     
     /**
      * If this store is a ghost because it was rollback.
      */
     boolean isRollback(){
-        return storePage.raFile == null;
+        return storePage != null && storePage.raFile == null;
     }
 }
\ No newline at end of file
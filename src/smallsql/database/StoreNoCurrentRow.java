@@ -103,7 +103,7 @@ public class StoreNoCurrentRow extends Store {
 
 
 
-	void scanObjectOffsets(int[] offsets, int[] dataTypes) {
+	void scanObjectOffsets(int[] offsets, int[] dataTypes, int from, int to) {
 		// TODO Auto-generated method stub
 
 	}
@@ -112,7 +112,7 @@ class StoreNull extends Store {
 
 
 
-	final void scanObjectOffsets(int[] offsets, int[] dataTypes) {/* there is nothing to scan */}
+	final void scanObjectOffsets(int[] offsets, int[] dataTypes, int from, int to) {/* there is nothing to scan */}
 
 
 	final int getUsedSize() {
@@ -68,12 +68,10 @@ class StorePage extends TransactionStep{
 			if(raFile != null && page != null){
 				// if new page then append at end of file
 			    ByteBuffer buffer = ByteBuffer.wrap( page, 0, pageSize );
-			    synchronized(raFile){
-    				if(fileOffset < 0){
-    					fileOffset = raFile.size();
-    				}
-				    raFile.position(fileOffset);
-				    raFile.write(buffer);
+				if(fileOffset < 0){
+				    fileOffset = append(buffer);
+				}else{
+				    Utils.writeFully(raFile, buffer, fileOffset);
 				}
 				//raFile.getFD().sync();
 			}
@@ -84,6 +82,20 @@ class StorePage extends TransactionStep{
 	}
 
 	
+	/**
+	 * Write a new page at the end of the file.
+	 * @return the file offset of the page
+	 */
+	long append(ByteBuffer buffer) throws Exception{
+	    // only appends need to synchronize, the end of file must not change between size() and write()
+	    synchronized(raFile){
+	        long offset = raFile.size();
+	        Utils.writeFully(raFile, buffer, offset);
+	        return offset;
+	    }
+	}
+
+	
 	@Override
     final void rollback(){
 		raFile = null;
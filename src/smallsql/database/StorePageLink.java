@@ -48,6 +48,11 @@ class StorePageLink {
 		if(page == null)
 			return table.getStore( con, filePos, lock );
 		while(page.nextLock != null) page = page.nextLock;
-		return table.getStore( page, lock);
+		StoreImpl store = table.getStore( page, lock);
+		if(store == null && this.page == null){
+			// the page was committed in the meantime and its buffer is reused
+			return table.getStore( con, filePos, lock );
+		}
+		return store;
 	}
 }
@@ -60,6 +60,11 @@ class Strings {
 	}
 	
 	
+	final void clear(){
+		size = 0;
+	}
+	
+	
 	final void add(String descr){
 		if(size >= data.length ){
 			resize(size << 1);
@@ -37,26 +37,50 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import smallsql.database.language.Language;
 
 class Table extends TableView{
 	
 	private static final int INDEX = 1;
+	private static final int FREE_SPACE = 2;
+	private static final int DATA_END = 3;
+	/** the free space at the end of the table definition for indexes that are added with CREATE INDEX */
+	private static final int INDEX_RESERVE = 1024;
 
     final Database database;
     FileChannel raFile; // file handle of the table
 	private Lobs lobs; // file handle of lob data for this table
     long firstPage; // offset of the first page
+    int formatVersion = TABLE_VIEW_VERSION; // file format of the pages
+    MappedFile mappedFile; // memory mapping of raFile for read only databases or null
+    final FreeSpace freeSpace = new FreeSpace(); // deleted pages that can be reused
+    /** file position of the pointer to the saved free space map, 0 if the table has no such pointer */
+    private long freeSpacePointerPos;
+    /** file position of the saved end of data in the table header, 0 if the table has no such pointer and no extents */
+    private long dataEndPointerPos;
+    /** file position of the 0 that end the additional informations, 0 if the table has no reserved space */
+    private long definitionEnd;
+    /** file position of the end of the table definition page */
+    private long definitionLimit;
+    /** the logical end of the data, the pages after it are not valid */
+    private long dataEnd;
+    /** the physical size of the file, it is larger as dataEnd if an extent was preallocated */
+    private long fileSize;
 
-	final private HashMap locks = new HashMap();
-	private SSConnection tabLockConnection; // if set then it is the Connection with a LOCK_TAB
+	/** the locks of single pages, READ and WRITE */
+	final private LockTable locks = new LockTable();
+	/** the monitor for the locks of the complete table and the insert locks */
+	final private Object tableLocks = new Object();
+	/** count of threads that wait on tableLocks for a table lock */
+	private volatile int tableLockWaiters;
+	private volatile SSConnection tabLockConnection; // if set then it is the Connection with a LOCK_TAB
 	private int tabLockCount;
 	/** if set then it is the Connection with a LOCK_WRITE_TAB */
+	private volatile SSConnection writeTabLockConnection;
+	/** if set then it is a not committed BulkLoad of a Connection */
+	private volatile BulkLoad bulkLoad;
 	final private ArrayList locksInsert = new ArrayList(); // liste der LOCK_INSERT
-	final private HashMap serializeConnections = new HashMap();
 	final IndexDescriptions indexes;
 	final ForeignKeys references;
 
@@ -69,6 +93,10 @@ class Table extends TableView{
         this.database = database;
         this.raFile   = raFile;
 		this.firstPage = offset;
+		this.formatVersion = tableFormatVersion;
+		if(database.isMemoryMapped()){
+		    mappedFile = new MappedFile(raFile);
+		}
 		StoreImpl store = getStore(con, firstPage, SQLTokenizer.SELECT);
         if(store == null){
             throw SmallSQLException.create(Language.TABLE_FILE_INVALID, getFile(database));
@@ -83,18 +111,37 @@ class Table extends TableView{
 		
 		// read additional informations
 		int type;
+		long freeSpacePos = 0;
+		long dataEndPos = 0;
 		while((type = store.readInt()) != 0){
 			int offsetInPage = store.getCurrentOffsetInPage();
 			int size = store.readInt();
 			switch(type){
 				case INDEX:
-					indexes.add( IndexDescription.load( database, this, store) );
+					indexes.add( IndexDescription.load( database, this, store, offsetInPage + size ) );
+					break;
+				case FREE_SPACE:
+					freeSpacePointerPos = offset + store.getCurrentOffsetInPage();
+					freeSpacePos = store.readLong();
+					break;
+				case DATA_END:
+					dataEndPointerPos = offset + store.getCurrentOffsetInPage();
+					dataEndPos = store.readLong();
 					break;
 			}
 			store.setCurrentOffsetInPage(offsetInPage + size);
 		}
+		if(mappedFile == null){
+		    definitionEnd = offset + store.getCurrentOffsetInPage() - 4;
+		    definitionLimit = offset + store.getUsedSize();
+		}
 		
 		firstPage = store.getNextPagePos();
+		loadDataEnd(dataEndPos);
+		if(freeSpacePos != 0 && !database.isReadOnly()){
+		    loadFreeSpace(con, freeSpacePos);
+		}
+		indexes.build(con, this);
     }
     
 
@@ -118,6 +165,8 @@ class Table extends TableView{
         }else{
             this.indexes = existIndexes;
             existIndexes.add(newIndexes);
+            // the rows are copied to new positions, the indexes are build on the next load after the rename
+            existIndexes.invalidate();
         }
         
         write(con);
@@ -142,7 +191,7 @@ class Table extends TableView{
 	 * Drop the Table. This method is static that the file does not need to load and also corrupt files can be dropped.
 	 */ 
     static void drop(Database database, String name) throws Exception{
-        boolean ok = new File( Utils.createTableViewFileName( database, name ) ).delete();
+        boolean ok = database.deleteFile( new File( Utils.createTableViewFileName( database, name ) ) );
         if(!ok) throw SmallSQLException.create(Language.TABLE_CANT_DROP, name);
     }
     
@@ -158,12 +207,12 @@ class Table extends TableView{
         }
 		// remove the all commits that point to this table
 		con.rollbackFile(raFile);
+		if(indexes != null)
+			indexes.drop(database);
 		close();
 		if(lobs != null)
 			lobs.drop(con);
-		if(indexes != null)
-			indexes.drop(database);
-		boolean ok = getFile(database).delete();
+		boolean ok = database.deleteFile( getFile(database) );
 		if(!ok) throw SmallSQLException.create(Language.TABLE_CANT_DROP, name);
     }
     
@@ -173,10 +222,27 @@ class Table extends TableView{
      */
     @Override
     void close() throws Exception{
+        if(freeSpacePointerPos != 0 && freeSpace.size() > 0 && !database.isReadOnly()){
+            saveFreeSpace();
+        }
+        if(dataEndPointerPos != 0 && !database.isReadOnly()){
+            // the preallocated space is not needed on disk
+            synchronized(this){
+                writeDataEndPointer(dataEnd);
+                raFile.truncate(dataEnd);
+                fileSize = dataEnd;
+            }
+        }
         if(indexes != null)
             indexes.close();
+        database.getBufferPool().removeAll(raFile);
+        WriteAheadLog writeAheadLog = database.getWriteAheadLog();
+        if(writeAheadLog != null){
+            writeAheadLog.fileClosed(raFile);
+        }
         raFile.close();
         raFile = null;
+        mappedFile = null;
         if( lobs != null ){
             lobs.close();
             lobs = null;
@@ -196,24 +262,292 @@ class Table extends TableView{
 
 		// write additional informations
 		for(int i=0; i<indexes.size(); i++){
-			IndexDescription indexDesc = indexes.get(i);
-			store.writeInt( INDEX );
-			int offsetStart = store.getCurrentOffsetInPage();
-			store.setCurrentOffsetInPage( offsetStart + 4 ); // place holder for length
-			
-			// write the IndexDescription
-			indexDesc.save(store);
-			
-			// write the length information
-			int offsetEnd = store.getCurrentOffsetInPage();
-			store.setCurrentOffsetInPage( offsetStart );
-			store.writeInt( offsetEnd - offsetStart);
-			store.setCurrentOffsetInPage( offsetEnd );
+			writeIndex( store, indexes.get(i) );
 		}
+		store.writeInt( FREE_SPACE );
+		store.writeInt( 12 ); // length of this information
+		freeSpacePointerPos = firstPage + store.getCurrentOffsetInPage();
+		store.writeLong( 0 ); // no saved free space map
+		store.writeInt( DATA_END );
+		store.writeInt( 12 ); // length of this information
+		dataEndPointerPos = firstPage + store.getCurrentOffsetInPage();
+		store.writeLong( 0 ); // the end of data is searched from the first page
+		definitionEnd = firstPage + store.getCurrentOffsetInPage();
 		store.writeInt( 0 ); // no more additional informations
+		store.writeBytes( new byte[INDEX_RESERVE] ); // space for CREATE INDEX
+		definitionLimit = firstPage + store.getCurrentOffsetInPage();
 		
 		store.writeFinsh(null); //The connection parameter is null because the table header is written immediately.
         firstPage = store.getNextPagePos();
+        loadDataEnd(0);
+    }
+    
+    
+    /**
+     * Write the additional information of an index in the table definition.
+     */
+    private static void writeIndex(StoreImpl store, IndexDescription indexDesc) throws SQLException{
+		store.writeInt( INDEX );
+		int offsetStart = store.getCurrentOffsetInPage();
+		store.setCurrentOffsetInPage( offsetStart + 4 ); // place holder for length
+		
+		// write the IndexDescription
+		indexDesc.save(store);
+		
+		// write the length information
+		int offsetEnd = store.getCurrentOffsetInPage();
+		store.setCurrentOffsetInPage( offsetStart );
+		store.writeInt( offsetEnd - offsetStart);
+		store.setCurrentOffsetInPage( offsetEnd );
+    }
+    
+    
+    /**
+     * Add a new index to the table without a copy of the table. The index is build from the rows and its description
+     * is written in the reserved space of the table definition. The type of the entry is written last, that a crash
+     * before leave the table definition without the index. The caller must hold an ALTER lock of the table.
+     * @param indexDesc the new index that is not created yet
+     * @return false if the table definition has not enough space for the index, the table must be copied then
+     * @throws SQLException if the index is UNIQUE and the rows include a duplicated key
+     */
+    boolean addIndex(SSConnection con, IndexDescription indexDesc) throws Exception{
+        if(definitionEnd == 0){
+            return false;
+        }
+        StoreImpl store = StoreImpl.createStore( this, null, SQLTokenizer.CREATE, -1 );
+        int offsetStart = store.getCurrentOffsetInPage();
+        writeIndex( store, indexDesc );
+        byte[] entry = new byte[store.getCurrentOffsetInPage() - offsetStart];
+        store.copyValueTo( offsetStart, entry.length, entry, 0 );
+        if(definitionEnd + entry.length + 4 > definitionLimit){
+            return false;
+        }
+        indexDesc.create( con, database, this );
+        indexes.build( con, this, indexDesc );
+        try{
+            Utils.writeFully( raFile, ByteBuffer.wrap( entry, 4, entry.length - 4 ), definitionEnd + 4 );
+            raFile.force(false);
+            Utils.writeFully( raFile, ByteBuffer.wrap( entry, 0, 4 ), definitionEnd );
+            raFile.force(false);
+        }catch(IOException e){
+            indexes.removeLast();
+            throw e;
+        }
+        definitionEnd += entry.length;
+        return true;
+    }
+    
+    
+    /**
+     * Set the logical end of the data after the file was opened. If the table was not closed clean then the saved
+     * end can be too small. The pages after it are added until the first invalid page header, this is the start
+     * of the preallocated space.
+     * @param savedEnd the end of data from the table header or 0
+     */
+    void loadDataEnd(long savedEnd) throws IOException{
+        fileSize = raFile.size();
+        if(dataEndPointerPos == 0){
+            // a table of an older file format or a LOB file, there is never preallocated space
+            dataEnd = fileSize;
+            return;
+        }
+        long end = Math.max(savedEnd, firstPage);
+        byte[] header = new byte[StoreImpl.getHeaderSize(this)];
+        while(end + header.length <= fileSize){
+            Utils.readFully(raFile, ByteBuffer.wrap(header), end);
+            int sizePhysical = StoreImpl.isPageHeader(this, header) ? StoreImpl.getPhysicalSize(this, header) : 0;
+            if(sizePhysical < header.length || end + sizePhysical > fileSize){
+                break;
+            }
+            end += sizePhysical;
+        }
+        dataEnd = end;
+        if(fileSize > dataEnd && !database.isReadOnly()){
+            // the rest of a preallocated extent or of a bulk load that was not finished
+            raFile.truncate(dataEnd);
+            fileSize = dataEnd;
+        }
+    }
+    
+    
+    /**
+     * Get the logical end of the data. The file can be larger because of preallocated space.
+     */
+    synchronized long getDataEnd(){
+        return dataEnd;
+    }
+    
+    
+    /**
+     * Get the end of the data that the connection can read. The rows of a finished BulkLoad are after the end of
+     * the data until the commit, only its own connection can read them.
+     */
+    long getDataEnd(SSConnection con){
+        BulkLoad load = bulkLoad;
+        return (load != null && load.con == con) ? load.getDataEnd() : getDataEnd();
+    }
+    
+    
+    /**
+     * Is called after pages at the end of the data are written.
+     * @param end the file position after the written pages
+     */
+    synchronized void setDataEnd(long end){
+        if(end > dataEnd){
+            dataEnd = end;
+        }
+    }
+    
+    
+    /**
+     * Remove the data after the logical end of the data, for example of a failed bulk load.
+     */
+    synchronized void truncateData() throws IOException{
+        if(raFile.size() > dataEnd){
+            raFile.truncate(dataEnd);
+        }
+        fileSize = dataEnd;
+    }
+    
+    
+    /**
+     * If the end of the data is saved in the table header. Only then pages after the end are ignored on the next
+     * open if they are not valid.
+     */
+    boolean isDataEndSaved(){
+        return dataEndPointerPos != 0;
+    }
+    
+    
+    /**
+     * Make sure that the file is large enough for the data until the given position. The file grow in extents
+     * that it is not fragmented with every new page. The extent size is doubled with the file size until the
+     * extent size of the database is reached.
+     * @param end the file position after the new pages
+     */
+    synchronized void extendFile(long end) throws IOException{
+        int extentSize = database.getExtentSize();
+        if(end <= fileSize || dataEndPointerPos == 0 || extentSize <= 0){
+            return;
+        }
+        long growth = Math.min( extentSize, Math.max( fileSize, StoreImpl.DEFAULT_PAGE_SIZE ) );
+        long newSize = fileSize + growth;
+        if(newSize < end){
+            newSize = end + growth;
+        }
+        // the space is filled with zeros, a sparse file would be fragmented on the first write
+        byte[] zeros = new byte[(int)Math.min( newSize - fileSize, 0x10000 )];
+        for(long pos = fileSize; pos < newSize; pos += zeros.length){
+            Utils.writeFully(raFile, ByteBuffer.wrap(zeros, 0, (int)Math.min( zeros.length, newSize - pos )), pos);
+        }
+        fileSize = newSize;
+        // a hint for the next open if the table is not closed clean, the following pages are searched
+        writeDataEndPointer(dataEnd);
+    }
+    
+    
+    /**
+     * Write a new page at the end of the data. It is used if there is no redo log.
+     * @return the file offset of the page
+     */
+    synchronized long append(ByteBuffer buffer) throws IOException{
+        return append(buffer, 0);
+    }
+    
+    
+    /**
+     * Write a new page at the end of the data like append(ByteBuffer) on a commit.
+     * @param commitVersion the sequence number of the commit in the VersionStore or 0 if no versions are saved
+     */
+    synchronized long append(ByteBuffer buffer, long commitVersion) throws IOException{
+        long offset = dataEnd;
+        long end = offset + buffer.remaining();
+        if(commitVersion != 0){
+            database.getVersionStore().addAppended(commitVersion, this, offset, end);
+        }
+        extendFile(end);
+        Utils.writeFully(raFile, buffer, offset);
+        dataEnd = end;
+        return offset;
+    }
+    
+    
+    private void writeDataEndPointer(long end) throws IOException{
+        Utils.writeFully(raFile, ByteBuffer.wrap(Utils.long2bytes(end)), dataEndPointerPos);
+    }
+    
+
+    /**
+     * Load the free space map that was saved on the last close. The saved map is only valid until the first change of
+     * the table. That the pointer is removed immediately. If the table is not closed clean then the free space is lost.
+     */
+    private void loadFreeSpace(SSConnection con, long freeSpacePos) throws Exception{
+        StoreImpl store = getStore(con, freeSpacePos, SQLTokenizer.SELECT);
+        freeSpace.load(store);
+        // the page of the map is also free now
+        freeSpace.add(freeSpacePos, (int)(store.getNextPagePos() - freeSpacePos));
+        writeFreeSpacePointer(0);
+    }
+    
+    
+    /**
+     * Save the free space map as deleted page and set the pointer in the table header.
+     */
+    private void saveFreeSpace() throws Exception{
+        StorePage storePage = new StorePage(null, -1, raFile, -1){
+            @Override
+            long append(ByteBuffer buffer) throws IOException{
+                return Table.this.append(buffer);
+            }
+        };
+        StoreImpl store = StoreImpl.createStore(this, storePage, SQLTokenizer.INSERT, -1);
+        freeSpace.save(store);
+        writeFreeSpacePointer(store.writeFinshDeleted());
+    }
+    
+    
+    private void writeFreeSpacePointer(long freeSpacePos) throws SQLException{
+        new StorePage(Utils.long2bytes(freeSpacePos), 8, raFile, freeSpacePointerPos).commit();
+    }
+    
+    
+    /**
+     * Write a new page in the space of a deleted page. The physical size of the deleted page is set in the header of
+     * the new page.
+     * @param page the data of the new page
+     * @param pageSize the needed size
+     * @param batch the log batch of the current commit or null if the page should be written immediately
+     * @param commitVersion the sequence number of the commit in the VersionStore or 0 if no versions are saved
+     * @return the file offset of the page or -1 if there is no free page that is large enough.
+     */
+    long writeInFreeSpace(byte[] page, int pageSize, WriteAheadLog.Batch batch, long commitVersion) throws SQLException{
+        int sizePhysical;
+        long fileOffset;
+        synchronized(freeSpace){
+            sizePhysical = freeSpace.getSize(pageSize);
+            if(sizePhysical < 0){
+                return -1;
+            }
+            fileOffset = freeSpace.remove(sizePhysical);
+        }
+        int headerSize = StoreImpl.setPhysicalSize(this, page, sizePhysical);
+        if(commitVersion != 0){
+            // the old snapshots see the deleted page
+            database.getVersionStore().addNewPage(commitVersion, this, fileOffset);
+        }
+        if(batch != null){
+            // the log write the complete page with a single write
+            batch.write(this, fileOffset, page, pageSize);
+            return fileOffset;
+        }
+        try{
+            // write the data before the header that a parallel reader never see the new header with the old data
+            Utils.writeFully(raFile, ByteBuffer.wrap(page, headerSize, pageSize - headerSize), fileOffset + headerSize);
+            Utils.writeFully(raFile, ByteBuffer.wrap(page, 0, headerSize), fileOffset);
+        }catch(Exception e){
+            throw SmallSQLException.createFromException(e);
+        }
+        return fileOffset;
     }
     
 
@@ -232,8 +566,24 @@ class Table extends TableView{
     }*/
 
     StoreImpl getStore( SSConnection con, long filePos, int pageOperation ) throws Exception{
+        return getStore( con, filePos, pageOperation, null );
+    }
+
+    
+    /**
+     * Get a Store for a sequential scan. The pages are read via the scan buffer.
+     */
+    StoreImpl getStore( SSConnection con, long filePos, int pageOperation, ScanBuffer scanBuffer ) throws Exception{
 		TableStorePage storePage = requestLock( con, pageOperation, filePos );
-        return StoreImpl.createStore( this, storePage, pageOperation, filePos );
+		BulkLoad load = bulkLoad;
+		if(load != null && load.con == con){
+			// the header of the first loaded row is written with the commit
+			byte[] firstRow = load.getFirstRow( filePos );
+			if(firstRow != null){
+				return StoreImpl.createMemoryStore( this, storePage, pageOperation, filePos, firstRow );
+			}
+		}
+        return StoreImpl.createStore( this, storePage, pageOperation, filePos, scanBuffer );
     }
 
     
@@ -289,7 +639,7 @@ class Table extends TableView{
      * the current isolation level.
      */
     List getInserts(SSConnection con){
-		synchronized(locks){
+		synchronized(tableLocks){
 			ArrayList inserts = new ArrayList();
 			if(con.isolationLevel <= Connection.TRANSACTION_READ_UNCOMMITTED){
 				for(int i=0; i<locksInsert.size(); i++){
@@ -310,144 +660,326 @@ class Table extends TableView{
     
     /**
      * Request a page lock. If the request is valid then it return the StorePage. 
-     * If the lock can not be created within 5 seconds then it throw an exception.
+     * If the lock can not be created within the lock timeout of the connection then it throw an exception.
+     * If the request close a cycle of waiting transactions then the youngest transaction is rolled back.
+     * On REPEATABLE_READ and SERIALIZABLE the reads use a snapshot of the connection and set no read locks.
      * @param con The connection that request the lock
      * @param pageOperation The operation that should be perform
      * @param page The offset of the page
      * @return a valid StorePage
-     * @throws Exception if a timeout occurs
+     * @throws Exception if a timeout occurs or the transaction is the victim of a deadlock
      */
     final TableStorePage requestLock(SSConnection con, int pageOperation, long page) throws Exception{
-    	synchronized(locks){
-            if(raFile == null){
-                throw SmallSQLException.create(Language.TABLE_MODIFIED, name);
+        if(raFile == null){
+            throw SmallSQLException.create(Language.TABLE_MODIFIED, name);
+        }
+        switch(pageOperation){
+            case SQLTokenizer.SELECT:
+            case SQLTokenizer.UPDATE:
+                return requestPageLock( con, pageOperation, page );
+            default:
+                return requestTableLock( con, pageOperation, page );
+        }
+    }
+    
+    
+    /**
+     * Request a lock for a single page. Only the stripe of the page is synchronized, the requests for pages of
+     * other stripes are not blocked.
+     */
+    private TableStorePage requestPageLock(SSConnection con, int pageOperation, long page) throws Exception{
+        // the snapshot can wait on running commits, it is created before any monitor is held
+        con.createSnapshot( database );
+        LockTable.Stripe stripe = locks.getStripe(page);
+        WaitForGraph.Wait wait = null;
+        try{
+            while(true){
+                WaitForGraph.Wait victim;
+                synchronized(stripe){
+                    TableStorePage storePage = requestPageLockImpl( con, pageOperation, page, stripe );
+                    if(storePage != null) 
+                        return storePage; // the normal case should be the fasted
+                    if(wait == null)
+                        wait = new WaitForGraph.Wait( con, stripe );
+                    victim = waitForLock( wait, getPageBlockers( con, pageOperation, page, stripe ) );
+                }
+                if(victim != null){
+                    victim.wakeUp();
+                }
             }
-			long endTime = 0;
-			while(true){
-				TableStorePage storePage = requestLockImpl( con, pageOperation, page);
-				if(storePage != null) 
-					return storePage; // the normal case should be the fasted
-				if(endTime == 0)
-					endTime = System.currentTimeMillis() + 5000;
-				long waitTime = endTime - System.currentTimeMillis();
-				if(waitTime <= 0)
-					throw SmallSQLException.create(Language.TABLE_DEADLOCK, name);
-				locks.wait(waitTime);
-			}
-    	}
+        }finally{
+            if(wait != null){
+                endLockWait( wait );
+            }
+        }
+    }
+    
+    
+    /**
+     * Request a lock that is not bound to a single page, a lock of the complete table or a insert lock.
+     */
+    private TableStorePage requestTableLock(SSConnection con, int pageOperation, long page) throws Exception{
+        // the release of a page lock notify the table monitor only if there are waiting table locks
+        boolean scanPages = pageOperation != SQLTokenizer.INSERT && pageOperation != SQLTokenizer.LONGVARBINARY;
+        WaitForGraph.Wait wait = null;
+        if(scanPages){
+            synchronized(tableLocks){
+                tableLockWaiters++;
+            }
+        }
+        try{
+            while(true){
+                WaitForGraph.Wait victim;
+                synchronized(tableLocks){
+                    TableStorePage storePage = requestTableLockImpl( con, pageOperation, page );
+                    if(storePage != null) 
+                        return storePage;
+                    if(wait == null)
+                        wait = new WaitForGraph.Wait( con, tableLocks );
+                    victim = waitForLock( wait, getTableBlockers( con, pageOperation ) );
+                }
+                if(victim != null){
+                    victim.wakeUp();
+                }
+            }
+        }finally{
+            if(scanPages){
+                synchronized(tableLocks){
+                    tableLockWaiters--;
+                }
+            }
+            if(wait != null){
+                endLockWait( wait );
+            }
+        }
+    }
+    
+    
+    /**
+     * Wait on the monitor of the lock request until a lock is released. The caller must synchronized the monitor.
+     * @param wait the lock request
+     * @param blockers the connections that hold the conflicting locks
+     * @return the victim of a deadlock that wait on another monitor and must be woken up after the monitor of
+     *         the request is released, or null
+     * @throws Exception if the timeout is reached or the transaction is the victim of a deadlock
+     */
+    private WaitForGraph.Wait waitForLock(WaitForGraph.Wait wait, List blockers) throws Exception{
+        long waitTime = 0;
+        if(wait.endTime != 0){
+            waitTime = wait.endTime - System.currentTimeMillis();
+            if(waitTime <= 0)
+                throw SmallSQLException.create(Language.TABLE_LOCK_TIMEOUT, name);
+        }
+        WaitForGraph graph = database.getWaitForGraph();
+        WaitForGraph.Wait victim = graph.setBlockers( wait, blockers );
+        if(victim == wait)
+            throw SmallSQLException.create(Language.TABLE_DEADLOCK_VICTIM, name);
+        if(victim != null)
+            return victim;
+        try{
+            wait.monitor.wait(waitTime);
+        }finally{
+            if(graph.endWait( wait ))
+                throw SmallSQLException.create(Language.TABLE_DEADLOCK_VICTIM, name);
+        }
+        return null;
+    }
+    
+    
+    /**
+     * Remove the lock request from the wait-for graph. If the transaction was selected as victim of a deadlock
+     * then it is rolled back that the other transactions can continue. No monitor of the locks may be held.
+     */
+    private void endLockWait(WaitForGraph.Wait wait) throws SQLException{
+        database.getWaitForGraph().remove( wait );
+        if(wait.isVictim()){
+            wait.con.rollback();
+        }
     }
     
+    
+    /**
+     * Get the connections that hold a lock which prevent the page lock. The caller must synchronized the stripe.
+     */
+    private List getPageBlockers(SSConnection con, int pageOperation, long page, LockTable.Stripe stripe){
+        ArrayList blockers = new ArrayList();
+        addBlocker( blockers, con, tabLockConnection );
+        if(pageOperation != SQLTokenizer.SELECT){
+            addBlocker( blockers, con, writeTabLockConnection );
+        }
+        for(TableStorePage lock = stripe.get( page ); lock != null; lock = lock.nextLock){
+            if(lock.lockType == LOCK_WRITE){
+                addBlocker( blockers, con, lock.con );
+            }
+        }
+        return blockers;
+    }
+    
+    
+    /**
+     * Get the connections that hold a lock which prevent the table or insert lock. The caller must synchronized
+     * tableLocks.
+     */
+    private List getTableBlockers(SSConnection con, int pageOperation){
+        ArrayList blockers = new ArrayList();
+        addBlocker( blockers, con, tabLockConnection );
+        addBlocker( blockers, con, writeTabLockConnection );
+        if(pageOperation == SQLTokenizer.INSERT){
+            return blockers;
+        }
+        for(int i=0; i<locksInsert.size(); i++){
+            TableStorePage lock = (TableStorePage)locksInsert.get(i);
+            addBlocker( blockers, con, lock.con );
+        }
+        boolean vacuum = pageOperation == SQLTokenizer.VACUUM || pageOperation == SQLTokenizer.COPY;
+        locks.addLockOwners( blockers, con, vacuum ? LOCK_WRITE : LOCK_READ );
+        return blockers;
+    }
+    
+    
+    private static void addBlocker(List blockers, SSConnection con, SSConnection blocker){
+        if(blocker != null && blocker != con){
+            blockers.add( blocker );
+        }
+    }
+    
+    
     /**
      * Request a page lock. If the request is valid then it return the StorePage. 
-     * In the other case it return null.
-     * @param page The fileOffset or -1 for a new page
+     * In the other case it return null. The caller must synchronized the stripe of the page.
+     * @param page The fileOffset of the page
      * @throws SQLException 
      */
-	final private TableStorePage requestLockImpl(SSConnection con, int pageOperation, long page) throws SQLException{
-		synchronized(locks){
-			if(tabLockConnection != null && tabLockConnection != con) return null;
-			switch(con.isolationLevel){
-				case Connection.TRANSACTION_SERIALIZABLE:
-					serializeConnections.put( con, con);
-					break;
+	private TableStorePage requestPageLockImpl(SSConnection con, int pageOperation, long page, LockTable.Stripe stripe) throws SQLException{
+		if(tabLockConnection != null && tabLockConnection != con) return null;
+		if(writeTabLockConnection != null && writeTabLockConnection != con && pageOperation != SQLTokenizer.SELECT) return null;
+		if(pageOperation == SQLTokenizer.UPDATE && isBulkLoaded(con)){
+			throw SmallSQLException.create(Language.ROW_BULK_LOADED, name);
+		}
+		VersionStore.Snapshot snapshot = con.getSnapshot( database );
+		TableStorePage prevLock = null;
+		TableStorePage lock = stripe.get( page );
+		TableStorePage usableLock = null;
+		while(lock != null){
+			if(lock.con == con || 
+			   con.isolationLevel <= Connection.TRANSACTION_READ_UNCOMMITTED){
+			    usableLock = lock;
+			} else {
+			    if(lock.lockType == LOCK_WRITE && (snapshot == null || pageOperation != SQLTokenizer.SELECT)){
+			        return null; // write lock of another Connection, a snapshot read the committed data
+			    }
 			}
-		
-			switch(pageOperation){
-				case SQLTokenizer.CREATE:{
-						// first check if another connection has a lock before creating a table lock
-						if(locks.size() > 0){
-							Iterator values = locks.values().iterator();
-							while(values.hasNext()){
-								TableStorePage lock = (TableStorePage)values.next();
-								if(lock.con != con) return null;
-							}
-						}
-						for(int i=0; i<locksInsert.size(); i++){
-							//the first StorePage in the linked list must be ever TableStorePageInsert
-							TableStorePageInsert lock = (TableStorePageInsert)locksInsert.get(i);
-							if(lock.con != con) return null;
-						}
-						if(serializeConnections.size() > 0){
-							Iterator values = locks.values().iterator();
-							while(values.hasNext()){
-								TableStorePage lock = (TableStorePage)values.next();
-								if(lock.con != con) return null;
-							}
-						}
-						tabLockConnection = con;
-						tabLockCount++;
-						TableStorePage lock = new TableStorePage(con, this, LOCK_TAB, page);
-						con.add(lock);
-						return lock;
+			prevLock = lock;
+			lock = lock.nextLock;
+		}
+		if(usableLock != null){
+		    return usableLock;
+		}
+		lock = new TableStorePage( con, this, LOCK_NONE, page);
+		// a read need no lock, REPEATABLE_READ and SERIALIZABLE read from a snapshot
+		// a page that was changed after the start of the snapshot is read in its old version, 
+		// the write lock is requested with the change of the row and fail
+		if(pageOperation == SQLTokenizer.UPDATE && !isChanged( snapshot, page )){
+			lock.lockType = LOCK_WRITE;
+			if(prevLock != null){
+			    prevLock.nextLock = lock;
+			}else{
+			    stripe.put( page, lock );
+			}
+			con.add(lock);
+		}
+		return lock;							
+	}
+	
+	
+    /**
+     * Request a lock of the complete table or an insert lock. If the request is valid then it return the StorePage. 
+     * In the other case it return null. The caller must synchronized tableLocks.<p>
+     * A lock of the complete table is set first and then the page locks are checked. A parallel page request
+     * see the table lock or its page lock is found. If there is a conflict then the table lock is reset.
+     * @param page -1 for a new page
+     * @throws SQLException 
+     */
+	private TableStorePage requestTableLockImpl(SSConnection con, int pageOperation, long page) throws SQLException{
+		if(tabLockConnection != null && tabLockConnection != con) return null;
+		if(writeTabLockConnection != null && writeTabLockConnection != con) return null;
+		switch(pageOperation){
+			case SQLTokenizer.CREATE:{
+					// first check if another connection has a lock before creating a table lock
+					for(int i=0; i<locksInsert.size(); i++){
+						//the first StorePage in the linked list must be ever TableStorePageInsert
+						TableStorePageInsert lock = (TableStorePageInsert)locksInsert.get(i);
+						if(lock.con != con) return null;
 					}
-                case SQLTokenizer.ALTER:{
-                    // first check if there is any lock before creating a table lock
-                    if(locks.size() > 0 || locksInsert.size() > 0){
-                        return null;
-                    }
-                    if(serializeConnections.size() > 0){
-                        Iterator values = locks.values().iterator();
-                        while(values.hasNext()){
-                            TableStorePage lock = (TableStorePage)values.next();
-                            if(lock.con != con) return null;
-                        }
-                    }
-                    tabLockConnection = con;
-                    tabLockCount++;
-                    TableStorePage lock = new TableStorePage(con, this, LOCK_TAB, page);
-                    lock.rollback();
-                    return lock;
+					if(!setTabLock( con, con )) return null;
+					tabLockCount++;
+					TableStorePage lock = new TableStorePage(con, this, LOCK_TAB, page);
+					con.add(lock);
+					return lock;
+				}
+            case SQLTokenizer.ALTER:{
+                // first check if there is any lock before creating a table lock
+                if(locksInsert.size() > 0){
+                    return null;
                 }
-				case SQLTokenizer.INSERT:{
-						// if there are more as one Connection with a serializable lock then an INSERT is not valid
-						if(serializeConnections.size() > 1) return null;
-						if(serializeConnections.size() == 1 && serializeConnections.get(con) == null) return null;
-						TableStorePageInsert lock = new TableStorePageInsert(con, this, LOCK_INSERT);
-						locksInsert.add( lock );
-						con.add(lock);
-						return lock;
-					}
-				case SQLTokenizer.SELECT:
-				case SQLTokenizer.UPDATE:{
-						Long pageKey = new Long(page); //TODO performance
-						TableStorePage prevLock = null;
-						TableStorePage lock = (TableStorePage)locks.get( pageKey );
-						TableStorePage usableLock = null;
-						while(lock != null){
-							if(lock.con == con || 
-							   con.isolationLevel <= Connection.TRANSACTION_READ_UNCOMMITTED){
-							    usableLock = lock;
-							} else {
-							    if(lock.lockType == LOCK_WRITE){
-							        return null; // write lock of another Connection
-							    }
-							}
-							prevLock = lock;
-							lock = lock.nextLock;
-						}
-						if(usableLock != null){
-						    return usableLock;
-						}
-						lock = new TableStorePage( con, this, LOCK_NONE, page);
-						if(con.isolationLevel >= Connection.TRANSACTION_REPEATABLE_READ || pageOperation == SQLTokenizer.UPDATE){
-							lock.lockType = pageOperation == SQLTokenizer.UPDATE ? LOCK_WRITE : LOCK_READ;
-							if(prevLock != null){
-							    prevLock.nextLock = lock.nextLock;
-							}else{
-							    locks.put( pageKey, lock );
-							}
-							con.add(lock);
-						}
-						return lock;							
-					}
-				case SQLTokenizer.LONGVARBINARY:
-					// is used for written BLOB and CLOB
-					// the difference to INSERT is that page described the size of the byte buffer
-					return new TableStorePage( con, this, LOCK_INSERT, -1);
-				default:
-					throw new Error("pageOperation:"+pageOperation);
+                if(!setTabLock( con, null )) return null;
+                tabLockCount++;
+                TableStorePage lock = new TableStorePage(con, this, LOCK_TAB, page);
+                lock.rollback();
+                return lock;
+            }
+            case SQLTokenizer.VACUUM:
+            case SQLTokenizer.COPY:{
+                // wait until all writes of other connections are finished, reads are not blocked
+                if(writeTabLockConnection != null) return null;
+                for(int i=0; i<locksInsert.size(); i++){
+                    TableStorePage lock = (TableStorePage)locksInsert.get(i);
+                    if(lock.con != con) return null;
+                }
+                writeTabLockConnection = con;
+                if(locks.hasLocks( con, LOCK_WRITE )){
+                    writeTabLockConnection = null;
+                    locks.notifyAllStripes();
+                    return null;
+                }
+                TableStorePage lock = new TableStorePage(con, this, LOCK_WRITE_TAB, page);
+                lock.rollback();
+                return lock;
+            }
+			case SQLTokenizer.INSERT:{
+					// the new rows are not visible in the snapshots of other connections, there are no phantoms
+					TableStorePageInsert lock = new TableStorePageInsert(con, this, LOCK_INSERT);
+					locksInsert.add( lock );
+					con.add(lock);
+					return lock;
+				}
+			case SQLTokenizer.LONGVARBINARY:
+				// is used for written BLOB and CLOB
+				// the difference to INSERT is that page described the size of the byte buffer
+				return new TableStorePage( con, this, LOCK_INSERT, -1);
+			default:
+				throw new Error("pageOperation:"+pageOperation);
+		}
+	}
+	
+	
+	/**
+	 * Set the table lock if there are no page locks that conflict. The caller must synchronized tableLocks.
+	 * @param con the connection of the table lock
+	 * @param ignore the connection whose page locks does not conflict or null if every page lock conflict
+	 * @return true if the lock was set
+	 */
+	private boolean setTabLock(SSConnection con, SSConnection ignore){
+		SSConnection oldConnection = tabLockConnection;
+		tabLockConnection = con;
+		if(locks.hasLocks( ignore, LOCK_READ )){
+			tabLockConnection = oldConnection;
+			if(oldConnection == null){
+				locks.notifyAllStripes();
 			}
+			return false;
 		}
+		return true;
 	}
 	
 	
@@ -457,34 +989,115 @@ class Table extends TableView{
      *             if the connection was closed.
 	 */
 	TableStorePage requestWriteLock(SSConnection con, TableStorePage readlock) throws SQLException{
+		if(isBulkLoaded(con)){
+			// a moved row would be written over the rows of the BulkLoad
+			throw SmallSQLException.create(Language.ROW_BULK_LOADED, name);
+		}
 		if(readlock.lockType == LOCK_INSERT){
 			TableStorePage lock = new TableStorePage( con, this, LOCK_INSERT, -1);
-			readlock.nextLock = lock;
+			synchronized(tableLocks){
+				readlock.nextLock = lock;
+			}
 			con.add(lock);
 			return lock;									
 		}
-		Long pageKey = new Long(readlock.fileOffset); //TODO performance
-		TableStorePage prevLock = null;
-		TableStorePage lock = (TableStorePage)locks.get( pageKey );
-		while(lock != null){
-			if(lock.con != con) return null; // there is already any lock from another connection, we can not start write
-			if(lock.lockType < LOCK_WRITE){
-				// if there is only a read lock we can transfer it
-				// this is required for rollback to a savepoint
-				lock.lockType = LOCK_WRITE;
-				return lock;
+		long page = readlock.fileOffset;
+		LockTable.Stripe stripe = locks.getStripe(page);
+		synchronized(stripe){
+			if(tabLockConnection != null && tabLockConnection != con) return null;
+			if(writeTabLockConnection != null && writeTabLockConnection != con) return null;
+			TableStorePage prevLock = null;
+			TableStorePage lock = stripe.get( page );
+			while(lock != null){
+				if(lock.con != con) return null; // there is already any lock from another connection, we can not start write
+				if(lock.lockType < LOCK_WRITE){
+					checkSnapshot( con.getSnapshot( database ), page );
+					// if there is only a read lock we can transfer it
+					// this is required for rollback to a savepoint
+					lock.lockType = LOCK_WRITE;
+					return lock;
+				}
+				prevLock = lock;
+				lock = lock.nextLock;
 			}
-			prevLock = lock;
-			lock = lock.nextLock;
+			checkSnapshot( con.getSnapshot( database ), page );
+			lock = new TableStorePage( con, this, LOCK_WRITE, page);
+			if(prevLock != null){
+			    prevLock.nextLock = lock;
+			} else {
+			    stripe.put( page, lock );
+			}
+			con.add(lock);
+			return lock;									
 		}
-		lock = new TableStorePage( con, this, LOCK_WRITE, readlock.fileOffset);
-		if(prevLock != null){
-		    prevLock.nextLock = lock;
-		} else {
-		    locks.put( pageKey, lock );
+	}
+	
+	
+	/**
+	 * A snapshot can only change a page that was not changed from another transaction after the start of the
+	 * snapshot. Otherwise the change would overwrite data that the snapshot has never seen.
+	 * @param snapshot the snapshot of the connection or null
+	 * @param page the offset of the page that should be locked for writing
+	 * @throws SQLException if the page was changed
+	 */
+	private void checkSnapshot(VersionStore.Snapshot snapshot, long page) throws SQLException{
+		if(isChanged( snapshot, page )){
+			throw SmallSQLException.create(Language.ROW_SNAPSHOT_CHANGED, name);
 		}
-		con.add(lock);
-		return lock;									
+	}
+	
+	
+	/**
+	 * If the page was changed from another transaction after the start of the snapshot.
+	 * @param snapshot the snapshot of the connection or null
+	 */
+	private boolean isChanged(VersionStore.Snapshot snapshot, long page){
+		return snapshot != null && database.getVersionStore().getVersion( snapshot, this, page ) != null;
+	}
+	
+	
+	/**
+	 * If the connection has locked the complete table for writing, for example for a VACUUM.
+	 */
+	boolean isWriteLocked(SSConnection con){
+		return tabLockConnection == con || writeTabLockConnection == con;
+	}
+	
+	
+	/**
+	 * If a BulkLoad of the connection is possible. The not committed new rows of the connection are written at
+	 * the end of the data with the commit, they would be written over the rows of the BulkLoad.
+	 */
+	boolean isBulkLoadPossible(SSConnection con){
+		synchronized(tableLocks){
+			if(bulkLoad != null){
+				return false;
+			}
+			for(int i=0; i<locksInsert.size(); i++){
+				TableStorePage lock = (TableStorePage)locksInsert.get(i);
+				if(lock.con == con) return false;
+			}
+			return true;
+		}
+	}
+	
+	
+	/**
+	 * Mark the table as loaded from a BulkLoad until the end of the transaction. The connection must have a lock
+	 * for the complete table.
+	 * @param load the BulkLoad or null at the end of the transaction
+	 */
+	void setBulkLoad(BulkLoad load){
+		bulkLoad = load;
+	}
+	
+	
+	/**
+	 * If the connection has a not committed BulkLoad for this table.
+	 */
+	final boolean isBulkLoaded(SSConnection con){
+		BulkLoad load = bulkLoad;
+		return load != null && load.con == con;
 	}
 	
 	
@@ -493,76 +1106,115 @@ class Table extends TableView{
 	 */
 	void freeLock(TableStorePage storePage){
 		final int lockType = storePage.lockType;
+		switch(lockType){
+			case LOCK_READ:
+			case LOCK_WRITE:
+				freePageLock(storePage);
+				if(tableLockWaiters > 0){
+					synchronized(tableLocks){
+						tableLocks.notifyAll();
+					}
+				}
+				break;
+			case LOCK_INSERT:
+			case LOCK_TAB:
+			case LOCK_WRITE_TAB:
+				synchronized(tableLocks){
+					try{
+						freeTableLock(storePage);
+					}finally{
+						tableLocks.notifyAll();
+					}
+				}
+				if(lockType != LOCK_INSERT){
+					locks.notifyAllStripes();
+				}
+				break;
+			default:
+				throw new Error();
+		}
+	}
+	
+	
+	/**
+	 * Remove a page lock and wake up the threads that wait on the stripe of the page.
+	 */
+	private void freePageLock(TableStorePage storePage){
 		final long fileOffset = storePage.fileOffset;
-		synchronized(locks){
+		LockTable.Stripe stripe = locks.getStripe(fileOffset);
+		synchronized(stripe){
 			try{
-				TableStorePage lock;
-				TableStorePage prev;
-				switch(lockType){
-					case LOCK_INSERT:
-						for(int i=0; i<locksInsert.size(); i++){
-							prev = lock = (TableStorePage)locksInsert.get(i);
-							while(lock != null){
-								if(lock == storePage){
-									//remove lock
-									if(lock == prev){
-										if(lock.nextLock == null){
-											// the first lock is the only lock in the list
-											locksInsert.remove(i--);
-										}else{
-											// only the first lock of the list is remove
-											locksInsert.set( i, lock.nextLock );
-										}
-									}else{
-										// a lock in the mid or end is removed
-										prev.nextLock = lock.nextLock;
-									}
-									return;
-								}
-								prev = lock;
-								lock = lock.nextLock;
+				TableStorePage lock = stripe.get( fileOffset );
+				TableStorePage prev = lock;
+				while(lock != null){
+					if(lock == storePage){
+						//lock entfernen
+						if(lock == prev){
+							if(lock.nextLock == null){
+								// erste und einzige Lock in Liste
+								stripe.remove(fileOffset);
+							}else{
+								// the first lock in the list is removed
+								stripe.put( fileOffset, lock.nextLock );
 							}
+						}else{
+							// a lock in the middle or end of the list is removed
+							prev.nextLock = lock.nextLock;
 						}
-						break;
-					case LOCK_READ:
-					case LOCK_WRITE:
-						Long pageKey = new Long(fileOffset); //TODO performance
-						lock = (TableStorePage)locks.get( pageKey );
-						prev = lock;
-						while(lock != null){
-							if(lock == storePage){
-								//lock entfernen
-								if(lock == prev){
-									if(lock.nextLock == null){
-										// erste und einzige Lock in Liste
-										locks.remove(pageKey);
-									}else{
-										// the first lock in the list is removed
-										locks.put( pageKey, lock.nextLock );
-									}
+						return;
+					}
+					prev = lock;
+					lock = lock.nextLock;
+				}
+				// a run through can occur if a lock was step high and the type does not compare
+			}finally{
+				stripe.notifyAll();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Remove an insert lock or a lock of the complete table. The caller must synchronized tableLocks.
+	 */
+	private void freeTableLock(TableStorePage storePage){
+		switch(storePage.lockType){
+			case LOCK_INSERT:
+				for(int i=0; i<locksInsert.size(); i++){
+					TableStorePage prev;
+					TableStorePage lock;
+					prev = lock = (TableStorePage)locksInsert.get(i);
+					while(lock != null){
+						if(lock == storePage){
+							//remove lock
+							if(lock == prev){
+								if(lock.nextLock == null){
+									// the first lock is the only lock in the list
+									locksInsert.remove(i--);
 								}else{
-									// a lock in the middle or end of the list is removed
-									prev.nextLock = lock.nextLock;
+									// only the first lock of the list is remove
+									locksInsert.set( i, lock.nextLock );
 								}
-								return;
+							}else{
+								// a lock in the mid or end is removed
+								prev.nextLock = lock.nextLock;
 							}
-							prev = lock;
-							lock = lock.nextLock;
+							return;
 						}
-						// a run through can occur if a lock was step high and the type does not compare
-						break;
-					case LOCK_TAB:
-						assert storePage.con == tabLockConnection : "Internal Error with TabLock";
-						if(--tabLockCount == 0) tabLockConnection = null;
-						break;
-					default:
-						throw new Error();
+						prev = lock;
+						lock = lock.nextLock;
+					}
 				}
-			}finally{
-				locks.notifyAll();
-			}
+				break;
+			case LOCK_TAB:
+				assert storePage.con == tabLockConnection : "Internal Error with TabLock";
+				if(--tabLockCount == 0) tabLockConnection = null;
+				break;
+			case LOCK_WRITE_TAB:
+				assert storePage.con == writeTabLockConnection : "Internal Error with WriteTabLock";
+				writeTabLockConnection = null;
+				break;
 		}
 	}
 
 }
-
@@ -32,6 +32,8 @@
  */
 package smallsql.database;
 
+import java.io.InputStream;
+import java.io.Reader;
 import java.sql.*;
 import java.util.List;
 
@@ -51,6 +53,8 @@ final class TableResult extends TableViewResult{
      * The max fileOffset at open the ResultSet. Rows that are commited later are not not counted.
      */
     private long maxFileOffset;
+    /** Read buffer for the sequential scan of the table file */
+    private ScanBuffer scanBuffer;
     
 	TableResult(Table table){
 		this.table = table;
@@ -68,11 +72,34 @@ final class TableResult extends TableViewResult{
     final boolean init( SSConnection con ) throws Exception{
 		if(super.init(con)){
 			Columns columns = table.columns;
-			offsets     = new int[columns.size()];
+			offsets     = rowOffsets = new int[columns.size() + 1];
 			dataTypes   = new int[columns.size()];
 			for(int i=0; i<columns.size(); i++){
 				dataTypes[i] = columns.get(i).getDataType();
+				if(table.formatVersion >= TableView.TABLE_VIEW_STRING_VERSION){
+				    switch(dataTypes[i]){
+				    case SQLTokenizer.CHAR:
+				    case SQLTokenizer.NCHAR:
+				        if(padLengths == null){
+				            padLengths = new int[columns.size()];
+				        }
+				        padLengths[i] = columns.get(i).getDisplaySize();
+				    }
+				}
+			}
+			// the offsets of the leading values with a fixed size are equal in all rows
+			offsets[0] = StoreImpl.getHeaderSize(table);
+			fixedOffsets = 1;
+			for(int i=0; i<dataTypes.length; i++){
+			    int size = StoreImpl.getFixedSize(dataTypes[i]);
+			    if(size < 0){
+			        break;
+			    }
+			    offsets[i+1] = offsets[i] + 1 + size; // 1 byte for the null flag
+			    fixedOffsets++;
 			}
+			validOffsets = fixedOffsets;
+			scanBuffer = new ScanBuffer( con.getReadAheadSize(), con.isAsyncReadAhead() ? table.database.getReadAhead() : null );
 			return true;
 		}
 		return false;
@@ -83,7 +110,9 @@ final class TableResult extends TableViewResult{
     final void execute() throws Exception{
 		insertStorePages = table.getInserts(con);
 		firstOwnInsert = 0x4000000000000000L | insertStorePages.size();
-		maxFileOffset = table.raFile.size();
+		// the snapshot must include all rows until the end of the scan
+		con.createSnapshot( table.database );
+		maxFileOffset = table.getDataEnd( con );
         beforeFirst();
 	}
 
@@ -102,7 +131,16 @@ final class TableResult extends TableViewResult{
     
 	@Override
     final void deleteRow() throws SQLException{
+		Expressions[] indexKeys;
+		try{
+			indexKeys = table.indexes.createKeys( table, (StoreImpl)store );
+		}catch(Exception e){
+			throw SmallSQLException.createFromException(e);
+		}
 		store.deleteRow(con); 
+		if(indexKeys != null){
+			con.add( new IndexChange( table, getLink(), indexKeys, null ) );
+		}
 		store = new StoreNull(store.getNextPagePos());
 	}
 	
@@ -121,6 +159,9 @@ final class TableResult extends TableViewResult{
 		// but not access from other threads from the same connection
 		// This can produce NPE if another thread commit pages of this thread
 		synchronized(con.getMonitor()){
+		    // the keys are only changed if a column of an index is changed
+		    boolean indexChanged = table.indexes.isChanged( updateValues );
+		    Expressions[] oldKeys = indexChanged ? table.indexes.createKeys( table, (StoreImpl)this.store ) : null;
 		    ((StoreImpl)this.store).createWriteLock();
 		
     		for(int i=0; i<count; i++){
@@ -132,7 +173,12 @@ final class TableResult extends TableViewResult{
     				copyValueInto( i, newStore );
     			}
     		}
+    		Expressions[] newKeys = indexChanged ? table.indexes.createKeys( table, newStore ) : null;
+    		table.indexes.checkUnique( con, table, filePos, newKeys );
     		((StoreImpl)this.store).updateFinsh(con, newStore);
+    		if(oldKeys != null || newKeys != null){
+    			con.add( new IndexChange( table, getLink(), oldKeys, newKeys ) );
+    		}
 		}
 	}
     
@@ -151,9 +197,28 @@ final class TableResult extends TableViewResult{
 			store.writeExpression( src, tableColumn );
 						
 		}
+		Expressions[] indexKeys = table.indexes.createKeys( table, store );
+		table.indexes.checkUnique( con, table, -1, indexKeys );
 		store.writeFinsh( con );
+		if(indexKeys != null){
+			con.add( new IndexChange( table, store.getLink(), null, indexKeys ) );
+		}
 		insertStorePages.add(store.getLink());
 	}
+	
+	
+	/**
+	 * Get a link to the current row for the change of the indexes. A new row of this ResultSet get its position
+	 * with the commit.
+	 */
+	private StorePageLink getLink(){
+		if(filePos >= 0x4000000000000000L){
+			return (StorePageLink)insertStorePages.get( (int)(filePos & 0x3FFFFFFFFFFFFFFFL) );
+		}
+		StorePageLink link = new StorePageLink();
+		link.filePos = filePos;
+		return link;
+	}
 
 
 /*==============================================================================
@@ -165,8 +230,21 @@ final class TableResult extends TableViewResult{
     
     /** The row position in the file of the table.  */	
     private long filePos; 
+    /** The offsets of the values in the current row and the end of the last value. It is calculated lazy. */
     private int[] offsets;
+    /** The offsets of the values in the rows of the table, offsets is different for a row from a covering index. */
+    private int[] rowOffsets;
+    /** The offsets of the table columns in the payload of a covering index, see moveToIndexRow() */
+    private int[] payloadOffsets;
+    /** The offsets and the data types of the values in the payload of a covering index */
+    private int[] payloadValueOffsets, payloadDataTypes;
+    /** The count of valid entries in offsets for the current row. */
+    private int validOffsets;
+    /** The count of entries in offsets that are valid for every row. */
+    private int fixedOffsets;
     private int[] dataTypes;
+    /** The length of CHAR columns that are saved without padding. Is null if there are no such columns. */
+    private int[] padLengths;
     private int row;
 
     /** save the file offset after the last valid row (not deleted) */
@@ -176,10 +254,11 @@ final class TableResult extends TableViewResult{
      * Move to the row in the filePos. A value of -1 for filePos is invalid at this call point.
      */
     final private boolean moveToRow() throws Exception{
+    	offsets = rowOffsets;
     	if(filePos >= 0x4000000000000000L){
     		store = ((StorePageLink)insertStorePages.get( (int)(filePos & 0x3FFFFFFFFFFFFFFFL) )).getStore( table, con, lock);
     	}else{
-    		store = (filePos < maxFileOffset) ? table.getStore( con, filePos, lock ) : null;
+    		store = (filePos < maxFileOffset) ? table.getStore( con, filePos, lock, scanBuffer ) : null;
 			if(store == null){
 				if(insertStorePages.size() > 0){			
 					filePos = 0x4000000000000000L;
@@ -191,7 +270,8 @@ final class TableResult extends TableViewResult{
 			if(!store.isValidPage()){
 				return false;
 			}
-			store.scanObjectOffsets( offsets, dataTypes );
+			// the offsets of the values are scanned on the first access
+			validOffsets = fixedOffsets;
 			afterLastValidFilePos = store.getNextPagePos();
 			return true;
 		}else{
@@ -295,6 +375,60 @@ final class TableResult extends TableViewResult{
 	}
 	
 	
+	/**
+	 * Move to the row with a position from an index or to a row that was inserted in this ResultSet.
+	 * @return false if the row was deleted or it is not part of this scan
+	 */
+	final boolean moveToRowPosition(long rowPosition) throws Exception{
+		filePos = rowPosition;
+		boolean isValid = (filePos >= 0x4000000000000000L) ?
+							(filePos & 0x3FFFFFFFFFFFFFFFL) < insertStorePages.size() :
+							filePos < maxFileOffset;
+		return isValid && moveToRow();
+	}
+	
+	
+	/**
+	 * Move to a row with the values from the payload of a covering index. The row is not read from the table file,
+	 * only the values of the columns in the payload can be read.
+	 * @param rowPosition the position of the row in the file
+	 * @param payload the values that are saved in the index
+	 * @param columns the table columns in the payload in ascending order
+	 * @return false if the row is not part of this scan
+	 * @see IndexDescription#createKey(StoreImpl, int[], int[])
+	 */
+	final boolean moveToIndexRow(long rowPosition, byte[] payload, int[] columns) throws Exception{
+		if(rowPosition >= maxFileOffset){
+			return false;
+		}
+		if(payloadDataTypes == null || payloadDataTypes.length != columns.length){
+			payloadOffsets = new int[rowOffsets.length];
+			payloadValueOffsets = new int[columns.length + 1];
+			payloadDataTypes = new int[columns.length];
+		}
+		for(int i=0; i<columns.length; i++){
+			payloadDataTypes[i] = dataTypes[columns[i]];
+		}
+		filePos = rowPosition;
+		store = StoreImpl.createStore( table, payload );
+		store.scanObjectOffsets( payloadValueOffsets, payloadDataTypes, 0, columns.length );
+		for(int i=0; i<columns.length; i++){
+			payloadOffsets[columns[i]] = payloadValueOffsets[i];
+		}
+		offsets = payloadOffsets;
+		validOffsets = offsets.length;
+		return true;
+	}
+	
+	
+	/**
+	 * Get the count of rows that was inserted from the current transaction and are visible in this scan.
+	 */
+	final int getInsertCount(){
+		return insertStorePages.size();
+	}
+	
+	
 	@Override
     final boolean rowInserted(){
 		return filePos >= firstOwnInsert;
@@ -338,57 +472,89 @@ final class TableResult extends TableViewResult{
 
 	@Override
     final boolean isNull( int colIdx ) throws Exception{
-        return store.isNull( offsets[colIdx] );
+        return store.isNull( getOffset( colIdx ) );
     }
 
 	@Override
     final boolean getBoolean( int colIdx ) throws Exception{
-        return store.getBoolean( offsets[colIdx], dataTypes[colIdx] );
+        return store.getBoolean( getOffset( colIdx ), dataTypes[colIdx] );
     }
 
 	@Override
     final int getInt( int colIdx ) throws Exception{
-        return store.getInt( offsets[colIdx], dataTypes[colIdx] );
+        return store.getInt( getOffset( colIdx ), dataTypes[colIdx] );
     }
 
 	@Override
     final long getLong( int colIdx ) throws Exception{
-        return store.getLong( offsets[colIdx], dataTypes[colIdx] );
+        return store.getLong( getOffset( colIdx ), dataTypes[colIdx] );
     }
 
 	@Override
     final float getFloat( int colIdx ) throws Exception{
-        return store.getFloat( offsets[colIdx], dataTypes[colIdx] );
+        return store.getFloat( getOffset( colIdx ), dataTypes[colIdx] );
     }
 
 	@Override
     final double getDouble( int colIdx ) throws Exception{
-        return store.getDouble( offsets[colIdx], dataTypes[colIdx] );
+        return store.getDouble( getOffset( colIdx ), dataTypes[colIdx] );
     }
 
 	@Override
     final long getMoney( int colIdx ) throws Exception{
-        return store.getMoney( offsets[colIdx], dataTypes[colIdx] );
+        return store.getMoney( getOffset( colIdx ), dataTypes[colIdx] );
     }
 
 	@Override
     final MutableNumeric getNumeric( int colIdx ) throws Exception{
-        return store.getNumeric( offsets[colIdx], dataTypes[colIdx] );
+        return store.getNumeric( getOffset( colIdx ), dataTypes[colIdx] );
     }
 
 	@Override
     final Object getObject( int colIdx ) throws Exception{
-        return store.getObject( offsets[colIdx], dataTypes[colIdx] );
+        if(padLengths != null && padLengths[colIdx] > 0){
+            return getString( colIdx );
+        }
+        return store.getObject( getOffset( colIdx ), dataTypes[colIdx] );
     }
 
 	@Override
     final String getString( int colIdx ) throws Exception{
-        return store.getString( offsets[colIdx], dataTypes[colIdx] );
+        String value = store.getString( getOffset( colIdx ), dataTypes[colIdx] );
+        if(padLengths != null && value != null && value.length() < padLengths[colIdx]){
+            char[] chars = new char[padLengths[colIdx]];
+            value.getChars( 0, value.length(), chars, 0 );
+            for(int i=value.length(); i<chars.length; i++){
+                chars[i] = ' ';
+            }
+            return new String( chars );
+        }
+        return value;
     }
 
 	@Override
     final byte[] getBytes( int colIdx ) throws Exception{
-        return store.getBytes( offsets[colIdx], dataTypes[colIdx] );
+        if(padLengths != null && padLengths[colIdx] > 0){
+            String value = getString( colIdx );
+            return value == null ? null : value.getBytes();
+        }
+        return store.getBytes( getOffset( colIdx ), dataTypes[colIdx] );
+    }
+
+	@Override
+    final InputStream getBinaryStream( int colIdx ) throws Exception{
+        if(padLengths != null && padLengths[colIdx] > 0){
+            return super.getBinaryStream( colIdx );
+        }
+        return store.getBinaryStream( getOffset( colIdx ), dataTypes[colIdx] );
+    }
+
+	@Override
+    final Reader getCharacterStream( int colIdx ) throws Exception{
+        if(padLengths != null && padLengths[colIdx] > 0){
+            return super.getCharacterStream( colIdx );
+        }
+        return store.getCharacterStream( getOffset( colIdx ), dataTypes[colIdx] );
     }
 
 	@Override
@@ -397,10 +563,24 @@ final class TableResult extends TableViewResult{
     }
     
     final private void copyValueInto( int colIdx, StoreImpl dst){
-    	int offset = offsets[colIdx++];
-    	int length = (colIdx < offsets.length ? offsets[colIdx] : store.getUsedSize()) - offset;
+    	int offset = getOffset( colIdx );
+    	int length = getOffset( colIdx + 1 ) - offset;
 		dst.copyValueFrom( (StoreImpl)store, offset, length);
     }
+    
+    
+    /**
+     * Get the offset of a value in the current row. Only the values until the requested column are scanned. That a
+     * query that use only the first columns of a wide table must not scan all the values.
+     * @param colIdx the column index or the count of columns for the end of the last value
+     */
+    final private int getOffset( int colIdx ){
+        if(colIdx >= validOffsets){
+            store.scanObjectOffsets( offsets, dataTypes, validOffsets - 1, colIdx );
+            validOffsets = colIdx + 1;
+        }
+        return offsets[colIdx];
+    }
 
     
 }
@@ -32,6 +32,7 @@
  */
 package smallsql.database;
 
+import java.nio.ByteBuffer;
 import java.sql.*;
 
 public class TableStorePage extends StorePage{
@@ -41,6 +42,12 @@ public class TableStorePage extends StorePage{
 	int lockType;
 	SSConnection con;
 	TableStorePage nextLock;
+	/** If the page is marked as deleted with this step. Its space is free after the commit. */
+	boolean deleted;
+	/** If the page data is a buffer of the PagePool. It is given back after the commit. */
+	boolean pooledPage;
+	/** The sequence number of the running commit in the VersionStore or 0 if no versions are saved. */
+	private long commitVersion;
 
 
 	TableStorePage(SSConnection con, Table table, int lockType, long fileOffset){
@@ -69,11 +76,75 @@ public class TableStorePage extends StorePage{
 		}
     	if(lockType == TableView.LOCK_READ)
     		return fileOffset;
-    	return super.commit();
+    	boolean isWrite = raFile != null && page != null;
+    	commitVersion = isWrite && con != null ? con.getCommitVersion(table.database) : 0;
+    	if(commitVersion != 0 && fileOffset >= 0){
+    	    // the snapshots that are older as this commit read the old image of the page
+    	    table.database.getVersionStore().addImage(commitVersion, table, fileOffset, StoreImpl.readImage(table, fileOffset));
+    	}
+    	WriteAheadLog.Batch batch = isWrite && con != null ? con.getLogBatch(table.database) : null;
+    	if(batch != null){
+    	    // the page is written after the log record is durable
+    	    if(fileOffset < 0){
+    	        fileOffset = table.writeInFreeSpace(page, pageSize, batch, commitVersion);
+    	        if(fileOffset >= 0){
+    	            return fileOffset;
+    	        }
+    	        try{
+    	            fileOffset = batch.allocate(table, pageSize);
+    	        }catch(Exception e){
+    	            throw SmallSQLException.createFromException(e);
+    	        }
+    	        if(commitVersion != 0){
+    	            table.database.getVersionStore().addAppended(commitVersion, table, fileOffset, fileOffset + pageSize);
+    	        }
+    	    }
+    	    batch.write(table, fileOffset, page, pageSize);
+    	    return fileOffset;
+    	}
+    	long result = -1;
+    	if(isWrite && fileOffset < 0){
+    	    // a new page, reuse the space of a deleted page if possible
+    	    result = table.writeInFreeSpace(page, pageSize, null, commitVersion);
+    	    if(result >= 0){
+    	        fileOffset = result;
+    	    }
+    	}
+    	if(result < 0){
+    	    result = super.commit();
+    	}
+    	if(isWrite){
+    		// the cached image of this page is outdated now
+    		table.database.getBufferPool().remove(raFile, result);
+    	}
+    	return result;
+    }
+
+    
+    /**
+     * Pages that are written outside of a commit must be appended in order with the pages of the redo log.
+     */
+    long append(ByteBuffer buffer) throws Exception{
+        WriteAheadLog writeAheadLog = table.database.getWriteAheadLog();
+        if(writeAheadLog == null){
+            return table.append(buffer, commitVersion);
+        }
+        return writeAheadLog.append(table, buffer);
     }
 
     
     final void freeLock(){
     	table.freeLock(this);
+    	if(deleted && raFile != null && page != null){
+    	    // the page was committed as deleted, the write lock is released and the space can be reused
+    	    table.freeSpace.add(fileOffset, StoreImpl.getPhysicalSize(table, page));
+    	}
+    	if(pooledPage && raFile != null && page != null){
+    	    // the page is written, only an uncommitted StorePage is read from memory
+    	    synchronized(this){
+    	        table.database.getPagePool().release(page);
+    	        page = null;
+    	    }
+    	}
     }
 }
\ No newline at end of file
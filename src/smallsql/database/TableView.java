@@ -48,7 +48,15 @@ abstract class TableView {
 
 	static final int MAGIC_TABLE = 'S' << 24 | 'Q' << 16 | 'L' << 8 | 'T';
 	static final int MAGIC_VIEW  = 'S' << 24 | 'Q' << 16 | 'L' << 8 | 'V';
-	static final int TABLE_VIEW_VERSION = 2;
+	static final int TABLE_VIEW_VERSION = 6;
+	/** The first version with the compact row header */
+	static final int TABLE_VIEW_COMPACT_VERSION = 3;
+	/** The first version that save strings as Latin-1 or UTF-8 and CHAR values without padding */
+	static final int TABLE_VIEW_STRING_VERSION = 4;
+	/** The first version that save LOB values in chunks with a directory page */
+	static final int TABLE_VIEW_LOB_VERSION = 5;
+	/** The first version that grow the file in extents, the end of data is saved in the table header */
+	static final int TABLE_VIEW_EXTENT_VERSION = 6;
 	static final int TABLE_VIEW_OLD_VERSION = 1;
 	
 	final String name;
@@ -60,11 +68,12 @@ abstract class TableView {
 	 */
 	private long timestamp = System.currentTimeMillis();
 	
-	static final int LOCK_NONE   = 0; // read on READ_COMMITED and READ_UNCOMMITED
+	static final int LOCK_NONE   = 0; // every read, REPEATABLE_READ and SERIALIZABLE read from a snapshot
 	static final int LOCK_INSERT = 1; // prevent only LOCK_TAB
 	static final int LOCK_READ   = 2; // occur on read and prevent a write of data, it can occur more as one LOCK_READ per page
 	static final int LOCK_WRITE  = 3; // occur on write and prevent every other access to the data, it is only one LOCK_WRITE per page possible
 	static final int LOCK_TAB    = 4; // lock the total table
+	static final int LOCK_WRITE_TAB = 5; // prevent every write of other connections to the table, reads are possible
 
 
 	TableView(String name, Columns columns){
@@ -80,9 +89,9 @@ abstract class TableView {
 		try{
 			String fileName = Utils.createTableViewFileName( database, name );
 			File file = new File( fileName );
-			if(!file.exists())
+			if(!database.existsFile(file))
 				throw SmallSQLException.create(Language.TABLE_OR_VIEW_MISSING, name);
-			raFile = Utils.openRaFile( file, database.isReadOnly() );
+			raFile = database.openFile( file );
 			ByteBuffer buffer = ByteBuffer.allocate(8);
 			raFile.read(buffer);
 			buffer.position(0);
@@ -138,9 +147,9 @@ abstract class TableView {
 	        throw SmallSQLException.create(Language.DB_READONLY);
 	    }
 		File file = getFile( database );
-		boolean ok = file.createNewFile();
+		boolean ok = database.createNewFile(file);
 		if(!ok) throw SmallSQLException.create(Language.TABLE_EXISTENT, name);
-		FileChannel raFile = Utils.openRaFile( file, database.isReadOnly() );
+		FileChannel raFile = database.openFile( file );
 		con.add(new CreateFile(file, raFile, con, database));
 		writeMagic(raFile);
 		return raFile;
@@ -57,6 +57,9 @@ abstract class TableViewResult extends DataSource {
 		if(from instanceof Where){
 			from = ((Where)from).getFrom();
 		}
+		if(from instanceof IndexResult){
+			from = ((IndexResult)from).getFrom();
+		}
 		if(from instanceof TableViewResult){
 			return (TableViewResult)from;
 		}
@@ -35,6 +35,7 @@ package smallsql.database;
 
 import java.nio.channels.FileChannel;
 import java.sql.SQLException;
+import java.util.HashMap;
 
 
 
@@ -55,5 +56,32 @@ abstract class TransactionStep{
     abstract void rollback() throws SQLException;
     
     void freeLock(){/* default nothing*/}
+    
+    /**
+     * Add the position of a committed row whose keys this step change with the commit. A reader of the transaction
+     * must read this rows additionally to the rows from the index.
+     * @param changes IndexDescriptions --> LongList
+     */
+    void addIndexChange(HashMap changes){/* default nothing*/}
+    
+    /**
+     * Change the indexes after the pages of the commit are written in the table files. An index never point to a
+     * row that can not be read.
+     */
+    void commitIndexes(){/* default nothing*/}
+    
+    /**
+     * The indexes that the commit of this step will change or null.
+     */
+    IndexDescriptions getIndexes(){
+        return null;
+    }
+    
+    /**
+     * Count the keys that the commit of this step add to or remove from an index of getIndexes().
+     * @param idx the position of the index in indexes
+     * @param counts the counts of the keys, see IndexDescription.countKey()
+     */
+    void countKeys(IndexDescriptions indexes, int idx, HashMap counts) throws Exception{/* default nothing*/}
 
 }
@@ -34,7 +34,12 @@ package smallsql.database;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.sql.SQLException;
@@ -43,6 +48,7 @@ import smallsql.database.language.Language;
 class Utils {
 
 	static final String MASTER_FILENAME = "smallsql.master";
+	static final String LOG_FILENAME = "smallsql.wal";
 	static final String TABLE_VIEW_EXTENTION = ".sdb";
 	private static final String LOB_EXTENTION = ".lob";
 	static final String IDX_EXTENTION = ".idx";
@@ -202,6 +208,32 @@ class Utils {
 		return result;
 	}
 
+    /**
+     * Read the stream until its end. It is used if a stream parameter must be materialized.
+     */
+    static byte[] stream2bytes( InputStream input ) throws IOException{
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while((count = input.read( buffer )) >= 0){
+            baos.write( buffer, 0, count );
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Read the Reader until its end. It is used if a stream parameter must be materialized.
+     */
+    static String reader2string( Reader reader ) throws IOException{
+        StringBuffer buf = new StringBuffer();
+        char[] buffer = new char[4096];
+        int count;
+        while((count = reader.read( buffer )) >= 0){
+            buf.append( buffer, 0, count );
+        }
+        return buf.toString();
+    }
+
     static String bytes2hex( byte[] bytes ){
         StringBuffer buf = new StringBuffer(bytes.length << 1);
         for(int i=0; i<bytes.length; i++){
@@ -446,6 +478,34 @@ class Utils {
     }
     
     
+    /**
+     * Read from the given file position until the buffer is full or the end of file is reached. The position
+     * of the channel is not used and not changed. That multiple threads can read the same file parallel.
+     * @return the count of read bytes
+     */
+    static final int readFully( FileChannel file, ByteBuffer buffer, long position ) throws IOException{
+        int count = 0;
+        while(buffer.hasRemaining()){
+            int read = file.read(buffer, position + count);
+            if(read < 0){
+                break;
+            }
+            count += read;
+        }
+        return count;
+    }
+    
+    
+    /**
+     * Write the complete buffer on the given file position. The position of the channel is not used and not changed.
+     */
+    static final void writeFully( FileChannel file, ByteBuffer buffer, long position ) throws IOException{
+        while(buffer.hasRemaining()){
+            position += file.write(buffer, position);
+        }
+    }
+    
+    
     /**
      * Get all the ExpressionName objects that are part of the tree.
      * If it only a constant expression then a empty list is return.
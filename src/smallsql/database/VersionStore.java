@@ -0,0 +1,417 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * VersionStore.java
+ * ---------------
+ */
+package smallsql.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * The old versions of the pages of a database for the snapshot reads of the isolation levels REPEATABLE_READ and
+ * SERIALIZABLE. The changes of a transaction are written to the table files on the commit. Every commit get a
+ * sequence number. Before a commit overwrite a page the old image of the page is saved with the number of the
+ * commit. For new pages at the end of a file only the range is saved. A snapshot see all commits that are finished
+ * before its start. If it read a page that was changed from a later commit then it use the saved image, a new
+ * page is skipped like a deleted page. This is snapshot isolation also for SERIALIZABLE, a write skew is possible.<p>
+ *
+ * Versions are only saved while there are snapshots. They are removed if no snapshot need them anymore. The
+ * versions are hold in memory only, after a restart there are no snapshots.<p>
+ *
+ * A version is saved before the page is written and a reader check the versions after it has read the page. That
+ * a reader that has read the new data find ever the old version.
+ */
+final class VersionStore {
+
+    /** the sequence number of the last started commit */
+    private long commitSeq;
+    /** the active snapshots */
+    private final ArrayList snapshots = new ArrayList();
+    /** the sequence numbers (Long) of the running commits that save versions */
+    private final ArrayList runningCommits = new ArrayList();
+    /** count of running commits that does not save versions because there was no snapshot on its start */
+    private int unsavedCommits;
+    /** Table --> TableVersions */
+    private final HashMap tables = new HashMap();
+
+
+    /**
+     * Create a snapshot of the current committed data. If there are running commits without versions then it wait
+     * until they are finished.
+     */
+    synchronized Snapshot createSnapshot() throws InterruptedException{
+        Snapshot snapshot = new Snapshot(this);
+        // register first, all commits that start from now save versions
+        snapshots.add(snapshot);
+        try{
+            while(unsavedCommits > 0){
+                wait();
+            }
+        }catch(InterruptedException e){
+            snapshots.remove(snapshot);
+            throw e;
+        }
+        snapshot.seq = commitSeq;
+        snapshot.running = new long[runningCommits.size()];
+        for(int i=0; i<snapshot.running.length; i++){
+            snapshot.running[i] = ((Long)runningCommits.get(i)).longValue();
+        }
+        return snapshot;
+    }
+
+
+    /**
+     * Is called at the end of the transaction of a snapshot.
+     */
+    synchronized void release(Snapshot snapshot){
+        snapshots.remove(snapshot);
+        removeOldVersions();
+    }
+
+
+    /**
+     * Is called at the start of a commit before the first page is written.
+     * @return the sequence number of the commit or 0 if the commit need not save versions
+     */
+    synchronized long beginCommit(){
+        long seq = ++commitSeq;
+        if(snapshots.size() == 0){
+            unsavedCommits++;
+            return 0;
+        }
+        runningCommits.add(new Long(seq));
+        return seq;
+    }
+
+
+    /**
+     * Is called after all pages of the commit are written or the commit has failed.
+     * @param seq the value from beginCommit()
+     */
+    synchronized void endCommit(long seq){
+        if(seq == 0){
+            if(--unsavedCommits == 0){
+                notifyAll();
+            }
+            return;
+        }
+        runningCommits.remove(new Long(seq));
+        removeOldVersions();
+    }
+
+
+    /**
+     * Save the current image of a page before it is overwritten.
+     * @param seq the sequence number of the commit
+     * @param image the data of the page, it must not be modified later
+     */
+    synchronized void addImage(long seq, Table table, long filePos, byte[] image){
+        getTableVersions(table).addImage(new Version(seq, filePos, filePos, image));
+    }
+
+
+    /**
+     * Save that a new page is written in the space of a deleted page.
+     */
+    synchronized void addNewPage(long seq, Table table, long filePos){
+        getTableVersions(table).addImage(new Version(seq, filePos, filePos, null));
+    }
+
+
+    /**
+     * Save that new pages are written at the end of the data.
+     * @param start the file offset of the first page
+     * @param end the file position after the last page
+     */
+    synchronized void addAppended(long seq, Table table, long start, long end){
+        getTableVersions(table).addRange(seq, start, end);
+    }
+
+
+    /**
+     * Get the version of a page that a snapshot must read.
+     * @return the oldest change of the page that the snapshot does not see, or null if the current data is valid
+     */
+    synchronized Version getVersion(Snapshot snapshot, Table table, long filePos){
+        TableVersions versions = (TableVersions)tables.get(table);
+        return versions == null ? null : versions.getVersion(snapshot, filePos);
+    }
+
+
+    /**
+     * Add the positions of the pages that a snapshot read from a saved old image. The indexes include the changes of
+     * the later commits, a read over an index must read this pages additionally. The versions are saved before the
+     * indexes are changed, that it must be called after the index was read.
+     * @param rows the list for the positions
+     */
+    synchronized void addChangedRows(Snapshot snapshot, Table table, LongList rows){
+        TableVersions versions = (TableVersions)tables.get(table);
+        if(versions != null){
+            versions.addChangedRows(snapshot, rows);
+        }
+    }
+
+
+    /**
+     * If there are saved versions of pages of the table.
+     */
+    synchronized boolean hasVersions(Table table){
+        return tables.get(table) != null;
+    }
+
+
+    private TableVersions getTableVersions(Table table){
+        TableVersions versions = (TableVersions)tables.get(table);
+        if(versions == null){
+            versions = new TableVersions();
+            tables.put(table, versions);
+        }
+        return versions;
+    }
+
+
+    /**
+     * Remove the versions of commits that all snapshots see. The versions of running commits are needed by
+     * snapshots that start later.
+     */
+    private void removeOldVersions(){
+        long horizon = Long.MAX_VALUE;
+        for(int i=0; i<snapshots.size(); i++){
+            horizon = Math.min(horizon, ((Snapshot)snapshots.get(i)).getHorizon());
+        }
+        Iterator iterator = tables.values().iterator();
+        while(iterator.hasNext()){
+            TableVersions versions = (TableVersions)iterator.next();
+            if(versions.removeOld(horizon, runningCommits)){
+                iterator.remove();
+            }
+        }
+    }
+
+
+    /**
+     * The start point of a consistent read. It is valid until the end of the transaction.
+     */
+    static final class Snapshot{
+
+        private final VersionStore store;
+        /** the sequence number of the last commit that was started before the snapshot */
+        private long seq;
+        /** the commits that was running on the start of the snapshot, they are not visible */
+        private long[] running;
+
+
+        private Snapshot(VersionStore store){
+            this.store = store;
+        }
+
+
+        VersionStore getVersionStore(){
+            return store;
+        }
+
+
+        /**
+         * If the changes of the commit are visible for this snapshot.
+         */
+        boolean isVisible(long commit){
+            if(commit > seq){
+                return false;
+            }
+            for(int i=0; i<running.length; i++){
+                if(running[i] == commit){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+
+        /**
+         * The largest commit for that this and all previous commits are visible.
+         */
+        private long getHorizon(){
+            if(running == null){
+                return 0; // the snapshot is waiting on its start
+            }
+            long horizon = seq;
+            for(int i=0; i<running.length; i++){
+                horizon = Math.min(horizon, running[i] - 1);
+            }
+            return horizon;
+        }
+    }
+
+
+    /**
+     * A saved old image of a page or the range of new pages.
+     */
+    static final class Version{
+
+        final long seq;
+        final long start;
+        long end;
+        private final byte[] image;
+
+
+        private Version(long seq, long start, long end, byte[] image){
+            this.seq = seq;
+            this.start = start;
+            this.end = end;
+            this.image = image;
+        }
+
+
+        /**
+         * Get the image of the page before the commit.
+         * @return the data or null if the page was added with the commit
+         */
+        byte[] getImage(){
+            return image;
+        }
+    }
+
+
+    /**
+     * The versions of a single table.
+     */
+    private static final class TableVersions{
+
+        /** Long file offset --> ArrayList of Version in commit order */
+        private final HashMap images = new HashMap();
+        /** the ranges of new pages at the end of the data, sorted by its start */
+        private final ArrayList ranges = new ArrayList();
+
+
+        void addImage(Version version){
+            Long key = new Long(version.start);
+            ArrayList list = (ArrayList)images.get(key);
+            if(list == null){
+                list = new ArrayList(2);
+                images.put(key, list);
+            }
+            list.add(version);
+        }
+
+
+        void addRange(long seq, long start, long end){
+            int idx = ranges.size();
+            while(idx > 0 && ((Version)ranges.get(idx - 1)).start > start){
+                idx--;
+            }
+            if(idx > 0){
+                Version last = (Version)ranges.get(idx - 1);
+                if(last.seq == seq && last.end == start){
+                    // the pages of a commit are allocated one after the other
+                    last.end = end;
+                    return;
+                }
+            }
+            ranges.add(idx, new Version(seq, start, end, null));
+        }
+
+
+        Version getVersion(Snapshot snapshot, long filePos){
+            Version result = null;
+            ArrayList list = (ArrayList)images.get(new Long(filePos));
+            if(list != null){
+                for(int i=0; i<list.size(); i++){
+                    Version version = (Version)list.get(i);
+                    if(!snapshot.isVisible(version.seq)){
+                        result = version;
+                        break;
+                    }
+                }
+            }
+            // binary search of the last range that start before or on the page
+            int low = 0;
+            int high = ranges.size() - 1;
+            while(low <= high){
+                int mid = (low + high) >>> 1;
+                if(((Version)ranges.get(mid)).start <= filePos){
+                    low = mid + 1;
+                }else{
+                    high = mid - 1;
+                }
+            }
+            if(high >= 0){
+                Version range = (Version)ranges.get(high);
+                if(filePos < range.end && !snapshot.isVisible(range.seq) && (result == null || range.seq < result.seq)){
+                    result = range;
+                }
+            }
+            return result;
+        }
+
+
+        void addChangedRows(Snapshot snapshot, LongList rows){
+            Iterator iterator = images.keySet().iterator();
+            while(iterator.hasNext()){
+                long filePos = ((Long)iterator.next()).longValue();
+                Version version = getVersion(snapshot, filePos);
+                if(version != null && version.getImage() != null){
+                    rows.add(filePos);
+                }
+            }
+        }
+
+
+        /**
+         * Remove all versions of commits until the horizon.
+         * @return true if there are no versions anymore
+         */
+        boolean removeOld(long horizon, ArrayList runningCommits){
+            Iterator iterator = images.values().iterator();
+            while(iterator.hasNext()){
+                ArrayList list = (ArrayList)iterator.next();
+                for(int i=list.size() - 1; i >= 0; i--){
+                    if(isOld((Version)list.get(i), horizon, runningCommits)){
+                        list.remove(i);
+                    }
+                }
+                if(list.size() == 0){
+                    iterator.remove();
+                }
+            }
+            for(int i=ranges.size() - 1; i >= 0; i--){
+                if(isOld((Version)ranges.get(i), horizon, runningCommits)){
+                    ranges.remove(i);
+                }
+            }
+            return images.size() == 0 && ranges.size() == 0;
+        }
+
+
+        private static boolean isOld(Version version, long horizon, ArrayList runningCommits){
+            return version.seq <= horizon && !runningCommits.contains(new Long(version.seq));
+        }
+    }
+}
@@ -116,7 +116,7 @@ class View extends TableView{
 	 */ 
 	static void drop(Database database, String name) throws Exception{
 		File file = new File( Utils.createTableViewFileName( database, name ) );
-		boolean ok = file.delete();
+		boolean ok = database.deleteFile(file);
 		if(!ok) throw SmallSQLException.create(Language.VIEW_CANTDROP, name);
 	}
     
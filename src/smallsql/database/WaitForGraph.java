@@ -0,0 +1,167 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * WaitForGraph.java
+ * ---------------
+ */
+package smallsql.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The lock waits of all connections of a database. Every connection that wait for a lock is a node of the graph.
+ * The edges point to the connections that hold the conflicting locks. A cycle in the graph is a deadlock. It is
+ * detected on the registration of the wait that close the cycle. The youngest transaction of the cycle is
+ * selected as victim and rolled back.<p>
+ *
+ * A waiting thread wait on the monitor of the lock structure, for example the stripe of a page. The monitor of
+ * the graph is never held while another monitor is requested. A victim is woken up with the monitor of its wait.
+ */
+final class WaitForGraph {
+
+    /** SSConnection --> Wait of the connection that is currently waiting */
+    private final HashMap waits = new HashMap();
+
+
+    /**
+     * Register the blocking connections of a lock request and check for a deadlock. The caller must hold the
+     * monitor of the wait.
+     * @param wait the lock request
+     * @param blockers list of SSConnection that hold the conflicting locks, it can include duplicates
+     * @return the victim of a detected deadlock or null if the request can wait
+     */
+    synchronized Wait setBlockers(Wait wait, List blockers){
+        wait.blockers = blockers;
+        waits.put( wait.con, wait );
+        ArrayList cycle = new ArrayList();
+        if(!findCycle( wait, wait, cycle, new HashMap() )){
+            wait.waiting = true;
+            return null;
+        }
+        Wait victim = wait;
+        for(int i=0; i<cycle.size(); i++){
+            Wait node = (Wait)cycle.get(i);
+            if(node.con.getTransactionId() > victim.con.getTransactionId()){
+                victim = node;
+            }
+        }
+        victim.victim = true;
+        return victim;
+    }
+
+
+    /**
+     * Search a path from the blockers of the node to the start node. Waits that are not in the wait state or are
+     * already selected as victim are ignored, they does not block for long.
+     * @param cycle the nodes of the found path without the start node
+     * @param visited the nodes that was already searched
+     */
+    private boolean findCycle(Wait start, Wait node, ArrayList cycle, HashMap visited){
+        List blockers = node.blockers;
+        for(int i=0; i<blockers.size(); i++){
+            SSConnection con = (SSConnection)blockers.get(i);
+            if(con == start.con){
+                return true;
+            }
+            Wait next = (Wait)waits.get(con);
+            if(next == null || !next.waiting || next.victim || visited.put( con, next ) != null){
+                continue;
+            }
+            cycle.add( next );
+            if(findCycle( start, next, cycle, visited )){
+                return true;
+            }
+            cycle.remove( cycle.size() - 1 );
+        }
+        return false;
+    }
+
+
+    /**
+     * Mark the end of a wait. After this call the wait can not be selected as victim anymore.
+     * @return true if the wait was selected as victim of a deadlock
+     */
+    synchronized boolean endWait(Wait wait){
+        wait.waiting = false;
+        return wait.victim;
+    }
+
+
+    /**
+     * Remove the wait of a lock request after the lock was granted or the request failed.
+     */
+    synchronized void remove(Wait wait){
+        if(waits.get( wait.con ) == wait){
+            waits.remove( wait.con );
+        }
+    }
+
+
+    /**
+     * A lock request of a connection that must wait.
+     */
+    static final class Wait{
+
+        final SSConnection con;
+        /** the monitor on which the thread wait */
+        final Object monitor;
+        /** the time of the timeout or 0 if the request wait without timeout */
+        final long endTime;
+        private List blockers;
+        private boolean waiting;
+        private boolean victim;
+
+
+        Wait(SSConnection con, Object monitor){
+            this.con = con;
+            this.monitor = monitor;
+            int timeout = con.getLockTimeout();
+            endTime = timeout < 0 ? 0 : System.currentTimeMillis() + timeout;
+        }
+
+
+        /**
+         * If this wait was selected as victim of a deadlock. It is only valid after endWait() or setBlockers().
+         */
+        boolean isVictim(){
+            return victim;
+        }
+
+
+        /**
+         * Wake up the thread of a victim. The caller must not hold any monitor of a lock structure.
+         */
+        void wakeUp(){
+            synchronized(monitor){
+                monitor.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,712 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ------------------
+ * WriteAheadLog.java
+ * ------------------
+ */
+package smallsql.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A sequential redo log of one database. On commit the page images of a transaction are appended as one record to the
+ * log. The log is synchronized to disk once for all connections that commit at the same time (group commit). After
+ * this the pages are written to the table files without synchronization. A background thread makes the table files
+ * durable from time to time and truncate the log (checkpoint). If the database was not closed clean then the records
+ * are replayed on the next open.<p>
+ * 
+ * Pages that are appended outside of a commit like LOB values are not part of the log. The files of such pages are
+ * synchronized before the next group is written to the log.<p>
+ * 
+ * The new pages of a transaction must be appended to the table files in the order of its file offsets. That the file
+ * offsets are reserved under an exclusive lock and the records are applied in the same order. Pages that are written
+ * outside of a commit must wait until all reserved pages of the file are applied.
+ */
+final class WriteAheadLog implements Runnable{
+
+    private static final int MAGIC_LOG = 'S' << 24 | 'Q' << 16 | 'L' << 8 | 'W';
+    private static final int LOG_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    /** the size of the log that trigger a checkpoint */
+    private static final long CHECKPOINT_SIZE = 4 * 1024 * 1024;
+    /** the maximum count of pages that are written with a single write */
+    private static final int MAX_BLOCK_PAGES = 512;
+    private static final Comparator OFFSET_ORDER = new Comparator(){
+        public int compare(Object entry1, Object entry2){
+            long offset1 = ((Entry)entry1).offset;
+            long offset2 = ((Entry)entry2).offset;
+            return offset1 < offset2 ? -1 : (offset1 == offset2 ? 0 : 1);
+        }
+    };
+
+    private final Database database;
+    private final File directory;
+    private final FileChannel raFile;
+    private long logSize;
+
+    /** The batch that hold the exclusive lock for reserving file space. */
+    private Batch reserving;
+    /** FileChannel --> FileState of all table files with reserved space */
+    private final HashMap files = new HashMap();
+    /** Batches that are committed but not written to the log. */
+    private ArrayList queue = new ArrayList();
+    /** If a group commit or a checkpoint is running. */
+    private boolean writing;
+    /** The table files that was written since the last checkpoint. */
+    private HashSet dirtyFiles = new HashSet();
+    /** The table files with pages that was appended outside of a commit since the last group commit. */
+    private HashSet appendedFiles = new HashSet();
+    private final Thread checkpointThread;
+    private boolean closed;
+
+
+    /**
+     * Open the log of a database and replay all committed records of a previous not clean closing.
+     * @param database the owner
+     * @param directory the directory of the database
+     */
+    WriteAheadLog(Database database, File directory) throws Exception{
+        this.database = database;
+        this.directory = directory;
+        raFile = Utils.openRaFile( new File( directory, Utils.LOG_FILENAME ), false );
+        if(raFile.size() > HEADER_SIZE){
+            replay();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        buffer.putInt(MAGIC_LOG);
+        buffer.putInt(LOG_VERSION);
+        buffer.position(0);
+        Utils.writeFully(raFile, buffer, 0);
+        raFile.truncate(HEADER_SIZE);
+        raFile.force(false);
+        logSize = HEADER_SIZE;
+        checkpointThread = new Thread(this, "SmallSQL checkpoint " + database.getName());
+        checkpointThread.setDaemon(true);
+        checkpointThread.start();
+    }
+
+
+    File getDirectory(){
+        return directory;
+    }
+
+
+    /**
+     * Check if the log of a database include records of a previous not clean closing. A read only database can not
+     * replay the records into the table files. It can not be opened until the log is replayed.
+     * @param directory the directory of the database
+     */
+    static boolean hasRecords(File directory){
+        return new File( directory, Utils.LOG_FILENAME ).length() > HEADER_SIZE;
+    }
+
+
+    /**
+     * Write all valid records of the log in the table files. A record with an invalid checksum is the last record that
+     * was not completely written. It and all following data are ignored. The records are read one after the other,
+     * only the largest record must fit in the memory.
+     */
+    private void replay() throws Exception{
+        long fileSize = raFile.size();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        Utils.readFully(raFile, buffer, 0);
+        if(buffer.getInt(0) != MAGIC_LOG || buffer.getInt(4) != LOG_VERSION){
+            return;
+        }
+        HashMap channels = new HashMap(); // file name --> FileChannel or null if the file not exists
+        CRC32 crc = new CRC32();
+        byte[] record = new byte[0];
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        long position = HEADER_SIZE;
+        try{
+            while(fileSize - position >= 4){
+                lengthBuffer.clear();
+                Utils.readFully(raFile, lengthBuffer, position);
+                int length = lengthBuffer.getInt(0);
+                if(length <= 0 || fileSize - position - 4 < length + 8L){
+                    break;
+                }
+                if(record.length < length + 8){
+                    record = new byte[length + 8];
+                }
+                buffer = ByteBuffer.wrap(record, 0, length + 8);
+                Utils.readFully(raFile, buffer, position + 4);
+                crc.reset();
+                crc.update(record, 0, length);
+                if(buffer.getLong(length) != crc.getValue()){
+                    break;
+                }
+                buffer.position(0);
+                int count = buffer.getInt();
+                for(int i=0; i<count; i++){
+                    byte[] name = new byte[buffer.getShort()];
+                    buffer.get(name);
+                    long offset = buffer.getLong();
+                    int size = buffer.getInt();
+                    String fileName = new String(name, "UTF8");
+                    FileChannel channel = (FileChannel)channels.get(fileName);
+                    if(channel == null && !channels.containsKey(fileName)){
+                        File file = new File(directory, fileName);
+                        // the table can be dropped after the commit
+                        channel = file.exists() ? Utils.openRaFile(file, false) : null;
+                        channels.put(fileName, channel);
+                    }
+                    if(channel != null){
+                        Utils.writeFully(channel, ByteBuffer.wrap(record, buffer.position(), size), offset);
+                    }
+                    buffer.position(buffer.position() + size);
+                }
+                position += 4 + length + 8;
+            }
+        }finally{
+            Iterator iterator = channels.values().iterator();
+            while(iterator.hasNext()){
+                FileChannel channel = (FileChannel)iterator.next();
+                if(channel != null){
+                    channel.force(false);
+                    channel.close();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Create a new batch for the commit of a transaction and lock the reservation of file space. The lock is hold
+     * until the batch is committed or discarded.
+     */
+    synchronized Batch beginCommit() throws SQLException{
+        try{
+            while(reserving != null){
+                wait();
+            }
+        }catch(InterruptedException ex){
+            throw SmallSQLException.createFromException(ex);
+        }
+        reserving = new Batch(this);
+        return reserving;
+    }
+
+
+    /**
+     * Write the batch to the log and the table files. If other connections commit at the same time then all the
+     * batches are written with a single synchronization of the log.
+     */
+    void commit(Batch batch) throws SQLException{
+        batch.createRecord();
+        ArrayList group;
+        synchronized(this){
+            queue.add(batch);
+            reserving = null;
+            notifyAll();
+            try{
+                while(writing && !batch.done){
+                    wait();
+                }
+            }catch(InterruptedException ex){
+                throw SmallSQLException.createFromException(ex);
+            }
+            if(batch.done){
+                // was written from the leader of a previous group
+                batch.throwError();
+                return;
+            }
+            writing = true;
+            group = queue;
+            queue = new ArrayList();
+        }
+        Throwable error = null;
+        try{
+            writeGroup(group);
+        }catch(Throwable th){
+            error = th;
+        }
+        synchronized(this){
+            for(int i=0; i<group.size(); i++){
+                Batch member = (Batch)group.get(i);
+                member.done = true;
+                member.error = error;
+                member.releaseFiles();
+            }
+            writing = false;
+            notifyAll();
+        }
+        batch.throwError();
+    }
+
+
+    /**
+     * Write all records of a group to the log, synchronize it and then apply the pages to the table files.
+     */
+    private void writeGroup(ArrayList group) throws Exception{
+        int length = 0;
+        for(int i=0; i<group.size(); i++){
+            length += ((Batch)group.get(i)).record.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for(int i=0; i<group.size(); i++){
+            buffer.put(((Batch)group.get(i)).record);
+        }
+        buffer.position(0);
+        
+        // the pages that was appended outside of the commit are referenced from the committed pages
+        Object[] forceFiles;
+        synchronized(this){
+            forceFiles = appendedFiles.toArray();
+            appendedFiles = new HashSet();
+        }
+        force(forceFiles);
+        
+        Utils.writeFully(raFile, buffer, logSize);
+        raFile.force(false);
+        logSize += length;
+        
+        // group the pages of all batches per file
+        LinkedHashMap filesEntries = new LinkedHashMap(); // FileChannel --> ArrayList of Entry
+        for(int i=0; i<group.size(); i++){
+            Batch batch = (Batch)group.get(i);
+            for(int e=0; e<batch.entries.size(); e++){
+                Entry entry = (Entry)batch.entries.get(e);
+                ArrayList entries = (ArrayList)filesEntries.get(entry.file);
+                if(entries == null){
+                    entries = new ArrayList();
+                    filesEntries.put(entry.file, entries);
+                }
+                entries.add(entry);
+            }
+        }
+        Iterator iterator = filesEntries.entrySet().iterator();
+        while(iterator.hasNext()){
+            Map.Entry fileEntries = (Map.Entry)iterator.next();
+            apply((FileChannel)fileEntries.getKey(), (ArrayList)fileEntries.getValue());
+        }
+        synchronized(this){
+            dirtyFiles.addAll(filesEntries.keySet());
+        }
+    }
+
+
+    /**
+     * Write the pages of one file in the order of its offsets. Pages that follow directly one after the other, for
+     * example the new pages at the end of the file, are copied in one block and written with a single write.
+     * @param entries the pages in commit order
+     */
+    private void apply(FileChannel file, ArrayList entries) throws IOException{
+        // the sort is stable, multiple images of the same page are written in commit order
+        Collections.sort(entries, OFFSET_ORDER);
+        int count = entries.size();
+        for(int i=0; i<count; ){
+            Entry first = (Entry)entries.get(i);
+            long end = first.offset + first.length;
+            int next = i + 1;
+            while(next < count && next - i < MAX_BLOCK_PAGES && ((Entry)entries.get(next)).offset == end){
+                end += ((Entry)entries.get(next++)).length;
+            }
+            if(next - i == 1){
+                Utils.writeFully(file, ByteBuffer.wrap(first.data, 0, first.length), first.offset);
+            }else{
+                byte[] block = new byte[(int)(end - first.offset)];
+                int pos = 0;
+                for(int b=i; b<next; b++){
+                    Entry entry = (Entry)entries.get(b);
+                    System.arraycopy(entry.data, 0, block, pos, entry.length);
+                    pos += entry.length;
+                }
+                Utils.writeFully(file, ByteBuffer.wrap(block), first.offset);
+            }
+            i = next;
+        }
+        // the new pages are valid now, they are written in the order of the reservations
+        Entry last = (Entry)entries.get(count - 1);
+        long dataEnd = 0;
+        BufferPool bufferPool = database.getBufferPool();
+        for(int i=0; i<count; i++){
+            Entry entry = (Entry)entries.get(i);
+            dataEnd = Math.max(dataEnd, entry.end);
+            // the cached image of this page is outdated now
+            bufferPool.remove(file, entry.offset);
+        }
+        last.table.setDataEnd(dataEnd);
+    }
+
+
+    /**
+     * Append a page to a table file outside of a commit. For example an updated page with a larger size or a LOB
+     * value. The page is written after all reserved pages of the file are applied.
+     * @return the file offset of the page
+     */
+    synchronized long append(Table table, ByteBuffer buffer) throws Exception{
+        FileChannel file = table.raFile;
+        FileState state = (FileState)files.get(file);
+        while(reserving != null || (state != null && state.pending > 0)){
+            wait();
+            state = (FileState)files.get(file);
+        }
+        long fileOffset = state != null ? Math.max(state.end, table.getDataEnd()) : table.getDataEnd();
+        long end = fileOffset + buffer.remaining();
+        table.extendFile(end);
+        Utils.writeFully(file, buffer, fileOffset);
+        table.setDataEnd(end);
+        if(state != null){
+            state.end = end;
+        }
+        dirtyFiles.add(file);
+        appendedFiles.add(file);
+        return fileOffset;
+    }
+
+
+    /**
+     * Make the table files durable and truncate the log.
+     */
+    void checkpoint() throws Exception{
+        // the slow synchronization of the table files run parallel to new commits
+        Object[] forceFiles;
+        synchronized(this){
+            forceFiles = dirtyFiles.toArray();
+        }
+        force(forceFiles);
+        synchronized(this){
+            while(writing){
+                wait();
+            }
+            writing = true;
+            forceFiles = dirtyFiles.toArray();
+            dirtyFiles = new HashSet();
+        }
+        try{
+            force(forceFiles);
+            raFile.truncate(HEADER_SIZE);
+            raFile.force(false);
+            logSize = HEADER_SIZE;
+        }finally{
+            synchronized(this){
+                writing = false;
+                notifyAll();
+            }
+        }
+    }
+
+
+    private static void force(Object[] forceFiles) throws IOException{
+        for(int i=0; i<forceFiles.length; i++){
+            try{
+                ((FileChannel)forceFiles[i]).force(false);
+            }catch(ClosedChannelException ex){
+                // it was synchronized on closing, see fileClosed()
+            }
+        }
+    }
+
+
+    /**
+     * Is called before a table file is closed. The file is synchronized because a closed file can not be synchronized
+     * on the next checkpoint.
+     */
+    void fileClosed(FileChannel file) throws Exception{
+        synchronized(this){
+            while(writing){
+                wait();
+            }
+            files.remove(file);
+            appendedFiles.remove(file);
+            if(!dirtyFiles.remove(file)){
+                return;
+            }
+            writing = true;
+        }
+        try{
+            file.force(false);
+        }finally{
+            synchronized(this){
+                writing = false;
+                notifyAll();
+            }
+        }
+    }
+
+
+    /**
+     * The checkpoint thread.
+     */
+    public void run(){
+        while(true){
+            try{
+                synchronized(this){
+                    while(!closed && logSize < CHECKPOINT_SIZE){
+                        wait();
+                    }
+                    if(closed){
+                        return;
+                    }
+                }
+                checkpoint();
+            }catch(Throwable th){
+                // try it again later
+                try{
+                    Thread.sleep(1000);
+                }catch(InterruptedException ex){
+                    return;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Stop the checkpoint thread, make all files durable and close the log.
+     */
+    void close() throws Exception{
+        synchronized(this){
+            closed = true;
+            notifyAll();
+        }
+        checkpointThread.join();
+        checkpoint();
+        raFile.close();
+    }
+
+
+    /**
+     * The page images of one transaction.
+     */
+    static final class Batch{
+        final WriteAheadLog log;
+        private final ArrayList entries = new ArrayList();
+        /** FileChannel --> the end of file before the first reservation of this batch */
+        private final HashMap reservedFiles = new HashMap();
+        private byte[] record;
+        private boolean done;
+        private Throwable error;
+
+
+        private Batch(WriteAheadLog log){
+            this.log = log;
+        }
+
+
+        Database getDatabase(){
+            return log.database;
+        }
+
+
+        /**
+         * Reserve the space for a new page at the end of a table file. The file is extended after the reservation
+         * without the monitor of the log, that other commits are not blocked while the extent is filled.
+         * @return the file offset of the page
+         */
+        long allocate(Table table, int size) throws IOException{
+            FileChannel file = table.raFile;
+            long fileOffset;
+            long end;
+            synchronized(log){
+                FileState state = (FileState)log.files.get(file);
+                if(state == null){
+                    state = new FileState();
+                    log.files.put(file, state);
+                }
+                if(state.pending == 0){
+                    state.end = Math.max(state.end, table.getDataEnd());
+                }
+                if(!reservedFiles.containsKey(file)){
+                    reservedFiles.put(file, new Long(state.end));
+                    state.pending++;
+                }
+                fileOffset = state.end;
+                end = state.end += size;
+            }
+            // only this batch can reserve space until it is committed, the page is written after the extension
+            table.extendFile(end);
+            return fileOffset;
+        }
+
+
+        /**
+         * Add a page image to this batch. The data must not be modified until the batch is committed.
+         */
+        void write(Table table, long fileOffset, byte[] data, int length){
+            entries.add(new Entry(table, fileOffset, data, length));
+        }
+
+
+        /**
+         * Add pages that are already written after the end of the data, for example from a BulkLoad. Only the
+         * header of the first page is part of the log record, the pages are not valid before it is written.
+         * @param start the file offset of the first page
+         * @param end the file position after the last page
+         * @param header the header of the first page
+         */
+        void writeAppended(Table table, long start, long end, byte[] header){
+            FileChannel file = table.raFile;
+            synchronized(log){
+                FileState state = (FileState)log.files.get(file);
+                if(state == null){
+                    state = new FileState();
+                    log.files.put(file, state);
+                }
+                if(state.pending == 0){
+                    state.end = Math.max(state.end, table.getDataEnd());
+                }
+                if(!reservedFiles.containsKey(file)){
+                    reservedFiles.put(file, new Long(state.end));
+                    state.pending++;
+                }
+                // the following reservations of the transaction are after the pages
+                state.end = Math.max(state.end, end);
+            }
+            Entry entry = new Entry(table, start, header, header.length);
+            entry.end = end;
+            entries.add(entry);
+        }
+
+
+        /**
+         * Serialize the batch to a log record with a checksum.
+         */
+        private void createRecord() throws SQLException{
+            try{
+                HashMap names = new HashMap(); // Table --> byte[]
+                int length = 4;
+                for(int i=0; i<entries.size(); i++){
+                    Entry entry = (Entry)entries.get(i);
+                    byte[] name = (byte[])names.get(entry.table);
+                    if(name == null){
+                        name = entry.table.getFile(log.database).getName().getBytes("UTF8");
+                        names.put(entry.table, name);
+                    }
+                    length += 2 + name.length + 8 + 4 + entry.length;
+                }
+                record = new byte[4 + length + 8];
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                buffer.putInt(length);
+                buffer.putInt(entries.size());
+                for(int i=0; i<entries.size(); i++){
+                    Entry entry = (Entry)entries.get(i);
+                    byte[] name = (byte[])names.get(entry.table);
+                    buffer.putShort((short)name.length);
+                    buffer.put(name);
+                    buffer.putLong(entry.offset);
+                    buffer.putInt(entry.length);
+                    buffer.put(entry.data, 0, entry.length);
+                }
+                CRC32 crc = new CRC32();
+                crc.update(record, 4, length);
+                buffer.putLong(crc.getValue());
+            }catch(IOException ex){
+                throw SmallSQLException.createFromException(ex);
+            }
+        }
+
+
+        /**
+         * Discard this batch if the commit failed before it was written. The reserved space is released.
+         */
+        void discard(){
+            synchronized(log){
+                if(log.reserving != this){
+                    return;
+                }
+                Iterator iterator = reservedFiles.entrySet().iterator();
+                while(iterator.hasNext()){
+                    Map.Entry mapEntry = (Map.Entry)iterator.next();
+                    FileState state = (FileState)log.files.get(mapEntry.getKey());
+                    if(state != null){
+                        state.end = ((Long)mapEntry.getValue()).longValue();
+                    }
+                }
+                releaseFiles();
+                log.reserving = null;
+                log.notifyAll();
+            }
+        }
+
+
+        /**
+         * Decrement the counter of not applied reservations. Must be called with the monitor of the log.
+         */
+        private void releaseFiles(){
+            Iterator iterator = reservedFiles.keySet().iterator();
+            while(iterator.hasNext()){
+                FileState state = (FileState)log.files.get(iterator.next());
+                if(state != null){
+                    state.pending--;
+                }
+            }
+            reservedFiles.clear();
+        }
+
+
+        private void throwError() throws SQLException{
+            if(error != null){
+                throw SmallSQLException.createFromException(error);
+            }
+        }
+    }
+
+
+    private static final class Entry{
+        final Table table;
+        final FileChannel file;
+        final long offset;
+        final byte[] data;
+        final int length;
+        /** the end of the pages that are valid with this entry */
+        long end;
+
+
+        Entry(Table table, long offset, byte[] data, int length){
+            this.table = table;
+            this.file = table.raFile;
+            this.offset = offset;
+            this.data = data;
+            this.length = length;
+            this.end = offset + length;
+        }
+    }
+
+
+    private static final class FileState{
+        /** the end of the file including all reserved space */
+        long end;
+        /** the count of batches with reserved space that are not applied */
+        int pending;
+    }
+}
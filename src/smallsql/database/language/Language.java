@@ -60,6 +60,7 @@ public class Language {
 	public static final String DB_NOT_DIRECTORY 		= "SS-0032";
 	public static final String DB_NOTCONNECTED 			= "SS-0033";
 	public static final String DB_READONLY              = "SS-0034";
+	public static final String DB_LOG_NOT_EMPTY         = "SS-0035";
 
 	public static final String CONNECTION_CLOSED 		= "SS-0070";
 
@@ -93,6 +94,8 @@ public class Language {
 	public static final String TABLE_FILE_INVALID		= "SS-0197";
 	public static final String TABLE_OR_VIEW_FILE_INVALID = "SS-0198";
 	public static final String TABLE_EXISTENT			= "SS-0199";
+	public static final String TABLE_DEADLOCK_VICTIM	= "SS-0200";
+	public static final String TABLE_LOCK_TIMEOUT		= "SS-0201";
 
 	public static final String FK_NOT_TABLE				= "SS-0220";
 	public static final String PK_ONLYONE				= "SS-0221";
@@ -138,6 +141,9 @@ public class Language {
 	public static final String COL_INVALID_NAME 		= "SS-0406";
 	public static final String COL_IDX_OUT_RANGE 		= "SS-0407";
 	public static final String COL_AMBIGUOUS 			= "SS-0408";
+	public static final String CSV_DELIMITER 			= "SS-0409";
+	public static final String CSV_QUOTE_OPEN 			= "SS-0410";
+	public static final String CSV_VALUE_COUNT 		= "SS-0411";
 	
 	public static final String GROUP_AGGR_INVALID 		= "SS-0430";
 	public static final String GROUP_AGGR_NOTPART 		= "SS-0431";
@@ -149,6 +155,7 @@ public class Language {
 	public static final String INDEX_FILE_INVALID 		= "SS-0462";
 	public static final String INDEX_CORRUPT 			= "SS-0463";
 	public static final String INDEX_TOOMANY_EQUALS 	= "SS-0464";
+	public static final String INDEX_KEY_TOOLONG 		= "SS-0465";
 
 	public static final String FILE_TOONEW 				= "SS-0490";
 	public static final String FILE_TOOOLD 				= "SS-0491";
@@ -159,6 +166,8 @@ public class Language {
 	public static final String ROWS_WRONG_MAX 			= "SS-0522";
 	public static final String ROW_LOCKED 				= "SS-0523";
 	public static final String ROW_DELETED 				= "SS-0524";
+	public static final String ROW_BULK_LOADED 			= "SS-0525";
+	public static final String ROW_SNAPSHOT_CHANGED 	= "SS-0526";
 
 	public static final String SAVEPT_INVALID_TRANS 	= "SS-0550";
 	public static final String SAVEPT_INVALID_DRIVER 	= "SS-0551";
@@ -361,6 +370,7 @@ public class Language {
 { DB_NONEXISTENT                  , "Database ''{0}'' does not exist." },
 { DB_NOT_DIRECTORY                , "Directory ''{0}'' is not a SmallSQL database." },
 { DB_NOTCONNECTED                 , "You are not connected with a Database." },
+{ DB_LOG_NOT_EMPTY                , "The database ''{0}'' was not closed clean. It can not be opened read only until its log is replayed by a writable connection." },
 
 { CONNECTION_CLOSED               , "Connection is already closed." },
 
@@ -389,6 +399,8 @@ public class Language {
 { TABLE_CORRUPT_PAGE              , "Corrupt table page at position: {0}." },
 { TABLE_MODIFIED                  , "Table ''{0}'' was modified." },
 { TABLE_DEADLOCK                  , "Deadlock, can not create a lock on table ''{0}''." },
+{ TABLE_DEADLOCK_VICTIM           , "Deadlock detected on table ''{0}''. The transaction was rolled back." },
+{ TABLE_LOCK_TIMEOUT              , "Lock timeout, can not create a lock on table ''{0}''." },
 { TABLE_OR_VIEW_MISSING           , "Table or View ''{0}'' does not exist." },
 { TABLE_FILE_INVALID              , "File ''{0}'' does not include a valid SmallSQL Table." },
 { TABLE_OR_VIEW_FILE_INVALID      , "File ''{0}'' is not a valid Table or View store." },
@@ -438,6 +450,9 @@ public class Language {
 { COL_INVALID_NAME                , "Invalid column name ''{0}''." },
 { COL_IDX_OUT_RANGE               , "Column index out of range: {0}." },
 { COL_AMBIGUOUS                   , "Column ''{0}'' is ambiguous." },
+{ CSV_DELIMITER                   , "Invalid CSV delimiter ''{0}''. It must be a single character." },
+{ CSV_QUOTE_OPEN                  , "Missing end quote of the CSV value in line {0}." },
+{ CSV_VALUE_COUNT                 , "Line {0} of the CSV data has {1} values but {2} values are expected." },
 
 { GROUP_AGGR_INVALID              , "Aggregate function are not valid in the GROUP BY clause ({0})." },
 { GROUP_AGGR_NOTPART              , "Expression ''{0}'' is not part of a aggregate function or GROUP BY clause." },
@@ -449,6 +464,7 @@ public class Language {
 { INDEX_FILE_INVALID              , "File ''{0}'' is not a valid Index store." },
 { INDEX_CORRUPT                   , "Error in loading Index. Index file is corrupt. ({0})." },
 { INDEX_TOOMANY_EQUALS            , "Too many equals entry in Index." },
+{ INDEX_KEY_TOOLONG               , "Index key with {0} characters is longer as the maximum of {1}." },
 
 { FILE_TOONEW                     , "File version ({0}) of file ''{1}'' is too new for this runtime." },
 { FILE_TOOOLD                     , "File version ({0}) of file ''{1}'' is too old for this runtime." },
@@ -459,6 +475,8 @@ public class Language {
 { ROWS_WRONG_MAX                  , "Wrong max rows value: {0}." },
 { ROW_LOCKED                      , "Row is locked from another Connection." },
 { ROW_DELETED                     , "Row already deleted." },
+{ ROW_BULK_LOADED                 , "The rows of table ''{0}'' can not be changed after a direct-path insert until the end of the transaction." },
+{ ROW_SNAPSHOT_CHANGED            , "A row of table ''{0}'' was changed by another transaction after the start of this transaction." },
 
 { SAVEPT_INVALID_TRANS            , "Savepoint is not valid for this transaction." },
 { SAVEPT_INVALID_DRIVER           , "Savepoint is not valid for this driver {0}." },
@@ -501,6 +519,7 @@ public class Language {
 { DB_NONEXISTENT                  , "01000" },
 { DB_NOT_DIRECTORY                , "01000" },
 { DB_NOTCONNECTED                 , "01000" },
+{ DB_LOG_NOT_EMPTY                , "01000" },
 
 { CONNECTION_CLOSED               , "01000" },
 
@@ -529,6 +548,8 @@ public class Language {
 { TABLE_CORRUPT_PAGE              , "01000" },
 { TABLE_MODIFIED                  , "01000" },
 { TABLE_DEADLOCK                  , "01000" },
+{ TABLE_DEADLOCK_VICTIM           , "40001" },
+{ TABLE_LOCK_TIMEOUT              , "HYT00" },
 { TABLE_OR_VIEW_MISSING           , "01000" },
 { TABLE_FILE_INVALID              , "01000" },
 { TABLE_OR_VIEW_FILE_INVALID      , "01000" },
@@ -536,7 +557,7 @@ public class Language {
 
 { FK_NOT_TABLE                    , "01000" },
 { PK_ONLYONE                      , "01000" },
-{ KEY_DUPLICATE                   , "01000" },
+{ KEY_DUPLICATE                   , "23000" },
 
 { MONTH_TOOLARGE                  , "01000" },
 { DAYS_TOOLARGE                   , "01000" },
@@ -578,6 +599,9 @@ public class Language {
 { COL_INVALID_NAME                , "01000" },
 { COL_IDX_OUT_RANGE               , "01000" },
 { COL_AMBIGUOUS                   , "01000" },
+{ CSV_DELIMITER                   , "01000" },
+{ CSV_QUOTE_OPEN                  , "01000" },
+{ CSV_VALUE_COUNT                 , "01000" },
 
 { GROUP_AGGR_INVALID              , "01000" },
 { GROUP_AGGR_NOTPART              , "01000" },
@@ -589,6 +613,7 @@ public class Language {
 { INDEX_FILE_INVALID              , "01000" },
 { INDEX_CORRUPT                   , "01000" },
 { INDEX_TOOMANY_EQUALS            , "01000" },
+{ INDEX_KEY_TOOLONG               , "01000" },
 
 { FILE_TOONEW                     , "01000" },
 { FILE_TOOOLD                     , "01000" },
@@ -599,6 +624,8 @@ public class Language {
 { ROWS_WRONG_MAX                  , "01000" },
 { ROW_LOCKED                      , "01000" },
 { ROW_DELETED                     , "01000" },
+{ ROW_BULK_LOADED                 , "01000" },
+{ ROW_SNAPSHOT_CHANGED            , "40001" },
 
 { SAVEPT_INVALID_TRANS            , "01000" },
 { SAVEPT_INVALID_DRIVER           , "01000" },
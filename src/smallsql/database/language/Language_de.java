@@ -56,6 +56,7 @@ public class Language_de extends Language {
             { DB_NONEXISTENT                  , "Die Datenbank ''{0}'' existiert nicht." },
             { DB_NOT_DIRECTORY                , "Das Verzeichnis ''{0}'' ist keine SmallSQL Datenbank." },
             { DB_NOTCONNECTED                 , "Sie sind nicht mit einer Datenbank verbunden." },
+            { DB_LOG_NOT_EMPTY                , "Die Datenbank ''{0}'' wurde nicht sauber geschlossen. Sie kann erst schreibgeschützt geöffnet werden, wenn ihr Log von einer schreibenden Verbindung eingespielt wurde." },
 
             { CONNECTION_CLOSED               , "Die Verbindung ist bereits geschlossen." },
 
@@ -84,6 +85,8 @@ public class Language_de extends Language {
             { TABLE_CORRUPT_PAGE              , "Beschädigte Tabellenseite bei Position: {0}." },
             { TABLE_MODIFIED                  , "Die Tabelle ''{0}'' wurde modifiziert." },
             { TABLE_DEADLOCK                  , "Deadlock, es kann kein Lock erzeugt werden für Tabelle ''{0}''." },
+            { TABLE_DEADLOCK_VICTIM           , "Deadlock erkannt bei Tabelle ''{0}''. Die Transaktion wurde zurückgerollt." },
+            { TABLE_LOCK_TIMEOUT              , "Zeitüberschreitung, es kann kein Lock erzeugt werden für Tabelle ''{0}''." },
             { TABLE_OR_VIEW_MISSING           , "Tabelle oder View ''{0}'' existiert nicht." },
             { TABLE_FILE_INVALID              , "Die Datei ''{0}'' enthält keine gültige SmallSQL Tabelle." },
             { TABLE_OR_VIEW_FILE_INVALID      , "Die Datei ''{0}'' ist keine gültiger Tabellen oder View Speicher." },
@@ -133,6 +136,9 @@ public class Language_de extends Language {
             { COL_INVALID_NAME                , "Ungültiger Spaltenname ''{0}''." },
             { COL_IDX_OUT_RANGE               , "Spaltenindex außerhalb des Gültigkeitsbereiches: {0}." },
             { COL_AMBIGUOUS                   , "Die Spalte ''{0}'' ist mehrdeutig." },
+            { CSV_DELIMITER                   , "Ungültiges CSV Trennzeichen ''{0}''. Es muss ein einzelnes Zeichen sein." },
+            { CSV_QUOTE_OPEN                  , "Fehlendes Ende-Anführungszeichen des CSV Wertes in Zeile {0}." },
+            { CSV_VALUE_COUNT                 , "Die Zeile {0} der CSV Daten hat {1} Werte, erwartet werden {2} Werte." },
 
             { GROUP_AGGR_INVALID              , "Aggregatfunktion sind nicht erlaubt im GROUP BY Klausel: ({0})." },
             { GROUP_AGGR_NOTPART              , "Der Ausdruck ''{0}'' ist nicht Teil einer Aggregatfunktion oder GROUP BY Klausel." },
@@ -144,6 +150,7 @@ public class Language_de extends Language {
             { INDEX_FILE_INVALID              , "Die Datei ''{0}'' ist kein gültiger Indexspeicher." },
             { INDEX_CORRUPT                   , "Error beim Laden des Index. Die Index Datei ist beschädigt. ({0})." },
             { INDEX_TOOMANY_EQUALS            , "Zu viele identische Einträge im Index." },
+            { INDEX_KEY_TOOLONG               , "Der Indexschlüssel mit {0} Zeichen ist länger als das Maximum von {1}." },
 
             { FILE_TOONEW                     , "Dateiversion ({0}) der Datei ''{1}'' ist zu neu für diese Laufzeitbibliothek." },
             { FILE_TOOOLD                     , "Dateiversion ({0}) der Datei ''{1}'' ist zu alt für diese Laufzeitbibliothek." },
@@ -154,6 +161,8 @@ public class Language_de extends Language {
             { ROWS_WRONG_MAX                  , "Fehlerhafter Wert für Maximale Datensatzanzahl: {0}." },
             { ROW_LOCKED                      , "Der Datensatz ist gelocked von einer anderen Verbindung." },
             { ROW_DELETED                     , "Der Datensatz ist bereits gelöscht." },
+            { ROW_BULK_LOADED                 , "Die Datensätze der Tabelle ''{0}'' können nach einem Direct-Path Insert bis zum Ende der Transaktion nicht geändert werden." },
+            { ROW_SNAPSHOT_CHANGED            , "Ein Datensatz der Tabelle ''{0}'' wurde nach dem Start dieser Transaktion von einer anderen Transaktion geändert." },
 
             { SAVEPT_INVALID_TRANS            , "Der Savepoint ist nicht gültig für die aktuelle Transaction." },
             { SAVEPT_INVALID_DRIVER           , "Der Savepoint ist nicht gültig für diesen Treiber {0}." },
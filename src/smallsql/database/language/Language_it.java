@@ -56,6 +56,7 @@ public class Language_it extends Language {
 { DB_NONEXISTENT                  , "Il database ''{0}'' Non esiste." },
 { DB_NOT_DIRECTORY                , "La directory ''{0}'' non è un database SmallSQL." },
 { DB_NOTCONNECTED                 , "L''utente non è connesso a un database." },
+{ DB_LOG_NOT_EMPTY                , "Il database ''{0}'' non è stato chiuso correttamente. Non può essere aperto in sola lettura finché il suo log non viene applicato da una connessione in scrittura." },
 
 { CONNECTION_CLOSED               , "La connessione è già chiusa." },
 
@@ -85,6 +86,8 @@ public class Language_it extends Language {
 { TABLE_CORRUPT_PAGE              , "Pagina della tabella corrotta alla posizione: {0}." },
 { TABLE_MODIFIED                  , "La tabella ''{0}'' è stata modificata." },
 { TABLE_DEADLOCK                  , "Deadlock: non si può mettere un lock sulla tabella ''{0}''." },
+{ TABLE_DEADLOCK_VICTIM           , "Deadlock rilevato sulla tabella ''{0}''. La transazione è stata annullata." },
+{ TABLE_LOCK_TIMEOUT              , "Timeout: non si può mettere un lock sulla tabella ''{0}''." },
 { TABLE_OR_VIEW_MISSING           , "La tabella/view ''{0}'' non esiste." },
 { TABLE_FILE_INVALID              , "Il file ''{0}'' non include una tabella SmallSQL valida." },
 { TABLE_OR_VIEW_FILE_INVALID      , "Il file ''{0}'' non è un contenitore valido di tabella/view." },
@@ -134,6 +137,9 @@ public class Language_it extends Language {
 { COL_INVALID_NAME                , "Nome di colonna non valido ''{0}''." },
 { COL_IDX_OUT_RANGE               , "Indice di colonna fuori dall''intervallo valido: {0}." },
 { COL_AMBIGUOUS                   , "Il nome di colonna ''{0}'' è ambiguo." },
+{ CSV_DELIMITER                   , "Delimitatore CSV non valido ''{0}''. Deve essere un singolo carattere." },
+{ CSV_QUOTE_OPEN                  , "Virgolette di chiusura mancanti nel valore CSV alla riga {0}." },
+{ CSV_VALUE_COUNT                 , "La riga {0} dei dati CSV ha {1} valori, ma sono attesi {2} valori." },
 
 { GROUP_AGGR_INVALID              , "Funzione di aggregrazione non valida per la clausola GROUP BY: ({0})." },
 { GROUP_AGGR_NOTPART              , "L''espressione ''{0}'' non è parte di una funzione di aggregazione o della clausola GROUP BY." },
@@ -145,6 +151,7 @@ public class Language_it extends Language {
 { INDEX_FILE_INVALID              , "Il file ''{0}'' non è un contenitore valido per un indice." },
 { INDEX_CORRUPT                   , "Errore durante il caricamento dell''indice. File dell''indice corrotto: ''{0}''." },
 { INDEX_TOOMANY_EQUALS            , "Troppe voci uguali nell''indice." },
+{ INDEX_KEY_TOOLONG               , "La chiave dell''indice con {0} caratteri supera il massimo di {1}." },
 
 { FILE_TOONEW                     , "La versione ({0}) del file ''{1}'' è troppo recente per questo runtime." },
 { FILE_TOOOLD                     , "La versione ({0}) del file ''{1}'' è troppo vecchia per questo runtime." },
@@ -155,6 +162,8 @@ public class Language_it extends Language {
 { ROWS_WRONG_MAX                  , "Numero massimo di righe non valido ({0})." },
 { ROW_LOCKED                      , "La riga è bloccata da un''altra connessione." },
 { ROW_DELETED                     , "Riga già cancellata." },
+{ ROW_BULK_LOADED                 , "Le righe della tabella ''{0}'' non possono essere modificate dopo un inserimento direct-path fino alla fine della transazione." },
+{ ROW_SNAPSHOT_CHANGED            , "Una riga della tabella ''{0}'' è stata modificata da un''altra transazione dopo l''inizio di questa transazione." },
 
 { SAVEPT_INVALID_TRANS            , "SAVEPOINT non valido per questa transazione." },
 { SAVEPT_INVALID_DRIVER           , "SAVEPOINT non valido per questo driver {0}." },
@@ -0,0 +1,62 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * AllTests.java
+ * ---------------
+ */
+package smallsql.junit;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * The suite of all JUnit tests. Every test class use its own database in the temp directory.
+ */
+public class AllTests{
+
+    public static Test suite(){
+        TestSuite theSuite = new TestSuite("SmallSQL all Tests");
+        theSuite.addTestSuite( TestVacuum.class );
+        theSuite.addTestSuite( TestWriteAheadLog.class );
+        theSuite.addTestSuite( TestLobs.class );
+        theSuite.addTestSuite( TestMemoryDatabase.class );
+        theSuite.addTestSuite( TestCopy.class );
+        theSuite.addTestSuite( TestDirectPath.class );
+        theSuite.addTestSuite( TestDeadlock.class );
+        theSuite.addTestSuite( TestMvcc.class );
+        theSuite.addTestSuite( TestIndexChanges.class );
+        theSuite.addTestSuite( TestBTreeIndex.class );
+        theSuite.addTestSuite( TestCoveringIndex.class );
+        return theSuite;
+    }
+
+
+    public static void main(String[] argv){
+        junit.textui.TestRunner.run( suite() );
+    }
+}
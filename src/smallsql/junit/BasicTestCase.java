@@ -0,0 +1,118 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * BasicTestCase.java
+ * ---------------
+ */
+package smallsql.junit;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import junit.framework.TestCase;
+
+/**
+ * The base class of the tests with helpers for the databases and the results of queries.
+ */
+public class BasicTestCase extends TestCase{
+
+    static{
+        try{
+            Class.forName( "smallsql.database.SSDriver" );
+        }catch(ClassNotFoundException e){
+            throw new Error(e.toString());
+        }
+    }
+
+
+    public BasicTestCase(){
+        super();
+    }
+
+
+    public BasicTestCase(String name){
+        super(name);
+    }
+
+
+    /**
+     * Get the directory of a test database in the temp directory. A database of a previous run is deleted.
+     */
+    static File getDatabaseDirectory(String name){
+        File dir = new File( new File( System.getProperty("java.io.tmpdir"), "smallsql-junit" ), name );
+        deleteFiles( dir );
+        return dir;
+    }
+
+
+    /**
+     * Delete a directory with all its files.
+     */
+    static void deleteFiles(File file){
+        File[] files = file.listFiles();
+        if(files != null){
+            for(int i=0; i<files.length; i++){
+                deleteFiles( files[i] );
+            }
+        }
+        file.delete();
+    }
+
+
+    static Connection getConnection(File dir, boolean create) throws SQLException{
+        return DriverManager.getConnection( "jdbc:smallsql:" + dir.getPath() + (create ? "?create=true" : "") );
+    }
+
+
+    /**
+     * Check the value of the first column in the first row of a query.
+     */
+    static void assertEqualsRsValue(Object expected, Statement st, String sql) throws SQLException{
+        ResultSet rs = st.executeQuery( sql );
+        assertTrue( "No row: " + sql, rs.next() );
+        assertEquals( sql, String.valueOf(expected), rs.getString(1) );
+        rs.close();
+    }
+
+
+    /**
+     * Check that a statement fail with the given SQLState.
+     */
+    static void assertSQLState(String sqlState, Statement st, String sql){
+        try{
+            st.execute( sql );
+            fail( "No exception: " + sql );
+        }catch(SQLException e){
+            assertEquals( e.getMessage(), sqlState, e.getSQLState() );
+        }
+    }
+}
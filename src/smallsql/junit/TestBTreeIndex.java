@@ -0,0 +1,135 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * TestBTreeIndex.java
+ * ---------------
+ */
+package smallsql.junit;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Test an index with USING BTREE. The count of rows is large enough that the tree has multiple levels.
+ */
+public class TestBTreeIndex extends BasicTestCase{
+
+    private static final int ROWS = 20000;
+
+    private File dir;
+    private Connection con;
+
+
+    public void setUp() throws Exception{
+        dir = getDatabaseDirectory( "btree" );
+        con = getConnection( dir, true );
+        Statement st = con.createStatement();
+        st.execute( "CREATE TABLE b (id INT, k INT, s VARCHAR(30))" );
+        st.execute( "CREATE INDEX bk ON b(k) USING BTREE" );
+        st.execute( "CREATE INDEX bs ON b(s) USING BTREE" );
+        con.setAutoCommit( false );
+        PreparedStatement pr = con.prepareStatement( "INSERT INTO b VALUES(?,?,?)" );
+        for(int i=0; i<ROWS; i++){
+            // insert the keys not in order, every k exist twice
+            int k = (i * 7919) % (ROWS / 2);
+            pr.setInt( 1, i );
+            pr.setInt( 2, k );
+            pr.setString( 3, "s" + k );
+            pr.execute();
+        }
+        con.commit();
+        con.setAutoCommit( true );
+    }
+
+
+    public void tearDown() throws Exception{
+        if(con != null){
+            con.close();
+        }
+        deleteFiles( dir );
+    }
+
+
+    private void assertQueries() throws Exception{
+        Statement st = con.createStatement();
+        assertEqualsRsValue( new Integer(2), st, "SELECT count(*) FROM b WHERE k=1234" );
+        assertEqualsRsValue( new Integer(2), st, "SELECT count(*) FROM b WHERE s='s1234'" );
+        assertEqualsRsValue( new Integer(0), st, "SELECT count(*) FROM b WHERE k=-5" );
+        assertEqualsRsValue( new Integer(200), st, "SELECT count(*) FROM b WHERE k BETWEEN 100 AND 199" );
+        assertEqualsRsValue( new Integer(20), st, "SELECT count(*) FROM b WHERE k >= 9990" );
+        assertEqualsRsValue( new Integer(20), st, "SELECT count(*) FROM b WHERE k < 10" );
+
+        // the rows of a range are returned in the order of the index
+        ResultSet rs = st.executeQuery( "SELECT k FROM b WHERE k > 5000 AND k <= 5100 ORDER BY k" );
+        int count = 0;
+        int last = 5000;
+        while(rs.next()){
+            int k = rs.getInt( 1 );
+            assertTrue( k >= last && k <= 5100 );
+            last = k;
+            count++;
+        }
+        assertEquals( 200, count );
+    }
+
+
+    public void testQueries() throws Exception{
+        assertQueries();
+        // the nodes are loaded from the file
+        con.close();
+        con = getConnection( dir, false );
+        assertQueries();
+    }
+
+
+    public void testChanges() throws Exception{
+        Statement st = con.createStatement();
+        assertEquals( 2, st.executeUpdate( "UPDATE b SET k=-5 WHERE k=1234" ) );
+        assertEquals( 200, st.executeUpdate( "DELETE FROM b WHERE k BETWEEN 3000 AND 3099" ) );
+        assertEqualsRsValue( new Integer(0), st, "SELECT count(*) FROM b WHERE k=1234" );
+        assertEqualsRsValue( new Integer(2), st, "SELECT count(*) FROM b WHERE k=-5" );
+        assertEqualsRsValue( new Integer(0), st, "SELECT count(*) FROM b WHERE k BETWEEN 3000 AND 3099" );
+        assertEqualsRsValue( new Integer(200), st, "SELECT count(*) FROM b WHERE k BETWEEN 2950 AND 3149" );
+
+        con.setAutoCommit( false );
+        st.execute( "DELETE FROM b WHERE k < 1000" );
+        assertEqualsRsValue( new Integer(0), st, "SELECT count(*) FROM b WHERE k=500" );
+        con.rollback();
+        con.setAutoCommit( true );
+        assertEqualsRsValue( new Integer(2), st, "SELECT count(*) FROM b WHERE k=500" );
+
+        con.close();
+        con = getConnection( dir, false );
+        st = con.createStatement();
+        assertEqualsRsValue( new Integer(2), st, "SELECT count(*) FROM b WHERE k=-5" );
+        assertEqualsRsValue( new Integer(ROWS - 200), st, "SELECT count(*) FROM b WHERE k >= -5" );
+    }
+}
@@ -0,0 +1,152 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * TestCopy.java
+ * ---------------
+ */
+package smallsql.junit;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Test the bulk load of CSV data with COPY FROM.
+ */
+public class TestCopy extends BasicTestCase{
+
+    private File dir;
+    private Connection con;
+
+
+    public void setUp() throws Exception{
+        dir = getDatabaseDirectory( "copy" );
+        con = getConnection( dir, true );
+        con.createStatement().execute( "CREATE TABLE t (id INT IDENTITY, n INT, s VARCHAR(100), d DECIMAL(10,2), txt LONGVARCHAR)" );
+    }
+
+
+    public void tearDown() throws Exception{
+        if(con != null){
+            con.close();
+        }
+        deleteFiles( dir );
+    }
+
+
+    public void testFile() throws Exception{
+        File file = new File( dir, "data.csv" );
+        Writer writer = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+        writer.write( "n,s,d,txt\r\n1,plain,1.5,abc\r\n2,\"quoted, comma\",,\"multi\nline \"\"q\"\"\"\r\n\r\n3,,2.25,\"\"\n4,ümlaut,3,x" );
+        writer.close();
+        Statement st = con.createStatement();
+        assertEquals( 4, st.executeUpdate( "COPY t(n,s,d,txt) FROM '" + file.getPath() + "' HEADER" ) );
+
+        ResultSet rs = st.executeQuery( "SELECT id, n, s, d, txt FROM t ORDER BY id" );
+        assertTrue( rs.next() );
+        assertEquals( 1, rs.getInt( "id" ) );
+        assertEquals( "plain", rs.getString( "s" ) );
+        assertEquals( "1.50", rs.getString( "d" ) );
+        assertTrue( rs.next() );
+        assertEquals( "quoted, comma", rs.getString( "s" ) );
+        assertNull( rs.getString( "d" ) );
+        assertEquals( "multi\nline \"q\"", rs.getString( "txt" ) );
+        assertTrue( rs.next() );
+        // an empty value is NULL, an empty quoted value is an empty string
+        assertNull( rs.getString( "s" ) );
+        assertEquals( "", rs.getString( "txt" ) );
+        assertTrue( rs.next() );
+        assertEquals( "ümlaut", rs.getString( "s" ) );
+        assertFalse( rs.next() );
+    }
+
+
+    public void testParameter() throws Exception{
+        PreparedStatement pr = con.prepareStatement( "COPY t (n, s) FROM ? DELIMITER ';'" );
+        StringBuffer buffer = new StringBuffer();
+        for(int i=0; i<50000; i++){
+            buffer.append( i ).append( ";row " ).append( i ).append( '\n' );
+        }
+        pr.setCharacterStream( 1, new StringReader( buffer.toString() ), buffer.length() );
+        assertEquals( 50000, pr.executeUpdate() );
+
+        Statement st = con.createStatement();
+        assertEqualsRsValue( new Integer(50000), st, "SELECT count(*) FROM t" );
+        assertEqualsRsValue( new Long(1249975000), st, "SELECT sum(n) FROM t" );
+        assertEqualsRsValue( new Integer(50000), st, "SELECT max(id) FROM t" );
+        assertEqualsRsValue( "row 777", st, "SELECT s FROM t WHERE n=777" );
+
+        // the identity continue after the loaded rows and the rows are saved
+        st.execute( "INSERT INTO t(n,s) VALUES(-1,'insert')" );
+        con.close();
+        con = getConnection( dir, false );
+        st = con.createStatement();
+        assertEqualsRsValue( new Integer(50001), st, "SELECT count(*) FROM t" );
+        assertEqualsRsValue( new Integer(50001), st, "SELECT id FROM t WHERE n=-1" );
+    }
+
+
+    /**
+     * A COPY with an invalid row does not load any row.
+     */
+    public void testErrors() throws Exception{
+        PreparedStatement pr = con.prepareStatement( "COPY t (n, s) FROM ? DELIMITER ';'" );
+        pr.setCharacterStream( 1, new StringReader( "5;x\nbad;y\n" ), 10 );
+        assertCopyFails( pr );
+        pr.setCharacterStream( 1, new StringReader( "5;\"open\n" ), 8 );
+        assertCopyFails( pr );
+        pr.setCharacterStream( 1, new StringReader( "5;x;too much\n" ), 13 );
+        assertCopyFails( pr );
+
+        Statement st = con.createStatement();
+        assertEqualsRsValue( new Integer(0), st, "SELECT count(*) FROM t" );
+        try{
+            st.execute( "COPY t(n,s) FROM 'data.csv' DELIMITER ';;'" );
+            fail( "invalid delimiter" );
+        }catch(SQLException e){
+            // expected
+        }
+    }
+
+
+    private static void assertCopyFails(PreparedStatement pr){
+        try{
+            pr.executeUpdate();
+            fail( "no exception" );
+        }catch(SQLException e){
+            // expected
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * TestCoveringIndex.java
+ * ---------------
+ */
+package smallsql.junit;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+/**
+ * Test an index with INCLUDE columns. A query that need only the columns of the index is answered from the index
+ * without reading the rows. The results are compared with the same query that scan the table.
+ */
+public class TestCoveringIndex extends BasicTestCase{
+
+    private File dir;
+    private Connection con;
+
+
+    public void setUp() throws Exception{
+        dir = getDatabaseDirectory( "covering" );
+        con = getConnection( dir, true );
+        Statement st = con.createStatement();
+        st.execute( "CREATE TABLE o (id INT, status VARCHAR(20), amount DOUBLE, note VARCHAR(4000), c CHAR(8), n NUMERIC(10,2))" );
+        st.execute( "CREATE INDEX ixs ON o(status) INCLUDE (id, amount, c, n)" );
+        st.execute( "CREATE INDEX ixnote ON o(id) USING BTREE INCLUDE (note)" );
+        con.setAutoCommit( false );
+        PreparedStatement pr = con.prepareStatement( "INSERT INTO o VALUES(?,?,?,?,?,?)" );
+        for(int i=0; i<3000; i++){
+            pr.setInt( 1, i );
+            if(i % 97 == 0){
+                pr.setNull( 2, Types.VARCHAR );
+            }else{
+                pr.setString( 2, "st" + (i % 23) );
+            }
+            if(i % 31 == 0){
+                pr.setNull( 3, Types.DOUBLE );
+            }else{
+                pr.setDouble( 3, i * 1.25 );
+            }
+            pr.setString( 4, i % 100 == 0 ? createString( 3000 ) : "note" + i );
+            if(i % 7 == 0){
+                pr.setNull( 5, Types.CHAR );
+            }else{
+                pr.setString( 5, "c" + (i % 5) );
+            }
+            pr.setBigDecimal( 6, new BigDecimal( i ).movePointLeft( 2 ) );
+            pr.execute();
+        }
+        con.commit();
+        con.setAutoCommit( true );
+    }
+
+
+    public void tearDown() throws Exception{
+        if(con != null){
+            con.close();
+        }
+        deleteFiles( dir );
+    }
+
+
+    private static String createString(int length){
+        StringBuffer buffer = new StringBuffer( length );
+        for(int i=0; i<length; i++){
+            buffer.append( (char)('a' + i % 26) );
+        }
+        return buffer.toString();
+    }
+
+
+    private String getResult(String sql) throws SQLException{
+        ResultSet rs = con.createStatement().executeQuery( sql );
+        StringBuffer buffer = new StringBuffer();
+        int count = rs.getMetaData().getColumnCount();
+        while(rs.next()){
+            for(int i=1; i<=count; i++){
+                buffer.append( rs.getString( i ) ).append( i < count ? ',' : ';' );
+            }
+        }
+        rs.close();
+        return buffer.toString();
+    }
+
+
+    /**
+     * Compare the result of a query on the index with the result of a table scan.
+     * @param select the part of the query before the condition
+     * @param where the condition on the first column of an index
+     * @param orderBy the rest of the query
+     */
+    private void assertCovered(String select, String where, String orderBy) throws SQLException{
+        String expected = getResult( select + " WHERE NOT(NOT(" + where + ")) " + orderBy );
+        assertTrue( "empty result", expected.length() > 0 );
+        assertEquals( expected, getResult( select + " WHERE " + where + " " + orderBy ) );
+    }
+
+
+    private void assertAll() throws SQLException{
+        assertCovered( "SELECT id, amount, c, n FROM o", "status = 'st5'", "ORDER BY id" );
+        assertCovered( "SELECT status, count(*), sum(amount), max(n) FROM o", "status >= 'st1' AND status < 'st2'", "GROUP BY status ORDER BY status" );
+        assertCovered( "SELECT id, n * 2 FROM o", "status = 'st22' AND c = 'c1'", "ORDER BY id" );
+        assertCovered( "SELECT note FROM o", "id BETWEEN 95 AND 305", "ORDER BY note" );
+        // a column that is not in the index is read from the row
+        assertCovered( "SELECT id, note FROM o", "status = 'st3'", "ORDER BY id" );
+    }
+
+
+    public void testQueries() throws Exception{
+        assertAll();
+        con.close();
+        con = getConnection( dir, false );
+        assertAll();
+    }
+
+
+    public void testChanges() throws Exception{
+        Statement st = con.createStatement();
+        st.execute( "UPDATE o SET amount = -1 WHERE status = 'st5'" );
+        st.execute( "UPDATE o SET c = 'upd', note = 'changed' WHERE id BETWEEN 100 AND 140" );
+        st.execute( "DELETE FROM o WHERE status = 'st7'" );
+        assertAll();
+        assertEqualsRsValue( "-1.0", st, "SELECT max(amount) FROM o WHERE status = 'st5'" );
+        assertEqualsRsValue( "changed", st, "SELECT note FROM o WHERE id = 120" );
+
+        // the own changes of a transaction are visible
+        con.setAutoCommit( false );
+        st.execute( "UPDATE o SET amount = 99999 WHERE status = 'st6'" );
+        assertEqualsRsValue( "99999.0", st, "SELECT max(amount) FROM o WHERE status = 'st6'" );
+        con.rollback();
+        con.setAutoCommit( true );
+        assertCovered( "SELECT max(amount) FROM o", "status = 'st6'", "" );
+
+        st.execute( "VACUUM o" );
+        assertAll();
+    }
+
+
+    public void testInvalidInclude() throws Exception{
+        Statement st = con.createStatement();
+        try{
+            st.execute( "CREATE INDEX bad ON o(status) INCLUDE (nope)" );
+            fail( "invalid include column" );
+        }catch(SQLException e){
+            // expected
+        }
+        // the failed index has left no file
+        st.execute( "CREATE INDEX bad ON o(status) INCLUDE (note)" );
+        assertCovered( "SELECT id, note FROM o", "status = 'st4'", "ORDER BY id" );
+    }
+}
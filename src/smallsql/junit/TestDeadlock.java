@@ -0,0 +1,164 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * TestDeadlock.java
+ * ---------------
+ */
+package smallsql.junit;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Test the page locks, the detection of deadlocks and the lock timeout.
+ */
+public class TestDeadlock extends BasicTestCase{
+
+    private File dir;
+    private Connection con;
+    private Connection con1;
+    private Connection con2;
+
+
+    public void setUp() throws Exception{
+        dir = getDatabaseDirectory( "deadlock" );
+        con = getConnection( dir, true );
+        Statement st = con.createStatement();
+        st.execute( "CREATE TABLE a (id INT, v INT)" );
+        st.execute( "CREATE TABLE b (id INT, v INT)" );
+        st.execute( "INSERT INTO a VALUES(1,0)" );
+        st.execute( "INSERT INTO b VALUES(1,0)" );
+        con1 = getConnection( dir, false );
+        con2 = getConnection( dir, false );
+        con1.setAutoCommit( false );
+        con2.setAutoCommit( false );
+    }
+
+
+    public void tearDown() throws Exception{
+        con1.close();
+        con2.close();
+        con.close();
+        deleteFiles( dir );
+    }
+
+
+    /**
+     * Execute an UPDATE in a thread.
+     */
+    private static class Updater extends Thread{
+        private final Connection con;
+        private final String sql;
+        SQLException exception;
+
+        Updater(Connection con, String sql){
+            this.con = con;
+            this.sql = sql;
+            start();
+        }
+
+        public void run(){
+            try{
+                con.createStatement().executeUpdate( sql );
+            }catch(SQLException e){
+                exception = e;
+            }
+        }
+    }
+
+
+    public void testDeadlock() throws Exception{
+        con1.createStatement().executeUpdate( "UPDATE a SET v=1" );
+        con2.createStatement().executeUpdate( "UPDATE b SET v=2" );
+        long start = System.currentTimeMillis();
+        Updater updater = new Updater( con1, "UPDATE b SET v=11" );
+        Thread.sleep( 300 );
+        SQLException exception = null;
+        try{
+            con2.createStatement().executeUpdate( "UPDATE a SET v=22" );
+        }catch(SQLException e){
+            exception = e;
+        }
+        updater.join();
+        assertTrue( "deadlock not detected before the timeout", System.currentTimeMillis() - start < 3000 );
+
+        // the younger transaction is the victim and is rolled back
+        assertNull( updater.exception );
+        assertNotNull( exception );
+        assertEquals( "40001", exception.getSQLState() );
+        con1.commit();
+        con2.commit();
+        Statement st = con.createStatement();
+        assertEqualsRsValue( new Integer(1), st, "SELECT v FROM a" );
+        assertEqualsRsValue( new Integer(11), st, "SELECT v FROM b" );
+    }
+
+
+    public void testLockTimeout() throws Exception{
+        con1.createStatement().execute( "SET LOCK_TIMEOUT 200" );
+        con2.createStatement().executeUpdate( "UPDATE a SET v=3" );
+        long start = System.currentTimeMillis();
+        assertSQLState( "HYT00", con1.createStatement(), "UPDATE a SET v=4" );
+        assertTrue( "timeout too late", System.currentTimeMillis() - start < 2000 );
+        con2.commit();
+
+        // without a conflict the lock is granted
+        assertEquals( 1, con1.createStatement().executeUpdate( "UPDATE a SET v=4" ) );
+        con1.commit();
+        assertEqualsRsValue( new Integer(4), con.createStatement(), "SELECT v FROM a" );
+    }
+
+
+    /**
+     * The locks are set on single rows. Rows in the same stripe of the lock table does not block each other. The
+     * UPDATEs read only the rows of the index range, a scan would lock every row.
+     */
+    public void testRowLocks() throws Exception{
+        Statement st = con.createStatement();
+        st.execute( "CREATE TABLE r (id INT PRIMARY KEY, v INT)" );
+        for(int i=1; i<=1000; i++){
+            st.execute( "INSERT INTO r VALUES(" + i + ",0)" );
+        }
+        con1.createStatement().execute( "SET LOCK_TIMEOUT 200" );
+        con2.createStatement().execute( "SET LOCK_TIMEOUT 200" );
+        // more locked rows as stripes
+        assertEquals( 500, con1.createStatement().executeUpdate( "UPDATE r SET v=1 WHERE id <= 500" ) );
+        assertEquals( 500, con2.createStatement().executeUpdate( "UPDATE r SET v=2 WHERE id >= 501" ) );
+        assertSQLState( "HYT00", con2.createStatement(), "UPDATE r SET v=2 WHERE id = 250" );
+        assertSQLState( "HYT00", con1.createStatement(), "UPDATE r SET v=1 WHERE id = 750" );
+        con1.commit();
+
+        // the locks are released with the commit
+        assertEquals( 1, con2.createStatement().executeUpdate( "UPDATE r SET v=2 WHERE id = 250" ) );
+        con2.commit();
+        assertEqualsRsValue( new Integer(499), st, "SELECT count(*) FROM r WHERE v=1" );
+        assertEqualsRsValue( new Integer(501), st, "SELECT count(*) FROM r WHERE v=2" );
+    }
+}
@@ -0,0 +1,139 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * TestDirectPath.java
+ * ---------------
+ */
+package smallsql.junit;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * Test the direct-path insert with INSERT INTO ... WITH (TABLOCK) SELECT. The new rows are visible for the own
+ * connection before the commit and for other connections only after the commit.
+ */
+public class TestDirectPath extends BasicTestCase{
+
+    private File dir;
+    private Connection con;
+
+
+    public void setUp() throws Exception{
+        dir = getDatabaseDirectory( "directpath" );
+        con = getConnection( dir, true );
+        Statement st = con.createStatement();
+        st.execute( "CREATE TABLE src (id INT, v VARCHAR(20))" );
+        st.execute( "CREATE TABLE dst (id INT PRIMARY KEY, v VARCHAR(20))" );
+        for(int i=0; i<1000; i++){
+            st.execute( "INSERT INTO src VALUES(" + i + ",'v" + i + "')" );
+        }
+        st.execute( "INSERT INTO dst VALUES(-1,'old')" );
+    }
+
+
+    public void tearDown() throws Exception{
+        if(con != null){
+            con.close();
+        }
+        deleteFiles( dir );
+    }
+
+
+    public void testVisibility() throws Exception{
+        Connection con2 = getConnection( dir, false );
+        try{
+            Statement st = con.createStatement();
+            Statement st2 = con2.createStatement();
+            con.setAutoCommit( false );
+            assertEquals( 1000, st.executeUpdate( "INSERT INTO dst WITH (TABLOCK) SELECT id, v FROM src" ) );
+
+            // the own connection read the new rows, also over the index
+            assertEqualsRsValue( new Integer(1001), st, "SELECT count(*) FROM dst" );
+            assertEqualsRsValue( "v0", st, "SELECT v FROM dst WHERE id=0" );
+            assertEqualsRsValue( "v999", st, "SELECT v FROM dst WHERE id=999" );
+            // the rows are not changed until the end of the transaction
+            assertSQLState( "01000", st, "UPDATE dst SET v='x' WHERE id=5" );
+
+            // another connection can read the table without the new rows
+            assertEqualsRsValue( new Integer(1), st2, "SELECT count(*) FROM dst" );
+
+            con.commit();
+            con.setAutoCommit( true );
+            assertEqualsRsValue( new Integer(1001), st2, "SELECT count(*) FROM dst" );
+            assertEqualsRsValue( "v500", st2, "SELECT v FROM dst WHERE id=500" );
+            st.execute( "UPDATE dst SET v='x' WHERE id=5" );
+            assertSQLState( "23000", st2, "INSERT INTO dst VALUES(7,'duplicate')" );
+        }finally{
+            con2.close();
+        }
+
+        con.close();
+        con = getConnection( dir, false );
+        Statement st = con.createStatement();
+        assertEqualsRsValue( new Integer(1001), st, "SELECT count(*) FROM dst" );
+        assertEqualsRsValue( "x", st, "SELECT v FROM dst WHERE id=5" );
+    }
+
+
+    public void testRollback() throws Exception{
+        Statement st = con.createStatement();
+        con.setAutoCommit( false );
+        assertEquals( 1000, st.executeUpdate( "INSERT INTO dst WITH (TABLOCK) SELECT id, v FROM src" ) );
+        assertEqualsRsValue( new Integer(1001), st, "SELECT count(*) FROM dst" );
+        con.rollback();
+        con.setAutoCommit( true );
+        assertEqualsRsValue( new Integer(1), st, "SELECT count(*) FROM dst" );
+        assertEqualsRsValue( new Integer(0), st, "SELECT count(*) FROM dst WHERE id=3" );
+
+        // the space of the rolled back rows is used again
+        st.execute( "INSERT INTO dst VALUES(3,'after')" );
+        con.close();
+        con = getConnection( dir, false );
+        st = con.createStatement();
+        assertEqualsRsValue( new Integer(2), st, "SELECT count(*) FROM dst" );
+        assertEqualsRsValue( "after", st, "SELECT v FROM dst WHERE id=3" );
+    }
+
+
+    /**
+     * A connection that has already locked the complete table use the direct path without the hint.
+     */
+    public void testTableLocked() throws Exception{
+        Statement st = con.createStatement();
+        con.setAutoCommit( false );
+        st.execute( "CREATE TABLE locked (id INT, v VARCHAR(20))" );
+        assertEquals( 1000, st.executeUpdate( "INSERT INTO locked SELECT id, v FROM src" ) );
+        assertEqualsRsValue( new Integer(1000), st, "SELECT count(*) FROM locked" );
+        assertSQLState( "01000", st, "UPDATE locked SET v='x' WHERE id=5" );
+        con.commit();
+        con.setAutoCommit( true );
+        assertEqualsRsValue( new Integer(1000), st, "SELECT count(*) FROM locked" );
+    }
+}
@@ -0,0 +1,259 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * TestIndexChanges.java
+ * ---------------
+ */
+package smallsql.junit;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+/**
+ * Test the maintenance of the indexes on INSERT, UPDATE and DELETE, the UNIQUE constraints and CREATE INDEX on a table
+ * with rows.
+ */
+public class TestIndexChanges extends BasicTestCase{
+
+    private File dir;
+    private Connection con;
+
+
+    public void setUp() throws Exception{
+        dir = getDatabaseDirectory( "indexchanges" );
+        con = getConnection( dir, true );
+        Statement st = con.createStatement();
+        st.execute( "CREATE TABLE u (id INT PRIMARY KEY, v VARCHAR(20), n INT)" );
+        for(int i=0; i<100; i++){
+            st.execute( "INSERT INTO u VALUES(" + i + ",'v" + i + "'," + (i % 10) + ")" );
+        }
+    }
+
+
+    public void tearDown() throws Exception{
+        if(con != null){
+            con.close();
+        }
+        deleteFiles( dir );
+    }
+
+
+    public void testPrimaryKey() throws Exception{
+        Statement st = con.createStatement();
+        assertSQLState( "23000", st, "INSERT INTO u VALUES(5,'duplicate',1)" );
+        assertSQLState( "23000", st, "UPDATE u SET id=7 WHERE id=8" );
+        // NULL is never a duplicate
+        st.execute( "CREATE TABLE n (id INT, UNIQUE(id))" );
+        st.execute( "INSERT INTO n VALUES(null)" );
+        st.execute( "INSERT INTO n VALUES(null)" );
+        assertEqualsRsValue( new Integer(100), st, "SELECT count(*) FROM u" );
+    }
+
+
+    public void testTransaction() throws Exception{
+        Statement st = con.createStatement();
+        con.setAutoCommit( false );
+        st.execute( "INSERT INTO u VALUES(200,'a',1)" );
+        st.execute( "INSERT INTO u VALUES(200,'b',1)" );
+        try{
+            con.commit();
+            fail( "duplicate in one transaction" );
+        }catch(SQLException e){
+            assertEquals( "23000", e.getSQLState() );
+        }
+
+        // a key that is deleted in the same transaction can be inserted again
+        st.execute( "DELETE FROM u WHERE id=3" );
+        st.execute( "INSERT INTO u VALUES(3,'again',1)" );
+        st.execute( "UPDATE u SET id=1000 WHERE id=4" );
+        st.execute( "INSERT INTO u VALUES(4,'old key',1)" );
+        con.commit();
+        con.setAutoCommit( true );
+        assertEqualsRsValue( new Integer(0), st, "SELECT count(*) FROM u WHERE id=200" );
+        assertEqualsRsValue( "again", st, "SELECT v FROM u WHERE id=3" );
+        assertEqualsRsValue( "old key", st, "SELECT v FROM u WHERE id=4" );
+        assertEqualsRsValue( new Integer(101), st, "SELECT count(*) FROM u" );
+    }
+
+
+    /**
+     * A key that another transaction has inserted but not committed is found with the commit.
+     */
+    public void testConcurrent() throws Exception{
+        Connection con2 = getConnection( dir, false );
+        try{
+            con2.setAutoCommit( false );
+            con2.createStatement().execute( "INSERT INTO u VALUES(500,'con2',1)" );
+            con.createStatement().execute( "INSERT INTO u VALUES(500,'con',1)" );
+            try{
+                con2.commit();
+                fail( "concurrent duplicate" );
+            }catch(SQLException e){
+                assertEquals( "23000", e.getSQLState() );
+            }
+        }finally{
+            con2.close();
+        }
+        assertEqualsRsValue( "con", con.createStatement(), "SELECT v FROM u WHERE id=500" );
+    }
+
+
+    /**
+     * Some threads insert the same keys at the same time. Every key is inserted once, all other INSERTs must fail
+     * with a duplicate key and never read a row whose page is not written yet.
+     */
+    public void testConcurrentThreads() throws Exception{
+        final ArrayList errors = new ArrayList();
+        Thread[] threads = new Thread[4];
+        for(int t=0; t<threads.length; t++){
+            final Connection con2 = getConnection( dir, false );
+            final int thread = t;
+            threads[t] = new Thread(){
+                public void run(){
+                    try{
+                        Statement st = con2.createStatement();
+                        for(int i=1000; i<1200; i++){
+                            try{
+                                st.execute( "INSERT INTO u VALUES(" + i + ",'t" + thread + "',1)" );
+                            }catch(SQLException e){
+                                if(!"23000".equals( e.getSQLState() )){
+                                    throw e;
+                                }
+                            }
+                        }
+                        con2.close();
+                    }catch(Throwable e){
+                        synchronized(errors){
+                            errors.add( e );
+                        }
+                    }
+                }
+            };
+        }
+        for(int t=0; t<threads.length; t++){
+            threads[t].start();
+        }
+        for(int t=0; t<threads.length; t++){
+            threads[t].join();
+        }
+        if(errors.size() > 0){
+            Throwable e = (Throwable)errors.get( 0 );
+            if(e instanceof Exception){
+                throw (Exception)e;
+            }
+            throw (Error)e;
+        }
+        Statement st = con.createStatement();
+        assertEqualsRsValue( new Integer(300), st, "SELECT count(*) FROM u" );
+        assertEqualsRsValue( new Integer(200), st, "SELECT count(*) FROM (SELECT DISTINCT id FROM u WHERE id>=1000) d" );
+    }
+
+
+    /**
+     * The index include only committed rows. A query of the transaction must find its own changes.
+     */
+    public void testOwnChanges() throws Exception{
+        Statement st = con.createStatement();
+        con.setAutoCommit( false );
+        st.execute( "DELETE FROM u WHERE id=10" );
+        st.execute( "UPDATE u SET id=1010 WHERE id=11" );
+        st.execute( "UPDATE u SET v='changed' WHERE id=12" );
+        st.execute( "INSERT INTO u VALUES(1012,'new',1)" );
+        assertEqualsRsValue( new Integer(0), st, "SELECT count(*) FROM u WHERE id=10" );
+        assertEqualsRsValue( new Integer(0), st, "SELECT count(*) FROM u WHERE id=11" );
+        assertEqualsRsValue( "v11", st, "SELECT v FROM u WHERE id=1010" );
+        assertEqualsRsValue( "changed", st, "SELECT v FROM u WHERE id=12" );
+        assertEqualsRsValue( "new", st, "SELECT v FROM u WHERE id=1012" );
+        assertEqualsRsValue( new Integer(90), st, "SELECT count(*) FROM u WHERE id BETWEEN 10 AND 2000" );
+        // a keyed loop over many rows
+        for(int i=20; i<80; i++){
+            assertEquals( 1, st.executeUpdate( "UPDATE u SET n=n+100 WHERE id=" + i ) );
+        }
+        assertEqualsRsValue( new Integer(60), st, "SELECT count(*) FROM u WHERE n>=100" );
+        con.rollback();
+        con.setAutoCommit( true );
+        assertEqualsRsValue( "v10", st, "SELECT v FROM u WHERE id=10" );
+        assertEqualsRsValue( new Integer(0), st, "SELECT count(*) FROM u WHERE id=1010" );
+    }
+
+
+    /**
+     * A snapshot must find the old rows over the index after other transactions have changed the keys.
+     */
+    public void testSnapshot() throws Exception{
+        Connection con2 = getConnection( dir, false );
+        try{
+            con2.setTransactionIsolation( Connection.TRANSACTION_REPEATABLE_READ );
+            con2.setAutoCommit( false );
+            Statement st2 = con2.createStatement();
+            assertEqualsRsValue( "v30", st2, "SELECT v FROM u WHERE id=30" );
+
+            Statement st = con.createStatement();
+            st.execute( "DELETE FROM u WHERE id=31" );
+            st.execute( "UPDATE u SET id=1032 WHERE id=32" );
+            st.execute( "UPDATE u SET v='changed' WHERE id=33" );
+            st.execute( "INSERT INTO u VALUES(1033,'new',1)" );
+
+            assertEqualsRsValue( "v31", st2, "SELECT v FROM u WHERE id=31" );
+            assertEqualsRsValue( "v32", st2, "SELECT v FROM u WHERE id=32" );
+            assertEqualsRsValue( new Integer(0), st2, "SELECT count(*) FROM u WHERE id=1032" );
+            assertEqualsRsValue( "v33", st2, "SELECT v FROM u WHERE id=33" );
+            assertEqualsRsValue( new Integer(0), st2, "SELECT count(*) FROM u WHERE id=1033" );
+            assertEqualsRsValue( new Integer(4), st2, "SELECT count(*) FROM u WHERE id BETWEEN 30 AND 33" );
+            con2.commit();
+            assertEqualsRsValue( "v32", st2, "SELECT v FROM u WHERE id=1032" );
+        }finally{
+            con2.close();
+        }
+    }
+
+
+    public void testCreateIndex() throws Exception{
+        Statement st = con.createStatement();
+        st.execute( "CREATE INDEX un ON u(n)" );
+        assertEqualsRsValue( new Integer(10), st, "SELECT count(*) FROM u WHERE n=3" );
+        assertSQLState( "23000", st, "CREATE UNIQUE INDEX uu ON u(n)" );
+        st.execute( "CREATE UNIQUE INDEX uv ON u(v)" );
+        assertSQLState( "23000", st, "INSERT INTO u VALUES(2000,'v10',1)" );
+        st.execute( "INSERT INTO u VALUES(2001,'new',3)" );
+        st.execute( "DELETE FROM u WHERE id=13" );
+        assertEqualsRsValue( new Integer(10), st, "SELECT count(*) FROM u WHERE n=3" );
+
+        // the indexes are part of the table definition after a reopen
+        con.close();
+        con = getConnection( dir, false );
+        st = con.createStatement();
+        assertEqualsRsValue( new Integer(10), st, "SELECT count(*) FROM u WHERE n=3" );
+        assertSQLState( "23000", st, "INSERT INTO u VALUES(2002,'v11',1)" );
+        st.execute( "CREATE UNIQUE INDEX uu ON u(id, n)" );
+        assertSQLState( "23000", st, "INSERT INTO u VALUES(11,'x',1)" );
+    }
+}
@@ -0,0 +1,211 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * TestLobs.java
+ * ---------------
+ */
+package smallsql.junit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Test the storage of LONGVARBINARY and LONGVARCHAR values in the LOB file. A large value is saved in chunks and read
+ * as stream.
+ */
+public class TestLobs extends BasicTestCase{
+
+    /** larger as a single chunk of the LOB file */
+    private static final int LARGE_SIZE = 3 * 1024 * 1024 + 17;
+
+    private File dir;
+    private Connection con;
+
+
+    public void setUp() throws Exception{
+        dir = getDatabaseDirectory( "lobs" );
+        con = getConnection( dir, true );
+        con.createStatement().execute( "CREATE TABLE l (id INT, b LONGVARBINARY, t LONGVARCHAR)" );
+    }
+
+
+    public void tearDown() throws Exception{
+        if(con != null){
+            con.close();
+        }
+        deleteFiles( dir );
+    }
+
+
+    private static byte[] createBytes(int size){
+        byte[] bytes = new byte[size];
+        for(int i=0; i<size; i++){
+            bytes[i] = (byte)(i * 31 + 7);
+        }
+        return bytes;
+    }
+
+
+    private static String createText(int count){
+        StringBuffer buffer = new StringBuffer();
+        for(int i=0; i<count; i++){
+            // a character outside of the BMP is saved as surrogate pair
+            buffer.append( i % 3 == 0 ? "😀" : "ä" );
+        }
+        return buffer.toString();
+    }
+
+
+    private static byte[] readFully(InputStream in) throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7000];
+        int count;
+        while((count = in.read( buffer )) >= 0){
+            out.write( buffer, 0, count );
+        }
+        return out.toByteArray();
+    }
+
+
+    private static String readFully(Reader reader) throws IOException{
+        StringBuffer buffer = new StringBuffer();
+        char[] chars = new char[333];
+        int count;
+        while((count = reader.read( chars )) >= 0){
+            buffer.append( chars, 0, count );
+        }
+        return buffer.toString();
+    }
+
+
+    private void insert(int id, byte[] bytes, String text) throws Exception{
+        PreparedStatement pr = con.prepareStatement( "INSERT INTO l VALUES(?,?,?)" );
+        pr.setInt( 1, id );
+        if(bytes == null){
+            pr.setNull( 2, Types.BLOB );
+        }else{
+            pr.setBinaryStream( 2, new ByteArrayInputStream( bytes ), bytes.length );
+        }
+        if(text == null){
+            pr.setNull( 3, Types.CLOB );
+        }else{
+            pr.setCharacterStream( 3, new StringReader( text ), text.length() );
+        }
+        pr.execute();
+        pr.close();
+    }
+
+
+    private void assertLobs(int id, byte[] bytes, String text) throws Exception{
+        ResultSet rs = con.createStatement().executeQuery( "SELECT b, t FROM l WHERE id=" + id );
+        assertTrue( rs.next() );
+        if(bytes == null){
+            assertNull( rs.getBinaryStream( 1 ) );
+            assertTrue( rs.wasNull() );
+        }else{
+            assertTrue( Arrays.equals( bytes, readFully( rs.getBinaryStream( 1 ) ) ) );
+            assertTrue( Arrays.equals( bytes, rs.getBytes( 1 ) ) );
+        }
+        if(text == null){
+            assertNull( rs.getCharacterStream( 2 ) );
+        }else{
+            assertEquals( text, readFully( rs.getCharacterStream( 2 ) ) );
+            assertEquals( text, rs.getString( 2 ) );
+        }
+        rs.close();
+    }
+
+
+    public void testValues() throws Exception{
+        byte[] large = createBytes( LARGE_SIZE );
+        String text = createText( 100000 );
+        insert( 1, large, text );
+        insert( 2, new byte[]{ 1, 2, 3 }, "small" );
+        insert( 3, null, null );
+        insert( 4, new byte[0], "" );
+
+        for(int round=0; round<2; round++){
+            assertLobs( 1, large, text );
+            assertLobs( 2, new byte[]{ 1, 2, 3 }, "small" );
+            assertLobs( 3, null, null );
+            assertLobs( 4, new byte[0], "" );
+            // the values are read from the file after the reopen
+            con.close();
+            con = getConnection( dir, false );
+        }
+    }
+
+
+    public void testSkip() throws Exception{
+        byte[] large = createBytes( LARGE_SIZE );
+        insert( 1, large, "x" );
+        ResultSet rs = con.createStatement().executeQuery( "SELECT b FROM l" );
+        assertTrue( rs.next() );
+        InputStream in = rs.getBinaryStream( 1 );
+        int pos = 2 * 1024 * 1024 + 5;
+        assertEquals( pos, in.skip( pos ) );
+        assertEquals( large[pos] & 0xFF, in.read() );
+        in.close();
+        rs.close();
+    }
+
+
+    public void testUpdateAndDelete() throws Exception{
+        insert( 1, createBytes( LARGE_SIZE ), createText( 1000 ) );
+        insert( 2, createBytes( 100 ), "two" );
+        Statement st = con.createStatement();
+        PreparedStatement pr = con.prepareStatement( "UPDATE l SET b=?, t=? WHERE id=1" );
+        byte[] bytes = createBytes( 5000 );
+        pr.setBytes( 1, bytes );
+        pr.setString( 2, "updated" );
+        assertEquals( 1, pr.executeUpdate() );
+        st.execute( "DELETE FROM l WHERE id=2" );
+
+        con.setAutoCommit( false );
+        st.execute( "UPDATE l SET t='rollback' WHERE id=1" );
+        con.rollback();
+        con.setAutoCommit( true );
+
+        assertLobs( 1, bytes, "updated" );
+        assertEqualsRsValue( new Integer(1), st, "SELECT count(*) FROM l" );
+        con.close();
+        con = getConnection( dir, false );
+        assertLobs( 1, bytes, "updated" );
+    }
+}
@@ -0,0 +1,89 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * TestMemoryDatabase.java
+ * ---------------
+ */
+package smallsql.junit;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+/**
+ * Test the in-memory databases with the URL jdbc:smallsql:mem:name.
+ */
+public class TestMemoryDatabase extends BasicTestCase{
+
+    public void testLifetime() throws Exception{
+        Connection con = DriverManager.getConnection( "jdbc:smallsql:mem:lifetime" );
+        Connection con2 = DriverManager.getConnection( "jdbc:smallsql:mem:lifetime" );
+        Statement st = con.createStatement();
+        st.execute( "CREATE TABLE t (id INT PRIMARY KEY, v VARCHAR(20))" );
+        st.execute( "INSERT INTO t VALUES(1,'one')" );
+        // all connections of the same name share the database
+        assertEqualsRsValue( "one", con2.createStatement(), "SELECT v FROM t WHERE id=1" );
+        con.close();
+        assertEqualsRsValue( "one", con2.createStatement(), "SELECT v FROM t WHERE id=1" );
+        con2.close();
+
+        // the database is removed with the last connection
+        con = DriverManager.getConnection( "jdbc:smallsql:mem:lifetime" );
+        try{
+            assertSQLState( "01000", con.createStatement(), "SELECT * FROM t" );
+        }finally{
+            con.close();
+        }
+    }
+
+
+    /**
+     * The catalogs of an in-memory database are the open in-memory databases and not the directories of the working
+     * directory.
+     */
+    public void testCatalogs() throws Exception{
+        Connection con = DriverManager.getConnection( "jdbc:smallsql:mem:catalog1" );
+        Connection con2 = DriverManager.getConnection( "jdbc:smallsql:mem:catalog2" );
+        try{
+            ResultSet rs = con.getMetaData().getCatalogs();
+            ArrayList catalogs = new ArrayList();
+            while(rs.next()){
+                String catalog = rs.getString( "TABLE_CAT" );
+                assertTrue( catalog, catalog.startsWith( "mem:" ) );
+                catalogs.add( catalog );
+            }
+            assertTrue( catalogs.toString(), catalogs.contains( "mem:catalog1" ) );
+            assertTrue( catalogs.toString(), catalogs.contains( "mem:catalog2" ) );
+        }finally{
+            con.close();
+            con2.close();
+        }
+    }
+}
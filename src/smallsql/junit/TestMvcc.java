@@ -0,0 +1,124 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * TestMvcc.java
+ * ---------------
+ */
+package smallsql.junit;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Test the snapshot reads of the isolation levels REPEATABLE_READ and SERIALIZABLE. A reader see the committed data of
+ * the start of its transaction and does not block a writer.
+ */
+public class TestMvcc extends BasicTestCase{
+
+    private File dir;
+    private Connection reader;
+    private Connection writer;
+
+
+    public void setUp() throws Exception{
+        dir = getDatabaseDirectory( "mvcc" );
+        writer = getConnection( dir, true );
+        Statement st = writer.createStatement();
+        st.execute( "CREATE TABLE m (id INT, v INT)" );
+        for(int i=1; i<=10; i++){
+            st.execute( "INSERT INTO m VALUES(" + i + ",0)" );
+        }
+        // a blocked writer fails fast
+        st.execute( "SET LOCK_TIMEOUT 1000" );
+        reader = getConnection( dir, false );
+        reader.setTransactionIsolation( Connection.TRANSACTION_REPEATABLE_READ );
+        reader.setAutoCommit( false );
+    }
+
+
+    public void tearDown() throws Exception{
+        reader.close();
+        writer.close();
+        deleteFiles( dir );
+    }
+
+
+    public void testSnapshot() throws Exception{
+        Statement st = reader.createStatement();
+        assertEqualsRsValue( new Integer(10), st, "SELECT count(*) FROM m" );
+
+        Statement wst = writer.createStatement();
+        assertEquals( 1, wst.executeUpdate( "UPDATE m SET v=5 WHERE id=1" ) );
+        wst.execute( "INSERT INTO m VALUES(11,0)" );
+        assertEquals( 1, wst.executeUpdate( "DELETE FROM m WHERE id=2" ) );
+
+        // the reader see the snapshot of its transaction
+        assertEqualsRsValue( new Integer(10), st, "SELECT count(*) FROM m" );
+        assertEqualsRsValue( new Integer(0), st, "SELECT v FROM m WHERE id=1" );
+        assertEqualsRsValue( new Integer(1), st, "SELECT count(*) FROM m WHERE id=2" );
+        reader.commit();
+
+        // a new transaction see the new data
+        assertEqualsRsValue( new Integer(10), st, "SELECT count(*) FROM m" );
+        assertEqualsRsValue( new Integer(5), st, "SELECT v FROM m WHERE id=1" );
+        assertEqualsRsValue( new Integer(0), st, "SELECT count(*) FROM m WHERE id=2" );
+        reader.commit();
+    }
+
+
+    public void testWriterNotBlocked() throws Exception{
+        ResultSet rs = reader.createStatement().executeQuery( "SELECT id, v FROM m" );
+        assertTrue( rs.next() );
+        // the open ResultSet of the reader hold no lock that block the writer
+        assertEquals( 10, writer.createStatement().executeUpdate( "UPDATE m SET v=v+1" ) );
+        int count = 1;
+        while(rs.next()){
+            assertEquals( 0, rs.getInt( "v" ) );
+            count++;
+        }
+        assertEquals( 10, count );
+        rs.close();
+        reader.commit();
+        assertEqualsRsValue( new Integer(10), reader.createStatement(), "SELECT sum(v) FROM m" );
+        reader.commit();
+    }
+
+
+    public void testUncommitted() throws Exception{
+        writer.setAutoCommit( false );
+        writer.createStatement().execute( "INSERT INTO m VALUES(12,0)" );
+        Statement st = reader.createStatement();
+        assertEqualsRsValue( new Integer(10), st, "SELECT count(*) FROM m" );
+        writer.rollback();
+        reader.commit();
+        assertEqualsRsValue( new Integer(10), st, "SELECT count(*) FROM m" );
+        reader.commit();
+    }
+}
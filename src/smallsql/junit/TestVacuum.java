@@ -0,0 +1,110 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * TestVacuum.java
+ * ---------------
+ */
+package smallsql.junit;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Test the compaction of tables with VACUUM.
+ */
+public class TestVacuum extends BasicTestCase{
+
+    private File dir;
+    private Connection con;
+
+
+    public void setUp() throws Exception{
+        dir = getDatabaseDirectory( "vacuum" );
+        con = getConnection( dir, true );
+        Statement st = con.createStatement();
+        st.execute( "CREATE TABLE v (id INT IDENTITY, v VARCHAR(200), t LONGVARCHAR, PRIMARY KEY(id))" );
+        for(int i=0; i<2000; i++){
+            st.execute( "INSERT INTO v(v,t) VALUES('value " + i + "', 'lob text " + i + "')" );
+        }
+        st.execute( "UPDATE v SET v='a longer value that does not fit in the old page ' + v WHERE id < 200" );
+        st.execute( "DELETE FROM v WHERE id >= 1000" );
+    }
+
+
+    public void tearDown() throws Exception{
+        if(con != null){
+            con.close();
+        }
+        deleteFiles( dir );
+    }
+
+
+    public void testVacuumTable() throws Exception{
+        File file = new File( dir, "v.sdb" );
+        File lobs = new File( dir, "v.lob" );
+        long size = file.length();
+        long lobSize = lobs.length();
+        Statement st = con.createStatement();
+        st.execute( "VACUUM v" );
+        assertTrue( "table not smaller", file.length() < size );
+        assertTrue( "LOB file not smaller", lobs.length() < lobSize );
+
+        assertEqualsRsValue( new Integer(999), st, "SELECT count(*) FROM v" );
+        assertEqualsRsValue( new Integer(499500), st, "SELECT sum(id) FROM v" );
+        assertEqualsRsValue( new Integer(199), st, "SELECT count(*) FROM v WHERE v LIKE 'a longer%'" );
+        assertEqualsRsValue( "lob text 4", st, "SELECT t FROM v WHERE id=5" );
+
+        // the identity and the primary key are valid after the rows are moved
+        st.execute( "INSERT INTO v(v,t) VALUES('new','new')" );
+        assertEqualsRsValue( new Integer(2001), st, "SELECT max(id) FROM v" );
+        assertSQLState( "23000", st, "INSERT INTO v(id,v) VALUES(5,'duplicate')" );
+    }
+
+
+    /**
+     * A reader that has read the table before the VACUUM read the moved rows after it.
+     */
+    public void testVacuumWithReader() throws Exception{
+        Connection con2 = getConnection( dir, false );
+        try{
+            Statement st2 = con2.createStatement();
+            ResultSet rs = st2.executeQuery( "SELECT id FROM v" );
+            assertTrue( rs.next() );
+            rs.close();
+            con.createStatement().execute( "VACUUM" );
+            assertEqualsRsValue( new Integer(999), st2, "SELECT count(*) FROM v" );
+        }finally{
+            con2.close();
+        }
+        con.close();
+        con = getConnection( dir, false );
+        assertEqualsRsValue( new Integer(999), con.createStatement(), "SELECT count(*) FROM v" );
+    }
+}
@@ -0,0 +1,222 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * TestWriteAheadLog.java
+ * ---------------
+ */
+package smallsql.junit;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+/**
+ * Test the replay of the redo log after a crash. A crash is simulated with a copy of the database files while the
+ * database is open, the table file is replaced with a copy from before the commits.
+ */
+public class TestWriteAheadLog extends BasicTestCase{
+
+    private File dir;
+    private File crashDir;
+    private Connection con;
+
+
+    public void setUp() throws Exception{
+        dir = getDatabaseDirectory( "wal" );
+        crashDir = getDatabaseDirectory( "walcrash" );
+        con = getConnection( dir, true );
+        Statement st = con.createStatement();
+        st.execute( "CREATE TABLE w (id INT, v VARCHAR(100))" );
+        for(int i=0; i<100; i++){
+            st.execute( "INSERT INTO w VALUES(" + i + ",'value " + i + "')" );
+        }
+        con.close();
+        copyFile( new File( dir, "w.sdb" ), new File( crashDir, "w.sdb.old" ) );
+        con = getConnection( dir, false );
+    }
+
+
+    public void tearDown() throws Exception{
+        if(con != null){
+            con.close();
+        }
+        deleteFiles( dir );
+        deleteFiles( crashDir );
+    }
+
+
+    /**
+     * Commit some transactions and simulate a crash before the pages are written in the table file.
+     */
+    private void crash() throws Exception{
+        Statement st = con.createStatement();
+        con.setAutoCommit( false );
+        for(int i=100; i<200; i++){
+            st.execute( "INSERT INTO w VALUES(" + i + ",'value " + i + "')" );
+            if(i % 10 == 9){
+                con.commit();
+            }
+        }
+        st.execute( "UPDATE w SET v='updated' WHERE id < 10" );
+        st.execute( "DELETE FROM w WHERE id >= 190" );
+        con.commit();
+        st.execute( "INSERT INTO w VALUES(999,'uncommitted')" );
+        copyCrashFiles();
+        con.rollback();
+    }
+
+
+    /**
+     * Copy the current files of the database with the table file from before the commits.
+     */
+    private void copyCrashFiles() throws Exception{
+        File[] files = dir.listFiles();
+        for(int i=0; i<files.length; i++){
+            copyFile( files[i], new File( crashDir, files[i].getName() ) );
+        }
+        File table = new File( crashDir, "w.sdb" );
+        table.delete();
+        assertTrue( new File( crashDir, "w.sdb.old" ).renameTo( table ) );
+    }
+
+
+    public void testReplay() throws Exception{
+        crash();
+        assertTrue( "empty log", new File( crashDir, "smallsql.wal" ).length() > 8 );
+
+        Connection crashCon = getConnection( crashDir, false );
+        try{
+            Statement st = crashCon.createStatement();
+            assertEqualsRsValue( new Integer(190), st, "SELECT count(*) FROM w" );
+            assertEqualsRsValue( new Integer(17955), st, "SELECT sum(id) FROM w" );
+            assertEqualsRsValue( new Integer(10), st, "SELECT count(*) FROM w WHERE v='updated'" );
+            assertEqualsRsValue( "value 150", st, "SELECT v FROM w WHERE id=150" );
+            st.execute( "INSERT INTO w VALUES(1000,'after replay')" );
+        }finally{
+            crashCon.close();
+        }
+        assertEquals( "log not truncated", 8, new File( crashDir, "smallsql.wal" ).length() );
+
+        crashCon = getConnection( crashDir, false );
+        try{
+            assertEqualsRsValue( new Integer(191), crashCon.createStatement(), "SELECT count(*) FROM w" );
+        }finally{
+            crashCon.close();
+        }
+    }
+
+
+    /**
+     * Some connections commit at the same time, the commits can be written in the same group of the log.
+     */
+    public void testConcurrentCommits() throws Exception{
+        final ArrayList errors = new ArrayList();
+        Thread[] threads = new Thread[4];
+        for(int t=0; t<threads.length; t++){
+            final Connection con2 = getConnection( dir, false );
+            final int first = 1000 + t * 100;
+            threads[t] = new Thread(){
+                public void run(){
+                    try{
+                        Statement st = con2.createStatement();
+                        for(int i=first; i<first + 100; i++){
+                            st.execute( "INSERT INTO w VALUES(" + i + ",'thread " + first + "')" );
+                        }
+                        con2.close();
+                    }catch(Throwable e){
+                        synchronized(errors){
+                            errors.add( e );
+                        }
+                    }
+                }
+            };
+        }
+        for(int t=0; t<threads.length; t++){
+            threads[t].start();
+        }
+        for(int t=0; t<threads.length; t++){
+            threads[t].join();
+        }
+        assertEquals( errors.toString(), 0, errors.size() );
+        copyCrashFiles();
+
+        Connection crashCon = getConnection( crashDir, false );
+        try{
+            Statement st = crashCon.createStatement();
+            assertEqualsRsValue( new Integer(500), st, "SELECT count(*) FROM w" );
+            assertEqualsRsValue( new Integer(100), st, "SELECT count(*) FROM w WHERE v='thread 1200'" );
+            assertEqualsRsValue( "thread 1300", st, "SELECT v FROM w WHERE id=1399" );
+        }finally{
+            crashCon.close();
+        }
+    }
+
+
+    /**
+     * A record that was not completely written on the crash is ignored.
+     */
+    public void testTornRecord() throws Exception{
+        crash();
+        OutputStream out = new FileOutputStream( new File( crashDir, "smallsql.wal" ), true );
+        out.write( new byte[]{ 0, 0, 0, 40, 1, 2, 3, 4, 5, 6, 7 } );
+        out.close();
+
+        Connection crashCon = getConnection( crashDir, false );
+        try{
+            assertEqualsRsValue( new Integer(190), crashCon.createStatement(), "SELECT count(*) FROM w" );
+        }finally{
+            crashCon.close();
+        }
+    }
+
+
+    private static void copyFile(File src, File dest) throws IOException{
+        dest.getParentFile().mkdirs();
+        InputStream in = new FileInputStream( src );
+        try{
+            OutputStream out = new FileOutputStream( dest );
+            try{
+                byte[] buffer = new byte[8192];
+                int count;
+                while((count = in.read( buffer )) > 0){
+                    out.write( buffer, 0, count );
+                }
+            }finally{
+                out.close();
+            }
+        }finally{
+            in.close();
+        }
+    }
+}